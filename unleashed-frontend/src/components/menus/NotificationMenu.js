@@ -5,7 +5,8 @@ import {
 } from '@mui/material';
 import {
     getLatestNotifications,
-    markNotificationAsViewed
+    markNotificationAsViewed,
+    subscribeToNotifications
 } from '../../service/UserService';
 import useAuthHeader from 'react-auth-kit/hooks/useAuthHeader';
 import useAuthUser from 'react-auth-kit/hooks/useAuthUser';
@@ -29,8 +30,6 @@ export default function NotificationIcon() {
         try {
             const data = await getLatestNotifications(authHeader, user.username);
             setNotifications(data);
-            const unread = data.filter(n => !n.notificatonViewed).length;
-            setUnreadCount(unread);
         } catch (error) {
             console.error('Error fetching notifications:', error);
         } finally {
@@ -42,6 +41,18 @@ export default function NotificationIcon() {
         loadNotifications();
     }, [user, authHeader]);
 
+    // The unread count and new notifications are pushed by the server.
+    useEffect(() => {
+        if (!user) return;
+        return subscribeToNotifications(authHeader, (event, data) => {
+            if (event === 'unread') {
+                setUnreadCount(data.unread);
+            } else if (event === 'notification') {
+                setNotifications(prev => [data, ...prev.filter(n => n.notificationId !== data.notificationId)].slice(0, 10));
+            }
+        });
+    }, [user, authHeader]);
+
     useEffect(() => {
         const handleClickOutside = (event) => {
             if (notificationMenuRef.current && !notificationMenuRef.current.contains(event.target)) {
@@ -63,8 +74,9 @@ export default function NotificationIcon() {
         if (!notification.notificatonViewed) {
             try {
                 await markNotificationAsViewed(notification.notificationId, authHeader, user.username);
-                // THE FIX: Refresh the notification state immediately after marking as read.
-                loadNotifications();
+                // The new unread count arrives over the stream.
+                setNotifications(prev => prev.map(n =>
+                    n.notificationId === notification.notificationId ? { ...n, notificatonViewed: true } : n));
             } catch (error) {
                 console.error("Failed to mark as read on click");
             }
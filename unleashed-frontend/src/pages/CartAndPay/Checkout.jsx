@@ -10,7 +10,7 @@ import { formatPrice } from "../../components/format/formats";
 import ShipmentSelector from "../../service/ShipmentService";
 import { CommonRadioCard } from "../../components/inputs/Radio";
 import useAuthUser from "react-auth-kit/hooks/useAuthUser";
-import { checkDiscount, checkoutOrder, checkStock, getPaymentMethod, getShippingMethod, getBestDiscounts } from "../../service/CheckoutService";
+import { checkDiscount, checkoutOrder, checkStock, getCheckoutTicket, getPaymentMethod, getShippingMethod, getBestDiscounts } from "../../service/CheckoutService";
 import useAuthHeader from "react-auth-kit/hooks/useAuthHeader";
 import { toast } from "react-toastify";
 import { fetchMembership, GetUserInfo } from "../../service/UserService";
@@ -37,6 +37,15 @@ const style = {
     borderColor: "divider",
 };
 
+const DEFAULT_QUEUE_POLL_SECONDS = 2;
+
+const sleep = (ms) => new Promise((resolve) => setTimeout(resolve, ms));
+
+const retryAfterMs = (response) => {
+    const seconds = Number(response?.headers?.["retry-after"]);
+    return (seconds > 0 ? seconds : DEFAULT_QUEUE_POLL_SECONDS) * 1000;
+};
+
 const CheckoutPage = () => {
     const [location, setLocation] = useState({ tinh: "", quan: "", phuong: "" });
     const [paymentMethods, setPaymentMethods] = useState([]);
@@ -62,6 +71,7 @@ const CheckoutPage = () => {
     const [isDiscountModalOpen, setIsDiscountModalOpen] = useState(false);
     const [suggestedDiscounts, setSuggestedDiscounts] = useState([]);
     const [loadingDiscounts, setLoadingDiscounts] = useState(false);
+    const [queuePosition, setQueuePosition] = useState(null);
 
     const calculateFinalCheckoutPrice = useCallback(() => {
         const shippingCost = shippingMethod ? (shippingMethod.id === 1 ? 20000 : 10000) : 0;
@@ -283,10 +293,12 @@ const CheckoutPage = () => {
         try {
             await checkStock(checkoutData, authHeader);
             const response = await checkoutOrder(checkoutData, authHeader);
-            if (response?.data) {
-                localStorage.setItem("orderId", response.data.orderId);
-                if (response.data.redirectUrl) {
-                    window.location.href = response.data.redirectUrl;
+            // 202: the checkout is queued behind a flash sale and the order does not exist yet.
+            const order = response?.status === 202 ? await waitForQueuedOrder(response) : response?.data;
+            if (order) {
+                localStorage.setItem("orderId", order.orderId);
+                if (order.redirectUrl) {
+                    window.location.href = order.redirectUrl;
                 } else if (paymentMethod.paymentMethodName === "TRANSFER") {
                     navigate("/orders/bankTransfer?total=" + checkoutData.totalAmount);
                 } else {
@@ -298,7 +310,36 @@ const CheckoutPage = () => {
             if (error.response?.status !== 400) {
                 toast.error("Failed to place order. Please try again.", { position: "top-center", autoClose: 2000 });
             }
+        } finally {
+            setQueuePosition(null);
+        }
+    };
+
+    // Polls the waiting-room ticket until the order is created (returns it) or refused (returns null).
+    const waitForQueuedOrder = async (response) => {
+        const statusUrl = response.data.statusUrl;
+        let ticket = response.data;
+        let delay = retryAfterMs(response);
+        while (ticket.status === "QUEUED" || ticket.status === "PROCESSING") {
+            setQueuePosition(ticket.position ?? 0);
+            await sleep(delay);
+            try {
+                const poll = await getCheckoutTicket(statusUrl, authHeader);
+                ticket = poll.data;
+                delay = retryAfterMs(poll);
+            } catch (error) {
+                if (error.response?.status === 404) {
+                    toast.error("Your place in line has expired. Please try again.", { position: "top-center", autoClose: 2000 });
+                    return null;
+                }
+                // A failed poll does not lose the ticket; ask again after the same delay.
+            }
+        }
+        if (ticket.status === "COMPLETED") {
+            return ticket.order;
         }
+        toast.error(ticket.message || "Failed to place order. Please try again.", { position: "top-center", autoClose: 2000 });
+        return null;
     };
 
     const handlePaymentMethodName = (name) => {
@@ -454,7 +495,7 @@ const CheckoutPage = () => {
                 <div className="btnCheckout flex justify-end pb-3">
                     <Button
                         onClick={handlePlaceOrder}
-                        disabled={!isCheckoutReady}
+                        disabled={!isCheckoutReady || queuePosition !== null}
                         variant="contained"
                         size="large"
                         sx={{
@@ -467,7 +508,9 @@ const CheckoutPage = () => {
                             }
                         }}
                     >
-                        {isCheckoutReady ? `Pay ${formatPrice(finalTotal)}` : "Please complete information"}
+                        {queuePosition !== null
+                            ? (queuePosition > 0 ? `You are number ${queuePosition} in line...` : "Placing your order...")
+                            : isCheckoutReady ? `Pay ${formatPrice(finalTotal)}` : "Please complete information"}
                     </Button>
                 </div>
             </div>
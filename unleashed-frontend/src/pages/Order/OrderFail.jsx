@@ -1,25 +1,13 @@
 import Lottie from "lottie-react";
-import React, { useEffect } from "react";
+import React from "react";
 import orderFail from "../../assets/anim/ordererror.json";
 import { useNavigate } from "react-router-dom";
 import { FaArrowRight } from "react-icons/fa";
-import { paymentCallback } from "../../service/CheckoutService";
-import useAuthHeader from "react-auth-kit/hooks/useAuthHeader";
 import { Navbar } from "../../components/navbars/Navbar";
 import Footer from "../../components/footer/CustomerFooter";
 
 function OrderFail() {
     const navigate = useNavigate();
-    const orderId = localStorage.getItem("orderId");
-    const authHeader = useAuthHeader();
-    const status = 0;
-
-    useEffect(() => {
-        if (orderId && authHeader) {
-            paymentCallback(orderId, authHeader, status);
-        }
-    }, [orderId, authHeader]);
-
     const handleReturnToHome = () => {
         navigate("/shop");
     };
@@ -32,9 +20,10 @@ function OrderFail() {
                     <Lottie animationData={orderFail} loop={false} />
                 </div>
                 <div className="content font-poppins text-center">
-                    <p className="text-3xl font-bold">Your order is canceled</p>
+                    <p className="text-3xl font-bold">Your payment was not completed</p>
                     <p className="pt-3">
-                        Something went wrong with your payment. Please try again!
+                        Something went wrong with your payment. Unpaid orders are cancelled
+                        automatically. Please try again!
                     </p>
                 </div>
                 <div className="button flex pt-20 space-x-6">
@@ -1,45 +1,72 @@
 import Lottie from "lottie-react";
-import React, { useEffect } from "react";
+import React, { useEffect, useState } from "react";
 import orderSuccess from "../../assets/anim/ordersuccess.json";
 import { useNavigate, useSearchParams } from "react-router-dom";
 import { FaArrowRight } from "react-icons/fa";
 import { TbReorder } from "react-icons/tb";
-import { paymentCallback } from "../../service/CheckoutService";
 import { useCart } from "react-use-cart";
 import useAuthHeader from "react-auth-kit/hooks/useAuthHeader";
+import { getPaymentStatus } from "../../service/CheckoutService";
 import { Navbar } from "../../components/navbars/Navbar";
 import Footer from "../../components/footer/CustomerFooter";
 
+const POLL_INTERVAL_MS = 2000;
+const MAX_POLLS = 30;
+
 function OrderSuccess() {
     const [searchParams] = useSearchParams();
     const navigate = useNavigate();
-    const orderId = localStorage.getItem("orderId");
+    const [orderId] = useState(() => localStorage.getItem("orderId"));
+    // Back from PayOS (id) or VNPay (vnp_ResponseCode): wait until the gateway's webhook has settled the order.
+    const [paymentState, setPaymentState] = useState(() =>
+        searchParams.has("id") || searchParams.has("vnp_ResponseCode") ? "CONFIRMING" : null);
     const { emptyCart } = useCart();
     const authHeader = useAuthHeader();
 
     useEffect(() => {
-        const responseCode = searchParams.get("vnp_ResponseCode");
-        const transactionStatus = searchParams.get("vnp_TransactionStatus");
-
         if (!orderId) {
             navigate("/shop");
             emptyCart();
             return;
         }
-
-        if (!responseCode || !transactionStatus) {
-            paymentCallback(orderId, authHeader, 1);
-            return localStorage.removeItem("orderId");
+        localStorage.removeItem("orderId");
+        if (paymentState !== "CONFIRMING") {
+            return;
         }
 
-        if (responseCode === "00" && transactionStatus === "00") {
-            paymentCallback(orderId, authHeader, 1);
-            localStorage.removeItem("orderId");
-        } else {
-            navigate("/orders/error");
-            return localStorage.removeItem("orderId");
-        }
-    }, [authHeader, emptyCart, navigate, orderId, searchParams]);
+        // This page only reads the status; the order is moved by the signed webhook alone.
+        let stopped = false;
+        let polls = 0;
+        let timer;
+        const poll = async () => {
+            try {
+                const { orderStatus } = await getPaymentStatus(orderId, authHeader);
+                const status = (orderStatus || "").toUpperCase();
+                if (stopped) return;
+                if (status === "CANCELLED") {
+                    navigate("/orders/error");
+                    return;
+                }
+                if (status !== "PENDING") {
+                    setPaymentState("PAID");
+                    return;
+                }
+            } catch (error) {
+                console.error(error);
+            }
+            if (stopped) return;
+            if (++polls < MAX_POLLS) {
+                timer = setTimeout(poll, POLL_INTERVAL_MS);
+            } else {
+                setPaymentState("UNCONFIRMED");
+            }
+        };
+        poll();
+        return () => {
+            stopped = true;
+            clearTimeout(timer);
+        };
+    }, [authHeader, emptyCart, navigate, orderId, paymentState]);
 
     const handleViewOrder = () => {
         navigate("/user/orders/me/" + orderId);
@@ -63,10 +90,21 @@ function OrderSuccess() {
                 <div className="content font-poppins text-center">
                     <p className="text-3xl font-bold">Order Success</p>
                     <p className="text-xl py-2 font-bold">Your Order number: {orderId}</p>
-                    <p className="pt-3">
-                        Your order is now pending. Please wait for the shop staff to confirm
-                        your order. This will just take a moment!
-                    </p>
+                    {paymentState === "CONFIRMING" ? (
+                        <p className="pt-3">
+                            We are confirming your payment with the payment gateway...
+                        </p>
+                    ) : paymentState === "UNCONFIRMED" ? (
+                        <p className="pt-3">
+                            Your payment has not been confirmed yet. You can follow your order's status
+                            from your order history.
+                        </p>
+                    ) : (
+                        <p className="pt-3">
+                            Your order is now pending. Please wait for the shop staff to confirm
+                            your order. This will just take a moment!
+                        </p>
+                    )}
                 </div>
                 <div className="button flex pt-20 space-x-6">
                     <button
@@ -50,21 +50,21 @@ export const checkoutOrder = async (checkoutItem, authHeader) => {
   }
 };
 
-export const paymentCallback = async (orderId, authHeader, status) => {
-  try {
-    const response = await apiClient.post(`/api/orders/${orderId}/payment-callback?isSuccess=${status}`, {}, {
-      headers: {
-        Authorization: authHeader
-      }
-    });
-    return response;
-  } catch (error) {
-    console.error(error);
-    // toast.error(error?.response?.data || "Error when payment", {
-    //   position: "top-center",
-    //   transition: Zoom
-    // });
-  }
+export const getCheckoutTicket = async (statusUrl, authHeader) => {
+  return apiClient.get(statusUrl, {
+    headers: {
+      Authorization: authHeader
+    }
+  });
+};
+
+export const getPaymentStatus = async (orderId, authHeader) => {
+  const response = await apiClient.get(`/api/orders/${orderId}/payment-status`, {
+    headers: {
+      Authorization: authHeader
+    }
+  });
+  return response.data;
 };
 
 
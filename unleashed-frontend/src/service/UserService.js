@@ -261,6 +261,55 @@ export const getAllNotifications = async (authHeader, username, page = 0, size =
     }
 };
 
+// Server-Sent Events over fetch, since EventSource cannot send the Authorization header.
+// Calls onEvent(eventName, data) for each event and reconnects after a dropped connection.
+// Returns a function that closes the stream.
+export const subscribeToNotifications = (authHeader, onEvent) => {
+    const controller = new AbortController();
+
+    const readStream = async (response) => {
+        const reader = response.body.pipeThrough(new TextDecoderStream()).getReader();
+        let buffer = '';
+        while (true) {
+            const { value, done } = await reader.read();
+            if (done) return;
+            buffer += value;
+            let boundary;
+            while ((boundary = buffer.indexOf('\n\n')) >= 0) {
+                const frame = buffer.slice(0, boundary);
+                buffer = buffer.slice(boundary + 2);
+                let event = 'message';
+                const data = [];
+                frame.split('\n').forEach((line) => {
+                    if (line.startsWith('event:')) event = line.slice(6).trim();
+                    else if (line.startsWith('data:')) data.push(line.slice(5).trimStart());
+                });
+                if (data.length > 0) onEvent(event, JSON.parse(data.join('\n')));
+            }
+        }
+    };
+
+    const connect = async () => {
+        while (!controller.signal.aborted) {
+            try {
+                const response = await fetch(`${apiClient.defaults.baseURL}/api/notifications/customer/stream`, {
+                    headers: { Authorization: authHeader, Accept: 'text/event-stream' },
+                    signal: controller.signal,
+                });
+                if (response.status === 401 || response.status === 403) return;
+                if (response.ok && response.body) await readStream(response);
+            } catch (error) {
+                if (controller.signal.aborted) return;
+                console.error("Notification stream disconnected:", error);
+            }
+            await new Promise((resolve) => setTimeout(resolve, 5000));
+        }
+    };
+
+    connect();
+    return () => controller.abort();
+};
+
 export const markNotificationAsViewed = async (notificationId, authHeader, username) => {
     try {
         await apiClient.put(`/api/notifications/customer/view/${notificationId}`, null, {
@@ -0,0 +1,21 @@
+package com.unleashed.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class BackgroundJobConfig {
+
+    @Bean(name = "backgroundJobExecutor")
+    public ThreadPoolTaskExecutor backgroundJobExecutor(BackgroundJobProperties properties) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(properties.workers());
+        executor.setMaxPoolSize(properties.workers());
+        executor.setQueueCapacity(properties.queueCapacity());
+        executor.setThreadNamePrefix("background-job-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+}
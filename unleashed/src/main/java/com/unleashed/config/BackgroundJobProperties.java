@@ -0,0 +1,17 @@
+package com.unleashed.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Long-running admin jobs (bulk assignments, fan-outs) that report progress while they run.
+ * Finished jobs stay pollable for {@code jobTtl}.
+ */
+@ConfigurationProperties(prefix = "app.background-jobs")
+public record BackgroundJobProperties(
+        @DefaultValue("2") int workers,
+        @DefaultValue("20") int queueCapacity,
+        @DefaultValue("1h") Duration jobTtl
+) {}
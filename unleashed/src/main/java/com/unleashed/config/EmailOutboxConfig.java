@@ -0,0 +1,27 @@
+package com.unleashed.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class EmailOutboxConfig {
+
+    /**
+     * Dedicated pool for SMTP delivery so mail never competes with request threads or the
+     * default @Async executor. The queue is as small as the pool: the dispatcher only hands
+     * out a batch when a worker permit is free, so nothing should ever wait here.
+     */
+    @Bean(name = "emailTaskExecutor")
+    public ThreadPoolTaskExecutor emailTaskExecutor(EmailOutboxProperties properties) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(properties.workers());
+        executor.setMaxPoolSize(properties.workers());
+        executor.setQueueCapacity(properties.workers());
+        executor.setThreadNamePrefix("email-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,16 @@
+package com.unleashed.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "app.email-outbox")
+public record EmailOutboxProperties(
+        @DefaultValue("2") int workers,
+        @DefaultValue("25") int batchSize,
+        @DefaultValue("6") int maxAttempts,
+        @DefaultValue("30s") Duration initialBackoff,
+        @DefaultValue("1h") Duration maxBackoff,
+        @DefaultValue("10m") Duration staleClaimTimeout
+) implements OutboxProperties {}
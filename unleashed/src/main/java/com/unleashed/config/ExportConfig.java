@@ -0,0 +1,26 @@
+package com.unleashed.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class ExportConfig {
+
+    /**
+     * Runs the {@code StreamingResponseBody}s of Spring MVC async requests (the exports). Boot's
+     * default application executor is gone once the app defines its own executors, so without this
+     * MVC would fall back to an unbounded thread-per-request executor.
+     */
+    @Bean(name = "exportTaskExecutor")
+    public ThreadPoolTaskExecutor exportTaskExecutor(ExportProperties properties) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(properties.maxConcurrentExports());
+        executor.setMaxPoolSize(properties.maxConcurrentExports());
+        executor.setQueueCapacity(properties.queueCapacity());
+        executor.setThreadNamePrefix("export-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,18 @@
+package com.unleashed.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Streaming admin exports. Each running export holds one JDBC connection and one
+ * {@code exportTaskExecutor} thread for as long as the client keeps reading.
+ */
+@ConfigurationProperties(prefix = "app.exports")
+public record ExportProperties(
+        @DefaultValue("4") int maxConcurrentExports,
+        @DefaultValue("16") int queueCapacity,
+        @DefaultValue("1000") int fetchSize,
+        @DefaultValue("30m") Duration timeout
+) {}
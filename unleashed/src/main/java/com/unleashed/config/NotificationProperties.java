@@ -0,0 +1,14 @@
+package com.unleashed.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * The notification stream. A stream is closed after {@code streamTimeout} and the client reconnects.
+ */
+@ConfigurationProperties(prefix = "app.notifications")
+public record NotificationProperties(
+        @DefaultValue("30m") Duration streamTimeout
+) {}
@@ -0,0 +1,27 @@
+package com.unleashed.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class OrderEventConfig {
+
+    /**
+     * Pool for the order event consumers. The queue is as small as the pool because the
+     * {@link com.unleashed.service.OutboxDispatcher} only submits a batch while it holds one of
+     * {@code workers} permits.
+     */
+    @Bean(name = "orderEventTaskExecutor")
+    public ThreadPoolTaskExecutor orderEventTaskExecutor(OrderEventProperties properties) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(properties.workers());
+        executor.setMaxPoolSize(properties.workers());
+        executor.setQueueCapacity(properties.workers());
+        executor.setThreadNamePrefix("order-event-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+}
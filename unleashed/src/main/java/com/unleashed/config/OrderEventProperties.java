@@ -0,0 +1,16 @@
+package com.unleashed.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "app.order-events")
+public record OrderEventProperties(
+        @DefaultValue("4") int workers,
+        @DefaultValue("50") int batchSize,
+        @DefaultValue("8") int maxAttempts,
+        @DefaultValue("10s") Duration initialBackoff,
+        @DefaultValue("30m") Duration maxBackoff,
+        @DefaultValue("5m") Duration staleClaimTimeout
+) implements OutboxProperties {}
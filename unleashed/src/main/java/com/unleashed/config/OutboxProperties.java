@@ -0,0 +1,31 @@
+package com.unleashed.config;
+
+import java.time.Duration;
+
+/**
+ * Settings shared by the outbox tables drained through {@link com.unleashed.service.OutboxDispatcher}.
+ * A failed row is retried after {@code initialBackoff}, doubling up to {@code maxBackoff}, until it
+ * has been tried {@code maxAttempts} times.
+ */
+public interface OutboxProperties {
+
+    int workers();
+
+    int batchSize();
+
+    int maxAttempts();
+
+    Duration initialBackoff();
+
+    Duration maxBackoff();
+
+    Duration staleClaimTimeout();
+
+    /**
+     * Upper bound on the batches claimed by one dispatch run; pooled outboxes are already bounded
+     * by their worker permits.
+     */
+    default int maxBatchesPerRun() {
+        return Integer.MAX_VALUE;
+    }
+}
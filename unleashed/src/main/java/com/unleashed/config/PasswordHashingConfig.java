@@ -0,0 +1,26 @@
+package com.unleashed.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class PasswordHashingConfig {
+
+    /**
+     * Runs every BCrypt encode and match. Sized to the cores so a login burst cannot occupy more
+     * CPU than the machine has, leaving request threads free for catalog traffic.
+     */
+    @Bean(name = "passwordHashingExecutor")
+    public ThreadPoolTaskExecutor passwordHashingExecutor(PasswordHashingProperties properties) {
+        int threads = properties.threads() > 0 ? properties.threads() : Runtime.getRuntime().availableProcessors();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(properties.queueCapacity());
+        executor.setThreadNamePrefix("password-hash-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,20 @@
+package com.unleashed.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * BCrypt hashing and verification run on their own pool; {@code threads} of 0 means one per core.
+ * Requests that find the queue full are refused with 429 instead of waiting. Logins and
+ * registrations are also limited to {@code attemptsPerIp} per {@code attemptWindow} per client address.
+ */
+@ConfigurationProperties(prefix = "app.password-hashing")
+public record PasswordHashingProperties(
+        @DefaultValue("0") int threads,
+        @DefaultValue("64") int queueCapacity,
+        @DefaultValue("5s") Duration timeout,
+        @DefaultValue("10") int attemptsPerIp,
+        @DefaultValue("1m") Duration attemptWindow
+) {}
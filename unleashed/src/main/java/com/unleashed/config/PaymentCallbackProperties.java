@@ -0,0 +1,39 @@
+package com.unleashed.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Batching of gateway callbacks. A callback whose transaction reference is not known yet (the
+ * gateway can answer before checkout has stored it) is retried every {@code unmatchedRetryDelay}
+ * up to {@code maxAttempts} times. Online-payment orders still PENDING after {@code unpaidOrderTimeout}
+ * are cancelled as failed payments.
+ */
+@ConfigurationProperties(prefix = "app.payment-callbacks")
+public record PaymentCallbackProperties(
+        @DefaultValue("200") int batchSize,
+        @DefaultValue("10") int maxBatchesPerRun,
+        @DefaultValue("6") int maxAttempts,
+        @DefaultValue("5s") Duration unmatchedRetryDelay,
+        @DefaultValue("2m") Duration staleClaimTimeout,
+        @DefaultValue("30m") Duration unpaidOrderTimeout
+) implements OutboxProperties {
+
+    // Callbacks are applied on the scheduler thread, one batch after another.
+    @Override
+    public int workers() {
+        return 1;
+    }
+
+    @Override
+    public Duration initialBackoff() {
+        return unmatchedRetryDelay;
+    }
+
+    @Override
+    public Duration maxBackoff() {
+        return unmatchedRetryDelay;
+    }
+}
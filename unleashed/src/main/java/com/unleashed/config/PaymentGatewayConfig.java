@@ -0,0 +1,34 @@
+package com.unleashed.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.client.RestClient;
+
+@Configuration
+public class PaymentGatewayConfig {
+
+    /**
+     * Threads that perform the gateway calls, so a caller can stop waiting after the call timeout.
+     * The pool is as large as the bulkhead and has no queue: a permit always finds a free thread.
+     */
+    @Bean(name = "paymentGatewayExecutor")
+    public ThreadPoolTaskExecutor paymentGatewayExecutor(PaymentGatewayProperties properties) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(properties.maxConcurrentCalls());
+        executor.setMaxPoolSize(properties.maxConcurrentCalls());
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("payment-gateway-");
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean(name = "paymentGatewayRestClient")
+    public RestClient paymentGatewayRestClient(PaymentGatewayProperties properties) {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout((int) properties.connectTimeout().toMillis());
+        requestFactory.setReadTimeout((int) properties.callTimeout().toMillis());
+        return RestClient.builder().requestFactory(requestFactory).build();
+    }
+}
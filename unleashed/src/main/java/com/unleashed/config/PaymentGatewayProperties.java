@@ -0,0 +1,21 @@
+package com.unleashed.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Limits for outbound payment gateway calls. {@code fakeBaseUrl}, when set, sends PayOS and VNPay
+ * traffic to a {@code FakePaymentGatewayRestController} instead of the real sandboxes (load tests).
+ */
+@ConfigurationProperties(prefix = "app.payment-gateway")
+public record PaymentGatewayProperties(
+        @DefaultValue("16") int maxConcurrentCalls,
+        @DefaultValue("200ms") Duration acquireTimeout,
+        @DefaultValue("2s") Duration connectTimeout,
+        @DefaultValue("5s") Duration callTimeout,
+        @DefaultValue("http://localhost:3000/orders/success") String returnUrl,
+        @DefaultValue("http://localhost:3000/orders/error") String cancelUrl,
+        String fakeBaseUrl
+) {}
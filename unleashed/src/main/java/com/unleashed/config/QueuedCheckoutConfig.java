@@ -0,0 +1,26 @@
+package com.unleashed.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class QueuedCheckoutConfig {
+
+    /**
+     * One long-running thread per checkout lane; the lanes themselves are the queues, so this
+     * pool never buffers anything.
+     */
+    @Bean(name = "queuedCheckoutExecutor")
+    public ThreadPoolTaskExecutor queuedCheckoutExecutor(QueuedCheckoutProperties properties) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(properties.lanes());
+        executor.setMaxPoolSize(properties.lanes());
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("checkout-lane-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,20 @@
+package com.unleashed.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Flash-sale waiting room. When {@code enabled}, checkouts containing a product of an active sale
+ * are queued and processed by {@code lanes} workers instead of running on the request thread.
+ */
+@ConfigurationProperties(prefix = "app.queued-checkout")
+public record QueuedCheckoutProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("4") int lanes,
+        @DefaultValue("2000") int laneCapacity,
+        @DefaultValue("25") int batchSize,
+        @DefaultValue("2s") Duration pollHint,
+        @DefaultValue("30m") Duration ticketTtl
+) {}
@@ -0,0 +1,26 @@
+package com.unleashed.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.Map;
+
+/**
+ * Warehouse preference for order allocation: {@code priorities} maps a stock id to its rank, lower
+ * first (e.g. {@code app.stock-allocation.priorities.3=0}); unlisted stocks rank {@code defaultPriority}.
+ * {@code maxAttempts} bounds re-planning when another order empties a location first.
+ */
+@ConfigurationProperties(prefix = "app.stock-allocation")
+public record StockAllocationProperties(
+        Map<Integer, Integer> priorities,
+        @DefaultValue("100") int defaultPriority,
+        @DefaultValue("3") int maxAttempts
+) {
+    public StockAllocationProperties {
+        priorities = priorities != null ? Map.copyOf(priorities) : Map.of();
+    }
+
+    public int priorityOf(int stockId) {
+        return priorities.getOrDefault(stockId, defaultPriority);
+    }
+}
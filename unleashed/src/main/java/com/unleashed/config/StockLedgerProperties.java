@@ -0,0 +1,18 @@
+package com.unleashed.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Stock ledger housekeeping. Snapshots are taken {@code snapshotLag} in the past so transactions
+ * still in flight are not missed; daily snapshots older than {@code snapshotRetention} are thinned
+ * to one per month. With {@code autoRepair} the nightly reconciliation also fixes the drift it finds.
+ */
+@ConfigurationProperties(prefix = "app.stock-ledger")
+public record StockLedgerProperties(
+        @DefaultValue("10m") Duration snapshotLag,
+        @DefaultValue("35d") Duration snapshotRetention,
+        @DefaultValue("false") boolean autoRepair
+) {}
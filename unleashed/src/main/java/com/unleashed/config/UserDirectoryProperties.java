@@ -0,0 +1,17 @@
+package com.unleashed.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * The in-memory username/email/phone directory. Entries for names that do not exist expire sooner
+ * than the others, since they only spare a query and are the ones a missed invalidation would hurt.
+ */
+@ConfigurationProperties(prefix = "app.user-directory")
+public record UserDirectoryProperties(
+        @DefaultValue("20000") int maxEntries,
+        @DefaultValue("10m") Duration ttl,
+        @DefaultValue("1m") Duration negativeTtl
+) {}
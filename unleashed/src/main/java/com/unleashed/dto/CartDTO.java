@@ -7,6 +7,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.math.BigDecimal;
+
 
 @NoArgsConstructor
 @AllArgsConstructor
@@ -17,4 +19,6 @@ public class CartDTO {
     Integer quantity;
     Integer stockQuantity;
     Sale sale;
+    BigDecimal finalPrice;
+    BigDecimal lineTotal;
 }
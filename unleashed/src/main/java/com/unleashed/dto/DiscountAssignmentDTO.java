@@ -0,0 +1,20 @@
+package com.unleashed.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Who a discount is handed to in bulk: {@code RANK} (every user holding {@code rankId}),
+ * {@code CATEGORY} (every user who bought a product of {@code categoryId}) or {@code USERS}
+ * (the uploaded {@code userIds}).
+ */
+@Data
+@NoArgsConstructor
+public class DiscountAssignmentDTO {
+    private String segment;
+    private Integer rankId;
+    private Integer categoryId;
+    private List<String> userIds;
+}
@@ -4,6 +4,7 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.UUID;
 
 @Data
 @NoArgsConstructor
@@ -14,4 +15,8 @@ public class DiscountUserViewDTO {
     private String email;
     private String fullName;
     private String userImage;
+
+    public DiscountUserViewDTO(UUID userId, String username, String email, String fullName, String userImage) {
+        this(userId.toString(), username, email, fullName, userImage);
+    }
 }
\ No newline at end of file
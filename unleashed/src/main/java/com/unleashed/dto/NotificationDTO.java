@@ -32,6 +32,12 @@ public class NotificationDTO {
 
     private List<String> userNames;  // Danh sách tên người dùng nhận thông báo
 
+    private String audience;  // ALL, ROLE or RANK for a broadcast, empty for the userNames list
+
+    private Integer roleId;  // Role of a ROLE broadcast
+
+    private Integer rankId;  // Rank of a RANK broadcast
+
     private boolean isNotificatonViewed;
 
     private String notificationLink; //new field
@@ -0,0 +1,14 @@
+package com.unleashed.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+public class OrderBulkTransitionDTO {
+    private String action;
+    private List<String> orderIds;
+    private String staffName;
+}
@@ -0,0 +1,49 @@
+package com.unleashed.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.Date;
+
+/**
+ * Flat row of the staff order grid. Built directly by a JPQL constructor expression so the grid
+ * never materializes Order, User, Discount or the lookup entities just to print their names.
+ */
+@Data
+@NoArgsConstructor
+public class OrderGridDTO {
+    private String orderId;
+    private BigDecimal totalAmount;
+    private String orderStatus;
+    private OffsetDateTime orderDate;
+    private String billingAddress;
+    private String shippingMethod;
+    private Date expectedDeliveryDate;
+    private String transactionReference;
+    private String paymentMethod;
+    private String trackingNumber;
+    private String customerUsername;
+    private String notes;
+    private String staffUsername;
+
+    public OrderGridDTO(String orderId, BigDecimal totalAmount, String orderStatus, OffsetDateTime orderDate,
+                        String billingAddress, String shippingMethod, Date expectedDeliveryDate,
+                        String transactionReference, String paymentMethod, String trackingNumber,
+                        String customerUsername, String notes, String staffUsername) {
+        this.orderId = orderId;
+        this.totalAmount = totalAmount;
+        this.orderStatus = orderStatus;
+        this.orderDate = orderDate;
+        this.billingAddress = billingAddress;
+        this.shippingMethod = shippingMethod;
+        this.expectedDeliveryDate = expectedDeliveryDate;
+        this.transactionReference = transactionReference;
+        this.paymentMethod = paymentMethod;
+        this.trackingNumber = trackingNumber;
+        this.customerUsername = customerUsername;
+        this.notes = notes;
+        this.staffUsername = staffUsername != null ? staffUsername : "N/A";
+    }
+}
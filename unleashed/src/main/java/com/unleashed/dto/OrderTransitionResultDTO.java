@@ -0,0 +1,32 @@
+package com.unleashed.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of one order in a (bulk) status transition.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderTransitionResultDTO {
+
+    public enum Outcome {
+        APPLIED,
+        NOT_FOUND,
+        INVALID_STATE,
+        GUARD_FAILED,
+        CONFLICT
+    }
+
+    private String orderId;
+    private Outcome outcome;
+    private String previousStatus;
+    private String newStatus;
+    private String message;
+
+    public boolean isApplied() {
+        return outcome == Outcome.APPLIED;
+    }
+}
@@ -28,6 +28,7 @@ public class ProductDTO {
     private List<ProductVariationDTO> variations;
     private SaleType saleType;
     private BigDecimal saleValue;
+    private BigDecimal finalPrice;
 
     @Data
     @AllArgsConstructor
@@ -36,6 +37,7 @@ public class ProductDTO {
         private Integer sizeId;
         private Integer colorId;
         private BigDecimal productPrice;
+        private BigDecimal finalPrice;
         private String productVariationImage;
     }
 }
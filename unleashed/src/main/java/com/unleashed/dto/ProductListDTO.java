@@ -25,6 +25,7 @@ public class ProductListDTO {
     private BigDecimal productPrice;
     private Sale sale;
     private BigDecimal saleValue;
+    private BigDecimal finalPrice;
     private Double averageRating;
     private Long totalRatings;
     private int quantity;
@@ -18,5 +18,6 @@ public class ProductReviewDTO {
     private OffsetDateTime createdAt;
     private OffsetDateTime updatedAt;
     private String userImage;
+    private Long replyCount;
     private List<ProductReviewDTO> childComments = new ArrayList<>();
 }
\ No newline at end of file
@@ -10,6 +10,7 @@ import java.math.BigDecimal;
 public class ProductVariationDTO {
     private int id;
     private BigDecimal price;
+    private BigDecimal finalPrice;
     private String images;
     private long quantity;
 }
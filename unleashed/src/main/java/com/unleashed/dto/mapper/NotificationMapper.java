@@ -0,0 +1,47 @@
+package com.unleashed.dto.mapper;
+
+import com.unleashed.dto.NotificationDTO;
+import com.unleashed.entity.Notification;
+import org.mapstruct.Mapper;
+
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.regex.Pattern;
+
+@Mapper(componentModel = "spring")
+public interface NotificationMapper {
+
+    DateTimeFormatter INBOX_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSXXX").withZone(ZoneId.of("Asia/Ho_Chi_Minh"));
+
+    // Reply notifications embed their target in the content: {Message}|{productId}|{replyId}
+    Pattern CONTENT_SEPARATOR = Pattern.compile("\\|");
+
+    /**
+     * The notification as a customer's inbox shows it.
+     */
+    default NotificationDTO toInboxDTO(Notification notification, Boolean viewed) {
+        if (notification == null) return null;
+
+        NotificationDTO dto = new NotificationDTO();
+        dto.setNotificationId(notification.getId());
+        dto.setNotificationTitle(notification.getNotificationTitle());
+        dto.setUserName(notification.getUserIdSender() != null ? notification.getUserIdSender().getUsername() : "System");
+
+        String rawContent = notification.getNotificationContent();
+        String[] parts = rawContent != null ? CONTENT_SEPARATOR.split(rawContent) : new String[0];
+        if (parts.length == 3) {
+            dto.setNotificationContent(parts[0]);
+            dto.setNotificationLink("/shop/product/" + parts[1] + "?replyId=" + parts[2]);
+        } else {
+            dto.setNotificationContent(rawContent);
+            dto.setNotificationLink(null);
+        }
+
+        if (viewed != null) {
+            dto.setNotificatonViewed(viewed);
+        }
+
+        dto.setCreatedAt(notification.getNotificationCreatedAt() != null ? notification.getNotificationCreatedAt().format(INBOX_DATE_FORMAT) : "No Date");
+        return dto;
+    }
+}
@@ -0,0 +1,26 @@
+package com.unleashed.entity;
+
+import com.unleashed.entity.composite.CommentClosureId;
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Every ancestor/descendant pair of the comment threads, with the number of levels between them;
+ * each comment is also its own ancestor at depth 0. Kept next to {@code comment_parent} so that
+ * ancestors, descendants, depths and subtree deletes are one indexed query each, whatever the depth
+ * of the thread. Rows are written and removed by {@code CommentClosureRepository} only.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "comment_closure", schema = "dbo", indexes = {
+        @Index(name = "ix_comment_closure_descendant_depth", columnList = "descendant_id, depth")
+})
+public class CommentClosure {
+    @EmbeddedId
+    private CommentClosureId id;
+
+    @Column(name = "depth", nullable = false)
+    private Integer depth;
+}
@@ -6,6 +6,7 @@ import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.annotations.Nationalized;
 
 import java.math.BigDecimal;
@@ -16,6 +17,9 @@ import java.util.Set;
 @Getter
 @Setter
 @Entity
+// Only changed columns are written, so status jobs and edits never overwrite a usage count
+// that redemptions incremented in SQL after the entity was loaded.
+@DynamicUpdate
 @Table(name = "discount", schema = "dbo")
 public class Discount {
     @Id
@@ -0,0 +1,95 @@
+package com.unleashed.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.Nationalized;
+
+import java.time.OffsetDateTime;
+
+@Getter
+@Setter
+@Entity
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "email_outbox", schema = "dbo", indexes = {
+        @Index(name = "ix_email_outbox_status_next_attempt", columnList = "email_status, email_next_attempt_at"),
+        @Index(name = "ix_email_outbox_claim_token", columnList = "email_claim_token")
+})
+public class EmailOutbox {
+
+    public enum Status {
+        PENDING,
+        SENDING,
+        SENT,
+        FAILED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "email_outbox_id", nullable = false)
+    private Long id;
+
+    @Nationalized
+    @Column(name = "email_recipient", nullable = false)
+    private String recipient;
+
+    @Nationalized
+    @Column(name = "email_subject")
+    private String subject;
+
+    // Either a Thymeleaf template name plus its JSON variables, or an already rendered body.
+    @Nationalized
+    @Column(name = "email_template", length = 100)
+    private String templateName;
+
+    @Nationalized
+    @Lob
+    @Column(name = "email_payload")
+    private String payload;
+
+    @Nationalized
+    @Lob
+    @Column(name = "email_body")
+    private String body;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "email_status", length = 20, nullable = false)
+    private Status status;
+
+    @Column(name = "email_attempts", nullable = false)
+    private Integer attempts;
+
+    @Column(name = "email_next_attempt_at")
+    private OffsetDateTime nextAttemptAt;
+
+    @Column(name = "email_claim_token", length = 36)
+    private String claimToken;
+
+    @Column(name = "email_claimed_at")
+    private OffsetDateTime claimedAt;
+
+    @Nationalized
+    @Column(name = "email_last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "email_created_at")
+    private OffsetDateTime createdAt;
+
+    @Column(name = "email_sent_at")
+    private OffsetDateTime sentAt;
+
+    @PrePersist
+    public void prePersist() {
+        setCreatedAt(OffsetDateTime.now());
+        if (getStatus() == null) {
+            setStatus(Status.PENDING);
+        }
+        if (getAttempts() == null) {
+            setAttempts(0);
+        }
+        if (getNextAttemptAt() == null) {
+            setNextAttemptAt(getCreatedAt());
+        }
+    }
+}
@@ -10,8 +10,21 @@ import java.time.OffsetDateTime;
 @Getter
 @Setter
 @Entity
-@Table(name = "notification", schema = "dbo")
+@Table(name = "notification", schema = "dbo", indexes = {
+        @Index(name = "ix_notification_audience", columnList = "notification_audience, notification_id")
+})
 public class Notification {
+
+    /**
+     * Who a broadcast is for. Broadcasts are stored once and reach their recipients when they read
+     * their inbox; a notification without an audience goes to the users listed in notification_user.
+     */
+    public enum Audience {
+        ALL,
+        ROLE,
+        RANK
+    }
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     @Column(name = "notification_id", nullable = false)
@@ -30,6 +43,14 @@ public class Notification {
     @Column(name = "notification_content")
     private String notificationContent;
 
+    @Enumerated(EnumType.STRING)
+    @Column(name = "notification_audience", length = 16)
+    private Audience audience;
+
+    // The role or rank of a ROLE or RANK broadcast.
+    @Column(name = "notification_audience_id")
+    private Integer audienceId;
+
     @Column(name = "is_notification_draft")
     private Boolean isNotificationDraft;
 
@@ -0,0 +1,29 @@
+package com.unleashed.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * How many notifications a user has neither viewed nor deleted, so the inbox badge is a primary key
+ * read. Rows are recounted from {@code notification_user} by {@code NotificationCounterService}
+ * whenever a user's notifications change, never incremented blindly.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "notification_counter", schema = "dbo")
+public class NotificationCounter {
+    @Id
+    @Column(name = "user_id", nullable = false)
+    private UUID userId;
+
+    @Column(name = "unread_count", nullable = false)
+    private Integer unreadCount;
+
+    @Column(name = "counter_updated_at")
+    private OffsetDateTime counterUpdatedAt;
+}
@@ -1,17 +1,16 @@
 package com.unleashed.entity;
 
 import com.unleashed.entity.composite.NotificationUserId;
-import jakarta.persistence.Column;
-import jakarta.persistence.EmbeddedId;
-import jakarta.persistence.Entity;
-import jakarta.persistence.Table;
+import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
 
 @Getter
 @Setter
 @Entity
-@Table(name = "notification_user", schema = "dbo")
+@Table(name = "notification_user", schema = "dbo", indexes = {
+        @Index(name = "ix_notification_user_inbox", columnList = "user_id, is_notification_deleted, notification_id")
+})
 public class NotificationUser {
     @EmbeddedId
     private NotificationUserId id;
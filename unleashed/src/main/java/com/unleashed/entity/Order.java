@@ -18,7 +18,13 @@ import java.util.Set;
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
-@Table(name = "\"order\"", schema = "dbo")
+@Table(name = "\"order\"", schema = "dbo", indexes = {
+        @Index(name = "ix_order_status_updated_at", columnList = "order_status_id, order_updated_at"),
+        @Index(name = "ix_order_created_at", columnList = "order_created_at"),
+        @Index(name = "ix_order_user_id", columnList = "user_id"),
+        @Index(name = "ix_order_incharge_employee_id", columnList = "incharge_employee_id"),
+        @Index(name = "ix_order_transaction_reference", columnList = "order_transaction_reference")
+})
 public class Order {
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
@@ -0,0 +1,46 @@
+package com.unleashed.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Per-day order counters maintained by the statistics consumer of the order event outbox.
+ */
+@Getter
+@Setter
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "order_daily_stat", schema = "dbo")
+public class OrderDailyStat {
+    @Id
+    @Column(name = "stat_date", nullable = false)
+    private LocalDate statDate;
+
+    @Column(name = "orders_created", nullable = false)
+    private Integer ordersCreated;
+
+    @Column(name = "orders_paid", nullable = false)
+    private Integer ordersPaid;
+
+    @Column(name = "orders_completed", nullable = false)
+    private Integer ordersCompleted;
+
+    @Column(name = "orders_cancelled", nullable = false)
+    private Integer ordersCancelled;
+
+    @Column(name = "orders_returned", nullable = false)
+    private Integer ordersReturned;
+
+    @Column(name = "gross_amount", precision = 22, scale = 2, nullable = false)
+    private BigDecimal grossAmount;
+
+    @Column(name = "completed_amount", precision = 22, scale = 2, nullable = false)
+    private BigDecimal completedAmount;
+
+    @Column(name = "returned_amount", precision = 22, scale = 2, nullable = false)
+    private BigDecimal returnedAmount;
+}
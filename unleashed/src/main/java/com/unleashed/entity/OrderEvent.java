@@ -0,0 +1,100 @@
+package com.unleashed.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.Nationalized;
+
+import java.time.OffsetDateTime;
+
+/**
+ * One entry of the order lifecycle outbox. Rows are written in the same transaction as the order
+ * change they describe and are consumed, strictly in id order per order, by {@code OrderEventService}.
+ */
+@Getter
+@Setter
+@Entity
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "order_event", schema = "dbo", indexes = {
+        @Index(name = "ix_order_event_status_next_attempt", columnList = "order_event_status, order_event_next_attempt_at"),
+        @Index(name = "ix_order_event_order_id", columnList = "order_id, order_event_status"),
+        @Index(name = "ix_order_event_claim_token", columnList = "order_event_claim_token")
+})
+public class OrderEvent {
+
+    public enum Type {
+        ORDER_CREATED,
+        ORDER_PAID,
+        ORDER_CANCELLED,
+        ORDER_SHIPPED,
+        ORDER_COMPLETED,
+        ORDER_RETURN_REQUESTED,
+        ORDER_RETURNED
+    }
+
+    public enum Status {
+        PENDING,
+        PROCESSING,
+        PROCESSED,
+        FAILED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "order_event_id", nullable = false)
+    private Long id;
+
+    @Nationalized
+    @Column(name = "order_id", nullable = false)
+    private String orderId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "order_event_type", length = 40, nullable = false)
+    private Type type;
+
+    @Nationalized
+    @Lob
+    @Column(name = "order_event_payload")
+    private String payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "order_event_status", length = 20, nullable = false)
+    private Status status;
+
+    @Column(name = "order_event_attempts", nullable = false)
+    private Integer attempts;
+
+    @Column(name = "order_event_next_attempt_at")
+    private OffsetDateTime nextAttemptAt;
+
+    @Column(name = "order_event_claim_token", length = 36)
+    private String claimToken;
+
+    @Column(name = "order_event_claimed_at")
+    private OffsetDateTime claimedAt;
+
+    @Nationalized
+    @Column(name = "order_event_last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "order_event_created_at")
+    private OffsetDateTime createdAt;
+
+    @Column(name = "order_event_processed_at")
+    private OffsetDateTime processedAt;
+
+    @PrePersist
+    public void prePersist() {
+        setCreatedAt(OffsetDateTime.now());
+        if (getStatus() == null) {
+            setStatus(Status.PENDING);
+        }
+        if (getAttempts() == null) {
+            setAttempts(0);
+        }
+        if (getNextAttemptAt() == null) {
+            setNextAttemptAt(getCreatedAt());
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.unleashed.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.Nationalized;
+
+/**
+ * How many units of a variation an order took from which stock. Written when the order reserves
+ * its stock; returns and the staff pick list read it back so they use the same locations.
+ */
+@Getter
+@Setter
+@Entity
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "order_stock_allocation", schema = "dbo", indexes = {
+        @Index(name = "ix_order_stock_allocation_order_id", columnList = "order_id")
+})
+public class OrderStockAllocation {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "order_stock_allocation_id", nullable = false)
+    private Long id;
+
+    @Nationalized
+    @Column(name = "order_id", nullable = false)
+    private String orderId;
+
+    @Column(name = "stock_id", nullable = false)
+    private Integer stockId;
+
+    @Column(name = "variation_id", nullable = false)
+    private Integer variationId;
+
+    @Column(name = "order_stock_allocation_quantity", nullable = false)
+    private Integer quantity;
+}
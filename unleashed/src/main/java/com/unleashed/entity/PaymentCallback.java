@@ -0,0 +1,92 @@
+package com.unleashed.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.Nationalized;
+
+import java.time.OffsetDateTime;
+
+/**
+ * A payment gateway notification as received. There is exactly one row per gateway transaction
+ * reference: replays only bump {@code replayCount}. Rows are applied to their orders in batches
+ * by {@code PaymentCallbackService}.
+ */
+@Getter
+@Setter
+@Entity
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "payment_callback", schema = "dbo",
+        uniqueConstraints = @UniqueConstraint(name = "ux_payment_callback_reference",
+                columnNames = {"payment_callback_gateway", "payment_callback_reference"}),
+        indexes = {
+                @Index(name = "ix_payment_callback_status_next_attempt", columnList = "payment_callback_status, payment_callback_next_attempt_at"),
+                @Index(name = "ix_payment_callback_claim_token", columnList = "payment_callback_claim_token")
+        })
+public class PaymentCallback {
+
+    public enum Status {
+        RECEIVED,
+        PROCESSING,
+        APPLIED,
+        IGNORED,
+        FAILED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "payment_callback_id", nullable = false)
+    private Long id;
+
+    @Column(name = "payment_callback_gateway", length = 20, nullable = false)
+    private String gateway;
+
+    @Nationalized
+    @Column(name = "payment_callback_reference", length = 100, nullable = false)
+    private String transactionReference;
+
+    @Column(name = "payment_callback_success", nullable = false)
+    private Boolean success;
+
+    @Nationalized
+    @Lob
+    @Column(name = "payment_callback_payload")
+    private String payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "payment_callback_status", length = 20, nullable = false)
+    private Status status;
+
+    @Nationalized
+    @Column(name = "order_id")
+    private String orderId;
+
+    @Column(name = "payment_callback_attempts", nullable = false)
+    private Integer attempts;
+
+    @Column(name = "payment_callback_replay_count", nullable = false)
+    private Integer replayCount;
+
+    @Column(name = "payment_callback_next_attempt_at")
+    private OffsetDateTime nextAttemptAt;
+
+    @Column(name = "payment_callback_claim_token", length = 36)
+    private String claimToken;
+
+    @Column(name = "payment_callback_claimed_at")
+    private OffsetDateTime claimedAt;
+
+    @Nationalized
+    @Column(name = "payment_callback_outcome", length = 1000)
+    private String outcome;
+
+    @Column(name = "payment_callback_received_at")
+    private OffsetDateTime receivedAt;
+
+    @Column(name = "payment_callback_last_replayed_at")
+    private OffsetDateTime lastReplayedAt;
+
+    @Column(name = "payment_callback_processed_at")
+    private OffsetDateTime processedAt;
+}
@@ -1,9 +1,11 @@
 package com.unleashed.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.JoinFormula;
 
 import java.math.BigDecimal;
 import java.time.OffsetDateTime;
@@ -14,6 +16,15 @@ import java.time.OffsetDateTime;
 @Table(name = "sale", schema = "dbo")
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class Sale {
+
+    /**
+     * INACTIVE (1) before the start date, ACTIVE (2) until the end date, EXPIRED (3) after it.
+     */
+    public static final String STATUS_FORMULA = "CASE " +
+            "WHEN sale_end_date IS NOT NULL AND sale_end_date < SYSDATETIMEOFFSET() THEN 3 " +
+            "WHEN sale_start_date IS NULL OR sale_start_date <= SYSDATETIMEOFFSET() THEN 2 " +
+            "ELSE 1 END";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     @Column(name = "sale_id", nullable = false)
@@ -23,10 +34,22 @@ public class Sale {
     @JoinColumn(name = "sale_type_id")
     private SaleType saleType;
 
+    /**
+     * Derived from the dates by the database on every read, so it is never stale and reading a
+     * sale never has to write one. Read-only: setting it has no effect.
+     */
     @ManyToOne(fetch = FetchType.LAZY)
-    @JoinColumn(name = "sale_status_id")
+    @JoinFormula(value = STATUS_FORMULA, referencedColumnName = "sale_status_id")
     private SaleStatus saleStatus;
 
+    /**
+     * The stored {@code sale_status_id}, kept in line with {@link #STATUS_FORMULA} by the
+     * scheduled sync for reports and anything reading the table directly.
+     */
+    @JsonIgnore
+    @Column(name = "sale_status_id")
+    private Integer storedSaleStatusId;
+
     @Column(name = "sale_value", precision = 22, scale = 2)
     private BigDecimal saleValue;
 
@@ -0,0 +1,40 @@
+package com.unleashed.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Balance of one variation in one stock as of {@code snapshotAt}, folded from the transaction
+ * ledger. "Stock as of T" is the latest snapshot before T plus the ledger rows after it.
+ */
+@Getter
+@Setter
+@Entity
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "stock_snapshot", schema = "dbo", indexes = {
+        @Index(name = "ix_stock_snapshot_at", columnList = "stock_snapshot_at, stock_id, variation_id"),
+        @Index(name = "ix_stock_snapshot_variation", columnList = "variation_id, stock_snapshot_at")
+})
+public class StockSnapshot {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "stock_snapshot_id", nullable = false)
+    private Long id;
+
+    @Column(name = "stock_snapshot_at", nullable = false)
+    private OffsetDateTime snapshotAt;
+
+    @Column(name = "stock_id", nullable = false)
+    private Integer stockId;
+
+    @Column(name = "variation_id", nullable = false)
+    private Integer variationId;
+
+    @Column(name = "stock_snapshot_quantity", nullable = false)
+    private Integer quantity;
+}
@@ -12,7 +12,10 @@ import java.time.OffsetDateTime;
 @Getter
 @Setter
 @Entity
-@Table(name = "\"transaction\"", schema = "dbo")
+@Table(name = "\"transaction\"", schema = "dbo", indexes = {
+        @Index(name = "ix_transaction_variation_date", columnList = "variation_id, transaction_date"),
+        @Index(name = "ix_transaction_date", columnList = "transaction_date")
+})
 public class Transaction {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -24,7 +24,11 @@ import java.util.UUID;
 @Entity
 @NoArgsConstructor
 @AllArgsConstructor
-@Table(name = "\"user\"", schema = "dbo")
+// ix_user_username serves exact username lookups (login, the user directory); the
+// LIKE '%term%' searches cannot seek on it.
+@Table(name = "\"user\"", schema = "dbo", indexes = {
+        @Index(name = "ix_user_username", columnList = "user_username")
+})
 public class User implements UserDetails {
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
@@ -46,6 +46,10 @@ public class Variation {
     @JsonView(Views.ProductView.class)
     private BigDecimal variationPrice;
 
+    // Deleted variations stay for order history and the stock ledger but are hidden from listings.
+    @Column(name = "is_variation_deleted")
+    private Boolean isVariationDeleted;
+
     // @OneToMany
     // private Set<Cart> carts = new LinkedHashSet<>();
 
@@ -0,0 +1,39 @@
+package com.unleashed.entity.composite;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.*;
+import org.hibernate.Hibernate;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Embeddable
+public class CommentClosureId implements Serializable {
+    private static final long serialVersionUID = 4172390518327740913L;
+    @Column(name = "ancestor_id")
+    private Integer ancestorId;
+
+    @Column(name = "descendant_id")
+    private Integer descendantId;
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || Hibernate.getClass(this) != Hibernate.getClass(o)) return false;
+        CommentClosureId entity = (CommentClosureId) o;
+        return Objects.equals(this.ancestorId, entity.ancestorId) &&
+                Objects.equals(this.descendantId, entity.descendantId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(ancestorId, descendantId);
+    }
+
+}
@@ -0,0 +1,131 @@
+package com.unleashed.repo;
+
+import com.unleashed.entity.Comment;
+import com.unleashed.entity.CommentClosure;
+import com.unleashed.entity.composite.CommentClosureId;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface CommentClosureRepository extends JpaRepository<CommentClosure, CommentClosureId> {
+
+    /**
+     * Registers a comment that starts a thread.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO dbo.comment_closure (ancestor_id, descendant_id, depth) VALUES (:commentId, :commentId, 0)",
+            nativeQuery = true)
+    void insertRoot(@Param("commentId") Integer commentId);
+
+    /**
+     * Registers a reply: it inherits every ancestor of its parent, one level further down.
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO dbo.comment_closure (ancestor_id, descendant_id, depth)
+            SELECT cc.ancestor_id, :commentId, cc.depth + 1
+            FROM dbo.comment_closure cc
+            WHERE cc.descendant_id = :parentId
+            UNION ALL
+            SELECT :commentId, :commentId, 0
+            """, nativeQuery = true)
+    void insertReply(@Param("commentId") Integer commentId, @Param("parentId") Integer parentId);
+
+    /**
+     * Ancestors of the comment, root first.
+     */
+    @Query("SELECT cc.id.ancestorId FROM CommentClosure cc " +
+            "WHERE cc.id.descendantId = :commentId AND cc.depth > 0 ORDER BY cc.depth DESC")
+    List<Integer> findAncestorIds(@Param("commentId") Integer commentId);
+
+    @Query(value = "SELECT c FROM Comment c JOIN CommentClosure cc ON cc.id.descendantId = c.id " +
+            "WHERE cc.id.ancestorId = :commentId AND cc.depth > 0 ORDER BY c.commentCreatedAt ASC",
+            countQuery = "SELECT COUNT(cc) FROM CommentClosure cc WHERE cc.id.ancestorId = :commentId AND cc.depth > 0")
+    Page<Comment> findDescendants(@Param("commentId") Integer commentId, Pageable pageable);
+
+    /**
+     * The replies under the comment down to {@code maxDepth} levels, each with its parent id, in
+     * creation order.
+     */
+    @Query("SELECT c, link.id.ancestorId FROM Comment c " +
+            "JOIN CommentClosure cc ON cc.id.descendantId = c.id " +
+            "JOIN CommentClosure link ON link.id.descendantId = c.id AND link.depth = 1 " +
+            "WHERE cc.id.ancestorId = :commentId AND cc.depth BETWEEN 1 AND :maxDepth " +
+            "ORDER BY c.commentCreatedAt ASC")
+    List<Object[]> findDescendantsWithParent(@Param("commentId") Integer commentId, @Param("maxDepth") int maxDepth);
+
+    /**
+     * Depth of each given comment in its thread, 0 for the comment that starts it.
+     */
+    @Query("SELECT cc.id.descendantId, MAX(cc.depth) FROM CommentClosure cc " +
+            "WHERE cc.id.descendantId IN :commentIds GROUP BY cc.id.descendantId")
+    List<Object[]> findDepths(@Param("commentIds") Collection<Integer> commentIds);
+
+    /**
+     * Number of replies, at any depth, under each of the given comments.
+     */
+    @Query("SELECT cc.id.ancestorId, COUNT(cc) FROM CommentClosure cc " +
+            "WHERE cc.id.ancestorId IN :commentIds AND cc.depth > 0 GROUP BY cc.id.ancestorId")
+    List<Object[]> countReplies(@Param("commentIds") Collection<Integer> commentIds);
+
+    @Modifying
+    @Query(value = """
+            DELETE FROM dbo.comment_parent
+            WHERE comment_id IN (SELECT descendant_id FROM dbo.comment_closure WHERE ancestor_id = :commentId)
+            """, nativeQuery = true)
+    int deleteSubtreeParentLinks(@Param("commentId") Integer commentId);
+
+    @Modifying
+    @Query(value = """
+            DELETE FROM dbo.comment
+            WHERE comment_id IN (SELECT descendant_id FROM dbo.comment_closure WHERE ancestor_id = :commentId)
+            """, nativeQuery = true)
+    int deleteSubtreeComments(@Param("commentId") Integer commentId);
+
+    @Modifying
+    @Query(value = """
+            DELETE FROM dbo.comment_closure
+            WHERE descendant_id IN (SELECT descendant_id FROM dbo.comment_closure WHERE ancestor_id = :commentId)
+            """, nativeQuery = true)
+    int deleteSubtreeClosure(@Param("commentId") Integer commentId);
+
+    /**
+     * Fills the table for comments written before it existed, from {@code comment_parent}. Only
+     * missing pairs are inserted, so it is safe to run on every start.
+     */
+    @Modifying
+    @Query(value = """
+            WITH tree AS (
+                SELECT c.comment_id AS ancestor_id, c.comment_id AS descendant_id, 0 AS depth
+                FROM dbo.comment c
+                UNION ALL
+                SELECT t.ancestor_id, cp.comment_id, t.depth + 1
+                FROM tree t
+                JOIN dbo.comment_parent cp ON cp.comment_parent_id = t.descendant_id
+            )
+            INSERT INTO dbo.comment_closure (ancestor_id, descendant_id, depth)
+            SELECT t.ancestor_id, t.descendant_id, t.depth
+            FROM tree t
+            WHERE NOT EXISTS (SELECT 1 FROM dbo.comment_closure cc
+                              WHERE cc.ancestor_id = t.ancestor_id AND cc.descendant_id = t.descendant_id)
+            OPTION (MAXRECURSION 0)
+            """, nativeQuery = true)
+    int backfill();
+
+    @Query(value = """
+            SELECT CASE WHEN EXISTS (
+                SELECT 1 FROM dbo.comment c
+                WHERE NOT EXISTS (SELECT 1 FROM dbo.comment_closure cc
+                                  WHERE cc.ancestor_id = c.comment_id AND cc.descendant_id = c.comment_id)
+            ) THEN 1 ELSE 0 END
+            """, nativeQuery = true)
+    int hasUnregisteredComments();
+}
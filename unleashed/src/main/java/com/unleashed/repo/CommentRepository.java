@@ -1,14 +1,13 @@
 package com.unleashed.repo;
 
 import com.unleashed.entity.Comment;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -26,59 +25,24 @@ public interface CommentRepository extends JpaRepository<Comment, Integer> {
 
     @Query("""
             SELECT c FROM Comment c
-            WHERE c.review.id = :reviewId AND c.id NOT IN (
-                SELECT cp.id.commentId FROM CommentParent cp
+            WHERE c.review.id = :reviewId AND NOT EXISTS (
+                SELECT 1 FROM CommentParent cp WHERE cp.id.commentId = c.id
             )
             """)
     Optional<Comment> findRootCommentByReviewId(@Param("reviewId") Integer reviewId);
 
+    /**
+     * The comments that open the given reviews, i.e. that reply to nothing. The anti-join probes
+     * {@code comment_parent} by key for each comment instead of reading the whole table.
+     */
+    @Query("""
+            SELECT c FROM Comment c
+            WHERE c.review.id IN :reviewIds AND NOT EXISTS (
+                SELECT 1 FROM CommentParent cp WHERE cp.id.commentId = c.id
+            )
+            ORDER BY c.id ASC
+            """)
+    List<Comment> findRootCommentsByReviewIds(@Param("reviewIds") Collection<Integer> reviewIds);
 
-    @Query("SELECT c FROM Comment c JOIN CommentParent cp ON c.id = cp.id.commentId WHERE cp.id.commentParentId = :parentId")
-    List<Comment> findRepliesByParentId(@Param("parentId") Integer parentId);
-
-    @Query("SELECT cp.id.commentParentId FROM CommentParent cp WHERE cp.id.commentId = :commentId")
-    Optional<Integer> findParentIdByCommentId(@Param("commentId") Integer commentId);
-
-    @Modifying
-    @Query(value = "DELETE FROM dbo.comment_parent WHERE comment_id = :commentId", nativeQuery = true)
-    void deleteParentLink(@Param("commentId") Integer commentId);
-
-
-    @Query(
-            value = """
-    WITH CommentTree AS (
-        SELECT c.*
-        FROM dbo.comment c
-        JOIN dbo.comment_parent cp ON c.comment_id = cp.comment_id
-        WHERE cp.comment_parent_id = :rootCommentId
-
-        UNION ALL
-
-        SELECT c.*
-        FROM dbo.comment c
-        JOIN dbo.comment_parent cp ON c.comment_id = cp.comment_id
-        JOIN CommentTree ct ON cp.comment_parent_id = ct.comment_id
-    )
-    SELECT c.*
-    FROM CommentTree c
-    ORDER BY c.comment_created_at ASC
-    """,
-            countQuery = """
-    WITH CommentTree AS (
-        SELECT c.comment_id
-        FROM dbo.comment c
-        JOIN dbo.comment_parent cp ON c.comment_id = cp.comment_id
-        WHERE cp.comment_parent_id = :rootCommentId
-        UNION ALL
-        SELECT c.comment_id
-        FROM dbo.comment c
-        JOIN dbo.comment_parent cp ON c.comment_id = cp.comment_id
-        JOIN CommentTree ct ON cp.comment_parent_id = ct.comment_id
-    )
-    SELECT COUNT(*) FROM CommentTree
-    """,
-            nativeQuery = true
-    )
-    Page<Comment> findDescendantsByCommentId(@Param("rootCommentId") Integer rootCommentId, Pageable pageable);
 
 }
\ No newline at end of file
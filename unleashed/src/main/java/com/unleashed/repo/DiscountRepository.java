@@ -4,6 +4,9 @@ import com.unleashed.entity.Discount;
 import com.unleashed.entity.DiscountStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.OffsetDateTime;
@@ -68,4 +71,26 @@ public interface DiscountRepository extends JpaRepository<Discount, Integer>, Jp
      */
     List<Discount> findByDiscountStatus(DiscountStatus discountStatus);
 
-}
\ No newline at end of file
+    /**
+     * Takes one usage slot of an ACTIVE discount. The limit check and the increment are one
+     * statement, so concurrent redemptions can never push the count past the limit.
+     *
+     * @return 1 when a slot was taken, 0 when the discount is not active or fully used
+     */
+    @Modifying
+    @Query("UPDATE Discount d SET d.discountUsageCount = COALESCE(d.discountUsageCount, 0) + 1 " +
+            "WHERE d.discountId = :discountId AND d.discountStatus.id = 2 " +
+            "AND (d.discountUsageLimit IS NULL OR COALESCE(d.discountUsageCount, 0) < d.discountUsageLimit)")
+    int claimUsageSlot(@Param("discountId") Integer discountId);
+
+    /**
+     * Moves a fully used ACTIVE discount to INACTIVE. Only the redemption that took the last slot
+     * gets 1 back; the others find the status already changed.
+     */
+    @Modifying
+    @Query("UPDATE Discount d SET d.discountStatus = :inactive " +
+            "WHERE d.discountId = :discountId AND d.discountStatus.id = 2 " +
+            "AND d.discountUsageLimit IS NOT NULL AND d.discountUsageCount >= d.discountUsageLimit")
+    int deactivateIfExhausted(@Param("discountId") Integer discountId,
+                              @Param("inactive") DiscountStatus inactive);
+}
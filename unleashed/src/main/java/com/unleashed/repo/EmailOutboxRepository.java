@@ -0,0 +1,51 @@
+package com.unleashed.repo;
+
+import com.unleashed.entity.EmailOutbox;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+@Repository
+public interface EmailOutboxRepository extends JpaRepository<EmailOutbox, Long> {
+
+    @Query("SELECT e.id FROM EmailOutbox e WHERE e.status = :status AND e.nextAttemptAt <= :now ORDER BY e.id ASC")
+    List<Long> findDueIds(@Param("status") EmailOutbox.Status status,
+                          @Param("now") OffsetDateTime now,
+                          Pageable pageable);
+
+    /**
+     * Claims the given rows for one worker. The status guard makes the claim safe when several
+     * application instances poll the same table; rows taken by someone else are simply skipped.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmailOutbox e SET e.status = :to, e.claimToken = :token, e.claimedAt = :now " +
+            "WHERE e.id IN :ids AND e.status = :from")
+    int claim(@Param("ids") List<Long> ids,
+              @Param("from") EmailOutbox.Status from,
+              @Param("to") EmailOutbox.Status to,
+              @Param("token") String token,
+              @Param("now") OffsetDateTime now);
+
+    List<EmailOutbox> findByClaimTokenOrderByIdAsc(String claimToken);
+
+    /**
+     * Puts rows back in the queue when the worker that claimed them died mid-batch.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmailOutbox e SET e.status = :to, e.claimToken = null " +
+            "WHERE e.status = :from AND e.claimedAt < :staleBefore")
+    int releaseStaleClaims(@Param("from") EmailOutbox.Status from,
+                           @Param("to") EmailOutbox.Status to,
+                           @Param("staleBefore") OffsetDateTime staleBefore);
+
+    long countByStatus(EmailOutbox.Status status);
+}
@@ -30,4 +30,21 @@ public interface NotificationUserRepository extends JpaRepository<NotificationUs
     void deleteByNotificationId(@Param("notificationId") Integer notificationId);
 
     Page<NotificationUser> findByIdUserIdAndIsNotificationDeletedFalse(UUID userId, Pageable pageable);
+
+    /**
+     * A page of the user's inbox, newest first: each notification (with its sender) and whether
+     * the user has viewed it, in one query.
+     */
+    @Query(value = "SELECT n, nu.isNotificationViewed FROM NotificationUser nu " +
+            "JOIN Notification n ON n.id = nu.id.notificationId " +
+            "LEFT JOIN FETCH n.userIdSender " +
+            "WHERE nu.id.userId = :userId AND nu.isNotificationDeleted = false " +
+            "ORDER BY nu.id.notificationId DESC",
+            countQuery = "SELECT COUNT(nu) FROM NotificationUser nu " +
+                    "WHERE nu.id.userId = :userId AND nu.isNotificationDeleted = false")
+    Page<Object[]> findInbox(@Param("userId") UUID userId, Pageable pageable);
+
+    @Query("SELECT nu.id.userId FROM NotificationUser nu WHERE nu.id.notificationId = :notificationId " +
+            "AND nu.isNotificationViewed = false AND nu.isNotificationDeleted = false")
+    List<UUID> findUnreadRecipientIds(@Param("notificationId") Integer notificationId);
 }
\ No newline at end of file
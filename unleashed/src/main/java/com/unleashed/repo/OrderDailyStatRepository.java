@@ -0,0 +1,48 @@
+package com.unleashed.repo;
+
+import com.unleashed.entity.OrderDailyStat;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+@Repository
+public interface OrderDailyStatRepository extends JpaRepository<OrderDailyStat, LocalDate> {
+
+    /**
+     * Adds the given deltas to the day's row, creating it on first use. HOLDLOCK keeps two
+     * consumers from both taking the insert branch for the same day.
+     */
+    @Modifying
+    @Query(value = """
+            MERGE dbo.order_daily_stat WITH (HOLDLOCK) AS t
+            USING (SELECT :statDate AS stat_date) AS s ON t.stat_date = s.stat_date
+            WHEN MATCHED THEN UPDATE SET
+                orders_created = t.orders_created + :created,
+                orders_paid = t.orders_paid + :paid,
+                orders_completed = t.orders_completed + :completed,
+                orders_cancelled = t.orders_cancelled + :cancelled,
+                orders_returned = t.orders_returned + :returned,
+                gross_amount = t.gross_amount + :grossAmount,
+                completed_amount = t.completed_amount + :completedAmount,
+                returned_amount = t.returned_amount + :returnedAmount
+            WHEN NOT MATCHED THEN INSERT
+                (stat_date, orders_created, orders_paid, orders_completed, orders_cancelled, orders_returned,
+                 gross_amount, completed_amount, returned_amount)
+                VALUES (:statDate, :created, :paid, :completed, :cancelled, :returned,
+                        :grossAmount, :completedAmount, :returnedAmount);
+            """, nativeQuery = true)
+    void increment(@Param("statDate") LocalDate statDate,
+                   @Param("created") int created,
+                   @Param("paid") int paid,
+                   @Param("completed") int completed,
+                   @Param("cancelled") int cancelled,
+                   @Param("returned") int returned,
+                   @Param("grossAmount") BigDecimal grossAmount,
+                   @Param("completedAmount") BigDecimal completedAmount,
+                   @Param("returnedAmount") BigDecimal returnedAmount);
+}
@@ -0,0 +1,54 @@
+package com.unleashed.repo;
+
+import com.unleashed.entity.OrderEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OrderEventRepository extends JpaRepository<OrderEvent, Long> {
+
+    /**
+     * Due events that are the head of their order's queue: an event is only handed out once every
+     * earlier event of the same order has been processed (or dead-lettered), which keeps consumers
+     * in order per aggregate while different orders are processed in parallel.
+     */
+    @Query("SELECT e.id FROM OrderEvent e WHERE e.status = :pending AND e.nextAttemptAt <= :now " +
+            "AND NOT EXISTS (SELECT 1 FROM OrderEvent p WHERE p.orderId = e.orderId AND p.id < e.id " +
+            "AND p.status IN :blocking) " +
+            "ORDER BY e.id ASC")
+    List<Long> findDueHeadIds(@Param("pending") OrderEvent.Status pending,
+                              @Param("blocking") Collection<OrderEvent.Status> blocking,
+                              @Param("now") OffsetDateTime now,
+                              Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE OrderEvent e SET e.status = :to, e.claimToken = :token, e.claimedAt = :now " +
+            "WHERE e.id IN :ids AND e.status = :from")
+    int claim(@Param("ids") List<Long> ids,
+              @Param("from") OrderEvent.Status from,
+              @Param("to") OrderEvent.Status to,
+              @Param("token") String token,
+              @Param("now") OffsetDateTime now);
+
+    List<OrderEvent> findByClaimTokenOrderByIdAsc(String claimToken);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE OrderEvent e SET e.status = :to, e.claimToken = null " +
+            "WHERE e.status = :from AND e.claimedAt < :staleBefore")
+    int releaseStaleClaims(@Param("from") OrderEvent.Status from,
+                           @Param("to") OrderEvent.Status to,
+                           @Param("staleBefore") OffsetDateTime staleBefore);
+
+    long countByStatus(OrderEvent.Status status);
+}
@@ -1,5 +1,6 @@
 package com.unleashed.repo;
 
+import com.unleashed.dto.OrderGridDTO;
 import com.unleashed.entity.Order;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -10,6 +11,8 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -33,6 +36,39 @@ public interface OrderRepository extends JpaRepository<Order, String>, JpaSpecif
     @Query("UPDATE Order o SET o.orderStatus.orderStatusName = 'CANCELLED' WHERE o.orderId = :orderId")
     void updateOrderStatusToCancelled(@Param("orderId") String orderId);
 
+    /**
+     * Current status of each order, used by the state machine to pick the transition per order.
+     * Columns: orderId, statusId, orderDate.
+     */
+    @Query("SELECT o.orderId, o.orderStatus.id, o.orderDate FROM Order o WHERE o.orderId IN :ids")
+    List<Object[]> findTransitionStates(@Param("ids") Collection<String> ids);
+
+    @Modifying
+    @Query("UPDATE Order o SET o.orderTransactionReference = :reference WHERE o.orderId = :orderId")
+    int updateTransactionReference(@Param("orderId") String orderId, @Param("reference") String reference);
+
+    /**
+     * Rows of {@code [transactionReference, orderId]} for the given gateway references.
+     */
+    @Query("SELECT o.orderTransactionReference, o.orderId FROM Order o WHERE o.orderTransactionReference IN :references")
+    List<Object[]> findOrderIdsByTransactionReferences(@Param("references") Collection<String> references);
+
+    /**
+     * Status name of the order if it belongs to the user.
+     */
+    @Query("SELECT o.orderStatus.orderStatusName FROM Order o WHERE o.orderId = :orderId AND o.user.userUsername = :username")
+    Optional<String> findStatusNameOfUserOrder(@Param("orderId") String orderId, @Param("username") String username);
+
+    /**
+     * Orders still in {@code pendingStatusId} that were placed with one of the online payment
+     * methods before {@code placedBefore}.
+     */
+    @Query("SELECT o.orderId FROM Order o WHERE o.orderStatus.id = :pendingStatusId " +
+            "AND UPPER(o.paymentMethod.paymentMethodName) IN :paymentMethods AND o.orderDate < :placedBefore")
+    List<String> findUnpaidOrderIds(@Param("pendingStatusId") int pendingStatusId,
+                                    @Param("paymentMethods") Collection<String> paymentMethods,
+                                    @Param("placedBefore") OffsetDateTime placedBefore);
+
     @Query("SELECT o FROM Order o left join User u on u.userUsername = o.user.userUsername WHERE u.userUsername = :username AND o.orderId = :orderId ")
     Optional<Order> findOrderByUserIdAndOrderId(String username, String orderId);
 
@@ -145,6 +181,64 @@ public interface OrderRepository extends JpaRepository<Order, String>, JpaSpecif
             """, nativeQuery = true)
     List<UUID> findTopSoldProductIds(@Param("number_of_days") int numberOfDays, @Param("top_n_products") int topNProducts);
 
+    @Query(value = """
+            SELECT new com.unleashed.dto.OrderGridDTO(
+                o.orderId, o.orderTotalAmount, os.orderStatusName, o.orderDate, o.orderBillingAddress,
+                sm.shippingMethodName, o.orderExpectedDeliveryDate, o.orderTransactionReference,
+                pm.paymentMethodName, o.orderTrackingNumber, u.userUsername, o.orderNote, st.userUsername)
+            FROM Order o
+            LEFT JOIN o.orderStatus os
+            LEFT JOIN o.shippingMethod sm
+            LEFT JOIN o.paymentMethod pm
+            LEFT JOIN o.user u
+            LEFT JOIN o.inchargeEmployee st
+            WHERE (:statusId IS NULL OR os.id = :statusId)
+            AND (:search IS NULL
+                OR LOWER(o.orderId) LIKE :search
+                OR LOWER(u.userUsername) LIKE :search
+                OR LOWER(st.userUsername) LIKE :search
+                OR EXISTS (SELECT 1 FROM OrderVariationSingle ovs
+                           JOIN ovs.variationSingle vs
+                           JOIN vs.variation v
+                           JOIN v.product p
+                           WHERE ovs.order = o AND LOWER(p.productName) LIKE :search))
+            """,
+            countQuery = """
+            SELECT COUNT(o) FROM Order o
+            LEFT JOIN o.orderStatus os
+            LEFT JOIN o.user u
+            LEFT JOIN o.inchargeEmployee st
+            WHERE (:statusId IS NULL OR os.id = :statusId)
+            AND (:search IS NULL
+                OR LOWER(o.orderId) LIKE :search
+                OR LOWER(u.userUsername) LIKE :search
+                OR LOWER(st.userUsername) LIKE :search
+                OR EXISTS (SELECT 1 FROM OrderVariationSingle ovs
+                           JOIN ovs.variationSingle vs
+                           JOIN vs.variation v
+                           JOIN v.product p
+                           WHERE ovs.order = o AND LOWER(p.productName) LIKE :search))
+            """)
+    Page<OrderGridDTO> findOrderGrid(@Param("search") String search,
+                                     @Param("statusId") Integer statusId,
+                                     Pageable pageable);
+
+    @Query(value = """
+            SELECT new com.unleashed.dto.OrderGridDTO(
+                o.orderId, o.orderTotalAmount, os.orderStatusName, o.orderDate, o.orderBillingAddress,
+                sm.shippingMethodName, o.orderExpectedDeliveryDate, o.orderTransactionReference,
+                pm.paymentMethodName, o.orderTrackingNumber, u.userUsername, o.orderNote, st.userUsername)
+            FROM Order o
+            LEFT JOIN o.orderStatus os
+            LEFT JOIN o.shippingMethod sm
+            LEFT JOIN o.paymentMethod pm
+            LEFT JOIN o.user u
+            LEFT JOIN o.inchargeEmployee st
+            ORDER BY CASE WHEN os.orderStatusName = 'PENDING' THEN 1 ELSE 2 END ASC, o.orderCreatedAt DESC
+            """,
+            countQuery = "SELECT COUNT(o) FROM Order o")
+    Page<OrderGridDTO> findOrderGridWithPriority(Pageable pageable);
+
     @Query(value = "SELECT o FROM Order o " +
             "ORDER BY CASE WHEN o.orderStatus.orderStatusName = 'PENDING' THEN 1 ELSE 2 END ASC, " +
             "o.orderCreatedAt DESC",
@@ -0,0 +1,13 @@
+package com.unleashed.repo;
+
+import com.unleashed.entity.OrderStockAllocation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface OrderStockAllocationRepository extends JpaRepository<OrderStockAllocation, Long> {
+
+    List<OrderStockAllocation> findByOrderIdOrderByVariationIdAscStockIdAsc(String orderId);
+}
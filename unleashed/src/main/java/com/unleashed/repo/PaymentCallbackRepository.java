@@ -0,0 +1,67 @@
+package com.unleashed.repo;
+
+import com.unleashed.entity.PaymentCallback;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+@Repository
+public interface PaymentCallbackRepository extends JpaRepository<PaymentCallback, Long> {
+
+    /**
+     * Stores a callback, or counts a replay when the gateway already sent this reference. A single
+     * statement, so the webhook thread does one short round-trip whatever the gateway retries.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            MERGE dbo.payment_callback WITH (HOLDLOCK) AS t
+            USING (SELECT :gateway AS gateway, :reference AS reference) AS s
+                ON t.payment_callback_gateway = s.gateway AND t.payment_callback_reference = s.reference
+            WHEN MATCHED THEN UPDATE SET
+                payment_callback_replay_count = t.payment_callback_replay_count + 1,
+                payment_callback_last_replayed_at = :now
+            WHEN NOT MATCHED THEN INSERT
+                (payment_callback_gateway, payment_callback_reference, payment_callback_success, payment_callback_payload,
+                 payment_callback_status, payment_callback_attempts, payment_callback_replay_count,
+                 payment_callback_next_attempt_at, payment_callback_received_at)
+                VALUES (:gateway, :reference, :success, :payload, 'RECEIVED', 0, 0, :now, :now);
+            """, nativeQuery = true)
+    int record(@Param("gateway") String gateway,
+               @Param("reference") String reference,
+               @Param("success") boolean success,
+               @Param("payload") String payload,
+               @Param("now") OffsetDateTime now);
+
+    @Query("SELECT c.id FROM PaymentCallback c WHERE c.status = :status AND c.nextAttemptAt <= :now ORDER BY c.id ASC")
+    List<Long> findDueIds(@Param("status") PaymentCallback.Status status,
+                          @Param("now") OffsetDateTime now,
+                          Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE PaymentCallback c SET c.status = :to, c.claimToken = :token, c.claimedAt = :now " +
+            "WHERE c.id IN :ids AND c.status = :from")
+    int claim(@Param("ids") List<Long> ids,
+              @Param("from") PaymentCallback.Status from,
+              @Param("to") PaymentCallback.Status to,
+              @Param("token") String token,
+              @Param("now") OffsetDateTime now);
+
+    List<PaymentCallback> findByClaimTokenOrderByIdAsc(String claimToken);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE PaymentCallback c SET c.status = :to, c.claimToken = null " +
+            "WHERE c.status = :from AND c.claimedAt < :staleBefore")
+    int releaseStaleClaims(@Param("from") PaymentCallback.Status from,
+                           @Param("to") PaymentCallback.Status to,
+                           @Param("staleBefore") OffsetDateTime staleBefore);
+}
@@ -112,10 +112,7 @@ public interface ProductRepository extends JpaRepository<Product, UUID>, JpaSpec
     @Query(value = """
         SELECT p, v,
                COALESCE(AVG(r.reviewRating), 0.0) AS averageRating,
-               COUNT(r.reviewRating) AS totalRatings,
-               (SELECT s.id FROM Sale s JOIN SaleProduct sp ON s.id = sp.sale.id
-                WHERE sp.product.productId = p.productId
-                AND s.saleStatus.saleStatusName = 'ACTIVE') as saleId
+               COUNT(r.reviewRating) AS totalRatings
         FROM Product p
         JOIN p.brand b
         JOIN p.categories cat
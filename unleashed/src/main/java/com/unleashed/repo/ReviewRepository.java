@@ -12,6 +12,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -44,17 +45,12 @@ public interface ReviewRepository extends JpaRepository<Review, Integer> {
             """)
     List<Comment> findRootCommentsByCommentIds(@Param("commentIds") List<Integer> commentIds);
 
-    @Query("SELECT c FROM Comment c " +
-            "WHERE c.id IN " +
-            "(SELECT cp.id.commentId FROM CommentParent cp WHERE cp.id.commentParentId = :commentId)")
-    List<Comment> findChildComments(@Param("commentId") Integer commentId);
-
-    @Query("SELECT c.id.commentParentId FROM CommentParent c " +
-            "WHERE c.id.commentId = :commentId")
-    Integer findParentComments(@Param("commentId") Integer commentId);
-
     boolean existsByProduct_ProductIdAndOrder_OrderIdAndUser_UserId(UUID productId, String orderId, UUID userId);
 
+    @Query("SELECT DISTINCT r.order.orderId FROM Review r " +
+            "WHERE r.product.productId = :productId AND r.user.userId = :userId AND r.order IS NOT NULL")
+    List<String> findReviewedOrderIds(@Param("productId") UUID productId, @Param("userId") UUID userId);
+
     @Query(value = """
             SELECT NEW com.unleashed.dto.DashboardReviewDTO(
                 c.id,
@@ -120,7 +116,7 @@ public interface ReviewRepository extends JpaRepository<Review, Integer> {
     /**
      * Fetches only reviews that have a rating (i.e., they are top-level reviews).
      */
-    @Query(value = "SELECT r FROM Review r WHERE r.product.productId = :productId AND r.reviewRating IS NOT NULL ORDER BY r.id DESC",
+    @Query(value = "SELECT r FROM Review r JOIN FETCH r.user WHERE r.product.productId = :productId AND r.reviewRating IS NOT NULL ORDER BY r.id DESC",
             countQuery = "SELECT COUNT(r) FROM Review r WHERE r.product.productId = :productId AND r.reviewRating IS NOT NULL")
     Page<Review> findTopLevelReviewsByProductId(@Param("productId") UUID productId, Pageable pageable);
 
@@ -133,7 +129,7 @@ public interface ReviewRepository extends JpaRepository<Review, Integer> {
 
 
     @Query(
-            value = "SELECT r FROM Review r WHERE r.user.userUsername = :userUsername AND r.reviewRating IS NOT NULL",
+            value = "SELECT r FROM Review r LEFT JOIN FETCH r.product WHERE r.user.userUsername = :userUsername AND r.reviewRating IS NOT NULL",
             countQuery = "SELECT COUNT(r) FROM Review r WHERE r.user.userUsername = :userUsername AND r.reviewRating IS NOT NULL"
     )
     Page<Review> findAllByUser_Username(String userUsername, Pageable pageable);
@@ -141,6 +137,12 @@ public interface ReviewRepository extends JpaRepository<Review, Integer> {
 
     boolean existsByProductAndUser(Product product, User user);
 
+    /**
+     * Which of {@code productIds} the user has reviewed, for order pages listing several products.
+     */
+    @Query("SELECT DISTINCT r.product.productId FROM Review r WHERE r.user.userId = :userId AND r.product.productId IN :productIds")
+    List<UUID> findReviewedProductIds(@Param("userId") UUID userId, @Param("productIds") Collection<UUID> productIds);
+
 
 
 
@@ -9,8 +9,8 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
-import java.util.UUID;
 
 @Repository
 public interface SaleProductRepository extends JpaRepository<SaleProduct, SaleProductId> {
@@ -21,18 +21,30 @@ public interface SaleProductRepository extends JpaRepository<SaleProduct, SalePr
 
     List<SaleProduct> findByIdSaleId(Integer saleId);
 
-    @Query("SELECT sp FROM SaleProduct sp join Sale s on sp.id.saleId = s.id where sp.id.productId = :productId AND s.saleStatus.saleStatusName = 'ACTIVE' ")
-    SaleProduct findSaleProductByProductId(@Param("productId") UUID productId);
-
-    @Query("SELECT p.productId FROM Sale s JOIN SaleProduct sp ON s.id = sp.id.saleId JOIN Product p ON sp.id.productId = p.productId")
-    List<Object[]> getAllProductsInSales();
-
-    List<SaleProduct> findById_ProductId(UUID idProductId);
-
-    @Query("SELECT s.id.productId FROM SaleProduct s")
-    List<UUID> findAllProductIdsInSale();
-
-    @Query("SELECT sp FROM SaleProduct sp JOIN Sale s on sp.id.saleId = s.id WHERE sp.id.productId IN :productIds AND s.saleStatus.saleStatusName = 'ACTIVE'")
-    List<SaleProduct> findSaleProductsByProductIds(@Param("productIds") List<UUID> productIds);
-
-}
\ No newline at end of file
+    @Query("SELECT CASE WHEN COUNT(sp) > 0 THEN true ELSE false END FROM SaleProduct sp " +
+            "JOIN Sale s ON sp.id.saleId = s.id " +
+            "JOIN Variation v ON v.product.productId = sp.id.productId " +
+            "WHERE v.id IN :variationIds AND s.saleStatus.saleStatusName = 'ACTIVE'")
+    boolean existsActiveSaleForVariations(@Param("variationIds") Collection<Integer> variationIds);
+
+    /**
+     * Every sale link as (saleId, productId).
+     */
+    @Query("SELECT sp.id.saleId, sp.id.productId FROM SaleProduct sp")
+    List<Object[]> findAllMemberships();
+
+    /**
+     * Unlinks every product whose variations have no stock left from the sales it is in.
+     *
+     * @return the number of links removed
+     */
+    @Modifying
+    @Query(value = """
+            DELETE sp FROM dbo.sale_product sp
+            WHERE COALESCE((SELECT SUM(sv.stock_quantity)
+                            FROM dbo.stock_variation sv
+                            JOIN dbo.variation v ON v.variation_id = sv.variation_id
+                            WHERE v.product_id = sp.product_id), 0) <= 0
+            """, nativeQuery = true)
+    int deleteOutOfStockProducts();
+}
@@ -0,0 +1,154 @@
+package com.unleashed.repo;
+
+import com.unleashed.entity.StockSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+/**
+ * Snapshot and ledger queries. Ledger rows are signed by transaction type: 1 (IN) adds, 2 (OUT)
+ * subtracts. {@code :base} is the snapshot the query starts from; pass {@link #NO_SNAPSHOT} when
+ * there is none, which makes the snapshot part empty and the tail the whole ledger.
+ */
+@Repository
+public interface StockSnapshotRepository extends JpaRepository<StockSnapshot, Long> {
+
+    OffsetDateTime NO_SNAPSHOT = OffsetDateTime.parse("1900-01-01T00:00:00Z");
+
+    @Query("SELECT MAX(s.snapshotAt) FROM StockSnapshot s WHERE s.snapshotAt <= :at")
+    OffsetDateTime findLatestSnapshotAt(@Param("at") OffsetDateTime at);
+
+    /**
+     * Writes the snapshot at {@code :at} as the previous snapshot plus the ledger rows in between.
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO dbo.stock_snapshot (stock_snapshot_at, stock_id, variation_id, stock_snapshot_quantity)
+            SELECT :at, b.stock_id, b.variation_id, SUM(b.quantity)
+            FROM (
+                SELECT s.stock_id, s.variation_id, s.stock_snapshot_quantity AS quantity
+                FROM dbo.stock_snapshot s
+                WHERE s.stock_snapshot_at = :base
+                UNION ALL
+                SELECT t.stock_id, t.variation_id,
+                       CASE WHEN t.transaction_type_id = 1 THEN t.transaction_quantity ELSE -t.transaction_quantity END
+                FROM dbo.[transaction] t
+                WHERE t.transaction_date > :base AND t.transaction_date <= :at
+                  AND t.stock_id IS NOT NULL AND t.variation_id IS NOT NULL
+            ) b
+            GROUP BY b.stock_id, b.variation_id
+            """, nativeQuery = true)
+    int insertSnapshot(@Param("base") OffsetDateTime base, @Param("at") OffsetDateTime at);
+
+    /**
+     * Thins out old snapshots, keeping the one taken on the first day of each month.
+     */
+    @Modifying
+    @Query(value = "DELETE FROM dbo.stock_snapshot WHERE stock_snapshot_at < :before AND DAY(stock_snapshot_at) <> 1",
+            nativeQuery = true)
+    int compactBefore(@Param("before") OffsetDateTime before);
+
+    @Query(value = """
+            SELECT COALESCE(SUM(b.quantity), 0)
+            FROM (
+                SELECT s.stock_snapshot_quantity AS quantity
+                FROM dbo.stock_snapshot s
+                WHERE s.stock_snapshot_at = :base AND s.variation_id = :variationId
+                  AND (:stockId IS NULL OR s.stock_id = :stockId)
+                UNION ALL
+                SELECT CASE WHEN t.transaction_type_id = 1 THEN t.transaction_quantity ELSE -t.transaction_quantity END
+                FROM dbo.[transaction] t
+                WHERE t.transaction_date > :base AND t.transaction_date <= :at AND t.variation_id = :variationId
+                  AND (:stockId IS NULL OR t.stock_id = :stockId)
+            ) b
+            """, nativeQuery = true)
+    Integer findVariationBalanceAsOf(@Param("base") OffsetDateTime base,
+                                     @Param("at") OffsetDateTime at,
+                                     @Param("variationId") int variationId,
+                                     @Param("stockId") Integer stockId);
+
+    /**
+     * Rows of {@code [variationId, quantity]} for every variation of one stock as of {@code :at}.
+     */
+    @Query(value = """
+            SELECT b.variation_id, SUM(b.quantity)
+            FROM (
+                SELECT s.variation_id, s.stock_snapshot_quantity AS quantity
+                FROM dbo.stock_snapshot s
+                WHERE s.stock_snapshot_at = :base AND s.stock_id = :stockId
+                UNION ALL
+                SELECT t.variation_id,
+                       CASE WHEN t.transaction_type_id = 1 THEN t.transaction_quantity ELSE -t.transaction_quantity END
+                FROM dbo.[transaction] t
+                WHERE t.transaction_date > :base AND t.transaction_date <= :at AND t.stock_id = :stockId
+                  AND t.variation_id IS NOT NULL
+            ) b
+            GROUP BY b.variation_id
+            ORDER BY b.variation_id
+            """, nativeQuery = true)
+    List<Object[]> findStockBalancesAsOf(@Param("base") OffsetDateTime base,
+                                         @Param("at") OffsetDateTime at,
+                                         @Param("stockId") int stockId);
+
+    /**
+     * Rows of {@code [stockId, variationId, projected, ledger]} where {@code stock_variation}
+     * disagrees with the ledger.
+     */
+    @Query(value = """
+            WITH ledger AS (
+                SELECT b.stock_id, b.variation_id, SUM(b.quantity) AS balance
+                FROM (
+                    SELECT s.stock_id, s.variation_id, s.stock_snapshot_quantity AS quantity
+                    FROM dbo.stock_snapshot s
+                    WHERE s.stock_snapshot_at = :base
+                    UNION ALL
+                    SELECT t.stock_id, t.variation_id,
+                           CASE WHEN t.transaction_type_id = 1 THEN t.transaction_quantity ELSE -t.transaction_quantity END
+                    FROM dbo.[transaction] t
+                    WHERE t.transaction_date > :base AND t.stock_id IS NOT NULL AND t.variation_id IS NOT NULL
+                ) b
+                GROUP BY b.stock_id, b.variation_id
+            )
+            SELECT COALESCE(sv.stock_id, l.stock_id), COALESCE(sv.variation_id, l.variation_id),
+                   sv.stock_quantity, COALESCE(l.balance, 0)
+            FROM dbo.stock_variation sv
+            FULL OUTER JOIN ledger l ON l.stock_id = sv.stock_id AND l.variation_id = sv.variation_id
+            WHERE COALESCE(sv.stock_quantity, 0) <> COALESCE(l.balance, 0)
+            """, nativeQuery = true)
+    List<Object[]> findDrift(@Param("base") OffsetDateTime base);
+
+    /**
+     * Overwrites drifted {@code stock_variation} rows with the ledger balance and creates the rows
+     * the ledger knows about but the projection lacks. Rows without any ledger history (seed data)
+     * are only reported by {@link #findDrift}, never changed.
+     */
+    @Modifying
+    @Query(value = """
+            WITH ledger AS (
+                SELECT b.stock_id, b.variation_id, SUM(b.quantity) AS balance
+                FROM (
+                    SELECT s.stock_id, s.variation_id, s.stock_snapshot_quantity AS quantity
+                    FROM dbo.stock_snapshot s
+                    WHERE s.stock_snapshot_at = :base
+                    UNION ALL
+                    SELECT t.stock_id, t.variation_id,
+                           CASE WHEN t.transaction_type_id = 1 THEN t.transaction_quantity ELSE -t.transaction_quantity END
+                    FROM dbo.[transaction] t
+                    WHERE t.transaction_date > :base AND t.stock_id IS NOT NULL AND t.variation_id IS NOT NULL
+                ) b
+                GROUP BY b.stock_id, b.variation_id
+            )
+            MERGE dbo.stock_variation WITH (HOLDLOCK) AS sv
+            USING ledger l ON sv.stock_id = l.stock_id AND sv.variation_id = l.variation_id
+            WHEN MATCHED AND sv.stock_quantity <> l.balance THEN
+                UPDATE SET stock_quantity = l.balance
+            WHEN NOT MATCHED BY TARGET THEN
+                INSERT (stock_id, variation_id, stock_quantity) VALUES (l.stock_id, l.variation_id, l.balance);
+            """, nativeQuery = true)
+    int repairDrift(@Param("base") OffsetDateTime base);
+}
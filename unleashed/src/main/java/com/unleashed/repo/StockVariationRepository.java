@@ -7,6 +7,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -35,4 +36,48 @@ public interface StockVariationRepository extends JpaRepository<StockVariation,
 
     List<StockVariation> findByVariationIdIn(List<Integer> variationIds);
 
-}
\ No newline at end of file
+    /**
+     * Adds {@code delta} to the projected balance, creating the row on first movement. Only
+     * {@code StockLedgerService} calls this, in the transaction that appends the ledger rows.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+            MERGE dbo.stock_variation WITH (HOLDLOCK) AS t
+            USING (SELECT :stockId AS stock_id, :variationId AS variation_id) AS s
+                ON t.stock_id = s.stock_id AND t.variation_id = s.variation_id
+            WHEN MATCHED THEN UPDATE SET stock_quantity = t.stock_quantity + :delta
+            WHEN NOT MATCHED THEN INSERT (stock_id, variation_id, stock_quantity) VALUES (:stockId, :variationId, :delta);
+            """, nativeQuery = true)
+    int applyDelta(@Param("stockId") int stockId,
+                   @Param("variationId") int variationId,
+                   @Param("delta") int delta);
+
+    /**
+     * Takes {@code quantity} units out of one location only if it still holds them. Returns 0 when
+     * a concurrent order got there first, so the caller can allocate elsewhere.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+            UPDATE dbo.stock_variation SET stock_quantity = stock_quantity - :quantity
+            WHERE stock_id = :stockId AND variation_id = :variationId AND stock_quantity >= :quantity
+            """, nativeQuery = true)
+    int takeIfAvailable(@Param("stockId") int stockId,
+                        @Param("variationId") int variationId,
+                        @Param("quantity") int quantity);
+
+    /**
+     * Rows of {@code [stockId, quantity]} for the locations currently holding the variation.
+     */
+    @Query("SELECT sv.id.stockId, sv.stockQuantity FROM StockVariation sv " +
+            "WHERE sv.id.variationId = :variationId AND sv.stockQuantity > 0")
+    List<Object[]> findAvailableLocations(@Param("variationId") int variationId);
+
+    /**
+     * Clears the {@code -1} quantities that used to mark deleted variations; the next ledger
+     * reconciliation brings these rows back to their ledger balance.
+     */
+    @Modifying
+    @Query("UPDATE StockVariation sv SET sv.stockQuantity = 0 WHERE sv.stockQuantity = -1")
+    int clearLegacyDeletionMarkers();
+
+}
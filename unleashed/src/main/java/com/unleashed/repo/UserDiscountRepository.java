@@ -1,12 +1,17 @@
 package com.unleashed.repo;
 
+import com.unleashed.dto.DiscountUserViewDTO;
 import com.unleashed.entity.UserDiscount;
 import com.unleashed.entity.composite.UserDiscountId;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -28,7 +33,34 @@ public interface UserDiscountRepository extends JpaRepository<UserDiscount, User
     @Query("SELECT COUNT(ud) FROM UserDiscount ud WHERE ud.id.discountId = :discountId")
     int countByDiscountId(@Param("discountId") Integer discountId);
 
+    /**
+     * The users holding a discount, by username, joined in the same query.
+     */
+    @Query(value = "SELECT new com.unleashed.dto.DiscountUserViewDTO(u.userId, u.userUsername, u.userEmail, u.userFullname, u.userImage) " +
+            "FROM UserDiscount ud JOIN ud.user u WHERE ud.id.discountId = :discountId ORDER BY u.userUsername",
+            countQuery = "SELECT COUNT(ud) FROM UserDiscount ud WHERE ud.id.discountId = :discountId")
+    Page<DiscountUserViewDTO> findUserViewsByDiscountId(@Param("discountId") Integer discountId, Pageable pageable);
+
     @Query("SELECT ud.id.discountId FROM UserDiscount ud WHERE ud.id.userId = :userId")
     List<Integer> findDiscountIdsByUserId(@Param("userId") UUID userId);
 
-}
\ No newline at end of file
+    /**
+     * The user's unused discounts that can still become usable (anything but EXPIRED), with their
+     * minimum order value.
+     */
+    @Query("SELECT ud.id.discountId, d.discountMinimumOrderValue FROM UserDiscount ud JOIN ud.discount d " +
+            "WHERE ud.id.userId = :userId AND ud.isDiscountUsed = false AND d.discountStatus.id <> 3")
+    List<Object[]> findUnusedDiscountThresholds(@Param("userId") UUID userId);
+
+    /**
+     * Marks the user's copy of a discount as used, unless it already is.
+     *
+     * @return 1 when this call marked it, 0 when it is not assigned or was already used
+     */
+    @Modifying
+    @Query("UPDATE UserDiscount ud SET ud.isDiscountUsed = true, ud.discountUsedAt = :now " +
+            "WHERE ud.id.userId = :userId AND ud.id.discountId = :discountId AND ud.isDiscountUsed = false")
+    int markUsed(@Param("userId") UUID userId,
+                 @Param("discountId") Integer discountId,
+                 @Param("now") OffsetDateTime now);
+}
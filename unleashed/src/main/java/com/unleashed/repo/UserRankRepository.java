@@ -4,10 +4,12 @@ import com.unleashed.entity.UserRank;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
 import java.util.UUID;
 
 @Repository
@@ -18,4 +20,16 @@ public interface UserRankRepository extends JpaRepository<UserRank, UUID> {
     Page<UserRank> findBySearch(
             @Param("search") String search,
             Pageable pageable);
-}
\ No newline at end of file
+
+    /**
+     * Adds {@code amount} (negative to take it off) to the member's spending in the database, so
+     * concurrent accruals for the same member all count.
+     */
+    @Modifying
+    @Query(value = "UPDATE dbo.user_rank SET money_spent = COALESCE(money_spent, 0) + :amount, " +
+            "rank_updated_date = SYSDATETIMEOFFSET() WHERE user_id = :userId", nativeQuery = true)
+    int addMoneySpent(@Param("userId") UUID userId, @Param("amount") BigDecimal amount);
+
+    @Query("SELECT ur.moneySpent FROM UserRank ur WHERE ur.userId = :userId")
+    BigDecimal findMoneySpent(@Param("userId") UUID userId);
+}
@@ -3,10 +3,12 @@ package com.unleashed.repo;
 import com.unleashed.entity.Variation;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -16,14 +18,31 @@ public interface VariationRepository extends JpaRepository<Variation, Integer>,
     @Query("""
         SELECT v 
         FROM Variation v 
-        LEFT JOIN StockVariation sv ON sv.id.variationId = v.id 
         WHERE v.product.productId = :productId 
-          AND (sv.stockQuantity IS NULL OR sv.stockQuantity <> -1)
+          AND (v.isVariationDeleted IS NULL OR v.isVariationDeleted = false)
     """)
     List<Variation> findProductVariationByProductId(@Param("productId") UUID productId);
 
+    /**
+     * Flags the variations deleted before the flag existed, when deletion wrote
+     * {@code stock_quantity = -1} instead.
+     */
+    @Modifying
+    @Query("UPDATE Variation v SET v.isVariationDeleted = true " +
+            "WHERE v.id IN (SELECT sv.id.variationId FROM StockVariation sv WHERE sv.stockQuantity = -1)")
+    int flagLegacyDeletedVariations();
+
     Optional<Variation> findByProduct_ProductCodeAndColor_ColorNameAndSize_SizeName(String productCode, String colorName, String sizeName);
 
+    /**
+     * Product id and image of every variation of the given products that has an image, lowest
+     * variation first.
+     */
+    @Query("SELECT v.product.productId, v.variationImage FROM Variation v " +
+            "WHERE v.product.productId IN :productIds AND v.variationImage IS NOT NULL AND v.variationImage <> '' " +
+            "ORDER BY v.id ASC")
+    List<Object[]> findImagesByProductIds(@Param("productIds") Collection<UUID> productIds);
+
     @Query("SELECT v.product.productId FROM Variation v WHERE v.id = :variationId")
     UUID findProductIdByVariationId(@Param("variationId") int variationId);
 
@@ -94,4 +94,16 @@ public class ProductSpecification {
     }
 
 
+    /**
+     * Products linked to the given sale, through a subquery on SaleProduct.
+     */
+    public static Specification<Product> isInSale(int saleId) {
+        return (root, query, cb) -> {
+            Subquery<UUID> saleProductSubquery = query.subquery(UUID.class);
+            Root<SaleProduct> saleProductRoot = saleProductSubquery.from(SaleProduct.class);
+            saleProductSubquery.select(saleProductRoot.get("id").get("productId"))
+                    .where(cb.equal(saleProductRoot.get("id").get("saleId"), saleId));
+            return root.get("productId").in(saleProductSubquery);
+        };
+    }
 }
\ No newline at end of file
@@ -42,18 +42,10 @@ public class VariationSpecification implements Specification<Variation> {
         }
 
         if (stockId != null) {
-            Subquery<Integer> subquery = query.subquery(Integer.class);
-            Root<StockVariation> subRoot = subquery.from(StockVariation.class);
-            subquery.select(cb.literal(1));
-            subquery.where(
-                    cb.and(
-                            cb.equal(subRoot.get("id").get("variationId"), root.get("id")),
-                            cb.equal(subRoot.get("id").get("stockId"), stockId),
-                            cb.equal(subRoot.get("stockQuantity"), -1)
-                    )
-            );
-
-            mainPredicates.add(cb.not(cb.exists(subquery)));
+            mainPredicates.add(cb.or(
+                    cb.isNull(root.get("isVariationDeleted")),
+                    cb.isFalse(root.get("isVariationDeleted"))
+            ));
         }
 
         if (query.getResultType() != Long.class && query.getResultType() != long.class) {
@@ -7,6 +7,7 @@ import com.unleashed.dto.ResponseDTO;
 import com.unleashed.dto.UserDTO;
 import com.unleashed.entity.User;
 import com.unleashed.exception.CustomException;
+import com.unleashed.security.LoginRateLimiter;
 import com.unleashed.service.DiscountService;
 import com.unleashed.service.EmailService;
 import com.unleashed.service.UserRoleService;
@@ -21,7 +22,6 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
@@ -29,6 +29,7 @@ import org.springframework.web.bind.annotation.*;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Map;
 
 @Transactional
@@ -43,26 +44,52 @@ public class AuthRestController {
     private final DiscountService discountService;
 
     private final AuthenticationManager authenticationManager;
+    private final LoginRateLimiter loginRateLimiter;
+    private final PasswordEncoder passwordEncoder;
 
 
     @Autowired
-    public AuthRestController(UserService userService, UserRoleService userRoleService, JwtUtil jwtUtil, AuthenticationManager authenticationManager, EmailService emailService, DiscountService discountService) {
+    public AuthRestController(UserService userService, UserRoleService userRoleService, JwtUtil jwtUtil, AuthenticationManager authenticationManager, EmailService emailService, DiscountService discountService, LoginRateLimiter loginRateLimiter, PasswordEncoder passwordEncoder) {
         this.userService = userService;
         this.userRoleService = userRoleService;
         this.jwtUtil = jwtUtil;
         this.authenticationManager = authenticationManager;
         this.emailService = emailService;
         this.discountService = discountService;
+        this.loginRateLimiter = loginRateLimiter;
+        this.passwordEncoder = passwordEncoder;
+    }
+
+    /**
+     * The password encoder refuses work with 429 when its queue is full; endpoints that do not
+     * build their own error response pass that status through as is.
+     */
+    @ExceptionHandler(CustomException.class)
+    public ResponseEntity<String> handleCustomException(CustomException e) {
+        return ResponseEntity.status(e.getStatusCode()).body(e.getMessage());
+    }
+
+    private ResponseEntity<ResponseDTO> tooManyAttempts() {
+        ResponseDTO responseDTO = new ResponseDTO();
+        responseDTO.setStatusCode(HttpStatus.TOO_MANY_REQUESTS.value());
+        responseDTO.setMessage("Too many attempts, please wait a minute and try again.");
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(responseDTO);
     }
 
     @PostMapping("/login")
-    public ResponseEntity<ResponseDTO> login(@RequestBody UserDTO userDTO) {
+    public ResponseEntity<ResponseDTO> login(@RequestBody UserDTO userDTO, HttpServletRequest request) {
+        if (!loginRateLimiter.tryAcquire(request)) {
+            return tooManyAttempts();
+        }
         ResponseDTO responseDTO = userService.login(userDTO);
         return ResponseEntity.status(responseDTO.getStatusCode()).body(responseDTO);
     }
 
     @PostMapping("/register")
-    public ResponseEntity<ResponseDTO> register(@RequestBody RegisterDTO registerDTO) {
+    public ResponseEntity<ResponseDTO> register(@RequestBody RegisterDTO registerDTO, HttpServletRequest request) {
+        if (!loginRateLimiter.tryAcquire(request)) {
+            return tooManyAttempts();
+        }
         ResponseDTO responseDTO = new ResponseDTO();
         try {
             if (userService.existsByUsername(registerDTO.getUserUsername())) {
@@ -93,51 +120,22 @@ public class AuthRestController {
 
             SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
             SimpleDateFormat yearFormat = new SimpleDateFormat("yyyy");
-            String currentDateTime = dateFormat.format(new Date());
-            String currentYear = yearFormat.format(new Date());
 
             // Use data from the savedUser object for the email content
-            String htmlContent = "<!DOCTYPE html>"
-                    + "<html lang=\"en\">"
-                    + "<head>"
-                    + "<meta charset=\"UTF-8\">"
-                    + "<meta name=\"viewport\" content=\"width=device-width, initial-scale=1.0\">"
-                    + "<title>Registration Confirmation</title>"
-                    + "</head>"
-                    + "<body style=\"margin: 0; padding: 0; font-family: Arial, sans-serif; background-color: #f4f4f4;\">"
-                    + "<table width=\"100%\" border=\"0\" cellspacing=\"0\" cellpadding=\"0\">"
-                    + "<tr>"
-                    + "<td align=\"center\" style=\"padding: 20px;\">"
-                    + "<table width=\"600\" border=\"0\" cellspacing=\"0\" cellpadding=\"0\" style=\"background-color: #ffffff; border-radius: 8px; box-shadow: 0 2px 4px rgba(0,0,0,0.1);\">"
-                    + "<tr>"
-                    + "<td align=\"center\" style=\"padding: 30px;\">"
-                    + "<h2 style=\"color: #4CAF50; margin-bottom: 20px;\">Registration Confirmation</h2>"
-                    + "<p style=\"color: #555; font-size: 16px; line-height: 1.5;\">Hello " + savedUser.getUserFullname() + ",</p>"
-                    + "<p style=\"color: #555; font-size: 16px; line-height: 1.5; margin-bottom: 30px;\">Thank you for registering! Please click the button below to confirm your registration:</p>"
-                    + "<a href=\"" + confirmationLink + "\" style=\"display: inline-block; padding: 12px 24px; font-size: 16px; color: white; background-color: #4CAF50; text-decoration: none; border-radius: 5px; font-weight: bold;\">Confirm Registration</a>"
-                    + "<p style=\"color: #555; font-size: 14px; margin-top: 30px; line-height: 1.5;\">If you didn't register, please ignore this email.</p>"
-                    + "<p style=\"color: #555; font-size: 14px; line-height: 1.5;\">Confirmation sent on: " + currentDateTime + "</p>"
-                    + "</td>"
-                    + "</tr>"
-                    + "<tr>"
-                    + "<td align=\"center\" style=\"padding: 20px; background-color: #f8f8f8;\">"
-                    + "<p style=\"color: #999; font-size: 12px; margin: 0;\">© " + currentYear + " Unleashed Workshop. All rights reserved.</p>"
-                    + "</td>"
-                    + "</tr>"
-                    + "</table>"
-                    + "</td>"
-                    + "</tr>"
-                    + "</table>"
-                    + "</body>"
-                    + "</html>";
-
-            emailService.sendHtmlMessage(savedUser.getUserEmail(), "Confirm Your Registration", htmlContent);
+            Map<String, Object> emailVariables = new HashMap<>();
+            emailVariables.put("fullName", savedUser.getUserFullname());
+            emailVariables.put("confirmationLink", confirmationLink);
+            emailVariables.put("sentAt", dateFormat.format(new Date()));
+            emailVariables.put("year", yearFormat.format(new Date()));
+
+            emailService.sendTemplatedMessage(savedUser.getUserEmail(), "Confirm Your Registration",
+                    "email/registration-confirmation", emailVariables);
 
             responseDTO.setStatusCode(HttpStatus.CREATED.value());
             responseDTO.setMessage("We have sent an email to your email for confirmation, please check it!");
 
         } catch (CustomException e) {
-            responseDTO.setStatusCode(HttpStatus.CONFLICT.value());
+            responseDTO.setStatusCode(e.getStatusCode());
             responseDTO.setMessage(e.getMessage());
         }
         return ResponseEntity.status(responseDTO.getStatusCode()).body(responseDTO);
@@ -201,20 +199,14 @@ public class AuthRestController {
         String resetLink = "http://localhost:3000/reset-password?email=" + email + "&token=" + jwtToken;
         SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
         SimpleDateFormat yearFormat = new SimpleDateFormat("yyyy");
-        String currentDateTime = dateFormat.format(new Date());
-        String currentYear = yearFormat.format(new Date());
 
-        String emailContent = "<div style=\"font-family: Arial, sans-serif; text-align: center; padding: 20px;\">"
-                + "<h2 style=\"color: #4CAF50;\">Password Reset Request</h2>"
-                + "<p style=\"color: #555; font-size: 16px;\">Hello " + user.getUserFullname() + ",</p>"
-                + "<p style=\"color: #555; font-size: 16px;\">You have requested to reset your password. Please click the button below to reset your password:</p>"
-                + "<a href=\"" + resetLink + "\" style=\"display: inline-block; padding: 10px 20px; font-size: 16px; color: white; background-color: #4CAF50; text-decoration: none; border-radius: 5px;\">Reset Password</a>"
-                + "<p style=\"color: #555; font-size: 14px; margin-top: 20px;\">If you did not request a password reset, please ignore this email.</p>"
-                + "<p style=\"color: #555; font-size: 14px;\">Request sent on: " + currentDateTime + "</p>"
-                + "<p style=\"color: #999; font-size: 12px;\">&copy; " + currentYear + " Unleashed Official. All rights reserved.</p>"
-                + "</div>";
+        Map<String, Object> emailVariables = new HashMap<>();
+        emailVariables.put("fullName", user.getUserFullname());
+        emailVariables.put("resetLink", resetLink);
+        emailVariables.put("sentAt", dateFormat.format(new Date()));
+        emailVariables.put("year", yearFormat.format(new Date()));
 
-        emailService.sendHtmlMessage(email, "Reset Password", emailContent);
+        emailService.sendTemplatedMessage(email, "Reset Password", "email/password-reset", emailVariables);
 
         return ResponseEntity.ok("Password reset link sent to your email.");
     }
@@ -222,6 +214,9 @@ public class AuthRestController {
 
     @PostMapping("/reset-password")
     public ResponseEntity<String> resetPassword(@RequestBody ResetPasswordDTO resetPasswordDTO, HttpServletRequest request) {
+        if (!loginRateLimiter.tryAcquire(request)) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body("Too many attempts, please wait a minute and try again.");
+        }
 
         User user = userService.findByEmail(resetPasswordDTO.getEmail());
         if (user == null) {
@@ -245,29 +240,23 @@ public class AuthRestController {
             }
 
         } else { // Reset Password
-            PasswordEncoder encoder = new BCryptPasswordEncoder(BCryptPasswordEncoder.BCryptVersion.$2A, 10);
-            if (encoder.matches(resetPasswordDTO.getOldPassword(), user.getUserPassword())) {
+            if (passwordEncoder.matches(resetPasswordDTO.getOldPassword(), user.getUserPassword())) {
 
                 String newPassword = resetPasswordDTO.getNewPassword();
                 userService.updatePassword(user, newPassword);
 
                 SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
                 SimpleDateFormat yearFormat = new SimpleDateFormat("yyyy");
-                String currentDateTime = dateFormat.format(new Date());
-                String currentYear = yearFormat.format(new Date());
 
                 // Nội dung email thông báo
-                String emailContent = "<div style=\"font-family: Arial, sans-serif; text-align: center; padding: 20px;\">"
-                        + "<h2 style=\"color: #4CAF50;\">Password Reset Confirmation</h2>"
-                        + "<p style=\"color: #555; font-size: 16px;\">Hello " + user.getUserFullname() + ",</p>"
-                        + "<p style=\"color: #555; font-size: 16px;\">Your password has been successfully reset. You can now log in with your new password.</p>"
-                        + "<p style=\"color: #555; font-size: 14px; margin-top: 20px;\">If you did not reset your password, please contact support immediately.</p>"
-                        + "<p style=\"color: #555; font-size: 14px;\">Request processed on: " + currentDateTime + "</p>"
-                        + "<p style=\"color: #999; font-size: 12px;\">&copy; " + currentYear + " Unleashed Official. All rights reserved.</p>"
-                        + "</div>";
+                Map<String, Object> emailVariables = new HashMap<>();
+                emailVariables.put("fullName", user.getUserFullname());
+                emailVariables.put("sentAt", dateFormat.format(new Date()));
+                emailVariables.put("year", yearFormat.format(new Date()));
 
                 // Gửi email
-                emailService.sendHtmlMessage(resetPasswordDTO.getEmail(), "Password Reset Confirmation", emailContent);
+                emailService.sendTemplatedMessage(resetPasswordDTO.getEmail(), "Password Reset Confirmation",
+                        "email/password-reset-confirmation", emailVariables);
             } else {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Old password is incorrect");
             }
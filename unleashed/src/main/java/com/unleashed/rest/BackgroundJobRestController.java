@@ -0,0 +1,32 @@
+package com.unleashed.rest;
+
+import com.unleashed.service.BackgroundJobService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * Progress of the admin background jobs: {@code GET /api/jobs/{jobId}}.
+ */
+@RestController
+@RequestMapping("/api/jobs")
+public class BackgroundJobRestController {
+
+    private final BackgroundJobService backgroundJobService;
+
+    @Autowired
+    public BackgroundJobRestController(BackgroundJobService backgroundJobService) {
+        this.backgroundJobService = backgroundJobService;
+    }
+
+    @PreAuthorize("hasAnyAuthority('ADMIN', 'STAFF')")
+    @GetMapping("/{jobId}")
+    public ResponseEntity<Map<String, Object>> getJob(@PathVariable String jobId) {
+        return backgroundJobService.getJob(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+}
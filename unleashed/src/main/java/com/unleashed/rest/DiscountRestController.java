@@ -1,8 +1,12 @@
 package com.unleashed.rest;
 
+import com.unleashed.dto.DiscountAssignmentDTO;
 import com.unleashed.dto.DiscountDTO;
+import com.unleashed.dto.DiscountUserViewDTO;
 import com.unleashed.entity.DiscountStatus;
 import com.unleashed.entity.DiscountType;
+import com.unleashed.exception.CustomException;
+import com.unleashed.service.DiscountAssignmentService;
 import com.unleashed.service.DiscountService;
 import com.unleashed.service.UserService;
 import com.unleashed.util.JwtUtil;
@@ -34,11 +38,14 @@ public class DiscountRestController {
     private static final Logger logger = LoggerFactory.getLogger(DiscountRestController.class);
     private final DiscountService discountService;
     private final UserService userService;
+    private final DiscountAssignmentService discountAssignmentService;
 
     @Autowired
-    public DiscountRestController(DiscountService discountService, UserService userService) {
+    public DiscountRestController(DiscountService discountService, UserService userService,
+                                  DiscountAssignmentService discountAssignmentService) {
         this.discountService = discountService;
         this.userService = userService;
+        this.discountAssignmentService = discountAssignmentService;
     }
 
     @PreAuthorize("hasAnyAuthority('ADMIN','STAFF')")
@@ -166,6 +173,37 @@ public class DiscountRestController {
         return ResponseEntity.ok(usersInfo);
     }
 
+    @PreAuthorize("hasAnyAuthority('ADMIN','STAFF')")
+    @GetMapping("/{discountId}/users/page")
+    public ResponseEntity<Page<DiscountUserViewDTO>> getUsersPageByDiscountId(
+            @PathVariable Integer discountId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        return ResponseEntity.ok(discountService.getUsersPageByDiscountId(discountId, page, size));
+    }
+
+    /**
+     * Assigns the discount to a whole segment (a rank, the buyers of a category or an uploaded id
+     * list) in the background. Poll {@code /api/jobs/{jobId}} for progress.
+     */
+    @PreAuthorize("hasAnyAuthority('ADMIN','STAFF')")
+    @PostMapping("/{discountId}/assignments")
+    public ResponseEntity<?> assignDiscountToSegment(@PathVariable Integer discountId,
+                                                     @RequestBody DiscountAssignmentDTO request) {
+        try {
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            String jobId = discountAssignmentService.startAssignment(discountId, request,
+                    authentication != null ? authentication.getName() : null);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of("jobId", jobId));
+        } catch (ResourceNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (CustomException e) {
+            return ResponseEntity.status(e.getStatusCode()).body(e.getMessage());
+        }
+    }
+
     @PreAuthorize("hasAuthority('CUSTOMER')")
     @GetMapping("/me")
     public ResponseEntity<Page<DiscountDTO>> getMyDiscounts(
@@ -0,0 +1,58 @@
+package com.unleashed.rest;
+
+import com.unleashed.service.ExportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+
+/**
+ * Admin exports streamed as CSV or JSON lines: {@code GET /api/exports/{stock|transactions|orders|reviews}}.
+ * The body is written on the MVC async executor, so the request thread is released immediately.
+ */
+@RestController
+@RequestMapping("/api/exports")
+public class ExportRestController {
+
+    private final ExportService exportService;
+
+    @Autowired
+    public ExportRestController(ExportService exportService) {
+        this.exportService = exportService;
+    }
+
+    @PreAuthorize("hasAnyAuthority('ADMIN', 'STAFF')")
+    @GetMapping("/{dataset}")
+    public ResponseEntity<StreamingResponseBody> export(
+            @PathVariable String dataset,
+            @RequestParam(required = false, defaultValue = "csv") String format,
+            @RequestParam(required = false) Integer stockId,
+            @RequestParam(required = false) Integer statusId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to) {
+        ExportService.Dataset exportDataset;
+        ExportService.Format exportFormat;
+        try {
+            exportDataset = ExportService.Dataset.parse(dataset);
+            exportFormat = ExportService.Format.parse(format);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+
+        ExportService.ExportFilter filter = new ExportService.ExportFilter(stockId, statusId, from, to);
+        String fileName = exportDataset.name().toLowerCase() + "-" + LocalDate.now() + "." + exportFormat.getExtension();
+        StreamingResponseBody body = output -> exportService.export(exportDataset, exportFormat, filter, output);
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_TYPE, exportFormat.getContentType() + "; charset=UTF-8")
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .body(body);
+    }
+}
@@ -0,0 +1,78 @@
+package com.unleashed.rest;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Stand-in for the PayOS and VNPay sandboxes, for load tests and local runs. Enable it with
+ * {@code app.payment-gateway.fake.enabled=true} on any instance and point
+ * {@code app.payment-gateway.fake-base-url} of the instances under test at it. Every payment
+ * succeeds after {@code app.payment-gateway.fake.latency-ms} of simulated gateway latency.
+ */
+@RestController
+@RequestMapping("/fake-gateway")
+@ConditionalOnProperty(prefix = "app.payment-gateway.fake", name = "enabled", havingValue = "true")
+public class FakePaymentGatewayRestController {
+
+    @Value("${app.payment-gateway.fake.latency-ms:150}")
+    private long latencyMs;
+
+    @PostMapping("/payos/v2/payment-requests")
+    public Map<String, Object> createPayOsPaymentRequest(@RequestBody Map<String, Object> body) throws InterruptedException {
+        Thread.sleep(latencyMs);
+        String paymentLinkId = UUID.randomUUID().toString().replace("-", "");
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("paymentLinkId", paymentLinkId);
+        data.put("orderCode", body.get("orderCode"));
+        data.put("amount", body.get("amount"));
+        data.put("status", "PENDING");
+        data.put("checkoutUrl", ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/fake-gateway/payos/web/" + paymentLinkId)
+                .queryParam("returnUrl", body.get("returnUrl"))
+                .build().toUriString());
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("code", "00");
+        response.put("desc", "success");
+        response.put("data", data);
+        return response;
+    }
+
+    @GetMapping("/payos/web/{paymentLinkId}")
+    public ResponseEntity<Void> payOsCheckout(@PathVariable String paymentLinkId,
+                                              @RequestParam(value = "returnUrl", required = false) String returnUrl) {
+        if (returnUrl == null) {
+            return ResponseEntity.ok().build();
+        }
+        String location = UriComponentsBuilder.fromUriString(returnUrl)
+                .queryParam("code", "00")
+                .queryParam("id", paymentLinkId)
+                .queryParam("status", "PAID")
+                .build().toUriString();
+        return ResponseEntity.status(HttpStatus.FOUND).header(HttpHeaders.LOCATION, location).build();
+    }
+
+    @GetMapping("/vnpay/pay")
+    public ResponseEntity<Void> vnPayCheckout(@RequestParam Map<String, String> params) throws InterruptedException {
+        Thread.sleep(latencyMs);
+        String location = UriComponentsBuilder.fromUriString(params.getOrDefault("vnp_ReturnUrl", "/"))
+                .queryParam("vnp_ResponseCode", "00")
+                .queryParam("vnp_TransactionStatus", "00")
+                .queryParam("vnp_TxnRef", params.get("vnp_TxnRef"))
+                .queryParam("vnp_Amount", params.get("vnp_Amount"))
+                .queryParam("vnp_OrderInfo", params.get("vnp_OrderInfo"))
+                .build().toUriString();
+        return ResponseEntity.status(HttpStatus.FOUND).header(HttpHeaders.LOCATION, location).build();
+    }
+}
@@ -2,12 +2,19 @@ package com.unleashed.rest;
 
 import com.unleashed.dto.NotificationDTO;
 import com.unleashed.entity.Notification;
+import com.unleashed.exception.CustomException;
+import com.unleashed.service.NotificationFanOutService;
 import com.unleashed.service.NotificationService;
 import org.springframework.data.domain.Page;
+import org.springframework.data.rest.webmvc.ResourceNotFoundException;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 import java.util.Map;
@@ -17,9 +24,11 @@ import java.util.Map;
 public class NotificationRestController {
 
     private final NotificationService notificationService;
+    private final NotificationFanOutService notificationFanOutService;
 
-    public NotificationRestController(NotificationService notificationService) {
+    public NotificationRestController(NotificationService notificationService, NotificationFanOutService notificationFanOutService) {
         this.notificationService = notificationService;
+        this.notificationFanOutService = notificationFanOutService;
     }
 
     // --- ADMIN & STAFF ENDPOINTS (RESTORED) ---
@@ -31,10 +40,24 @@ public class NotificationRestController {
         return ResponseEntity.ok(notificationDTOs);
     }
 
+    /**
+     * Sends to the {@code userNames} list, or broadcasts to an {@code audience} (ALL, ROLE with
+     * {@code roleId}, RANK with {@code rankId}). Long lists are delivered in the background: the
+     * response is 202 with a job id to poll at {@code /api/jobs/{jobId}}.
+     */
     @PreAuthorize("hasAnyAuthority('ADMIN', 'STAFF')")
     @PostMapping
     public ResponseEntity<?> createNotification(@RequestBody NotificationDTO notification) {
-        return notificationService.addNotification(notification);
+        try {
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            return notificationFanOutService.send(notification, authentication != null ? authentication.getName() : null);
+        } catch (ResourceNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("message", e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", e.getMessage()));
+        } catch (CustomException e) {
+            return ResponseEntity.status(e.getStatusCode()).body(Map.of("message", e.getMessage()));
+        }
     }
 
     @PreAuthorize("hasAnyAuthority('ADMIN', 'STAFF')")
@@ -65,6 +88,27 @@ public class NotificationRestController {
         return ResponseEntity.ok(notificationPage);
     }
 
+    /**
+     * The badge count, read from the user's unread counter.
+     */
+    @PreAuthorize("hasAuthority('CUSTOMER')")
+    @GetMapping("/customer/unread-count")
+    public ResponseEntity<Map<String, Integer>> getUnreadCount() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return ResponseEntity.ok(Map.of("unread", notificationService.getUnreadCount(authentication.getName())));
+    }
+
+    /**
+     * Server-Sent Events for the signed-in customer: {@code unread} with the unread count on
+     * connect and whenever it changes, {@code notification} with each new notification.
+     */
+    @PreAuthorize("hasAuthority('CUSTOMER')")
+    @GetMapping(value = "/customer/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamNotifications() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return notificationService.subscribe(authentication.getName());
+    }
+
     @PreAuthorize("hasAuthority('CUSTOMER')")
     @PutMapping("/customer/view/{notificationId}")
     public ResponseEntity<?> markNotificationAsViewed(@PathVariable Integer notificationId, @RequestParam String username) {
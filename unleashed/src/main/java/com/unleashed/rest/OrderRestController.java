@@ -1,15 +1,21 @@
 package com.unleashed.rest;
 
+import com.unleashed.dto.OrderBulkTransitionDTO;
 import com.unleashed.dto.OrderDTO;
 import com.unleashed.dto.ResponseDTO;
 import com.unleashed.entity.OrderStatus;
 import com.unleashed.entity.User;
+import com.unleashed.exception.CustomException;
+import com.unleashed.config.VNPayConfig;
 import com.unleashed.service.OrderService;
+import com.unleashed.service.QueuedCheckoutService;
+import com.unleashed.service.StockTransactionService;
 import com.unleashed.service.UserService;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -33,6 +39,12 @@ public class OrderRestController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private QueuedCheckoutService queuedCheckoutService;
+
+    @Autowired
+    private StockTransactionService stockTransactionService;
+
     @PreAuthorize("hasAnyAuthority('STAFF', 'ADMIN')")
     @GetMapping
     public ResponseEntity<Map<String, Object>> getOrders(
@@ -61,6 +73,12 @@ public class OrderRestController {
                 .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body(null));
     }
 
+    @PreAuthorize("hasAnyAuthority('STAFF', 'ADMIN')")
+    @GetMapping("/{orderId}/pick-list")
+    public ResponseEntity<List<Map<String, Object>>> getPickList(@PathVariable String orderId) {
+        return ResponseEntity.ok(stockTransactionService.getPickList(orderId));
+    }
+
 
     @PreAuthorize("hasAuthority('CUSTOMER')")
     @GetMapping("/me/{id}")
@@ -141,8 +159,22 @@ public class OrderRestController {
         String userId = userService.findByUsername(currentUsername).getUserId().toString();
         orderDTO.setUserId(userId);
         try {
+            if (queuedCheckoutService.requiresQueue(orderDTO)) {
+                Map<String, Object> ticket = queuedCheckoutService.enqueue(orderDTO, currentUsername, VNPayConfig.getIpAddress(request));
+                String statusUrl = "/api/orders/queue/" + ticket.get("ticketId");
+                ticket.put("statusUrl", statusUrl);
+                return ResponseEntity.status(HttpStatus.ACCEPTED)
+                        .header(HttpHeaders.LOCATION, statusUrl)
+                        .header(HttpHeaders.RETRY_AFTER, String.valueOf(queuedCheckoutService.getPollHintSeconds()))
+                        .body(ticket);
+            }
             Map<String, Object> jsonResponse = orderService.createOrder(orderDTO, request);
             return ResponseEntity.ok(jsonResponse);
+        } catch (CustomException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("statusCode", e.getStatusCode());
+            errorResponse.put("message", "Error: " + e.getMessage());
+            return ResponseEntity.status(e.getStatusCode()).body(errorResponse);
         } catch (Exception e) {
             Map<String, Object> errorResponse = new HashMap<>();
             errorResponse.put("statusCode", HttpStatus.INTERNAL_SERVER_ERROR.value());
@@ -151,15 +183,30 @@ public class OrderRestController {
         }
     }
 
+    @PreAuthorize("hasAuthority('CUSTOMER')")
+    @GetMapping("/queue/{ticketId}")
+    public ResponseEntity<Map<String, Object>> getCheckoutTicket(@PathVariable String ticketId) {
+        // Polled every couple of seconds by everyone in the waiting room, so no user lookup here.
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return queuedCheckoutService.getTicket(ticketId, authentication.getName())
+                .map(ticket -> {
+                    ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+                    if ("QUEUED".equals(ticket.get("status")) || "PROCESSING".equals(ticket.get("status"))) {
+                        builder.header(HttpHeaders.RETRY_AFTER, String.valueOf(queuedCheckoutService.getPollHintSeconds()));
+                    }
+                    return builder.body(ticket);
+                })
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+    }
+
 
     @PreAuthorize("hasAuthority('CUSTOMER')")
-    @PostMapping("/{orderId}/payment-callback")
-    public ResponseEntity<ResponseDTO> handlePaymentCallback(
-            @PathVariable String orderId,
-            @RequestParam("isSuccess") boolean isSuccess) {
-        orderService.handlePaymentCallback(orderId, isSuccess);
-        ResponseDTO responseDTO = new ResponseDTO(HttpStatus.OK.value(), "Payment callback processed successfully.");
-        return ResponseEntity.ok(responseDTO);
+    @GetMapping("/{orderId}/payment-status")
+    public ResponseEntity<Map<String, Object>> getPaymentStatus(@PathVariable String orderId) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return orderService.getPaymentStatus(orderId, authentication.getName())
+                .map(status -> ResponseEntity.ok(Map.<String, Object>of("orderId", orderId, "orderStatus", status)))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).build());
     }
 
     @PreAuthorize("hasAnyAuthority('STAFF', 'ADMIN')")
@@ -181,6 +228,26 @@ public class OrderRestController {
         }
     }
 
+    /**
+     * Applies one action (APPROVE, SHIP, REJECT, CANCEL, ...) to many orders and reports the outcome per order.
+     */
+    @PreAuthorize("hasAnyAuthority('STAFF', 'ADMIN')")
+    @PutMapping("/bulk-transition")
+    public ResponseEntity<?> bulkTransition(@RequestBody OrderBulkTransitionDTO body) {
+        try {
+            if (body.getStaffName() == null || body.getStaffName().isEmpty()) {
+                Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+                body.setStaffName(authentication != null ? authentication.getName() : null);
+            }
+            return ResponseEntity.ok(orderService.bulkTransition(body));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ResponseDTO(HttpStatus.BAD_REQUEST.value(), "Error: " + e.getMessage()));
+        } catch (Exception e) {
+            ResponseDTO responseDTO = new ResponseDTO(HttpStatus.INTERNAL_SERVER_ERROR.value(), "Error: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(responseDTO);
+        }
+    }
+
     @PreAuthorize("hasAuthority('CUSTOMER')")
     @PutMapping("/{orderId}/confirm-receipt")
     public ResponseEntity<ResponseDTO> confirmOrderReceived(@PathVariable String orderId) {
@@ -0,0 +1,67 @@
+package com.unleashed.rest;
+
+import com.unleashed.service.PaymentCallbackService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import vn.payos.type.Webhook;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Server-to-server payment notifications. Callbacks are only recorded here and acknowledged
+ * right away; {@code PaymentCallbackService} applies them to the orders in batches.
+ */
+@RestController
+@RequestMapping("/api/payment/webhooks")
+public class PaymentWebhookRestController {
+
+    private final PaymentCallbackService paymentCallbackService;
+
+    @Autowired
+    public PaymentWebhookRestController(PaymentCallbackService paymentCallbackService) {
+        this.paymentCallbackService = paymentCallbackService;
+    }
+
+    @PostMapping("/payos")
+    public ResponseEntity<Map<String, Object>> receivePayOsWebhook(@RequestBody Webhook webhook) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            paymentCallbackService.recordPayOsWebhook(webhook);
+            response.put("error", 0);
+            response.put("message", "ok");
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            response.put("error", -1);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+        }
+    }
+
+    /**
+     * VNPay IPN. VNPay reads the result from the body, so it always gets a 200.
+     */
+    @GetMapping("/vnpay/ipn")
+    public ResponseEntity<Map<String, String>> receiveVnPayIpn(HttpServletRequest request) {
+        Map<String, String> response = new HashMap<>();
+        try {
+            if (paymentCallbackService.recordVnPayIpn(request)) {
+                response.put("RspCode", "00");
+                response.put("Message", "Confirm Success");
+            } else {
+                response.put("RspCode", "97");
+                response.put("Message", "Invalid Checksum");
+            }
+        } catch (IllegalArgumentException e) {
+            response.put("RspCode", "01");
+            response.put("Message", "Order not Found");
+        } catch (Exception e) {
+            response.put("RspCode", "99");
+            response.put("Message", "Unknown error");
+        }
+        return ResponseEntity.ok(response);
+    }
+}
@@ -2,12 +2,24 @@ package com.unleashed.rest;
 
 import com.unleashed.dto.StockTransactionDTO;
 import com.unleashed.dto.TransactionCardDTO;
+import com.unleashed.service.StockImportService;
+import com.unleashed.service.StockLedgerService;
 import com.unleashed.service.StockTransactionService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.OffsetDateTime;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -15,10 +27,16 @@ import java.util.Map;
 @RequestMapping("/api/stock-transactions")
 public class StockTransactionRestController {
     private final StockTransactionService stockTransactionService;
+    private final StockLedgerService stockLedgerService;
+    private final StockImportService stockImportService;
 
     @Autowired
-    public StockTransactionRestController(StockTransactionService stockTransactionService) {
+    public StockTransactionRestController(StockTransactionService stockTransactionService,
+                                          StockLedgerService stockLedgerService,
+                                          StockImportService stockImportService) {
         this.stockTransactionService = stockTransactionService;
+        this.stockLedgerService = stockLedgerService;
+        this.stockImportService = stockImportService;
     }
 
     @GetMapping
@@ -44,4 +62,85 @@ public class StockTransactionRestController {
         }
         return ResponseEntity.badRequest().body("Bulk import of stock transactions failed");
     }
+
+    /**
+     * Streams a CSV or JSON-lines receipt from the request body. The format comes from the
+     * {@code format} parameter or the content type.
+     */
+    @PreAuthorize("hasAnyAuthority('ADMIN', 'STAFF')")
+    @PostMapping(value = "/import", consumes = {"text/csv", "text/plain", "application/x-ndjson", "application/jsonl",
+            MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<Map<String, Object>> importStock(
+            @RequestParam(required = false) Integer stockId,
+            @RequestParam(required = false) Integer providerId,
+            @RequestParam(required = false) String format,
+            HttpServletRequest request) {
+        try {
+            return runImport(request.getInputStream(), StockImportService.parseFormat(request.getContentType(), format),
+                    stockId, providerId);
+        } catch (IOException e) {
+            return importError(e);
+        }
+    }
+
+    @PreAuthorize("hasAnyAuthority('ADMIN', 'STAFF')")
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<Map<String, Object>> importStockFile(
+            @RequestPart("file") MultipartFile file,
+            @RequestParam(required = false) Integer stockId,
+            @RequestParam(required = false) Integer providerId,
+            @RequestParam(required = false) String format) {
+        try {
+            String declared = format != null ? format : file.getOriginalFilename();
+            return runImport(file.getInputStream(), StockImportService.parseFormat(file.getContentType(), declared),
+                    stockId, providerId);
+        } catch (IOException e) {
+            return importError(e);
+        }
+    }
+
+    private ResponseEntity<Map<String, Object>> runImport(InputStream input, StockImportService.Format format,
+                                                          Integer stockId, Integer providerId) throws IOException {
+        String username = SecurityContextHolder.getContext().getAuthentication().getName();
+        try {
+            return ResponseEntity.ok(stockImportService.importStock(input, format, stockId, providerId, username));
+        } catch (IllegalArgumentException e) {
+            return importError(e);
+        }
+    }
+
+    private ResponseEntity<Map<String, Object>> importError(Exception e) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("statusCode", HttpStatus.BAD_REQUEST.value());
+        response.put("message", "Error: " + e.getMessage());
+        return ResponseEntity.badRequest().body(response);
+    }
+
+    @PreAuthorize("hasAnyAuthority('ADMIN', 'STAFF')")
+    @GetMapping("/as-of/variations/{variationId}")
+    public ResponseEntity<Map<String, Object>> getVariationStockAsOf(
+            @PathVariable int variationId,
+            @RequestParam(required = false) Integer stockId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime at) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("variationId", variationId);
+        response.put("stockId", stockId);
+        response.put("at", at);
+        response.put("quantity", stockLedgerService.getVariationStockAsOf(variationId, stockId, at));
+        return ResponseEntity.ok(response);
+    }
+
+    @PreAuthorize("hasAnyAuthority('ADMIN', 'STAFF')")
+    @GetMapping("/as-of/stocks/{stockId}")
+    public ResponseEntity<Map<Integer, Integer>> getStockAsOf(
+            @PathVariable int stockId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime at) {
+        return ResponseEntity.ok(stockLedgerService.getStockAsOf(stockId, at));
+    }
+
+    @PreAuthorize("hasAuthority('ADMIN')")
+    @PostMapping("/reconcile")
+    public ResponseEntity<Map<String, Object>> reconcile(@RequestParam(defaultValue = "false") boolean repair) {
+        return ResponseEntity.ok(stockLedgerService.reconcile(repair));
+    }
 }
@@ -0,0 +1,98 @@
+package com.unleashed.security;
+
+import com.unleashed.exception.CustomException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+
+/**
+ * A {@link PasswordEncoder} that hashes on the {@code passwordHashingExecutor} instead of the
+ * calling thread. At most one hash per pool thread runs at a time; callers beyond the pool wait in a
+ * bounded queue, and once that is full they get a 429 straight away rather than piling up.
+ * <p>
+ * Hash time is recorded as {@code password.hashing{operation}}, refusals as
+ * {@code password.hashing.rejected}, and the queue length as {@code password.hashing.queue}.
+ */
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+    private final PasswordEncoder delegate;
+    private final ThreadPoolTaskExecutor executor;
+    private final Duration timeout;
+    private final Timer encodeTimer;
+    private final Timer matchTimer;
+    private final Counter rejected;
+
+    public BoundedPasswordEncoder(PasswordEncoder delegate,
+                                  ThreadPoolTaskExecutor executor,
+                                  Duration timeout,
+                                  MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.executor = executor;
+        this.timeout = timeout;
+        this.encodeTimer = timer(meterRegistry, "encode");
+        this.matchTimer = timer(meterRegistry, "matches");
+        this.rejected = Counter.builder("password.hashing.rejected")
+                .description("Hash requests refused because the hashing queue was full")
+                .register(meterRegistry);
+        Gauge.builder("password.hashing.queue", executor, pool -> pool.getThreadPoolExecutor().getQueue().size())
+                .description("Hash requests waiting for a hashing thread")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return run(encodeTimer, () -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run(matchTimer, () -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    private <T> T run(Timer timer, Callable<T> hash) {
+        Future<T> result;
+        try {
+            result = executor.submit(() -> timer.recordCallable(hash));
+        } catch (TaskRejectedException e) {
+            rejected.increment();
+            throw new CustomException("Too many sign-in requests right now, please try again in a moment.",
+                    HttpStatus.TOO_MANY_REQUESTS);
+        }
+        try {
+            return result.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            throw new CustomException("Sign-in is taking too long, please try again in a moment.",
+                    HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.cancel(true);
+            throw new IllegalStateException("Interrupted while waiting for password hashing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static Timer timer(MeterRegistry meterRegistry, String operation) {
+        return Timer.builder("password.hashing")
+                .description("Time spent hashing or verifying a password on the hashing pool")
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+}
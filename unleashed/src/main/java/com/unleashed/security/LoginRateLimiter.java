@@ -0,0 +1,61 @@
+package com.unleashed.security;
+
+import com.unleashed.config.PasswordHashingProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits how many logins and registrations one client address may attempt per window, so a single
+ * client cannot fill the password hashing queue. Counted per fixed window; the address is the
+ * connection's remote address, which is the client's as long as no proxy sits in front.
+ */
+@Component
+public class LoginRateLimiter {
+
+    private record Window(long startedAt, AtomicInteger attempts) {
+    }
+
+    private final PasswordHashingProperties properties;
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+    private final Counter limited;
+
+    @Autowired
+    public LoginRateLimiter(PasswordHashingProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.limited = Counter.builder("login.rate.limited")
+                .description("Login and registration attempts refused by the per-address limit")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Counts an attempt from the request's address and tells whether it is within the limit.
+     */
+    public boolean tryAcquire(HttpServletRequest request) {
+        long now = System.currentTimeMillis();
+        long windowMillis = properties.attemptWindow().toMillis();
+        Window window = windows.compute(request.getRemoteAddr(), (address, current) ->
+                current == null || now - current.startedAt() >= windowMillis
+                        ? new Window(now, new AtomicInteger())
+                        : current);
+        if (window.attempts().incrementAndGet() > properties.attemptsPerIp()) {
+            limited.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Drops the windows that have ended, so addresses seen once do not stay in memory.
+     */
+    public void purgeExpiredWindows() {
+        long cutoff = System.currentTimeMillis() - properties.attemptWindow().toMillis();
+        windows.values().removeIf(window -> window.startedAt() < cutoff);
+    }
+}
@@ -1,18 +1,40 @@
 package com.unleashed.security;
 
+import com.unleashed.config.ExportProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
+    private final ThreadPoolTaskExecutor exportTaskExecutor;
+    private final ExportProperties exportProperties;
+
+    @Autowired
+    public WebConfig(@Qualifier("exportTaskExecutor") ThreadPoolTaskExecutor exportTaskExecutor,
+                     ExportProperties exportProperties) {
+        this.exportTaskExecutor = exportTaskExecutor;
+        this.exportProperties = exportProperties;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(exportTaskExecutor);
+        configurer.setDefaultTimeout(exportProperties.timeout().toMillis());
+    }
+
     @Override
     public void addCorsMappings(CorsRegistry registry) {
         registry.addMapping("/**")
                 .allowedOrigins("http://localhost:3000")
                 .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
                 .allowedHeaders("*")
+                .exposedHeaders("Location", "Retry-After")
                 .allowCredentials(true);
     }
 
@@ -0,0 +1,157 @@
+package com.unleashed.service;
+
+import com.unleashed.config.BackgroundJobProperties;
+import com.unleashed.exception.CustomException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Runs admin jobs that are too long for a request on the {@code backgroundJobExecutor} and keeps
+ * their progress in memory, so the caller gets a job id back at once and polls {@link #getJob}.
+ * Jobs are not persisted: a restart loses the ones in flight, which is why every job written for
+ * this runner must be safe to start again (set-based, skipping what is already done).
+ */
+@Service
+public class BackgroundJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackgroundJobService.class);
+
+    public enum JobStatus {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    /**
+     * Handed to the running job to report how far it got.
+     */
+    public static final class Progress {
+        private final AtomicLong total = new AtomicLong(-1);
+        private final AtomicLong processed = new AtomicLong();
+        private final Map<String, Object> details = new ConcurrentHashMap<>();
+
+        public void setTotal(long total) {
+            this.total.set(total);
+        }
+
+        public void advance(long count) {
+            processed.addAndGet(count);
+        }
+
+        public void put(String key, Object value) {
+            details.put(key, value);
+        }
+    }
+
+    private static final class Job {
+        private final String jobId = UUID.randomUUID().toString();
+        private final String type;
+        private final String requestedBy;
+        private final OffsetDateTime createdAt = OffsetDateTime.now();
+        private final Progress progress = new Progress();
+        private volatile JobStatus status = JobStatus.QUEUED;
+        private volatile String error;
+        private volatile OffsetDateTime startedAt;
+        private volatile OffsetDateTime finishedAt;
+
+        private Job(String type, String requestedBy) {
+            this.type = type;
+            this.requestedBy = requestedBy;
+        }
+    }
+
+    private final ThreadPoolTaskExecutor backgroundJobExecutor;
+    private final BackgroundJobProperties properties;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    @Autowired
+    public BackgroundJobService(@Qualifier("backgroundJobExecutor") ThreadPoolTaskExecutor backgroundJobExecutor,
+                                BackgroundJobProperties properties) {
+        this.backgroundJobExecutor = backgroundJobExecutor;
+        this.properties = properties;
+    }
+
+    /**
+     * Queues {@code work} and returns its job id.
+     *
+     * @throws CustomException 503 when the job queue is full
+     */
+    public String submit(String type, String requestedBy, Consumer<Progress> work) {
+        Job job = new Job(type, requestedBy);
+        jobs.put(job.jobId, job);
+        try {
+            backgroundJobExecutor.execute(() -> run(job, work));
+        } catch (TaskRejectedException e) {
+            jobs.remove(job.jobId);
+            throw new CustomException("Too many background jobs are running, please try again later.",
+                    HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        return job.jobId;
+    }
+
+    public Optional<Map<String, Object>> getJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).map(this::toResponse);
+    }
+
+    /**
+     * Forgets jobs that finished longer than {@code jobTtl} ago.
+     */
+    public void purgeExpiredJobs() {
+        OffsetDateTime cutoff = OffsetDateTime.now().minus(properties.jobTtl());
+        jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt.isBefore(cutoff));
+    }
+
+    private void run(Job job, Consumer<Progress> work) {
+        job.startedAt = OffsetDateTime.now();
+        job.status = JobStatus.RUNNING;
+        try {
+            work.accept(job.progress);
+            job.status = JobStatus.COMPLETED;
+        } catch (Exception e) {
+            logger.error("Background job {} ({}) failed.", job.jobId, job.type, e);
+            job.error = e.getMessage();
+            job.status = JobStatus.FAILED;
+        } finally {
+            job.finishedAt = OffsetDateTime.now();
+        }
+    }
+
+    private Map<String, Object> toResponse(Job job) {
+        Map<String, Object> response = new HashMap<>(job.progress.details);
+        response.put("jobId", job.jobId);
+        response.put("type", job.type);
+        response.put("status", job.status.name());
+        response.put("requestedBy", job.requestedBy);
+        response.put("createdAt", job.createdAt);
+        long total = job.progress.total.get();
+        long processed = job.progress.processed.get();
+        response.put("processed", processed);
+        if (total >= 0) {
+            response.put("total", total);
+            response.put("percent", total == 0 ? 100 : Math.min(100, processed * 100 / total));
+        }
+        if (job.startedAt != null) {
+            response.put("startedAt", job.startedAt);
+        }
+        if (job.finishedAt != null) {
+            response.put("finishedAt", job.finishedAt);
+        }
+        if (job.status == JobStatus.FAILED) {
+            response.put("message", job.error);
+        }
+        return response;
+    }
+}
@@ -13,6 +13,7 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.LinkedMultiValueMap;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -22,15 +23,15 @@ public class CartService {
     private final CartRepository cartRepository;
     private final VariationRepository variationRepository;
     private final StockVariationRepository stockVariationRepository;
-    private final SaleRepository saleRepository;
+    private final PricingService pricingService;
     private final UserRepository userRepository;
 
     @Autowired
-    public CartService(CartRepository cartRepository, VariationRepository variationRepository, StockVariationRepository stockVariationRepository, SaleRepository saleRepository, UserRepository userRepository) {
+    public CartService(CartRepository cartRepository, VariationRepository variationRepository, StockVariationRepository stockVariationRepository, PricingService pricingService, UserRepository userRepository) {
         this.cartRepository = cartRepository;
         this.variationRepository = variationRepository;
         this.stockVariationRepository = stockVariationRepository;
-        this.saleRepository = saleRepository;
+        this.pricingService = pricingService;
         this.userRepository = userRepository;
     }
 
@@ -63,14 +64,29 @@ public class CartService {
         cartDtos.forEach(c -> {
             if (c.getVariation() != null) {
                 c.setStockQuantity(stockVariationRepository.findStockProductByProductVariationId(c.getVariation().getId()));
-
-                Variation originalVariation = variationRepository.findById(c.getVariation().getId()).orElse(null);
-                if (originalVariation != null && originalVariation.getProduct() != null) {
-                    c.setSale(saleRepository.findSaleByProductId(originalVariation.getProduct().getProductId()).orElse(null));
-                }
             }
         });
 
+        // One pass over the cart so line and cart totals round the same way checkout does.
+        Map<Integer, UUID> productIds = userCart.stream()
+                .filter(cartItem -> cartItem.getVariation() != null && cartItem.getVariation().getProduct() != null)
+                .collect(Collectors.toMap(cartItem -> cartItem.getVariation().getId(),
+                        cartItem -> cartItem.getVariation().getProduct().getProductId(), (a, b) -> a));
+        List<CartDTO> pricedCartDtos = cartDtos.stream()
+                .filter(c -> c.getVariation() != null && productIds.containsKey(c.getVariation().getId()))
+                .toList();
+        PricingService.CartPrice cartPrice = pricingService.priceCart(pricedCartDtos.stream()
+                .map(c -> new PricingService.CartLine(productIds.get(c.getVariation().getId()),
+                        c.getVariation().getVariationPrice(), c.getQuantity()))
+                .toList());
+        for (int i = 0; i < pricedCartDtos.size(); i++) {
+            CartDTO c = pricedCartDtos.get(i);
+            PricingService.LinePrice line = cartPrice.lines().get(i);
+            c.setSale(line.unitPrice().sale());
+            c.setFinalPrice(line.unitPrice().finalPrice());
+            c.setLineTotal(line.lineTotal());
+        }
+
         LinkedMultiValueMap<String, CartDTO> productList = new LinkedMultiValueMap<>();
         cartDtos.forEach(dto -> {
             if (dto.getVariation() != null) {
@@ -22,27 +22,27 @@ public class CommentService {
 
     private final CommentRepository commentRepository;
     private final ReviewRepository reviewRepository;
-    private final UserRepository userRepository;
     private final CommentParentRepository commentParentRepository;
+    private final CommentClosureRepository commentClosureRepository;
     private final ReviewService reviewService;
-    private final ProductRepository productRepository;
+    private final EntityLookupService entityLookupService;
     private final NotificationService notificationService;
     private final UserService userService;
 
     public CommentService(CommentRepository commentRepository,
                           ReviewRepository reviewRepository,
-                          UserRepository userRepository,
                           CommentParentRepository commentParentRepository,
+                          CommentClosureRepository commentClosureRepository,
                           ReviewService reviewService,
-                          ProductRepository productRepository,
+                          EntityLookupService entityLookupService,
                           NotificationService notificationService,
                           UserService userService) {
         this.commentRepository = commentRepository;
         this.reviewRepository = reviewRepository;
-        this.userRepository = userRepository;
         this.commentParentRepository = commentParentRepository;
+        this.commentClosureRepository = commentClosureRepository;
         this.reviewService = reviewService;
-        this.productRepository = productRepository;
+        this.entityLookupService = entityLookupService;
         this.notificationService = notificationService;
         this.userService = userService;
     }
@@ -50,7 +50,7 @@ public class CommentService {
     @Transactional
     public Comment createComment(CommentDTO commentDTO) {
         // 1. Find user by username
-        Optional<User> userOptional = userRepository.findByUserUsername(commentDTO.username);
+        Optional<User> userOptional = entityLookupService.findUserByUsername(commentDTO.username);
         if (userOptional.isEmpty()) {
             // If the user is not found, throw an exception
             throw new RuntimeException("User does not exist!");
@@ -58,7 +58,7 @@ public class CommentService {
         User user = userOptional.get();
         // 2. Check if the user has created a review
         List<Review> reviewOptional = reviewRepository.findByUserAndProduct_ProductId(user, UUID.fromString(commentDTO.productId));
-        Optional<Product> reProduct = productRepository.findById(UUID.fromString(commentDTO.productId));
+        Optional<Product> reProduct = entityLookupService.findProductById(UUID.fromString(commentDTO.productId));
         if (reProduct.isEmpty()) {
             throw new RuntimeException("Product not found with id: " + commentDTO.productId);
         }
@@ -100,6 +100,9 @@ public class CommentService {
             commentParent.setId(cpId);
 
             commentParentRepository.save(commentParent);
+            commentClosureRepository.insertReply(savedComment.getId(), commentDTO.commentParentId);
+        } else {
+            commentClosureRepository.insertRoot(savedComment.getId());
         }
 
         return savedComment;
@@ -139,6 +142,7 @@ public class CommentService {
 
         // Link the new comment to its parent
         commentRepository.createCommentParentLink(savedComment.getId(), parentComment.getId());
+        commentClosureRepository.insertReply(savedComment.getId(), parentComment.getId());
 
         // --- START: Notification Logic (Revised) ---
         try {
@@ -181,7 +185,7 @@ public class CommentService {
         Comment commentToDelete = commentRepository.findById(commentId)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Comment not found."));
 
-        User userRequestingDelete = userRepository.findByUserUsername(username)
+        User userRequestingDelete = entityLookupService.findUserByUsername(username)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found."));
 
         boolean isAuthor = commentToDelete.getReview().getUser().getUserId().equals(userRequestingDelete.getUserId());
@@ -191,44 +195,22 @@ public class CommentService {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You are not authorized to delete this comment.");
         }
 
-        recursivelyDeleteReplies(commentId);
-
-        commentRepository.deleteParentLink(commentId);
-
-        commentRepository.deleteById(commentId);
-    }
-
-    private void recursivelyDeleteReplies(Integer parentId) {
-        List<Comment> replies = commentRepository.findRepliesByParentId(parentId);
-        for (Comment reply : replies) {
-
-            recursivelyDeleteReplies(reply.getId());
-
-            commentRepository.deleteParentLink(reply.getId());
-
-            commentRepository.deleteById(reply.getId());
-        }
+        // The comment and all its replies, whatever the depth: links first, then the comments,
+        // then the closure rows that located them.
+        commentClosureRepository.deleteSubtreeParentLinks(commentId);
+        commentClosureRepository.deleteSubtreeComments(commentId);
+        commentClosureRepository.deleteSubtreeClosure(commentId);
     }
 
-
+    /**
+     * Ids of the comment's ancestors, root first.
+     */
     public List<Integer> findAncestorIds(Integer commentId) {
-        List<Integer> ancestorIds = new ArrayList<>();
-        Optional<Integer> currentParentId = commentRepository.findParentIdByCommentId(commentId);
-
-        // Loop until we no longer find a parent
-        while (currentParentId.isPresent()) {
-            Integer parentId = currentParentId.get();
-            ancestorIds.add(parentId);
-            currentParentId = commentRepository.findParentIdByCommentId(parentId);
-        }
-
-        // The list is from child-to-root, reverse it to be root-to-child
-        Collections.reverse(ancestorIds);
-        return ancestorIds;
+        return commentClosureRepository.findAncestorIds(commentId);
     }
 
     public Page<ProductReviewDTO> findDescendants(Integer commentId, Pageable pageable) {
-        Page<Comment> commentPage = commentRepository.findDescendantsByCommentId(commentId, pageable);
+        Page<Comment> commentPage = commentClosureRepository.findDescendants(commentId, pageable);
 
         // We need to convert Comment entities to the DTO format the frontend expects
         List<ProductReviewDTO> dtos = commentPage.getContent().stream().map(comment -> {
@@ -247,5 +229,15 @@ public class CommentService {
         return new PageImpl<>(dtos, pageable, commentPage.getTotalElements());
     }
 
+    /**
+     * Adds the closure rows of comments written before the closure table existed.
+     */
+    @Transactional
+    public void backfillCommentClosure() {
+        if (commentClosureRepository.hasUnregisteredComments() == 1) {
+            commentClosureRepository.backfill();
+        }
+    }
+
 
 }
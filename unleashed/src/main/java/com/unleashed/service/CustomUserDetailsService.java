@@ -1,7 +1,6 @@
 package com.unleashed.service;
 
 import com.unleashed.exception.CustomException;
-import com.unleashed.repo.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -15,12 +14,12 @@ import org.springframework.transaction.annotation.Transactional;
 public class CustomUserDetailsService implements UserDetailsService {
 
     @Autowired
-    private UserRepository userRepository;
+    private EntityLookupService entityLookupService;
 
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        return userRepository.findByUserUsername(username).orElseThrow(() -> new CustomException("Username not found", HttpStatus.NOT_FOUND));
+        return entityLookupService.findUserByUsername(username).orElseThrow(() -> new CustomException("Username not found", HttpStatus.NOT_FOUND));
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,287 @@
+package com.unleashed.service;
+
+import com.unleashed.dto.DiscountAssignmentDTO;
+import com.unleashed.entity.Discount;
+import com.unleashed.repo.CategoryRepository;
+import com.unleashed.repo.DiscountRepository;
+import com.unleashed.repo.RankRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.rest.webmvc.ResourceNotFoundException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Hands a discount to many users at once.
+ * <p>
+ * Every chunk is a single {@code INSERT ... SELECT ... WHERE NOT EXISTS} into
+ * {@code user_discount}: the segment is evaluated by the database, users who already hold the
+ * discount are skipped by the statement itself, and {@code OUTPUT inserted.user_id} returns the
+ * users it actually added. Segments (a rank, the buyers of a category) are walked by keyset on
+ * {@code user_id} in chunks of {@link #CHUNK_SIZE}, each in its own transaction, so a segment of a
+ * few hundred thousand users never holds one long lock on the table and a failed run can simply be
+ * started again. Segment assignments run as background jobs and report progress per chunk.
+ */
+@Service
+public class DiscountAssignmentService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiscountAssignmentService.class);
+
+    // SQL Server accepts at most 2100 parameters per statement.
+    private static final int CHUNK_SIZE = 1000;
+
+    public enum Segment {
+        RANK,
+        CATEGORY,
+        USERS
+    }
+
+    private static final String INSERT_CHUNK = """
+            INSERT INTO dbo.user_discount (user_id, discount_id, is_discount_used)
+            OUTPUT inserted.user_id
+            SELECT TOP (:chunkSize) u.user_id, :discountId, 0
+            FROM dbo.[user] u
+            WHERE NOT EXISTS (SELECT 1 FROM dbo.user_discount ud
+                              WHERE ud.user_id = u.user_id AND ud.discount_id = :discountId)
+            """;
+
+    private static final String COUNT_CANDIDATES = """
+            SELECT COUNT(*)
+            FROM dbo.[user] u
+            WHERE NOT EXISTS (SELECT 1 FROM dbo.user_discount ud
+                              WHERE ud.user_id = u.user_id AND ud.discount_id = :discountId)
+            """;
+
+    private static final String RANK_PREDICATE = """
+              AND EXISTS (SELECT 1 FROM dbo.user_rank ur
+                          WHERE ur.user_id = u.user_id AND ur.rank_id = :rankId)
+            """;
+
+    // Orders that were accepted: paid or confirmed, not cancelled, rejected or returned.
+    private static final String CATEGORY_PREDICATE = """
+              AND EXISTS (SELECT 1 FROM dbo.[order] o
+                          JOIN dbo.order_variation_single ovs ON ovs.order_id = o.order_id
+                          JOIN dbo.variation_single vs ON vs.variation_single_id = ovs.variation_single_id
+                          JOIN dbo.variation v ON v.variation_id = vs.variation_id
+                          JOIN dbo.product_category pc ON pc.product_id = v.product_id
+                          WHERE o.user_id = u.user_id AND pc.category_id = :categoryId
+                            AND o.order_status_id IN (:purchasedStatuses))
+            """;
+
+    private static final String USERS_PREDICATE = """
+              AND u.user_id IN (:userIds)
+            """;
+
+    private static final List<Integer> PURCHASED_STATUSES = List.of(
+            OrderStateMachine.PROCESSING, OrderStateMachine.SHIPPING, OrderStateMachine.COMPLETED);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final DiscountRepository discountRepository;
+    private final RankRepository rankRepository;
+    private final CategoryRepository categoryRepository;
+    private final DiscountEligibilityService discountEligibilityService;
+    private final BackgroundJobService backgroundJobService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public DiscountAssignmentService(NamedParameterJdbcTemplate jdbcTemplate,
+                                     DiscountRepository discountRepository,
+                                     RankRepository rankRepository,
+                                     CategoryRepository categoryRepository,
+                                     DiscountEligibilityService discountEligibilityService,
+                                     BackgroundJobService backgroundJobService,
+                                     PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.discountRepository = discountRepository;
+        this.rankRepository = rankRepository;
+        this.categoryRepository = categoryRepository;
+        this.discountEligibilityService = discountEligibilityService;
+        this.backgroundJobService = backgroundJobService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Validates the segment and queues its assignment.
+     *
+     * @return the id of the background job to poll
+     */
+    public String startAssignment(int discountId, DiscountAssignmentDTO request, String requestedBy) {
+        Discount discount = discountRepository.findById(discountId)
+                .orElseThrow(() -> new ResourceNotFoundException("Discount not found."));
+        Segment segment = parseSegment(request.getSegment());
+        MapSqlParameterSource params = new MapSqlParameterSource("discountId", discountId);
+        List<UUID> userIds = List.of();
+        switch (segment) {
+            case RANK -> {
+                if (request.getRankId() == null || !rankRepository.existsById(request.getRankId())) {
+                    throw new IllegalArgumentException("Rank not found.");
+                }
+                params.addValue("rankId", request.getRankId());
+            }
+            case CATEGORY -> {
+                if (request.getCategoryId() == null || !categoryRepository.existsById(request.getCategoryId())) {
+                    throw new IllegalArgumentException("Category not found.");
+                }
+                params.addValue("categoryId", request.getCategoryId());
+                params.addValue("purchasedStatuses", PURCHASED_STATUSES);
+            }
+            case USERS -> {
+                if (request.getUserIds() == null || request.getUserIds().isEmpty()) {
+                    throw new IllegalArgumentException("No user ids given.");
+                }
+                userIds = parseUserIds(request.getUserIds());
+            }
+        }
+
+        BigDecimal minimumOrderValue = discount.getDiscountMinimumOrderValue();
+        List<UUID> uploadedIds = userIds;
+        return backgroundJobService.submit("discount-assignment", requestedBy, progress -> {
+            progress.put("discountId", discountId);
+            progress.put("segment", segment.name());
+            long assigned = segment == Segment.USERS
+                    ? assignUploaded(discountId, minimumOrderValue, uploadedIds, progress)
+                    : assignSegment(discountId, minimumOrderValue, segment, params, progress);
+            logger.info("Discount {} assigned to {} users of segment {}.", discountId, assigned, segment);
+        });
+    }
+
+    /**
+     * Assigns the discount to the given users in the caller's transaction.
+     *
+     * @return the users that did not hold it yet
+     * @throws ResourceNotFoundException when one of the ids is not a user
+     */
+    @Transactional
+    public List<UUID> assignUsers(int discountId, Collection<UUID> userIds) {
+        List<UUID> ids = new ArrayList<>(new LinkedHashSet<>(userIds));
+        for (int from = 0; from < ids.size(); from += CHUNK_SIZE) {
+            List<UUID> chunk = ids.subList(from, Math.min(from + CHUNK_SIZE, ids.size()));
+            Set<UUID> existing = new HashSet<>(jdbcTemplate.queryForList(
+                    "SELECT u.user_id FROM dbo.[user] u WHERE u.user_id IN (:userIds)",
+                    new MapSqlParameterSource("userIds", chunk), UUID.class));
+            for (UUID userId : chunk) {
+                if (!existing.contains(userId)) {
+                    throw new ResourceNotFoundException("User not found with ID: " + userId);
+                }
+            }
+        }
+
+        List<UUID> inserted = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += CHUNK_SIZE) {
+            List<UUID> chunk = ids.subList(from, Math.min(from + CHUNK_SIZE, ids.size()));
+            inserted.addAll(insertChunk(usersParams(discountId, chunk), USERS_PREDICATE, chunk.size(), null));
+        }
+        return inserted;
+    }
+
+    private long assignSegment(int discountId, BigDecimal minimumOrderValue, Segment segment,
+                               MapSqlParameterSource params, BackgroundJobService.Progress progress) {
+        String predicate = segment == Segment.RANK ? RANK_PREDICATE : CATEGORY_PREDICATE;
+        Long candidates = jdbcTemplate.queryForObject(COUNT_CANDIDATES + predicate, params, Long.class);
+        progress.setTotal(candidates != null ? candidates : 0);
+
+        long assigned = 0;
+        long chunks = 0;
+        UUID after = null;
+        while (true) {
+            UUID cursor = after;
+            List<UUID> inserted = transactionTemplate.execute(status -> {
+                List<UUID> ids = insertChunk(params, predicate, CHUNK_SIZE, cursor);
+                discountEligibilityService.discountAssigned(ids, discountId, minimumOrderValue);
+                return ids;
+            });
+            if (inserted == null || inserted.isEmpty()) {
+                break;
+            }
+            // Rows come back in no particular order; the highest id is where the next chunk starts.
+            after = maxUserId(inserted);
+            assigned += inserted.size();
+            progress.advance(inserted.size());
+            progress.put("assigned", assigned);
+            progress.put("chunks", ++chunks);
+        }
+        progress.put("assigned", assigned);
+        return assigned;
+    }
+
+    private long assignUploaded(int discountId, BigDecimal minimumOrderValue, List<UUID> userIds,
+                                BackgroundJobService.Progress progress) {
+        progress.setTotal(userIds.size());
+        long assigned = 0;
+        long chunks = 0;
+        for (int from = 0; from < userIds.size(); from += CHUNK_SIZE) {
+            List<UUID> chunk = userIds.subList(from, Math.min(from + CHUNK_SIZE, userIds.size()));
+            List<UUID> inserted = transactionTemplate.execute(status -> {
+                List<UUID> ids = insertChunk(usersParams(discountId, chunk), USERS_PREDICATE, chunk.size(), null);
+                discountEligibilityService.discountAssigned(ids, discountId, minimumOrderValue);
+                return ids;
+            });
+            assigned += inserted != null ? inserted.size() : 0;
+            progress.advance(chunk.size());
+            progress.put("assigned", assigned);
+            // Already holding the discount, or not a user at all.
+            progress.put("skipped", from + chunk.size() - assigned);
+            progress.put("chunks", ++chunks);
+        }
+        return assigned;
+    }
+
+    /**
+     * Inserts the next {@code limit} users of the segment that do not hold the discount yet, in
+     * {@code user_id} order after {@code after} when given.
+     */
+    private List<UUID> insertChunk(MapSqlParameterSource params, String predicate, int limit, UUID after) {
+        StringBuilder sql = new StringBuilder(INSERT_CHUNK).append(predicate);
+        MapSqlParameterSource chunkParams = new MapSqlParameterSource(params.getValues())
+                .addValue("chunkSize", limit);
+        if (after != null) {
+            sql.append("  AND u.user_id > :after\n");
+            chunkParams.addValue("after", after);
+        }
+        sql.append("ORDER BY u.user_id");
+        return jdbcTemplate.query(sql.toString(), chunkParams, (rs, rowNum) -> rs.getObject(1, UUID.class));
+    }
+
+    private static MapSqlParameterSource usersParams(int discountId, List<UUID> userIds) {
+        return new MapSqlParameterSource("discountId", discountId).addValue("userIds", userIds);
+    }
+
+    // The database orders uniqueidentifier differently from UUID.compareTo, so the cursor is
+    // taken from the database's own ordering.
+    private UUID maxUserId(List<UUID> userIds) {
+        return jdbcTemplate.queryForObject(
+                "SELECT MAX(u.user_id) FROM dbo.[user] u WHERE u.user_id IN (:userIds)",
+                new MapSqlParameterSource("userIds", userIds), UUID.class);
+    }
+
+    private static Segment parseSegment(String segment) {
+        if (segment == null) {
+            throw new IllegalArgumentException("Segment is required.");
+        }
+        try {
+            return Segment.valueOf(segment.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown segment: " + segment);
+        }
+    }
+
+    private static List<UUID> parseUserIds(List<String> userIds) {
+        Set<UUID> ids = new LinkedHashSet<>();
+        for (String userId : userIds) {
+            try {
+                ids.add(UUID.fromString(userId.trim()));
+            } catch (IllegalArgumentException | NullPointerException e) {
+                throw new IllegalArgumentException("Invalid user id: " + userId);
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+}
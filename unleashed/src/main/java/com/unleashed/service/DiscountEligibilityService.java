@@ -0,0 +1,189 @@
+package com.unleashed.service;
+
+import com.unleashed.repo.UserDiscountRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-user index of the discounts a customer still holds, for checkout.
+ * <p>
+ * A user's entry is loaded on first use with one query: their unused, not expired discounts,
+ * sorted by minimum order value. The discounts a cart total qualifies for are then a prefix found
+ * by binary search, which {@link PricingService} ranks by saving against its in-memory rules; those
+ * rules only hold ACTIVE discounts, so activation and expiry need nothing here. Assignment and use
+ * patch the cached entries once their transaction commits, and edits to a discount clear the index.
+ */
+@Service
+public class DiscountEligibilityService {
+
+    // Entries are small; past this many users the index starts over rather than tracking recency.
+    private static final int MAX_CACHED_USERS = 50_000;
+
+    /**
+     * Parallel arrays sorted by minimum order value, never modified once built.
+     */
+    private record Entry(int[] discountIds, BigDecimal[] minimumOrderValues) {
+
+        int eligibleCount(BigDecimal cartTotal) {
+            int low = 0;
+            int high = minimumOrderValues.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (minimumOrderValues[mid].compareTo(cartTotal) <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        boolean contains(int discountId) {
+            for (int id : discountIds) {
+                if (id == discountId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        Entry with(int discountId, BigDecimal minimumOrderValue) {
+            if (contains(discountId)) {
+                return this;
+            }
+            int at = eligibleCount(minimumOrderValue);
+            int[] ids = new int[discountIds.length + 1];
+            BigDecimal[] minimums = new BigDecimal[ids.length];
+            System.arraycopy(discountIds, 0, ids, 0, at);
+            System.arraycopy(minimumOrderValues, 0, minimums, 0, at);
+            ids[at] = discountId;
+            minimums[at] = minimumOrderValue;
+            System.arraycopy(discountIds, at, ids, at + 1, discountIds.length - at);
+            System.arraycopy(minimumOrderValues, at, minimums, at + 1, discountIds.length - at);
+            return new Entry(ids, minimums);
+        }
+
+        Entry without(int discountId) {
+            if (!contains(discountId)) {
+                return this;
+            }
+            int[] ids = new int[discountIds.length - 1];
+            BigDecimal[] minimums = new BigDecimal[ids.length];
+            for (int i = 0, j = 0; i < discountIds.length; i++) {
+                if (discountIds[i] != discountId) {
+                    ids[j] = discountIds[i];
+                    minimums[j++] = minimumOrderValues[i];
+                }
+            }
+            return new Entry(ids, minimums);
+        }
+    }
+
+    private final UserDiscountRepository userDiscountRepository;
+    private final PricingService pricingService;
+    private final ConcurrentHashMap<UUID, Entry> entries = new ConcurrentHashMap<>();
+
+    @Autowired
+    public DiscountEligibilityService(UserDiscountRepository userDiscountRepository,
+                                      PricingService pricingService) {
+        this.userDiscountRepository = userDiscountRepository;
+        this.pricingService = pricingService;
+    }
+
+    /**
+     * Ids of the user's best {@code limit} discounts for this cart total, largest saving first.
+     */
+    public List<Integer> bestDiscounts(UUID userId, BigDecimal cartTotal, int limit) {
+        Entry entry = entryFor(userId);
+        int eligible = entry.eligibleCount(cartTotal);
+        if (eligible == 0) {
+            return List.of();
+        }
+        List<Integer> candidates = new ArrayList<>(eligible);
+        for (int i = 0; i < eligible; i++) {
+            candidates.add(entry.discountIds()[i]);
+        }
+        return pricingService.bestDiscounts(candidates, cartTotal, limit);
+    }
+
+    /**
+     * Whether the discount is assigned to the user and not used yet, whatever its status.
+     */
+    public boolean holdsUnused(UUID userId, int discountId) {
+        return entryFor(userId).contains(discountId);
+    }
+
+    public void discountAssigned(Collection<UUID> userIds, int discountId, BigDecimal minimumOrderValue) {
+        BigDecimal minimum = minimumOrderValue != null ? minimumOrderValue : BigDecimal.ZERO;
+        afterCommit(() -> userIds.forEach(userId ->
+                entries.computeIfPresent(userId, (id, entry) -> entry.with(discountId, minimum))));
+    }
+
+    public void discountUsed(UUID userId, int discountId) {
+        afterCommit(() -> entries.computeIfPresent(userId, (id, entry) -> entry.without(discountId)));
+    }
+
+    public void discountRemoved(UUID userId, int discountId) {
+        discountUsed(userId, discountId);
+    }
+
+    /**
+     * Drops every entry, for changes to a discount itself (minimum order value, deletion, reuse).
+     */
+    public void clear() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    entries.clear();
+                }
+            });
+        } else {
+            entries.clear();
+        }
+    }
+
+    private Entry entryFor(UUID userId) {
+        Entry entry = entries.get(userId);
+        if (entry != null) {
+            return entry;
+        }
+        if (entries.size() >= MAX_CACHED_USERS) {
+            entries.clear();
+        }
+        // Loading inside computeIfAbsent makes a concurrent patch for this user wait for the load
+        // and apply on top of it, so a commit that lands mid-load is never lost.
+        return entries.computeIfAbsent(userId, this::load);
+    }
+
+    private Entry load(UUID userId) {
+        List<Object[]> rows = new ArrayList<>(userDiscountRepository.findUnusedDiscountThresholds(userId));
+        rows.sort(Comparator.comparing(row -> row[1] != null ? (BigDecimal) row[1] : BigDecimal.ZERO));
+        int[] ids = new int[rows.size()];
+        BigDecimal[] minimums = new BigDecimal[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            ids[i] = (Integer) rows.get(i)[0];
+            minimums[i] = rows.get(i)[1] != null ? (BigDecimal) rows.get(i)[1] : BigDecimal.ZERO;
+        }
+        return new Entry(ids, minimums);
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.unleashed.service;
+
+import com.unleashed.entity.Discount;
+import com.unleashed.repo.DiscountRepository;
+import com.unleashed.repo.DiscountStatusRespository;
+import com.unleashed.repo.UserDiscountRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * Redeems a discount for a user at checkout.
+ * <p>
+ * Both halves are conditional UPDATEs in the checkout transaction: the user's copy is marked used
+ * only if it was unused, and a usage slot is taken only while the count is under the limit. No
+ * count is read and written back from Java, so concurrent checkouts can neither exceed the limit
+ * nor redeem the same copy twice. If either half fails the transaction rolls back the other. The
+ * redemption that takes the last slot is the only one that moves the discount to INACTIVE.
+ * <p>
+ * The slot UPDATE locks the discount row until the checkout commits, so callers should redeem
+ * as late in their transaction as they can.
+ */
+@Service
+public class DiscountRedemptionService {
+
+    private static final int DISCOUNT_STATUS_INACTIVE = 1;
+
+    private final DiscountRepository discountRepository;
+    private final UserDiscountRepository userDiscountRepository;
+    private final DiscountStatusRespository discountStatusRespository;
+    private final PricingService pricingService;
+    private final DiscountEligibilityService discountEligibilityService;
+
+    @Autowired
+    public DiscountRedemptionService(DiscountRepository discountRepository,
+                                     UserDiscountRepository userDiscountRepository,
+                                     DiscountStatusRespository discountStatusRespository,
+                                     PricingService pricingService,
+                                     DiscountEligibilityService discountEligibilityService) {
+        this.discountRepository = discountRepository;
+        this.userDiscountRepository = userDiscountRepository;
+        this.discountStatusRespository = discountStatusRespository;
+        this.pricingService = pricingService;
+        this.discountEligibilityService = discountEligibilityService;
+    }
+
+    @Transactional
+    public void redeem(String discountCode, UUID userId) {
+        Discount discount = discountRepository.findByDiscountCode(discountCode)
+                .orElseThrow(() -> new IllegalArgumentException("Discount code not found."));
+        redeem(discount.getDiscountId(), userId);
+    }
+
+    @Transactional
+    public void redeem(int discountId, UUID userId) {
+        if (discountRepository.claimUsageSlot(discountId) == 0) {
+            throw new IllegalStateException("This discount has been fully used or is no longer active.");
+        }
+
+        // A refused user copy rolls the claimed slot back with the transaction.
+        if (userDiscountRepository.markUsed(userId, discountId, OffsetDateTime.now()) == 0) {
+            throw new IllegalStateException(userDiscountRepository.existsById_UserIdAndId_DiscountId(userId, discountId)
+                    ? "User has already used this discount."
+                    : "User has not been assigned this discount.");
+        }
+        discountEligibilityService.discountUsed(userId, discountId);
+
+        if (discountRepository.deactivateIfExhausted(discountId,
+                discountStatusRespository.getReferenceById(DISCOUNT_STATUS_INACTIVE)) > 0) {
+            pricingService.invalidate();
+        }
+    }
+}
@@ -5,7 +5,6 @@ import com.unleashed.dto.DiscountUserViewDTO;
 import com.unleashed.dto.ResponseDTO;
 import com.unleashed.dto.mapper.UserMapper;
 import com.unleashed.entity.*;
-import com.unleashed.entity.composite.UserDiscountId;
 import com.unleashed.repo.*;
 import com.unleashed.repo.specification.DiscountSpecification;
 import com.unleashed.util.JwtUtil;
@@ -43,13 +42,22 @@ public class DiscountService {
     private final DiscountStatusRespository discountStatusRespository;
     private final DiscountTypeRepository discountTypeRepository;
     private final RankRepository rankRepository;
+    private final PricingService pricingService;
+    private final DiscountEligibilityService discountEligibilityService;
+    private final DiscountRedemptionService discountRedemptionService;
+    private final DiscountAssignmentService discountAssignmentService;
+    private final EntityLookupService entityLookupService;
 
     @Autowired
     public DiscountService(DiscountRepository discountRepository,
                            UserDiscountRepository userDiscountRepository,
                            UserRepository userRepository,
                            JwtUtil jwtUtil,
-                           UserMapper userMapper, DiscountStatusRespository discountStatusRespository, DiscountTypeRepository discountTypeRepository, RankRepository rankRepository) {
+                           UserMapper userMapper, DiscountStatusRespository discountStatusRespository, DiscountTypeRepository discountTypeRepository, RankRepository rankRepository,
+                           PricingService pricingService, DiscountEligibilityService discountEligibilityService,
+                           DiscountRedemptionService discountRedemptionService,
+                           DiscountAssignmentService discountAssignmentService,
+                           EntityLookupService entityLookupService) {
         this.discountRepository = discountRepository;
         this.userDiscountRepository = userDiscountRepository;
         this.userRepository = userRepository;
@@ -58,6 +66,11 @@ public class DiscountService {
         this.discountStatusRespository = discountStatusRespository;
         this.discountTypeRepository = discountTypeRepository;
         this.rankRepository = rankRepository;
+        this.pricingService = pricingService;
+        this.discountEligibilityService = discountEligibilityService;
+        this.discountRedemptionService = discountRedemptionService;
+        this.discountAssignmentService = discountAssignmentService;
+        this.entityLookupService = entityLookupService;
     }
 
     @Transactional
@@ -72,6 +85,7 @@ public class DiscountService {
         updateDiscountsToActive(inactiveStatus, activeStatus);
         updateDiscountsToInactiveOnUsage(activeStatus, inactiveStatus);
         updateDiscountsToExpired(expiredStatus);
+        pricingService.invalidate();
     }
 
     private void updateDiscountsToActive(DiscountStatus inactiveStatus, DiscountStatus activeStatus) {
@@ -148,6 +162,7 @@ public class DiscountService {
         discount.setDiscountUsageCount(0);
         discount.setDiscountCreatedAt(OffsetDateTime.now());
 
+        pricingService.invalidate();
         return convertToDTO(discountRepository.save(discount));
     }
 
@@ -166,6 +181,8 @@ public class DiscountService {
             setInitialDiscountStatus(existingDiscount);
 
             existingDiscount.setDiscountUpdatedAt(OffsetDateTime.now(ZoneId.systemDefault()));
+            pricingService.invalidate();
+            discountEligibilityService.clear();
 
             return Optional.of(convertToDTO(discountRepository.save(existingDiscount)));
         }).orElse(Optional.empty());
@@ -249,13 +266,17 @@ public class DiscountService {
     public Optional<DiscountDTO> endDiscount(int discountId) {
         return discountRepository.findById(discountId).map(discount -> {
             discount.setDiscountStatus(discountStatusRespository.getReferenceById(1)); // 1 = INACTIVE
-            return convertToDTO(discountRepository.save(discount));
+            DiscountDTO ended = convertToDTO(discountRepository.save(discount));
+            pricingService.invalidate();
+            return ended;
         });
     }
 
     @Transactional
     public void deleteDiscount(int discountId) {
         discountRepository.deleteById(discountId);
+        pricingService.invalidate();
+        discountEligibilityService.clear();
     }
 
     public boolean checkDiscountUsage(String userId, String discountCode) {
@@ -278,19 +299,10 @@ public class DiscountService {
     public void addUsersToDiscount(List<String> userIds, Integer discountId) {
         Discount discount = discountRepository.findById(discountId)
                 .orElseThrow(() -> new ResourceNotFoundException("Discount not found."));
-        List<UserDiscount> userDiscounts = new ArrayList<>();
-        for (String userIdStr : userIds) {
-            UUID userUuid = UUID.fromString(userIdStr);
-            if (!userDiscountRepository.existsById_UserIdAndId_DiscountId(userUuid, discountId)) {
-                User user = userRepository.findById(userUuid)
-                        .orElseThrow(() -> new ResourceNotFoundException("User not found with ID: " + userIdStr));
-                UserDiscountId userDiscountId = new UserDiscountId(discount.getDiscountId(), user.getUserId());
-                UserDiscount userDiscount = new UserDiscount(userDiscountId, discount, user, false, null);
-                userDiscounts.add(userDiscount);
-            }
-        }
-        if (!userDiscounts.isEmpty()) {
-            userDiscountRepository.saveAll(userDiscounts);
+        List<UUID> userUuids = userIds.stream().map(UUID::fromString).collect(Collectors.toList());
+        List<UUID> assignedUserIds = discountAssignmentService.assignUsers(discountId, userUuids);
+        if (!assignedUserIds.isEmpty()) {
+            discountEligibilityService.discountAssigned(assignedUserIds, discountId, discount.getDiscountMinimumOrderValue());
         }
     }
 
@@ -299,25 +311,25 @@ public class DiscountService {
         UUID userUuid = UUID.fromString(userId);
         userDiscountRepository.findById_UserIdAndId_DiscountId(userUuid, discountId)
                 .ifPresent(userDiscountRepository::delete);
+        discountEligibilityService.discountRemoved(userUuid, discountId);
     }
 
     public Map<String, Object> getUsersByDiscountId(Integer discountId) {
-        List<UserDiscount> userDiscounts = userDiscountRepository.findAllById_DiscountId(discountId);
-        Set<UUID> allowedUserIds = userDiscounts.stream()
-                .map(userDiscount -> userDiscount.getId().getUserId())
+        List<DiscountUserViewDTO> users = userDiscountRepository
+                .findUserViewsByDiscountId(discountId, Pageable.unpaged()).getContent();
+        Set<UUID> allowedUserIds = users.stream()
+                .map(user -> UUID.fromString(user.getUserId()))
                 .collect(Collectors.toSet());
-        List<DiscountUserViewDTO> users = userDiscounts.stream()
-                .map(userDiscount -> userRepository.findById(userDiscount.getId().getUserId())
-                        .map(user -> new DiscountUserViewDTO(user.getUserId().toString(), user.getUserUsername(), user.getUserEmail(), user.getUserFullname(), user.getUserImage()))
-                        .orElse(null))
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
         Map<String, Object> result = new HashMap<>();
         result.put("users", users);
         result.put("allowedUserIds", allowedUserIds);
         return result;
     }
 
+    public Page<DiscountUserViewDTO> getUsersPageByDiscountId(Integer discountId, int page, int size) {
+        return userDiscountRepository.findUserViewsByDiscountId(discountId, PageRequest.of(page, size));
+    }
+
     public ResponseEntity<?> checkUserDiscount(String discountCode, BigDecimal subTotal) {
         DecimalFormat decimalFormat = new DecimalFormat("#,##0.00");
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
@@ -328,7 +340,7 @@ public class DiscountService {
         if (currentUsername == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(new ResponseDTO(HttpStatus.UNAUTHORIZED.value(), "User not authenticated"));
         }
-        UUID userId = userRepository.findByUserUsername(currentUsername).map(User::getUserId).orElse(null);
+        UUID userId = entityLookupService.findUserByUsername(currentUsername).map(User::getUserId).orElse(null);
         if (userId == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ResponseDTO(HttpStatus.NOT_FOUND.value(), "User ID not found for authenticated user"));
         }
@@ -336,55 +348,29 @@ public class DiscountService {
         if (discountOpt.isEmpty()) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ResponseDTO(HttpStatus.NOT_FOUND.value(), "Discount code not found"));
         }
-        Map<String, Object> discountUsersData = getUsersByDiscountId(discountOpt.get().getDiscountId());
-        Set<UUID> allowedUserIds = (Set<UUID>) discountUsersData.get("allowedUserIds");
-        if (!allowedUserIds.contains(userId)) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(new ResponseDTO(HttpStatus.FORBIDDEN.value(), "User is not available for this discount"));
-        }
-        boolean hasDiscount = checkDiscountUsage(userId.toString(), discountCode);
-        if (!hasDiscount) {
-            DiscountDTO discountDTO = discountOpt.get();
-            if (!"ACTIVE".equalsIgnoreCase(discountDTO.getDiscountStatus().getDiscountStatusName())) {
-                return ResponseEntity.status(HttpStatus.GONE).body(new ResponseDTO(HttpStatus.GONE.value(), "Discount is not active."));
+        DiscountDTO discountDTO = discountOpt.get();
+        if (!discountEligibilityService.holdsUnused(userId, discountDTO.getDiscountId())) {
+            // Not in the index: never assigned, already used, or expired.
+            Optional<UserDiscount> assignment = userDiscountRepository.findById_UserIdAndId_DiscountId(userId, discountDTO.getDiscountId());
+            if (assignment.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(new ResponseDTO(HttpStatus.FORBIDDEN.value(), "User is not available for this discount"));
             }
-            if (discountDTO.getMinimumOrderValue() != null && discountDTO.getMinimumOrderValue().compareTo(subTotal) <= 0) {
-                return ResponseEntity.ok(discountDTO);
-            } else if (discountDTO.getMinimumOrderValue() == null) {
-                return ResponseEntity.ok(discountDTO);
-            } else {
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ResponseDTO(HttpStatus.BAD_REQUEST.value(), "The minimum order value is " + decimalFormat.format(discountDTO.getMinimumOrderValue()) + ". Please add more items to your cart."));
+            if (assignment.get().getIsDiscountUsed()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ResponseDTO(HttpStatus.NOT_FOUND.value(), "User used this discount"));
             }
-        } else {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ResponseDTO(HttpStatus.NOT_FOUND.value(), "User used this discount"));
         }
+        if (!"ACTIVE".equalsIgnoreCase(discountDTO.getDiscountStatus().getDiscountStatusName())) {
+            return ResponseEntity.status(HttpStatus.GONE).body(new ResponseDTO(HttpStatus.GONE.value(), "Discount is not active."));
+        }
+        if (discountDTO.getMinimumOrderValue() != null && discountDTO.getMinimumOrderValue().compareTo(subTotal) > 0) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ResponseDTO(HttpStatus.BAD_REQUEST.value(), "The minimum order value is " + decimalFormat.format(discountDTO.getMinimumOrderValue()) + ". Please add more items to your cart."));
+        }
+        return ResponseEntity.ok(discountDTO);
     }
 
     @Transactional
     public void updateUsageLimit(String discountCode, String userId) {
-        Optional<Discount> discountOpt = discountRepository.findByDiscountCode(discountCode);
-        if (discountOpt.isEmpty()) {
-            throw new IllegalArgumentException("Discount code not found.");
-        }
-        Discount discount = discountOpt.get();
-        if (discount.getDiscountUsageLimit() != null && discount.getDiscountUsageCount() >= discount.getDiscountUsageLimit()) {
-            throw new IllegalStateException("This discount has been fully used.");
-        }
-        UserDiscount userDiscount = userDiscountRepository.findById_UserIdAndId_DiscountId(UUID.fromString(userId), discount.getDiscountId())
-                .orElseThrow(() -> new IllegalStateException("User has not been assigned this discount."));
-        if (userDiscount.getIsDiscountUsed()) {
-            throw new IllegalStateException("User has already used this discount.");
-        }
-        userDiscount.setIsDiscountUsed(true);
-        userDiscount.setDiscountUsedAt(OffsetDateTime.now());
-        userDiscountRepository.save(userDiscount);
-        discount.setDiscountUsageCount(discount.getDiscountUsageCount() + 1);
-        if (discount.getDiscountUsageLimit() != null && discount.getDiscountUsageLimit().equals(discount.getDiscountUsageCount())) {
-            DiscountStatus inactiveDiscountStatus = discountStatusRespository.findByDiscountStatusName("INACTIVE");
-            if (inactiveDiscountStatus != null) {
-                discount.setDiscountStatus(inactiveDiscountStatus);
-            }
-        }
-        discountRepository.save(discount);
+        discountRedemptionService.redeem(discountCode, UUID.fromString(userId));
     }
 
     public DiscountDTO convertToDTO(Discount discount) {
@@ -462,59 +448,17 @@ public class DiscountService {
 
     @Transactional(readOnly = true)
     public List<DiscountDTO> getBestDiscountsForCheckout(String userId, BigDecimal cartTotal) {
-        // 1. Get all discount IDs assigned to the user
-        List<Integer> allUserDiscountIds = userDiscountRepository.findDiscountIdsByUserId(UUID.fromString(userId));
-        if (allUserDiscountIds.isEmpty()) {
+        // The ranking itself is answered from memory; only the five winners are loaded for display.
+        List<Integer> bestDiscountIds = discountEligibilityService.bestDiscounts(UUID.fromString(userId), cartTotal, 5);
+        if (bestDiscountIds.isEmpty()) {
             return Collections.emptyList();
         }
-
-        // 2. Get the usage status for all of the user's discounts
-        List<UserDiscount> userDiscounts = userDiscountRepository.findAllById_UserId(UUID.fromString(userId));
-        Set<Integer> usedDiscountIds = userDiscounts.stream()
-                .filter(UserDiscount::getIsDiscountUsed)
-                .map(ud -> ud.getId().getDiscountId())
-                .collect(Collectors.toSet());
-
-        // 3. Fetch all discount entities that the user has but has not yet used
-        List<Integer> unusedDiscountIds = allUserDiscountIds.stream()
-                .filter(id -> !usedDiscountIds.contains(id))
-                .collect(Collectors.toList());
-
-        if (unusedDiscountIds.isEmpty()) {
-            return Collections.emptyList();
-        }
-
-        List<Discount> potentialDiscounts = discountRepository.findAllById(unusedDiscountIds);
-
-        // 4. Filter for ACTIVE discounts where the cart total meets the minimum order value
-        List<Discount> applicableDiscounts = potentialDiscounts.stream()
-                .filter(d -> "ACTIVE".equalsIgnoreCase(d.getDiscountStatus().getDiscountStatusName()))
-                .filter(d -> d.getDiscountMinimumOrderValue() == null || cartTotal.compareTo(d.getDiscountMinimumOrderValue()) >= 0)
-                .toList();
-
-        // 5. Calculate the actual saving for each discount and sort by the highest saving
-        return applicableDiscounts.stream()
-                .map(discount -> {
-                    BigDecimal savings = BigDecimal.ZERO;
-                    // Percentage-based discount
-                    if (discount.getDiscountType().getId() == 1) { // 1 = PERCENTAGE
-                        BigDecimal potentialSavings = cartTotal.multiply(discount.getDiscountValue().divide(BigDecimal.valueOf(100)));
-                        if (discount.getDiscountMaximumValue() != null && potentialSavings.compareTo(discount.getDiscountMaximumValue()) > 0) {
-                            savings = discount.getDiscountMaximumValue();
-                        } else {
-                            savings = potentialSavings;
-                        }
-                    }
-                    // Flat amount discount
-                    else if (discount.getDiscountType().getId() == 2) { // 2 = FLAT
-                        savings = discount.getDiscountValue();
-                    }
-                    // Return a pair of the discount and its calculated savings
-                    return new AbstractMap.SimpleEntry<>(discount, savings);
-                })
-                .sorted(Comparator.comparing(AbstractMap.SimpleEntry<Discount, BigDecimal>::getValue).reversed()) // Sort descending by savings
-                .limit(5) // Get the top 5
-                .map(entry -> convertToDTO(entry.getKey())) // Convert back to DTO
+        Map<Integer, Discount> discounts = discountRepository.findAllById(bestDiscountIds).stream()
+                .collect(Collectors.toMap(Discount::getDiscountId, discount -> discount));
+        return bestDiscountIds.stream()
+                .map(discounts::get)
+                .filter(Objects::nonNull)
+                .map(this::convertToDTO)
                 .collect(Collectors.toList());
     }
 
@@ -1,34 +1,206 @@
 package com.unleashed.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.unleashed.config.EmailOutboxProperties;
+import com.unleashed.entity.EmailOutbox;
+import com.unleashed.repo.EmailOutboxRepository;
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.Context;
 
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.*;
+
+/**
+ * Outbox-backed mail delivery.
+ * <p>
+ * Callers only insert an {@link EmailOutbox} row, inside their own transaction, so an email exists
+ * exactly when the business change that triggered it commits and survives restarts. The scheduler
+ * calls {@link #dispatchPendingEmails()}, which claims due rows in batches through an
+ * {@link OutboxDispatcher} and hands each batch to the bounded {@code emailTaskExecutor}. A worker
+ * renders the batch from the (cached) Thymeleaf templates and sends it with a single
+ * {@code JavaMailSender.send(MimeMessage...)} call, which keeps one SMTP connection open for the
+ * whole batch. Failed messages are retried with exponential backoff.
+ * <p>
+ * For local runs and tests point {@code spring.mail.host}/{@code spring.mail.port} at any fake SMTP
+ * sink (MailHog, smtp4dev, ...); nothing else needs to change.
+ */
 @Service
 public class EmailService {
 
+    private static final Logger logger = LoggerFactory.getLogger(EmailService.class);
+    private static final TypeReference<Map<String, Object>> VARIABLES_TYPE = new TypeReference<>() {
+    };
+
     private final JavaMailSender mailSender;
+    private final EmailOutboxRepository emailOutboxRepository;
+    private final ITemplateEngine templateEngine;
+    private final ObjectMapper objectMapper;
+    private final OutboxDispatcher dispatcher;
 
     @Autowired
-    public EmailService(JavaMailSender mailSender) {
+    public EmailService(JavaMailSender mailSender,
+                        EmailOutboxRepository emailOutboxRepository,
+                        ITemplateEngine templateEngine,
+                        ObjectMapper objectMapper,
+                        @Qualifier("emailTaskExecutor") ThreadPoolTaskExecutor emailTaskExecutor,
+                        EmailOutboxProperties properties) {
         this.mailSender = mailSender;
+        this.emailOutboxRepository = emailOutboxRepository;
+        this.templateEngine = templateEngine;
+        this.objectMapper = objectMapper;
+        this.dispatcher = new OutboxDispatcher("emails", new OutboxDispatcher.Handler() {
+            @Override
+            public int releaseStaleClaims(OffsetDateTime claimedBefore) {
+                return emailOutboxRepository.releaseStaleClaims(
+                        EmailOutbox.Status.SENDING, EmailOutbox.Status.PENDING, claimedBefore);
+            }
+
+            @Override
+            public List<Long> findDueIds(OffsetDateTime now, int batchSize) {
+                return emailOutboxRepository.findDueIds(EmailOutbox.Status.PENDING, now, PageRequest.of(0, batchSize));
+            }
+
+            @Override
+            public int claim(List<Long> ids, String claimToken, OffsetDateTime now) {
+                return emailOutboxRepository.claim(
+                        ids, EmailOutbox.Status.PENDING, EmailOutbox.Status.SENDING, claimToken, now);
+            }
+
+            @Override
+            public void processBatch(String claimToken) {
+                deliverBatch(claimToken);
+            }
+        }, emailTaskExecutor, properties);
     }
 
-    @Async
+    @Transactional
     public void sendHtmlMessage(String to, String subject, String text) {
-        MimeMessage message = mailSender.createMimeMessage();
+        emailOutboxRepository.save(EmailOutbox.builder()
+                .recipient(to)
+                .subject(subject)
+                .body(text)
+                .build());
+    }
+
+    /**
+     * Queues an email rendered later, on a mail worker, from {@code templates/<templateName>.html}.
+     * Variables must be JSON friendly (strings, numbers, lists and maps of those).
+     */
+    @Transactional
+    public void sendTemplatedMessage(String to, String subject, String templateName, Map<String, Object> variables) {
+        String payload;
         try {
-            MimeMessageHelper helper = new MimeMessageHelper(message, true);
-            helper.setTo(to);
-            helper.setSubject(subject);
-            helper.setText(text, true); // Set to true to indicate that the text is HTML
-            mailSender.send(message);
-        } catch (MessagingException e) {
-            e.printStackTrace();
+            payload = objectMapper.writeValueAsString(variables);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Email variables for template " + templateName + " are not serializable", e);
+        }
+        emailOutboxRepository.save(EmailOutbox.builder()
+                .recipient(to)
+                .subject(subject)
+                .templateName(templateName)
+                .payload(payload)
+                .build());
+    }
+
+    public void dispatchPendingEmails() {
+        dispatcher.dispatch();
+    }
+
+    private void deliverBatch(String claimToken) {
+        List<EmailOutbox> batch = emailOutboxRepository.findByClaimTokenOrderByIdAsc(claimToken);
+        Map<MimeMessage, EmailOutbox> messages = new LinkedHashMap<>();
+        Map<EmailOutbox, Exception> failures = new IdentityHashMap<>();
+
+        for (EmailOutbox email : batch) {
+            try {
+                messages.put(buildMessage(email), email);
+            } catch (Exception e) {
+                failures.put(email, e);
+            }
         }
+
+        if (!messages.isEmpty()) {
+            try {
+                mailSender.send(messages.keySet().toArray(new MimeMessage[0]));
+            } catch (MailSendException e) {
+                e.getFailedMessages().forEach((message, failure) -> {
+                    EmailOutbox email = messages.get(message);
+                    if (email != null) {
+                        failures.put(email, failure);
+                    }
+                });
+            } catch (MailException e) {
+                // Connection or authentication problem: nothing in the batch went out.
+                messages.values().forEach(email -> failures.put(email, e));
+            }
+        }
+
+        OffsetDateTime now = OffsetDateTime.now();
+        for (EmailOutbox email : batch) {
+            email.setClaimToken(null);
+            Exception failure = failures.get(email);
+            if (failure == null) {
+                email.setStatus(EmailOutbox.Status.SENT);
+                email.setSentAt(now);
+                email.setLastError(null);
+            } else {
+                scheduleRetry(email, failure, now);
+            }
+        }
+        emailOutboxRepository.saveAll(batch);
+    }
+
+    private MimeMessage buildMessage(EmailOutbox email) throws MessagingException, JsonProcessingException {
+        String html = email.getBody();
+        if (email.getTemplateName() != null) {
+            Context context = new Context(Locale.ENGLISH);
+            if (email.getPayload() != null) {
+                context.setVariables(objectMapper.readValue(email.getPayload(), VARIABLES_TYPE));
+            }
+            html = templateEngine.process(email.getTemplateName(), context);
+        }
+
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+        helper.setTo(email.getRecipient());
+        helper.setSubject(email.getSubject());
+        helper.setText(html, true); // Set to true to indicate that the text is HTML
+        return message;
+    }
+
+    private void scheduleRetry(EmailOutbox email, Exception failure, OffsetDateTime now) {
+        int attempts = email.getAttempts() + 1;
+        email.setAttempts(attempts);
+        String error = OutboxDispatcher.errorMessage(failure);
+        email.setLastError(error);
+
+        Duration backoff = dispatcher.retryDelay(attempts);
+        if (backoff == null) {
+            email.setStatus(EmailOutbox.Status.FAILED);
+            logger.error("Giving up on email {} to {} after {} attempts.", email.getId(), email.getRecipient(), attempts, failure);
+            return;
+        }
+
+        email.setStatus(EmailOutbox.Status.PENDING);
+        email.setNextAttemptAt(now.plus(backoff));
+        logger.warn("Email {} to {} failed (attempt {}), retrying in {}: {}",
+                email.getId(), email.getRecipient(), attempts, backoff, error);
     }
 }
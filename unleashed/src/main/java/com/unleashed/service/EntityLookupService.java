@@ -0,0 +1,145 @@
+package com.unleashed.service;
+
+import com.unleashed.entity.Product;
+import com.unleashed.entity.User;
+import com.unleashed.entity.Variation;
+import com.unleashed.repo.ProductRepository;
+import com.unleashed.repo.UserRepository;
+import com.unleashed.repo.VariationRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Read-side lookups of users, products and variations, each loaded at most once per HTTP request.
+ * <p>
+ * The first lookup of a request stores its result, found or not, in a map kept as a request
+ * attribute; later lookups by the same id (or, for users, the same username) return that instance.
+ * {@link com.unleashed.security.JwtAuthFilter} resolves the caller through here, so services asking
+ * for the current user by username get it without another query. Outside a request (schedulers,
+ * background jobs) every call goes straight to the repository.
+ * <p>
+ * A user found by the auth filter is loaded before the request's persistence context opens and is
+ * detached, so this is for reading: code that changes a user, product or variation and relies on
+ * dirty checking loads it through the repository. Hits and misses are counted per entity as
+ * {@code entity.lookup}.
+ */
+@Service
+public class EntityLookupService {
+
+    private static final String CACHE_ATTRIBUTE = EntityLookupService.class.getName() + ".cache";
+
+    private record Key(String entity, Object id) {
+    }
+
+    private final UserRepository userRepository;
+    private final UserDirectoryService userDirectoryService;
+    private final ProductRepository productRepository;
+    private final VariationRepository variationRepository;
+    private final Map<String, Counter> hits = new ConcurrentHashMap<>();
+    private final Map<String, Counter> misses = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public EntityLookupService(UserRepository userRepository,
+                               UserDirectoryService userDirectoryService,
+                               ProductRepository productRepository,
+                               VariationRepository variationRepository,
+                               MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.userDirectoryService = userDirectoryService;
+        this.productRepository = productRepository;
+        this.variationRepository = variationRepository;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public Optional<User> findUserByUsername(String username) {
+        if (username == null) {
+            return Optional.empty();
+        }
+        Optional<User> user = lookup("user", "username:" + username, key -> userDirectoryService.findByUsername(username));
+        // The same user asked for by id later in the request is a hit too.
+        user.ifPresent(found -> remember("user", found.getUserId(), found));
+        return user;
+    }
+
+    public Optional<User> findUserById(UUID userId) {
+        if (userId == null) {
+            return Optional.empty();
+        }
+        Optional<User> user = lookup("user", userId, key -> userRepository.findById(userId));
+        user.ifPresent(found -> remember("user", "username:" + found.getUserUsername(), found));
+        return user;
+    }
+
+    public Optional<Product> findProductById(UUID productId) {
+        if (productId == null) {
+            return Optional.empty();
+        }
+        return lookup("product", productId, key -> productRepository.findById(productId));
+    }
+
+    public Optional<Variation> findVariationById(Integer variationId) {
+        if (variationId == null) {
+            return Optional.empty();
+        }
+        return lookup("variation", variationId, key -> variationRepository.findById(variationId));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Optional<T> lookup(String entity, Object id, Function<Key, Optional<T>> loader) {
+        Map<Key, Optional<?>> cache = requestCache();
+        Key key = new Key(entity, id);
+        if (cache == null) {
+            return loader.apply(key);
+        }
+        Optional<?> cached = cache.get(key);
+        if (cached != null) {
+            counter(hits, entity, "hit").increment();
+            return (Optional<T>) cached;
+        }
+        counter(misses, entity, "miss").increment();
+        Optional<T> loaded = loader.apply(key);
+        cache.put(key, loaded);
+        return loaded;
+    }
+
+    private void remember(String entity, Object id, Object value) {
+        Map<Key, Optional<?>> cache = requestCache();
+        if (cache != null) {
+            cache.putIfAbsent(new Key(entity, id), Optional.of(value));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Key, Optional<?>> requestCache() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return null;
+        }
+        Map<Key, Optional<?>> cache = (Map<Key, Optional<?>>) attributes.getAttribute(CACHE_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (cache == null) {
+            // A streaming response may finish on another thread, hence the concurrent map.
+            cache = new ConcurrentHashMap<>();
+            attributes.setAttribute(CACHE_ATTRIBUTE, cache, RequestAttributes.SCOPE_REQUEST);
+        }
+        return cache;
+    }
+
+    private Counter counter(Map<String, Counter> counters, String entity, String result) {
+        return counters.computeIfAbsent(entity, name -> Counter.builder("entity.lookup")
+                .description("Request-scoped entity lookups; hits are queries saved")
+                .tag("entity", name)
+                .tag("result", result)
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,304 @@
+package com.unleashed.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.unleashed.config.ExportProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Constant-memory CSV / JSON-lines exports.
+ * <p>
+ * Each export is a single forward-only, read-only JDBC query with a fetch size; every row is
+ * written to the response stream as soon as it is read and never kept. Writes to the servlet
+ * stream block while the client is slow, which in turn stops the driver from fetching more rows,
+ * so a slow download holds one connection but no growing heap. Output is flushed after the header
+ * and every {@link #FLUSH_EVERY} rows so the first bytes leave right away.
+ * <p>
+ * Must not be called inside a transaction: a long export would keep it, and its locks, open.
+ */
+@Service
+public class ExportService {
+
+    private static final int FLUSH_EVERY = 500;
+
+    public enum Format {
+        CSV("text/csv", "csv"),
+        JSONL("application/x-ndjson", "jsonl");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public static Format parse(String value) {
+            try {
+                return value == null ? CSV : Format.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown export format: " + value);
+            }
+        }
+    }
+
+    public enum Dataset {
+        STOCK,
+        TRANSACTIONS,
+        ORDERS,
+        REVIEWS;
+
+        public static Dataset parse(String value) {
+            try {
+                return Dataset.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown export: " + value);
+            }
+        }
+    }
+
+    /**
+     * Optional filters. {@code stockId} applies to stock and transactions, {@code statusId} to
+     * orders, the date range to transactions, orders and reviews.
+     */
+    public record ExportFilter(Integer stockId, Integer statusId, OffsetDateTime from, OffsetDateTime to) {
+    }
+
+    private record ExportQuery(String sql, List<Object> parameters) {
+    }
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ExportProperties properties;
+
+    @Autowired
+    public ExportService(JdbcTemplate jdbcTemplate, ExportProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.properties = properties;
+    }
+
+    public void export(Dataset dataset, Format format, ExportFilter filter, OutputStream output) {
+        ExportQuery query = buildQuery(dataset, filter);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), 64 * 1024);
+
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(
+                    query.sql(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(properties.fetchSize());
+            for (int i = 0; i < query.parameters().size(); i++) {
+                statement.setObject(i + 1, query.parameters().get(i));
+            }
+            return statement;
+        }, (ResultSetExtractor<Void>) rs -> {
+            try {
+                writeRows(rs, format, writer);
+            } catch (IOException e) {
+                // Usually the client went away; stop reading and let the connection go.
+                throw new DataAccessResourceFailureException("Export stream closed: " + e.getMessage(), e);
+            }
+            return null;
+        });
+    }
+
+    private void writeRows(ResultSet rs, Format format, Writer writer) throws SQLException, IOException {
+        ResultSetMetaData meta = rs.getMetaData();
+        int columns = meta.getColumnCount();
+        String[] labels = new String[columns];
+        for (int i = 0; i < columns; i++) {
+            labels[i] = meta.getColumnLabel(i + 1);
+        }
+
+        JsonGenerator json = null;
+        if (format == Format.CSV) {
+            for (int i = 0; i < columns; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(csvValue(labels[i]));
+            }
+            writer.write("\r\n");
+        } else {
+            json = JSON_FACTORY.createGenerator(writer);
+            json.setRootValueSeparator(null);
+            // Flushing the generator only hands its buffer to the writer; the writer decides when bytes go out.
+            json.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+        }
+        writer.flush();
+
+        long rows = 0;
+        while (rs.next()) {
+            if (json == null) {
+                for (int i = 0; i < columns; i++) {
+                    if (i > 0) {
+                        writer.write(',');
+                    }
+                    Object value = rs.getObject(i + 1);
+                    writer.write(value == null ? "" : csvValue(value.toString()));
+                }
+                writer.write("\r\n");
+            } else {
+                json.writeStartObject();
+                for (int i = 0; i < columns; i++) {
+                    writeJsonField(json, labels[i], rs.getObject(i + 1));
+                }
+                json.writeEndObject();
+                json.flush();
+                writer.write('\n');
+            }
+            if (++rows % FLUSH_EVERY == 0) {
+                writer.flush();
+            }
+        }
+        if (json != null) {
+            json.flush();
+        }
+        writer.flush();
+    }
+
+    private void writeJsonField(JsonGenerator json, String name, Object value) throws IOException {
+        if (value == null) {
+            json.writeNullField(name);
+        } else if (value instanceof BigDecimal decimal) {
+            json.writeNumberField(name, decimal);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            json.writeNumberField(name, ((Number) value).longValue());
+        } else if (value instanceof Number number) {
+            json.writeNumberField(name, number.doubleValue());
+        } else if (value instanceof Boolean bool) {
+            json.writeBooleanField(name, bool);
+        } else {
+            json.writeStringField(name, value.toString());
+        }
+    }
+
+    private String csvValue(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private ExportQuery buildQuery(Dataset dataset, ExportFilter filter) {
+        List<Object> parameters = new ArrayList<>();
+        StringBuilder sql = new StringBuilder();
+        switch (dataset) {
+            case STOCK -> {
+                sql.append("""
+                        SELECT s.stock_id, s.stock_name, v.variation_id, p.product_id, p.product_name, b.brand_name,
+                               (SELECT STRING_AGG(ct.category_name, '|') FROM dbo.product_category pc
+                                JOIN dbo.category ct ON ct.category_id = pc.category_id
+                                WHERE pc.product_id = p.product_id) AS categories,
+                               sz.size_name, cl.color_name, v.variation_price, sv.stock_quantity
+                        FROM dbo.stock_variation sv
+                        JOIN dbo.stock s ON s.stock_id = sv.stock_id
+                        JOIN dbo.variation v ON v.variation_id = sv.variation_id
+                        JOIN dbo.product p ON p.product_id = v.product_id
+                        LEFT JOIN dbo.brand b ON b.brand_id = p.brand_id
+                        LEFT JOIN dbo.[size] sz ON sz.size_id = v.size_id
+                        LEFT JOIN dbo.color cl ON cl.color_id = v.color_id
+                        WHERE 1 = 1
+                        """);
+                if (filter.stockId() != null) {
+                    sql.append(" AND sv.stock_id = ?");
+                    parameters.add(filter.stockId());
+                }
+                sql.append(" ORDER BY sv.stock_id, sv.variation_id");
+            }
+            case TRANSACTIONS -> {
+                sql.append("""
+                        SELECT t.transaction_id, t.transaction_date, tt.transaction_type_name, s.stock_name,
+                               t.variation_id, p.product_name, sz.size_name, cl.color_name,
+                               t.transaction_quantity, t.transaction_product_price, pr.provider_name,
+                               u.user_username AS incharge_employee
+                        FROM dbo.[transaction] t
+                        LEFT JOIN dbo.transaction_type tt ON tt.transaction_type_id = t.transaction_type_id
+                        LEFT JOIN dbo.stock s ON s.stock_id = t.stock_id
+                        LEFT JOIN dbo.variation v ON v.variation_id = t.variation_id
+                        LEFT JOIN dbo.product p ON p.product_id = v.product_id
+                        LEFT JOIN dbo.[size] sz ON sz.size_id = v.size_id
+                        LEFT JOIN dbo.color cl ON cl.color_id = v.color_id
+                        LEFT JOIN dbo.provider pr ON pr.provider_id = t.provider_id
+                        LEFT JOIN dbo.[user] u ON u.user_id = t.incharge_employee_id
+                        WHERE 1 = 1
+                        """);
+                if (filter.stockId() != null) {
+                    sql.append(" AND t.stock_id = ?");
+                    parameters.add(filter.stockId());
+                }
+                appendDateRange(sql, parameters, "t.transaction_date", filter);
+                sql.append(" ORDER BY t.transaction_id");
+            }
+            case ORDERS -> {
+                sql.append("""
+                        SELECT o.order_id, o.order_tracking_number, o.order_date, os.order_status_name,
+                               u.user_username, o.order_total_amount, pm.payment_method_name, sm.shipping_method_name,
+                               o.order_transaction_reference, o.order_expected_delivery_date, e.user_username AS incharge_employee
+                        FROM dbo.[order] o
+                        LEFT JOIN dbo.order_status os ON os.order_status_id = o.order_status_id
+                        LEFT JOIN dbo.[user] u ON u.user_id = o.user_id
+                        LEFT JOIN dbo.payment_method pm ON pm.payment_method_id = o.payment_method_id
+                        LEFT JOIN dbo.shipping_method sm ON sm.shipping_method_id = o.shipping_method_id
+                        LEFT JOIN dbo.[user] e ON e.user_id = o.incharge_employee_id
+                        WHERE 1 = 1
+                        """);
+                if (filter.statusId() != null) {
+                    sql.append(" AND o.order_status_id = ?");
+                    parameters.add(filter.statusId());
+                }
+                appendDateRange(sql, parameters, "o.order_date", filter);
+                sql.append(" ORDER BY o.order_date");
+            }
+            case REVIEWS -> {
+                sql.append("""
+                        SELECT r.review_id, r.product_id, p.product_name, u.user_username, r.order_id, r.review_rating,
+                               c.comment_content, c.comment_created_at
+                        FROM dbo.review r
+                        LEFT JOIN dbo.product p ON p.product_id = r.product_id
+                        LEFT JOIN dbo.[user] u ON u.user_id = r.user_id
+                        OUTER APPLY (SELECT TOP 1 cm.comment_content, cm.comment_created_at FROM dbo.comment cm
+                                     WHERE cm.review_id = r.review_id ORDER BY cm.comment_id) c
+                        WHERE 1 = 1
+                        """);
+                appendDateRange(sql, parameters, "c.comment_created_at", filter);
+                sql.append(" ORDER BY r.review_id");
+            }
+        }
+        return new ExportQuery(sql.toString(), parameters);
+    }
+
+    private void appendDateRange(StringBuilder sql, List<Object> parameters, String column, ExportFilter filter) {
+        if (filter.from() != null) {
+            sql.append(" AND ").append(column).append(" >= ?");
+            parameters.add(filter.from());
+        }
+        if (filter.to() != null) {
+            sql.append(" AND ").append(column).append(" < ?");
+            parameters.add(filter.to());
+        }
+    }
+}
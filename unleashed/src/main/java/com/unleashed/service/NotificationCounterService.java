@@ -0,0 +1,113 @@
+package com.unleashed.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+
+/**
+ * Unread notification counts, for the inbox badge.
+ * <p>
+ * Each user's count lives in {@code notification_counter}, so reading it is a primary key read.
+ * It is not kept in memory: a recount on another instance would leave that copy stale. Whatever
+ * changes a user's notifications calls {@link #recount(Collection)}, which counts their unread rows
+ * again in one {@code MERGE} per chunk of users, stores the result and pushes it to the user's open
+ * streams. Recounting rather than adding and subtracting keeps the counter right when two changes
+ * race, and a wrong counter heals with the user's next change.
+ */
+@Service
+public class NotificationCounterService {
+
+    // SQL Server accepts at most 2100 parameters per statement.
+    private static final int CHUNK_SIZE = 1000;
+
+    private static final String RECOUNT = """
+            MERGE dbo.notification_counter WITH (HOLDLOCK) AS c
+            USING (SELECT u.user_id,
+                          (SELECT COUNT(*) FROM dbo.notification_user nu
+                           WHERE nu.user_id = u.user_id
+                             AND (nu.is_notification_deleted IS NULL OR nu.is_notification_deleted = 0)
+                             AND (nu.is_notification_viewed IS NULL OR nu.is_notification_viewed = 0)) AS unread_count
+                   FROM dbo.[user] u
+                   WHERE u.user_id IN (:userIds)) AS s
+            ON c.user_id = s.user_id
+            WHEN MATCHED THEN
+                UPDATE SET c.unread_count = s.unread_count, c.counter_updated_at = SYSDATETIMEOFFSET()
+            WHEN NOT MATCHED THEN
+                INSERT (user_id, unread_count, counter_updated_at) VALUES (s.user_id, s.unread_count, SYSDATETIMEOFFSET())
+            OUTPUT inserted.user_id, inserted.unread_count;
+            """;
+
+    public static final String UNREAD_EVENT = "unread";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final NotificationStreamService notificationStreamService;
+    private final TransactionTemplate recountTransaction;
+
+    @Autowired
+    public NotificationCounterService(NamedParameterJdbcTemplate jdbcTemplate,
+                                      NotificationStreamService notificationStreamService,
+                                      PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.notificationStreamService = notificationStreamService;
+        // Recounts run after the caller's commit, when its transaction can no longer be used.
+        this.recountTransaction = new TransactionTemplate(transactionManager);
+        this.recountTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public int unreadCount(UUID userId) {
+        List<Integer> stored = jdbcTemplate.queryForList(
+                "SELECT c.unread_count FROM dbo.notification_counter c WHERE c.user_id = :userId",
+                new MapSqlParameterSource("userId", userId), Integer.class);
+        if (!stored.isEmpty()) {
+            return stored.get(0);
+        }
+        // First time this user's badge is asked for.
+        return recountNow(List.of(userId)).getOrDefault(userId, 0);
+    }
+
+    /**
+     * Recounts the users' unread notifications and pushes the new counts. Inside a transaction
+     * this happens after commit, so the count includes the transaction's own changes.
+     */
+    public void recount(Collection<UUID> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        List<UUID> ids = new ArrayList<>(new LinkedHashSet<>(userIds));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    recountNow(ids);
+                }
+            });
+        } else {
+            recountNow(ids);
+        }
+    }
+
+    private Map<UUID, Integer> recountNow(List<UUID> userIds) {
+        Map<UUID, Integer> recounted = new HashMap<>();
+        for (int from = 0; from < userIds.size(); from += CHUNK_SIZE) {
+            List<UUID> chunk = userIds.subList(from, Math.min(from + CHUNK_SIZE, userIds.size()));
+            recountTransaction.executeWithoutResult(status -> {
+                Map<UUID, Integer> chunkCounts = new HashMap<>();
+                jdbcTemplate.query(RECOUNT, new MapSqlParameterSource("userIds", chunk), rs -> {
+                    chunkCounts.put(rs.getObject(1, UUID.class), rs.getInt(2));
+                });
+                chunkCounts.forEach((userId, unread) ->
+                        notificationStreamService.send(userId, UNREAD_EVENT, Map.of("unread", unread)));
+                recounted.putAll(chunkCounts);
+            });
+        }
+        return recounted;
+    }
+}
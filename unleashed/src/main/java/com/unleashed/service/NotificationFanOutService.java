@@ -0,0 +1,339 @@
+package com.unleashed.service;
+
+import com.unleashed.dto.NotificationDTO;
+import com.unleashed.dto.mapper.NotificationMapper;
+import com.unleashed.entity.Notification;
+import com.unleashed.entity.User;
+import com.unleashed.repo.NotificationRepository;
+import com.unleashed.repo.RankRepository;
+import com.unleashed.repo.UserRoleRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.rest.webmvc.ResourceNotFoundException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+
+/**
+ * Delivers notifications to their recipients.
+ * <p>
+ * A broadcast (every user, a role or a rank) is stored once with its audience and no recipient
+ * rows. Each user's rows for the broadcasts meant for them are written by
+ * {@link #materializeBroadcasts(UUID)} when they open their inbox or notification stream, in one
+ * {@code INSERT ... SELECT ... WHERE NOT EXISTS}, so sending to all customers costs one insert,
+ * plus one per thousand users connected at the time in a background job, and users who never
+ * look never get rows.
+ * Membership is evaluated on delivery; broadcasts sent before an account existed are not
+ * delivered to it.
+ * <p>
+ * Every delivery recounts the recipients' unread notifications and pushes the notification to
+ * those connected to their stream.
+ * <p>
+ * An explicit recipient list is written with one {@code INSERT ... SELECT} per chunk of
+ * {@link #CHUNK_SIZE} usernames. Lists longer than one chunk are sent as a background job, each
+ * chunk in its own transaction, and the sender gets the job id back to poll for progress.
+ */
+@Service
+public class NotificationFanOutService {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationFanOutService.class);
+
+    // SQL Server accepts at most 2100 parameters per statement.
+    private static final int CHUNK_SIZE = 1000;
+
+    private static final String INSERT_RECIPIENTS = """
+            INSERT INTO dbo.notification_user (notification_id, user_id, is_notification_viewed, is_notification_deleted)
+            OUTPUT inserted.user_id
+            SELECT :notificationId, u.user_id, 0, 0
+            FROM dbo.[user] u
+            WHERE u.user_username IN (:usernames)
+              AND NOT EXISTS (SELECT 1 FROM dbo.notification_user nu
+                              WHERE nu.notification_id = :notificationId AND nu.user_id = u.user_id)
+            """;
+
+    private static final String MATERIALIZE_BROADCASTS = """
+            INSERT INTO dbo.notification_user (notification_id, user_id, is_notification_viewed, is_notification_deleted)
+            OUTPUT inserted.notification_id, inserted.user_id
+            SELECT n.notification_id, u.user_id, 0, 0
+            FROM dbo.notification n
+            JOIN dbo.[user] u ON u.user_id IN (:userIds)
+            WHERE n.notification_audience IS NOT NULL
+              AND (n.is_notification_draft IS NULL OR n.is_notification_draft = 0)
+              AND (u.user_created_at IS NULL OR n.notification_created_at >= u.user_created_at)
+              AND (n.notification_audience = 'ALL'
+                   OR (n.notification_audience = 'ROLE' AND n.notification_audience_id = u.role_id)
+                   OR (n.notification_audience = 'RANK' AND EXISTS (SELECT 1 FROM dbo.user_rank ur
+                                                                   WHERE ur.user_id = u.user_id
+                                                                     AND ur.rank_id = n.notification_audience_id)))
+              AND NOT EXISTS (SELECT 1 FROM dbo.notification_user nu
+                              WHERE nu.notification_id = n.notification_id AND nu.user_id = u.user_id)
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final NotificationRepository notificationRepository;
+    private final UserRoleRepository userRoleRepository;
+    private final RankRepository rankRepository;
+    private final EntityLookupService entityLookupService;
+    private final BackgroundJobService backgroundJobService;
+    private final NotificationCounterService notificationCounterService;
+    private final NotificationStreamService notificationStreamService;
+    private final NotificationMapper notificationMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public NotificationFanOutService(NamedParameterJdbcTemplate jdbcTemplate,
+                                     NotificationRepository notificationRepository,
+                                     UserRoleRepository userRoleRepository,
+                                     RankRepository rankRepository,
+                                     EntityLookupService entityLookupService,
+                                     BackgroundJobService backgroundJobService,
+                                     NotificationCounterService notificationCounterService,
+                                     NotificationStreamService notificationStreamService,
+                                     NotificationMapper notificationMapper,
+                                     PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.notificationRepository = notificationRepository;
+        this.userRoleRepository = userRoleRepository;
+        this.rankRepository = rankRepository;
+        this.entityLookupService = entityLookupService;
+        this.backgroundJobService = backgroundJobService;
+        this.notificationCounterService = notificationCounterService;
+        this.notificationStreamService = notificationStreamService;
+        this.notificationMapper = notificationMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Sends a notification written by an admin or staff member: a broadcast is stored and
+     * returned at once while the connected users get it in the background, a short recipient
+     * list is written in the request, a long one in the background.
+     *
+     * @return 201 when delivered (or stored for a broadcast, with the job id delivering it to
+     * connected users), 202 with the job id for a long list, 400 listing the recipients that do
+     * not exist
+     */
+    public ResponseEntity<?> send(NotificationDTO notificationDTO, String requestedBy) {
+        Notification.Audience audience = parseAudience(notificationDTO.getAudience());
+        if (audience != null) {
+            Integer audienceId = audienceId(audience, notificationDTO);
+            Notification saved = transactionTemplate.execute(status ->
+                    notificationRepository.save(newNotification(notificationDTO, audience, audienceId)));
+            Integer notificationId = saved.getId();
+            List<UUID> connected = new ArrayList<>(notificationStreamService.connectedUsers());
+            if (connected.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.CREATED).body(Map.of(
+                        "message", "Notification created successfully",
+                        "notificationId", notificationId));
+            }
+            // Users online now get it shortly; everyone else when they next connect.
+            String jobId = backgroundJobService.submit("notification-broadcast", requestedBy, progress -> {
+                progress.put("notificationId", notificationId);
+                progress.setTotal(connected.size());
+                for (int from = 0; from < connected.size(); from += CHUNK_SIZE) {
+                    List<UUID> chunk = connected.subList(from, Math.min(from + CHUNK_SIZE, connected.size()));
+                    materializeBroadcasts(chunk);
+                    progress.advance(chunk.size());
+                }
+            });
+            return ResponseEntity.status(HttpStatus.CREATED).body(Map.of(
+                    "message", "Notification created successfully",
+                    "notificationId", notificationId,
+                    "jobId", jobId));
+        }
+
+        List<String> usernames = distinctUsernames(notificationDTO.getUserNames());
+        if (usernames.size() <= CHUNK_SIZE) {
+            return transactionTemplate.execute(status -> {
+                Notification saved = notificationRepository.save(newNotification(notificationDTO, null, null));
+                return created(insertRecipients(saved, usernames));
+            });
+        }
+
+        Notification saved = transactionTemplate.execute(status ->
+                notificationRepository.save(newNotification(notificationDTO, null, null)));
+        Integer notificationId = saved.getId();
+        String jobId = backgroundJobService.submit("notification-fan-out", requestedBy, progress -> {
+            progress.put("notificationId", notificationId);
+            progress.setTotal(usernames.size());
+            long delivered = 0;
+            long chunks = 0;
+            List<String> notFound = new ArrayList<>();
+            for (int from = 0; from < usernames.size(); from += CHUNK_SIZE) {
+                List<String> chunk = usernames.subList(from, Math.min(from + CHUNK_SIZE, usernames.size()));
+                int inserted = Objects.requireNonNull(transactionTemplate.execute(status ->
+                        insertChunk(saved, chunk, notFound)));
+                delivered += inserted;
+                progress.advance(chunk.size());
+                progress.put("delivered", delivered);
+                progress.put("notFound", List.copyOf(notFound));
+                progress.put("chunks", ++chunks);
+            }
+            logger.info("Notification {} delivered to {} of {} recipients.", notificationId, delivered, usernames.size());
+        });
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of(
+                "jobId", jobId,
+                "notificationId", notificationId));
+    }
+
+    /**
+     * Stores a notification for the given recipients in the caller's transaction. Used for the
+     * notifications the shop sends on its own (order updates, replies), which have one recipient.
+     */
+    @Transactional
+    public ResponseEntity<?> sendToUsers(NotificationDTO notificationDTO) {
+        Notification saved = notificationRepository.save(newNotification(notificationDTO, null, null));
+        return created(insertRecipients(saved, distinctUsernames(notificationDTO.getUserNames())));
+    }
+
+    /**
+     * Writes the user's rows for the broadcasts meant for them that they do not have yet. Cheap
+     * when there is nothing new: it reads the broadcasts through {@code ix_notification_audience}
+     * and the user's rows through the primary key.
+     */
+    public void materializeBroadcasts(UUID userId) {
+        materializeBroadcasts(List.of(userId));
+    }
+
+    /**
+     * Materializes the broadcasts of up to {@link #CHUNK_SIZE} users, then recounts and notifies
+     * those who received any.
+     */
+    private void materializeBroadcasts(List<UUID> userIds) {
+        Map<Integer, List<UUID>> delivered = new HashMap<>();
+        try {
+            jdbcTemplate.query(MATERIALIZE_BROADCASTS, new MapSqlParameterSource("userIds", userIds), rs -> {
+                delivered.computeIfAbsent(rs.getInt(1), id -> new ArrayList<>()).add(rs.getObject(2, UUID.class));
+            });
+        } catch (DataIntegrityViolationException e) {
+            // Another request wrote some of these rows first; the rest follow on the users' next read.
+            logger.debug("Broadcasts for users {} were materialized concurrently.", userIds);
+            return;
+        }
+        if (delivered.isEmpty()) {
+            return;
+        }
+        Set<UUID> recipients = new HashSet<>();
+        delivered.values().forEach(recipients::addAll);
+        notificationCounterService.recount(recipients);
+        for (Notification notification : notificationRepository.findAllById(delivered.keySet())) {
+            push(notification, delivered.get(notification.getId()));
+        }
+    }
+
+    /**
+     * @return the usernames that are not users
+     */
+    private List<String> insertRecipients(Notification notification, List<String> usernames) {
+        List<String> notFound = new ArrayList<>();
+        for (int from = 0; from < usernames.size(); from += CHUNK_SIZE) {
+            insertChunk(notification, usernames.subList(from, Math.min(from + CHUNK_SIZE, usernames.size())), notFound);
+        }
+        return notFound;
+    }
+
+    private int insertChunk(Notification notification, List<String> usernames, List<String> notFound) {
+        MapSqlParameterSource params = new MapSqlParameterSource("notificationId", notification.getId())
+                .addValue("usernames", usernames);
+        // The database compares usernames case-insensitively, so the lookup does too.
+        Set<String> existing = new HashSet<>();
+        for (String username : jdbcTemplate.queryForList(
+                "SELECT u.user_username FROM dbo.[user] u WHERE u.user_username IN (:usernames)", params, String.class)) {
+            existing.add(username.toLowerCase(Locale.ROOT));
+        }
+        for (String username : usernames) {
+            if (!existing.contains(username.toLowerCase(Locale.ROOT))) {
+                notFound.add(username);
+            }
+        }
+        if (existing.isEmpty()) {
+            return 0;
+        }
+        List<UUID> inserted = jdbcTemplate.query(INSERT_RECIPIENTS, params, (rs, rowNum) -> rs.getObject(1, UUID.class));
+        notificationCounterService.recount(inserted);
+        push(notification, inserted);
+        return inserted.size();
+    }
+
+    // Drafts are stored for their recipients but not announced.
+    private void push(Notification notification, Collection<UUID> recipients) {
+        if (Boolean.TRUE.equals(notification.getIsNotificationDraft())) {
+            return;
+        }
+        NotificationDTO dto = notificationMapper.toInboxDTO(notification, false);
+        for (UUID userId : recipients) {
+            notificationStreamService.send(userId, NotificationStreamService.NOTIFICATION_EVENT, dto);
+        }
+    }
+
+    private Notification newNotification(NotificationDTO notificationDTO, Notification.Audience audience, Integer audienceId) {
+        User sender = entityLookupService.findUserByUsername(notificationDTO.getUserName())
+                .orElseThrow(() -> new ResourceNotFoundException("Sender user not found: " + notificationDTO.getUserName()));
+
+        Notification notification = new Notification();
+        notification.setNotificationTitle(notificationDTO.getNotificationTitle());
+        notification.setNotificationContent(notificationDTO.getNotificationContent());
+        notification.setUserIdSender(sender);
+        notification.setIsNotificationDraft(notificationDTO.getNotificationDraft() != null ? notificationDTO.getNotificationDraft() : false);
+        notification.setAudience(audience);
+        notification.setAudienceId(audienceId);
+        return notification;
+    }
+
+    private Integer audienceId(Notification.Audience audience, NotificationDTO notificationDTO) {
+        return switch (audience) {
+            case ALL -> null;
+            case ROLE -> {
+                if (notificationDTO.getRoleId() == null || !userRoleRepository.existsById(notificationDTO.getRoleId())) {
+                    throw new IllegalArgumentException("Role not found.");
+                }
+                yield notificationDTO.getRoleId();
+            }
+            case RANK -> {
+                if (notificationDTO.getRankId() == null || !rankRepository.existsById(notificationDTO.getRankId())) {
+                    throw new IllegalArgumentException("Rank not found.");
+                }
+                yield notificationDTO.getRankId();
+            }
+        };
+    }
+
+    private static ResponseEntity<?> created(List<String> notFound) {
+        if (!notFound.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Some recipients not found", "errors", notFound));
+        }
+        return ResponseEntity.status(HttpStatus.CREATED).body(Map.of("message", "Notification created successfully"));
+    }
+
+    private static List<String> distinctUsernames(List<String> usernames) {
+        if (usernames == null) {
+            return List.of();
+        }
+        Map<String, String> distinct = new LinkedHashMap<>();
+        for (String username : usernames) {
+            if (username != null && !username.isBlank()) {
+                distinct.putIfAbsent(username.trim().toLowerCase(Locale.ROOT), username.trim());
+            }
+        }
+        return new ArrayList<>(distinct.values());
+    }
+
+    private static Notification.Audience parseAudience(String audience) {
+        if (audience == null || audience.isBlank() || "USERS".equalsIgnoreCase(audience.trim())) {
+            return null;
+        }
+        try {
+            return Notification.Audience.valueOf(audience.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown audience: " + audience);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.unleashed.service;
 
 import com.unleashed.dto.NotificationDTO;
+import com.unleashed.dto.mapper.NotificationMapper;
 import com.unleashed.entity.composite.NotificationUserId;
 import com.unleashed.entity.Notification;
 import com.unleashed.entity.NotificationUser;
@@ -14,11 +15,12 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
@@ -27,86 +29,100 @@ import java.util.stream.Collectors;
 @Service
 public class NotificationService {
 
+    private static final DateTimeFormatter DRAWER_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss Z").withZone(ZoneId.of("Asia/Ho_Chi_Minh"));
+
     private final NotificationRepository notificationRepository;
     private final UserRepository userRepository;
     private final NotificationUserRepository notificationUserRepository;
+    private final EntityLookupService entityLookupService;
+    private final NotificationFanOutService notificationFanOutService;
+    private final NotificationCounterService notificationCounterService;
+    private final NotificationStreamService notificationStreamService;
+    private final NotificationMapper notificationMapper;
 
     @Autowired
-    public NotificationService(NotificationRepository notificationRepository, UserRepository userRepository, NotificationUserRepository notificationUserRepository) {
+    public NotificationService(NotificationRepository notificationRepository, UserRepository userRepository, NotificationUserRepository notificationUserRepository,
+                               EntityLookupService entityLookupService, NotificationFanOutService notificationFanOutService,
+                               NotificationCounterService notificationCounterService, NotificationStreamService notificationStreamService,
+                               NotificationMapper notificationMapper) {
         this.notificationRepository = notificationRepository;
         this.userRepository = userRepository;
         this.notificationUserRepository = notificationUserRepository;
+        this.entityLookupService = entityLookupService;
+        this.notificationFanOutService = notificationFanOutService;
+        this.notificationCounterService = notificationCounterService;
+        this.notificationStreamService = notificationStreamService;
+        this.notificationMapper = notificationMapper;
     }
 
-    // --- HELPER METHOD ---
-
-    private NotificationDTO convertToDto(Notification notification, NotificationUser notificationUser) {
-        if (notification == null) return null;
-
-        NotificationDTO dto = new NotificationDTO();
-        dto.setNotificationId(notification.getId());
-        dto.setNotificationTitle(notification.getNotificationTitle());
-        dto.setUserName(notification.getUserIdSender() != null ? notification.getUserIdSender().getUsername() : "System");
-
-        String rawContent = notification.getNotificationContent();
-        String[] parts = rawContent.split("\\|");
-        if (parts.length == 3) {
-            dto.setNotificationContent(parts[0]);
-            dto.setNotificationLink("/shop/product/" + parts[1] + "?replyId=" + parts[2]);
-        } else {
-            dto.setNotificationContent(rawContent);
-            dto.setNotificationLink(null);
-        }
-
-        if(notificationUser != null) {
-            dto.setNotificatonViewed(notificationUser.getIsNotificationViewed());
-        }
+    // --- CUSTOMER-FACING METHODS ---
 
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSXXX").withZone(ZoneId.of("Asia/Ho_Chi_Minh"));
-        dto.setCreatedAt(notification.getNotificationCreatedAt() != null ? notification.getNotificationCreatedAt().format(formatter) : "No Date");
+    public List<NotificationDTO> getLatestNotificationsForCustomer(String username) {
+        return getInbox(username, PageRequest.of(0, 10)).getContent();
+    }
 
-        return dto;
+    public Page<NotificationDTO> getAllNotificationsForCustomer(String username, int page, int size) {
+        return getInbox(username, PageRequest.of(page, size));
     }
 
-    // --- CUSTOMER-FACING METHODS ---
+    public int getUnreadCount(String username) {
+        User user = entityLookupService.findUserByUsername(username).orElseThrow(() -> new RuntimeException("User not found"));
+        return notificationCounterService.unreadCount(user.getUserId());
+    }
 
-    public List<NotificationDTO> getLatestNotificationsForCustomer(String username) {
-        User user = userRepository.findByUserUsername(username).orElseThrow(() -> new RuntimeException("User not found"));
-        Pageable pageable = PageRequest.of(0, 10, Sort.by("id.notificationId").descending());
-        Page<NotificationUser> notificationUsersPage = notificationUserRepository.findByIdUserIdAndIsNotificationDeletedFalse(user.getUserId(), pageable);
-        return notificationUsersPage.getContent().stream()
-                .map(nu -> convertToDto(notificationRepository.findById(nu.getId().getNotificationId()).orElse(null), nu))
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+    /**
+     * Opens the user's notification stream. Broadcasts they have not received yet are delivered
+     * first, and the stream starts with their unread count.
+     */
+    public SseEmitter subscribe(String username) {
+        User user = entityLookupService.findUserByUsername(username).orElseThrow(() -> new RuntimeException("User not found"));
+        notificationFanOutService.materializeBroadcasts(user.getUserId());
+        int unread = notificationCounterService.unreadCount(user.getUserId());
+        SseEmitter emitter = notificationStreamService.subscribe(user.getUserId());
+        try {
+            emitter.send(SseEmitter.event().name(NotificationCounterService.UNREAD_EVENT).data(Map.of("unread", unread)));
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+        }
+        return emitter;
     }
 
-    public Page<NotificationDTO> getAllNotificationsForCustomer(String username, int page, int size) {
-        User user = userRepository.findByUserUsername(username).orElseThrow(() -> new RuntimeException("User not found"));
-        Pageable pageable = PageRequest.of(page, size, Sort.by("id.notificationId").descending());
-        Page<NotificationUser> notificationUsersPage = notificationUserRepository.findByIdUserIdAndIsNotificationDeletedFalse(user.getUserId(), pageable);
-        List<NotificationDTO> dtos = notificationUsersPage.getContent().stream()
-                .map(nu -> convertToDto(notificationRepository.findById(nu.getId().getNotificationId()).orElse(null), nu))
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
-        return new PageImpl<>(dtos, pageable, notificationUsersPage.getTotalElements());
+    private Page<NotificationDTO> getInbox(String username, Pageable pageable) {
+        User user = entityLookupService.findUserByUsername(username).orElseThrow(() -> new RuntimeException("User not found"));
+        notificationFanOutService.materializeBroadcasts(user.getUserId());
+        Page<Object[]> inbox = notificationUserRepository.findInbox(user.getUserId(), pageable);
+        List<NotificationDTO> dtos = new ArrayList<>(inbox.getNumberOfElements());
+        for (Object[] row : inbox.getContent()) {
+            dtos.add(notificationMapper.toInboxDTO((Notification) row[0], (Boolean) row[1]));
+        }
+        return new PageImpl<>(dtos, pageable, inbox.getTotalElements());
     }
 
     @Transactional
     public void markNotificationAsViewed(Integer notificationId, String username) {
-        User user = userRepository.findByUserUsername(username).orElseThrow(() -> new RuntimeException("User not found"));
+        User user = entityLookupService.findUserByUsername(username).orElseThrow(() -> new RuntimeException("User not found"));
         NotificationUserId id = new NotificationUserId(notificationId, user.getUserId());
         NotificationUser notificationUser = notificationUserRepository.findById(id).orElseThrow(() -> new RuntimeException("Notification for user not found"));
+        if (Boolean.TRUE.equals(notificationUser.getIsNotificationViewed())) {
+            return;
+        }
         notificationUser.setIsNotificationViewed(true);
         notificationUserRepository.save(notificationUser);
+        notificationCounterService.recount(List.of(user.getUserId()));
     }
 
     @Transactional
     public void deleteNotificationForCustomer(Integer notificationId, String username) {
-        User user = userRepository.findByUserUsername(username).orElseThrow(() -> new RuntimeException("User not found"));
+        User user = entityLookupService.findUserByUsername(username).orElseThrow(() -> new RuntimeException("User not found"));
         NotificationUserId id = new NotificationUserId(notificationId, user.getUserId());
         NotificationUser notificationUser = notificationUserRepository.findById(id).orElseThrow(() -> new RuntimeException("Notification for user not found"));
+        boolean wasUnread = !Boolean.TRUE.equals(notificationUser.getIsNotificationViewed())
+                && !Boolean.TRUE.equals(notificationUser.getIsNotificationDeleted());
         notificationUser.setIsNotificationDeleted(true); // Soft delete
         notificationUserRepository.save(notificationUser);
+        if (wasUnread) {
+            notificationCounterService.recount(List.of(user.getUserId()));
+        }
     }
 
     // --- ADMIN & STAFF METHODS (RESTORED) ---
@@ -127,44 +143,18 @@ public class NotificationService {
                     }
 
                     dto.setNotificationDraft(notification.getIsNotificationDraft());
-                    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss Z").withZone(ZoneId.of("Asia/Ho_Chi_Minh"));
-                    dto.setCreatedAt(notification.getNotificationCreatedAt() != null ? notification.getNotificationCreatedAt().format(formatter) : "No Date");
+                    dto.setAudience(notification.getAudience() != null ? notification.getAudience().name() : null);
+                    dto.setCreatedAt(notification.getNotificationCreatedAt() != null ? notification.getNotificationCreatedAt().format(DRAWER_DATE_FORMAT) : "No Date");
                     return dto;
                 })
                 .collect(Collectors.toList());
     }
 
-    @Transactional
+    /**
+     * Sends a notification to the users in {@code userNames}; see {@link NotificationFanOutService}.
+     */
     public ResponseEntity<?> addNotification(NotificationDTO notificationDTO) {
-        User sender = userRepository.findByUserUsername(notificationDTO.getUserName())
-                .orElseThrow(() -> new RuntimeException("Sender user not found: " + notificationDTO.getUserName()));
-
-        Notification notification = new Notification();
-        notification.setNotificationTitle(notificationDTO.getNotificationTitle());
-        notification.setNotificationContent(notificationDTO.getNotificationContent());
-        notification.setUserIdSender(sender);
-        notification.setIsNotificationDraft(notificationDTO.getNotificationDraft() != null ? notificationDTO.getNotificationDraft() : false);
-
-        Notification savedNotification = notificationRepository.save(notification);
-
-        List<String> notFoundUsers = new ArrayList<>();
-        if (notificationDTO.getUserNames() != null && !notificationDTO.getUserNames().isEmpty()) {
-            for (String userName : notificationDTO.getUserNames()) {
-                userRepository.findByUserUsername(userName).ifPresentOrElse(recipient -> {
-                    NotificationUser notificationUser = new NotificationUser();
-                    notificationUser.setId(new NotificationUserId(savedNotification.getId(), recipient.getUserId()));
-                    notificationUser.setIsNotificationViewed(false);
-                    notificationUser.setIsNotificationDeleted(false);
-                    notificationUserRepository.save(notificationUser);
-                }, () -> notFoundUsers.add(userName));
-            }
-        }
-
-        if (!notFoundUsers.isEmpty()) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Some recipients not found", "errors", notFoundUsers));
-        }
-
-        return ResponseEntity.status(HttpStatus.CREATED).body(Map.of("message", "Notification created successfully"));
+        return notificationFanOutService.sendToUsers(notificationDTO);
     }
 
     @Transactional
@@ -172,8 +162,10 @@ public class NotificationService {
         if (!notificationRepository.existsById(id)) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("message", "Notification not found with ID: " + id));
         }
+        List<UUID> unreadRecipients = notificationUserRepository.findUnreadRecipientIds(id);
         notificationUserRepository.deleteByNotificationId(id);
         notificationRepository.deleteById(id);
+        notificationCounterService.recount(unreadRecipients);
         return ResponseEntity.ok(Map.of("message", "Successfully deleted notification and related users"));
     }
 }
\ No newline at end of file
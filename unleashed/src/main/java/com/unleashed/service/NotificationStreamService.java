@@ -0,0 +1,123 @@
+package com.unleashed.service;
+
+import com.unleashed.config.NotificationProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Pushes notification events to the users who have the shop open, over Server-Sent Events:
+ * {@code unread} with the user's unread count whenever it changes, and {@code notification} with
+ * each new notification. A user may hold several streams (tabs); they live in this instance's
+ * memory, so behind several instances a user only hears from the one they are connected to.
+ * Open streams are counted as {@code notification.stream.connections}.
+ */
+@Service
+public class NotificationStreamService {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationStreamService.class);
+
+    public static final String NOTIFICATION_EVENT = "notification";
+
+    private final NotificationProperties properties;
+    private final Map<UUID, List<SseEmitter>> emitters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public NotificationStreamService(NotificationProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        Gauge.builder("notification.stream.connections", emitters,
+                        map -> map.values().stream().mapToInt(List::size).sum())
+                .description("Open notification streams")
+                .register(meterRegistry);
+    }
+
+    public SseEmitter subscribe(UUID userId) {
+        SseEmitter emitter = new SseEmitter(properties.streamTimeout().toMillis());
+        emitters.compute(userId, (id, userEmitters) -> {
+            List<SseEmitter> list = userEmitters != null ? userEmitters : new CopyOnWriteArrayList<>();
+            list.add(emitter);
+            return list;
+        });
+        emitter.onCompletion(() -> remove(userId, emitter));
+        emitter.onTimeout(() -> remove(userId, emitter));
+        emitter.onError(e -> remove(userId, emitter));
+        return emitter;
+    }
+
+    public boolean isConnected(UUID userId) {
+        return emitters.containsKey(userId);
+    }
+
+    public Set<UUID> connectedUsers() {
+        return new HashSet<>(emitters.keySet());
+    }
+
+    /**
+     * Sends the event to every stream of the user. Inside a transaction it is sent after commit,
+     * so nobody hears about a notification that was rolled back.
+     */
+    public void send(UUID userId, String event, Object data) {
+        if (!isConnected(userId)) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    sendNow(userId, event, data);
+                }
+            });
+        } else {
+            sendNow(userId, event, data);
+        }
+    }
+
+    /**
+     * Writes a comment line to every stream, so proxies keep idle streams open and streams whose
+     * client went away are noticed and dropped.
+     */
+    public void sendHeartbeats() {
+        emitters.forEach((userId, userEmitters) -> {
+            for (SseEmitter emitter : userEmitters) {
+                try {
+                    emitter.send(SseEmitter.event().comment("heartbeat"));
+                } catch (IOException | IllegalStateException e) {
+                    remove(userId, emitter);
+                }
+            }
+        });
+    }
+
+    private void sendNow(UUID userId, String event, Object data) {
+        List<SseEmitter> userEmitters = emitters.get(userId);
+        if (userEmitters == null) {
+            return;
+        }
+        for (SseEmitter emitter : userEmitters) {
+            try {
+                emitter.send(SseEmitter.event().name(event).data(data));
+            } catch (IOException | IllegalStateException e) {
+                logger.debug("Dropping notification stream of user {}: {}", userId, e.getMessage());
+                remove(userId, emitter);
+            }
+        }
+    }
+
+    private void remove(UUID userId, SseEmitter emitter) {
+        emitters.computeIfPresent(userId, (id, userEmitters) -> {
+            userEmitters.remove(emitter);
+            return userEmitters.isEmpty() ? null : userEmitters;
+        });
+    }
+}
@@ -0,0 +1,42 @@
+package com.unleashed.service;
+
+import com.unleashed.entity.Order;
+import com.unleashed.entity.OrderEvent;
+import com.unleashed.repo.CartRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+
+/**
+ * Checkout housekeeping that used to run inside the order transaction: emptying the cart and
+ * remembering the address and payment method the customer just used.
+ */
+@Service
+public class OrderCheckoutEventHandler implements OrderEventHandler {
+
+    private final CartRepository cartRepository;
+    private final UserService userService;
+
+    @Autowired
+    public OrderCheckoutEventHandler(CartRepository cartRepository, UserService userService) {
+        this.cartRepository = cartRepository;
+        this.userService = userService;
+    }
+
+    @Override
+    public boolean supports(OrderEvent.Type type) {
+        return type == OrderEvent.Type.ORDER_CREATED;
+    }
+
+    @Override
+    public void handle(OrderEvent event, Order order, Map<String, Object> payload) {
+        if (order.getUser() == null) {
+            return;
+        }
+        String userId = order.getUser().getUserId().toString();
+        cartRepository.deleteAllById_UserId(order.getUser().getUserId());
+        userService.updateUserAddress(userId, (String) payload.get("userAddress"));
+        userService.updateUserPaymentMethod(userId, (String) payload.get("paymentMethod"));
+    }
+}
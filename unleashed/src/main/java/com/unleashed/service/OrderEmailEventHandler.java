@@ -0,0 +1,124 @@
+package com.unleashed.service;
+
+import com.unleashed.entity.Order;
+import com.unleashed.entity.OrderEvent;
+import com.unleashed.entity.OrderVariationSingle;
+import com.unleashed.entity.Variation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Queues the customer emails for an order event. The variables are collected here, while the
+ * order is attached; rendering happens later on a mail worker.
+ */
+@Service
+public class OrderEmailEventHandler implements OrderEventHandler {
+
+    private final EmailService emailService;
+
+    @Autowired
+    public OrderEmailEventHandler(EmailService emailService) {
+        this.emailService = emailService;
+    }
+
+    @Override
+    public boolean supports(OrderEvent.Type type) {
+        return type == OrderEvent.Type.ORDER_CREATED
+                || type == OrderEvent.Type.ORDER_PAID
+                || type == OrderEvent.Type.ORDER_CANCELLED
+                || type == OrderEvent.Type.ORDER_RETURN_REQUESTED;
+    }
+
+    @Override
+    public void handle(OrderEvent event, Order order, Map<String, Object> payload) {
+        if (order.getUser() == null || order.getUser().getUserEmail() == null) {
+            return;
+        }
+        switch (event.getType()) {
+            case ORDER_CREATED -> sendOrderConfirmationEmail(order);
+            case ORDER_PAID -> sendPaymentCallbackEmail(order, true);
+            case ORDER_CANCELLED -> {
+                if ("PAYMENT_FAILED".equals(payload.get("reason"))) {
+                    sendPaymentCallbackEmail(order, false);
+                } else {
+                    sendOrderCancellationEmail(order);
+                }
+            }
+            case ORDER_RETURN_REQUESTED -> sendOrderReturnEmail(order);
+            default -> {
+            }
+        }
+    }
+
+    private void sendOrderConfirmationEmail(Order order) {
+        String subject = "Order Confirmation #" + order.getOrderId();
+        emailService.sendTemplatedMessage(order.getUser().getUserEmail(), subject, "email/order-summary",
+                buildOrderEmailVariables(order, "Your order has been successfully created! Thank you for shopping at Unleashed!"));
+    }
+
+    private void sendPaymentCallbackEmail(Order order, boolean isSuccess) {
+        String subject = isSuccess ? "Payment Successful - Order #" + order.getOrderId() : "Payment Failed - Order #" + order.getOrderId();
+        String message = isSuccess ? "Your order has been successfully paid and is being processed." : "Unfortunately, the payment for your order has failed.";
+        emailService.sendTemplatedMessage(order.getUser().getUserEmail(), subject, "email/payment-result",
+                buildOrderEmailVariables(order, message));
+    }
+
+    private void sendOrderCancellationEmail(Order order) {
+        String subject = "Order Cancellation Notification - Order #" + order.getOrderId();
+        emailService.sendTemplatedMessage(order.getUser().getUserEmail(), subject, "email/order-cancellation",
+                buildOrderEmailVariables(order, null));
+    }
+
+    private void sendOrderReturnEmail(Order order) {
+        String subject = "Order Return Requested - Order #" + order.getOrderId();
+        Map<String, Object> variables = buildOrderEmailVariables(order, null);
+        variables.put("headline", "We have received your return request for order #" + order.getOrderId()
+                + " placed on " + variables.get("orderDate") + ".");
+        variables.put("contactMessage", "If you have any questions about your return or need assistance, feel free to contact us:");
+        variables.put("closingMessage", "We appreciate your understanding and look forward to serving you again.");
+        emailService.sendTemplatedMessage(order.getUser().getUserEmail(), subject, "email/order-summary", variables);
+    }
+
+    private Map<String, Object> buildOrderEmailVariables(Order order, String headline) {
+        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("customerName", order.getUser().getUserFullname());
+        variables.put("orderId", order.getOrderId());
+        variables.put("orderDate", order.getOrderDate() != null
+                ? dateFormatter.format(order.getOrderDate().atZoneSameInstant(ZoneId.of("Asia/Ho_Chi_Minh")))
+                : null);
+        variables.put("paymentMethod", order.getPaymentMethod() != null ? order.getPaymentMethod().getPaymentMethodName() : null);
+        variables.put("shippingMethod", order.getShippingMethod() != null ? order.getShippingMethod().getShippingMethodName() : null);
+        variables.put("totalAmount", order.getOrderTotalAmount() != null ? order.getOrderTotalAmount().toPlainString() : null);
+        variables.put("expectedDeliveryDate", order.getOrderExpectedDeliveryDate() != null
+                ? dateFormatter.format(order.getOrderExpectedDeliveryDate().toInstant().atZone(ZoneId.systemDefault()))
+                : null);
+        variables.put("headline", headline);
+        variables.put("contactMessage", "If you have any questions about your order or need assistance, feel free to contact us:");
+        variables.put("closingMessage", "We appreciate your trust in us and look forward to delivering your order soon.");
+
+        Map<Variation, List<OrderVariationSingle>> linesByVariation = order.getOrderVariationSingles().stream()
+                .collect(Collectors.groupingBy(ovs -> ovs.getVariationSingle().getVariation(),
+                        LinkedHashMap::new, Collectors.toList()));
+
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (Map.Entry<Variation, List<OrderVariationSingle>> entry : linesByVariation.entrySet()) {
+            Variation variation = entry.getKey();
+            Map<String, Object> item = new HashMap<>();
+            item.put("productName", variation.getProduct().getProductName());
+            item.put("size", variation.getSize().getSizeName());
+            item.put("color", variation.getColor().getColorName());
+            item.put("quantity", entry.getValue().size());
+            item.put("unitPrice", entry.getValue().get(0).getVariationPriceAtPurchase().toPlainString());
+            items.add(item);
+        }
+        variables.put("items", items);
+        return variables;
+    }
+}
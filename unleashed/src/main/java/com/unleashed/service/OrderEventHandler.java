@@ -0,0 +1,18 @@
+package com.unleashed.service;
+
+import com.unleashed.entity.Order;
+import com.unleashed.entity.OrderEvent;
+
+import java.util.Map;
+
+/**
+ * A consumer of the order lifecycle outbox. Every handler that {@link #supports supports} an event
+ * runs inside the same transaction, so an event either has all of its side effects applied or none
+ * and is retried as a whole.
+ */
+public interface OrderEventHandler {
+
+    boolean supports(OrderEvent.Type type);
+
+    void handle(OrderEvent event, Order order, Map<String, Object> payload);
+}
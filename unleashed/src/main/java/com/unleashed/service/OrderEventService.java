@@ -0,0 +1,194 @@
+package com.unleashed.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.unleashed.config.OrderEventProperties;
+import com.unleashed.entity.Order;
+import com.unleashed.entity.OrderEvent;
+import com.unleashed.repo.OrderEventRepository;
+import com.unleashed.repo.OrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.*;
+
+/**
+ * Order lifecycle event bus backed by the {@code order_event} outbox table.
+ * <p>
+ * {@link #publish} only inserts a row and must be called inside the transaction that changes the
+ * order, so an event exists exactly when its order change commits. The scheduler calls
+ * {@link #dispatchPendingEvents()}, which claims the oldest pending event of each order through an
+ * {@link OutboxDispatcher} and hands the batch to the bounded {@code orderEventTaskExecutor}. Each
+ * event is applied by all interested {@link OrderEventHandler}s in one transaction and retried with
+ * exponential backoff on failure; the next event of the same order is not handed out until the previous one is done.
+ */
+@Service
+public class OrderEventService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderEventService.class);
+    private static final TypeReference<Map<String, Object>> PAYLOAD_TYPE = new TypeReference<>() {
+    };
+    private static final List<OrderEvent.Status> BLOCKING_STATUSES =
+            List.of(OrderEvent.Status.PENDING, OrderEvent.Status.PROCESSING);
+
+    private final OrderEventRepository orderEventRepository;
+    private final OrderRepository orderRepository;
+    private final List<OrderEventHandler> handlers;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final OutboxDispatcher dispatcher;
+
+    @Autowired
+    public OrderEventService(OrderEventRepository orderEventRepository,
+                             OrderRepository orderRepository,
+                             List<OrderEventHandler> handlers,
+                             ObjectMapper objectMapper,
+                             @Qualifier("orderEventTaskExecutor") ThreadPoolTaskExecutor orderEventTaskExecutor,
+                             PlatformTransactionManager transactionManager,
+                             OrderEventProperties properties) {
+        this.orderEventRepository = orderEventRepository;
+        this.orderRepository = orderRepository;
+        this.handlers = handlers;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.dispatcher = new OutboxDispatcher("order events", new OutboxDispatcher.Handler() {
+            @Override
+            public int releaseStaleClaims(OffsetDateTime claimedBefore) {
+                return orderEventRepository.releaseStaleClaims(
+                        OrderEvent.Status.PROCESSING, OrderEvent.Status.PENDING, claimedBefore);
+            }
+
+            @Override
+            public List<Long> findDueIds(OffsetDateTime now, int batchSize) {
+                return orderEventRepository.findDueHeadIds(
+                        OrderEvent.Status.PENDING, BLOCKING_STATUSES, now, PageRequest.of(0, batchSize));
+            }
+
+            @Override
+            public int claim(List<Long> ids, String claimToken, OffsetDateTime now) {
+                return orderEventRepository.claim(
+                        ids, OrderEvent.Status.PENDING, OrderEvent.Status.PROCESSING, claimToken, now);
+            }
+
+            @Override
+            public void processBatch(String claimToken) {
+                OrderEventService.this.processBatch(claimToken);
+            }
+        }, orderEventTaskExecutor, properties);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void publish(Order order, OrderEvent.Type type) {
+        publish(order, type, Map.of());
+    }
+
+    /**
+     * Records an event for the given order. Payload values must be JSON friendly.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void publish(Order order, OrderEvent.Type type, Map<String, Object> payload) {
+        publishAll(List.of(order.getOrderId()), type, payload);
+    }
+
+    /**
+     * Records the same event for many orders at once, e.g. after a bulk status transition.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void publishAll(Collection<String> orderIds, OrderEvent.Type type, Map<String, Object> payload) {
+        if (orderIds.isEmpty()) {
+            return;
+        }
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Payload of " + type + " is not serializable", e);
+        }
+        List<OrderEvent> events = new ArrayList<>(orderIds.size());
+        for (String orderId : orderIds) {
+            events.add(OrderEvent.builder()
+                    .orderId(orderId)
+                    .type(type)
+                    .payload(json)
+                    .build());
+        }
+        orderEventRepository.saveAll(events);
+    }
+
+    public void dispatchPendingEvents() {
+        dispatcher.dispatch();
+    }
+
+    // A batch holds at most one event per order, so its events are independent of each other.
+    private void processBatch(String claimToken) {
+        for (OrderEvent event : orderEventRepository.findByClaimTokenOrderByIdAsc(claimToken)) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> apply(event));
+            } catch (Exception e) {
+                scheduleRetry(event, e);
+            }
+        }
+    }
+
+    private void apply(OrderEvent event) {
+        Order order = orderRepository.findById(event.getOrderId())
+                .orElseThrow(() -> new IllegalStateException("Order " + event.getOrderId() + " of event " + event.getId() + " not found"));
+        Map<String, Object> payload = readPayload(event);
+        for (OrderEventHandler handler : handlers) {
+            if (handler.supports(event.getType())) {
+                handler.handle(event, order, payload);
+            }
+        }
+        event.setStatus(OrderEvent.Status.PROCESSED);
+        event.setProcessedAt(OffsetDateTime.now());
+        event.setClaimToken(null);
+        event.setLastError(null);
+        orderEventRepository.save(event);
+    }
+
+    private Map<String, Object> readPayload(OrderEvent event) {
+        if (event.getPayload() == null) {
+            return Map.of();
+        }
+        try {
+            return objectMapper.readValue(event.getPayload(), PAYLOAD_TYPE);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unreadable payload on order event " + event.getId(), e);
+        }
+    }
+
+    private void scheduleRetry(OrderEvent event, Exception failure) {
+        int attempts = event.getAttempts() + 1;
+        event.setAttempts(attempts);
+        event.setClaimToken(null);
+        event.setProcessedAt(null);
+        String error = OutboxDispatcher.errorMessage(failure);
+        event.setLastError(error);
+
+        Duration backoff = dispatcher.retryDelay(attempts);
+        if (backoff == null) {
+            // Dead-lettered: later events of the order are released so one bad event cannot stall it forever.
+            event.setStatus(OrderEvent.Status.FAILED);
+            logger.error("Giving up on {} event {} of order {} after {} attempts.",
+                    event.getType(), event.getId(), event.getOrderId(), attempts, failure);
+        } else {
+            event.setStatus(OrderEvent.Status.PENDING);
+            event.setNextAttemptAt(OffsetDateTime.now().plus(backoff));
+            logger.warn("{} event {} of order {} failed (attempt {}), retrying in {}: {}",
+                    event.getType(), event.getId(), event.getOrderId(), attempts, backoff, error);
+        }
+        orderEventRepository.save(event);
+    }
+}
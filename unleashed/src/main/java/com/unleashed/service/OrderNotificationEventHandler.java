@@ -0,0 +1,79 @@
+package com.unleashed.service;
+
+import com.unleashed.dto.NotificationDTO;
+import com.unleashed.entity.Order;
+import com.unleashed.entity.OrderEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Drops an in-app notification into the customer's inbox for every customer-visible step.
+ */
+@Service
+public class OrderNotificationEventHandler implements OrderEventHandler {
+
+    private final NotificationService notificationService;
+    private final UserService userService;
+
+    @Autowired
+    public OrderNotificationEventHandler(NotificationService notificationService, UserService userService) {
+        this.notificationService = notificationService;
+        this.userService = userService;
+    }
+
+    @Override
+    public boolean supports(OrderEvent.Type type) {
+        return type != OrderEvent.Type.ORDER_CREATED;
+    }
+
+    @Override
+    public void handle(OrderEvent event, Order order, Map<String, Object> payload) {
+        if (order.getUser() == null) {
+            return;
+        }
+        String orderRef = "#" + order.getOrderTrackingNumber();
+        String title;
+        String message;
+        switch (event.getType()) {
+            case ORDER_PAID -> {
+                title = "Payment Received";
+                message = "Your payment for order " + orderRef + " was successful.";
+            }
+            case ORDER_CANCELLED -> {
+                title = "Order Cancelled";
+                message = "PAYMENT_FAILED".equals(payload.get("reason"))
+                        ? "Payment for order " + orderRef + " failed and the order was cancelled."
+                        : "Your order " + orderRef + " has been cancelled.";
+            }
+            case ORDER_SHIPPED -> {
+                title = "Order Shipped";
+                message = "Your order " + orderRef + " is on its way.";
+            }
+            case ORDER_COMPLETED -> {
+                title = "Order Completed";
+                message = "Thank you! Order " + orderRef + " is marked as received.";
+            }
+            case ORDER_RETURN_REQUESTED -> {
+                title = "Return Requested";
+                message = "We have received your return request for order " + orderRef + ".";
+            }
+            case ORDER_RETURNED -> {
+                title = "Return Completed";
+                message = "The return of order " + orderRef + " has been completed.";
+            }
+            default -> {
+                return;
+            }
+        }
+
+        NotificationDTO notificationDTO = new NotificationDTO();
+        notificationDTO.setNotificationTitle(title);
+        notificationDTO.setNotificationContent(message);
+        notificationDTO.setUserName(userService.findOrCreateSystemUser().getUsername());
+        notificationDTO.setUserNames(List.of(order.getUser().getUsername()));
+        notificationService.addNotification(notificationDTO);
+    }
+}
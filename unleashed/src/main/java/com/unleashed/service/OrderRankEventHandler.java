@@ -0,0 +1,43 @@
+package com.unleashed.service;
+
+import com.unleashed.entity.Order;
+import com.unleashed.entity.OrderEvent;
+import com.unleashed.entity.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+
+/**
+ * Membership rank accrual: completed orders count towards the customer's spending, returned ones
+ * are taken off again.
+ */
+@Service
+public class OrderRankEventHandler implements OrderEventHandler {
+
+    private final RankService rankService;
+
+    @Autowired
+    public OrderRankEventHandler(RankService rankService) {
+        this.rankService = rankService;
+    }
+
+    @Override
+    public boolean supports(OrderEvent.Type type) {
+        return type == OrderEvent.Type.ORDER_COMPLETED || type == OrderEvent.Type.ORDER_RETURNED;
+    }
+
+    @Override
+    public void handle(OrderEvent event, Order order, Map<String, Object> payload) {
+        User user = order.getUser();
+        if (user == null || !rankService.hasRegistered(user)) {
+            return;
+        }
+        if (event.getType() == OrderEvent.Type.ORDER_COMPLETED) {
+            user = rankService.addMoneySpent(user, order.getOrderTotalAmount());
+            if (rankService.checkUpRank(user)) rankService.upRank(user);
+        } else {
+            rankService.removeMoneySpent(user, order.getOrderTotalAmount());
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package com.unleashed.service;
 
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.unleashed.config.VNPayConfig;
 import com.unleashed.dto.ItemDataDTO;
+import com.unleashed.dto.OrderBulkTransitionDTO;
+import com.unleashed.dto.OrderGridDTO;
 import com.unleashed.dto.OrderDTO;
+import com.unleashed.dto.OrderTransitionResultDTO;
 import com.unleashed.dto.PayOsLinkRequestBodyDTO;
 import com.unleashed.dto.mapper.OrderDetailMapper;
 import com.unleashed.dto.mapper.OrderMapper;
@@ -10,7 +14,6 @@ import com.unleashed.dto.mapper.ProductVariationMapper;
 import com.unleashed.entity.*;
 import com.unleashed.entity.composite.OrderVariationSingleId;
 import com.unleashed.repo.*;
-import com.unleashed.repo.specification.OrderSpecification;
 import com.unleashed.util.AppTaskScheduler;
 import jakarta.persistence.Tuple;
 import jakarta.servlet.http.HttpServletRequest;
@@ -21,9 +24,10 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
-import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,8 +35,6 @@ import org.slf4j.LoggerFactory;
 import java.math.BigDecimal;
 import java.text.SimpleDateFormat;
 import java.time.OffsetDateTime;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -46,12 +48,10 @@ public class OrderService {
     private final ProductRepository productRepository;
     private final VariationSingleRepository variationSingleRepository;
     private final OrderVariationSingleRepository orderVariationSingleRepository;
-    private final CartService cartService;
     private final OrderMapper orderMapper;
     private final OrderDetailMapper orderDetailMapper;
     private final VNPayService vnPayService;
     //    private final PayOsRestController payOsRestController;
-    private final EmailService emailService;
     private final OrderDetailService orderDetailService;
     private final ProductVariationService productVariationService;
     private final VariationRepository variationRepository;
@@ -59,12 +59,15 @@ public class OrderService {
     private final UserRepository userRepository;
     private final DiscountService discountService;
     private final OrderStatusRepository orderStatusRepository;
-    private final RankService rankService;
     private final StockVariationRepository stockVariationRepository;
-    private final UserService userService;
     private final ReviewRepository reviewRepository;
     private final StockTransactionService stockTransactionService;
-    private boolean isCancellingOrder = false;
+    private final OrderEventService orderEventService;
+    private final OrderStateMachine orderStateMachine;
+    private final PaymentLinkService paymentLinkService;
+    private final PricingService pricingService;
+    private final EntityLookupService entityLookupService;
+    private final TransactionTemplate transactionTemplate;
     private static final Logger logger = LoggerFactory.getLogger(AppTaskScheduler.class);
 
     @Autowired
@@ -73,7 +76,6 @@ public class OrderService {
                         OrderDetailMapper orderDetailMapper,
                         VNPayService vnPayService,
 //                        PayOsRestController payOsRestController,
-                        EmailService emailService,
                         ProductVariationService productVariationService,
                         VariationRepository variationRepository,
                         ProductVariationMapper productVariationMapper,
@@ -85,17 +87,19 @@ public class OrderService {
                         OrderStatusRepository orderStatusRepository,
                         VariationSingleRepository variationSingleRepository,
                         OrderVariationSingleRepository orderVariationSingleRepository,
-                        CartService cartService,
-                        RankService rankService,
                         StockVariationRepository stockVariationRepository,
-                        UserService userService,
-                        StockTransactionService stockTransactionService) {
+                        StockTransactionService stockTransactionService,
+                        OrderEventService orderEventService,
+                        OrderStateMachine orderStateMachine,
+                        PaymentLinkService paymentLinkService,
+                        PricingService pricingService,
+                        EntityLookupService entityLookupService,
+                        PlatformTransactionManager transactionManager) {
         this.orderRepository = orderRepository;
         this.orderMapper = orderMapper;
         this.orderDetailMapper = orderDetailMapper;
         this.vnPayService = vnPayService;
 //        this.payOsRestController = payOsRestController;
-        this.emailService = emailService;
         this.orderDetailService = orderDetailService;
         this.productVariationService = productVariationService;
         this.variationRepository = variationRepository;
@@ -107,11 +111,14 @@ public class OrderService {
         this.orderStatusRepository = orderStatusRepository;
         this.variationSingleRepository = variationSingleRepository;
         this.orderVariationSingleRepository = orderVariationSingleRepository;
-        this.cartService = cartService;
-        this.rankService = rankService;
         this.stockVariationRepository = stockVariationRepository;
-        this.userService = userService;
         this.stockTransactionService = stockTransactionService;
+        this.orderEventService = orderEventService;
+        this.orderStateMachine = orderStateMachine;
+        this.paymentLinkService = paymentLinkService;
+        this.pricingService = pricingService;
+        this.entityLookupService = entityLookupService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
 
@@ -142,40 +149,7 @@ public class OrderService {
             orderJson.put("staffUsername",
                     order.getInchargeEmployee() != null ? order.getInchargeEmployee().getUsername() : "N/A");
 
-            Map<Variation, Long> variationCounts = order.getOrderVariationSingles().stream()
-                    .collect(Collectors.groupingBy(
-                            ovs -> ovs.getVariationSingle().getVariation(),
-                            Collectors.counting()
-                    ));
-
-            List<Map<String, Object>> orderDetailsList = new ArrayList<>();
-            for (Map.Entry<Variation, Long> entry : variationCounts.entrySet()) {
-                Variation variation = entry.getKey();
-                Long quantity = entry.getValue();
-
-                Map<String, Object> detailJson = new HashMap<>();
-                detailJson.put("productId", variation.getProduct().getProductId());
-                detailJson.put("productName", variation.getProduct().getProductName());
-                detailJson.put("color", variation.getColor().getColorName());
-                detailJson.put("size", variation.getSize().getSizeName());
-                detailJson.put("productImage", variation.getVariationImage());
-                detailJson.put("orderQuantity", quantity);
-
-                BigDecimal unitPrice = order.getOrderVariationSingles().stream()
-                        .filter(od -> od.getVariationSingle().getVariation().equals(variation))
-                        .findFirst()
-                        .map(OrderVariationSingle::getVariationPriceAtPurchase)
-                        .orElse(BigDecimal.ZERO);
-
-                detailJson.put("unitPrice", unitPrice);
-
-                // This part for checking reviews can be optimized if needed, but is functionally correct
-                boolean hasReviewed = reviewRepository.existsByProductAndUser(variation.getProduct(), order.getUser());
-                detailJson.put("hasReviewed", hasReviewed);
-
-                detailJson.put("orderTrackingNumber", order.getOrderTrackingNumber());
-                orderDetailsList.add(detailJson);
-            }
+            List<Map<String, Object>> orderDetailsList = buildOrderLines(order);
 
             long totalOrderQuantity = orderDetailsList.stream()
                     .mapToLong(d -> (Long) d.get("orderQuantity"))
@@ -189,6 +163,47 @@ public class OrderService {
     }
 
 
+    /**
+     * The order's lines grouped per variation, with the quantity, the price paid and whether the
+     * customer has reviewed the product. Reviews are checked with one query for the whole order.
+     */
+    private List<Map<String, Object>> buildOrderLines(Order order) {
+        Map<Variation, Long> variationCounts = new LinkedHashMap<>();
+        Map<Variation, BigDecimal> unitPrices = new HashMap<>();
+        for (OrderVariationSingle line : order.getOrderVariationSingles()) {
+            Variation variation = line.getVariationSingle().getVariation();
+            variationCounts.merge(variation, 1L, Long::sum);
+            unitPrices.putIfAbsent(variation, line.getVariationPriceAtPurchase());
+        }
+        Set<UUID> productIds = variationCounts.keySet().stream()
+                .map(variation -> variation.getProduct().getProductId())
+                .collect(Collectors.toSet());
+        Set<UUID> reviewedProductIds = productIds.isEmpty() || order.getUser() == null
+                ? Set.of()
+                : new HashSet<>(reviewRepository.findReviewedProductIds(order.getUser().getUserId(), productIds));
+
+        List<Map<String, Object>> orderDetailsList = new ArrayList<>();
+        for (Map.Entry<Variation, Long> entry : variationCounts.entrySet()) {
+            Variation variation = entry.getKey();
+            Long quantity = entry.getValue();
+
+            Map<String, Object> detailJson = new HashMap<>();
+            detailJson.put("productId", variation.getProduct().getProductId());
+            detailJson.put("productName", variation.getProduct().getProductName());
+            detailJson.put("color", variation.getColor().getColorName());
+            detailJson.put("size", variation.getSize().getSizeName());
+            detailJson.put("productImage", variation.getVariationImage());
+            detailJson.put("orderQuantity", quantity);
+            detailJson.put("unitPrice", Objects.requireNonNullElse(unitPrices.get(variation), BigDecimal.ZERO));
+            detailJson.put("hasReviewed", reviewedProductIds.contains(variation.getProduct().getProductId()));
+
+            detailJson.put("orderTrackingNumber", order.getOrderTrackingNumber());
+            orderDetailsList.add(detailJson);
+        }
+        return orderDetailsList;
+    }
+
+
     @Transactional
     public Map<String, Object> getOrdersByUserIdWithValidation(String userId, Pageable pageable) {
         Sort sort = Sort.by("orderUpdatedAt").descending();
@@ -256,39 +271,7 @@ public class OrderService {
             orderJson.put("customerUserId", order.getUser().getUserId());
             orderJson.put("notes", order.getOrderNote());
 
-            // Aggregate details directly from the order's entities, just like in getOrderById
-            Map<Variation, Long> variationCounts = order.getOrderVariationSingles().stream()
-                    .collect(Collectors.groupingBy(
-                            ovs -> ovs.getVariationSingle().getVariation(),
-                            Collectors.counting()
-                    ));
-
-            List<Map<String, Object>> orderDetailsList = new ArrayList<>();
-            for (Map.Entry<Variation, Long> entry : variationCounts.entrySet()) {
-                Variation variation = entry.getKey();
-                Long quantity = entry.getValue();
-
-                Map<String, Object> detailJson = new HashMap<>();
-                detailJson.put("productId", variation.getProduct().getProductId());
-                detailJson.put("productName", variation.getProduct().getProductName());
-                detailJson.put("color", variation.getColor().getColorName());
-                detailJson.put("size", variation.getSize().getSizeName());
-                detailJson.put("productImage", variation.getVariationImage());
-                detailJson.put("orderQuantity", quantity);
-
-                BigDecimal unitPrice = order.getOrderVariationSingles().stream()
-                        .filter(od -> od.getVariationSingle().getVariation().equals(variation))
-                        .findFirst()
-                        .map(OrderVariationSingle::getVariationPriceAtPurchase)
-                        .orElse(BigDecimal.ZERO);
-                detailJson.put("unitPrice", unitPrice);
-
-                boolean hasReviewed = reviewRepository.existsByProductAndUser(variation.getProduct(), order.getUser());
-                detailJson.put("hasReviewed", hasReviewed);
-
-                detailJson.put("orderTrackingNumber", order.getOrderTrackingNumber());
-                orderDetailsList.add(detailJson);
-            }
+            List<Map<String, Object>> orderDetailsList = buildOrderLines(order);
 
             long totalOrderQuantity = orderDetailsList.stream()
                     .mapToLong(d -> (Long) d.get("orderQuantity"))
@@ -301,57 +284,26 @@ public class OrderService {
     }
 
 
-    @Transactional
+    @Transactional(readOnly = true)
     public Map<String, Object> getOrders(String search, String sort, Integer statusId, int page, int size) {
-        Specification<Order> spec = new OrderSpecification(search, statusId);
+        String searchPattern = StringUtils.hasText(search) ? "%" + search.toLowerCase() + "%" : null;
 
-        Pageable pageable;
+        Page<OrderGridDTO> ordersPage;
         if ("totalPrice_asc".equals(sort)) {
-            pageable = PageRequest.of(page, size, Sort.by("orderTotalAmount").ascending());
+            ordersPage = orderRepository.findOrderGrid(searchPattern, statusId,
+                    PageRequest.of(page, size, Sort.by("orderTotalAmount").ascending()));
         } else if ("totalPrice_desc".equals(sort)) {
-            pageable = PageRequest.of(page, size, Sort.by("orderTotalAmount").descending());
+            ordersPage = orderRepository.findOrderGrid(searchPattern, statusId,
+                    PageRequest.of(page, size, Sort.by("orderTotalAmount").descending()));
+        } else if (searchPattern != null || statusId != null) {
+            ordersPage = orderRepository.findOrderGrid(searchPattern, statusId,
+                    PageRequest.of(page, size, Sort.by("orderUpdatedAt").descending()));
         } else {
-            if (StringUtils.hasText(search) || statusId != null) {
-                pageable = PageRequest.of(page, size, Sort.by("orderUpdatedAt").descending());
-            } else {
-                Page<Order> ordersPage = orderRepository.findAllWithPriority(PageRequest.of(page, size));
-                return mapOrderPageToResponse(ordersPage);
-            }
+            ordersPage = orderRepository.findOrderGridWithPriority(PageRequest.of(page, size));
         }
 
-        Page<Order> ordersPage = orderRepository.findAll(spec, pageable);
-        return mapOrderPageToResponse(ordersPage);
-    }
-
-    public List<OrderStatus> getAllOrderStatuses() {
-        return orderStatusRepository.findAll(Sort.by(Sort.Direction.ASC, "id"));
-    }
-
-    // Helper method to map the Page<Order> to the response structure.
-    private Map<String, Object> mapOrderPageToResponse(Page<Order> ordersPage) {
-        List<Map<String, Object>> ordersList = ordersPage.getContent().stream()
-                .map(order -> {
-                    // This is your existing detailed mapping logic.
-                    Map<String, Object> orderJson = new HashMap<>();
-                    orderJson.put("orderId", order.getOrderId());
-                    orderJson.put("totalAmount", order.getOrderTotalAmount());
-                    orderJson.put("orderStatus", order.getOrderStatus().getOrderStatusName());
-                    orderJson.put("orderDate", order.getOrderDate());
-                    orderJson.put("billingAddress", order.getOrderBillingAddress());
-                    orderJson.put("shippingMethod", order.getShippingMethod().getShippingMethodName());
-                    orderJson.put("expectedDeliveryDate", order.getOrderExpectedDeliveryDate());
-                    orderJson.put("transactionReference", order.getOrderTransactionReference());
-                    orderJson.put("paymentMethod", order.getPaymentMethod().getPaymentMethodName());
-                    orderJson.put("trackingNumber", order.getOrderTrackingNumber());
-                    orderJson.put("customerUsername", order.getUser().getUsername());
-                    orderJson.put("notes", order.getOrderNote());
-                    orderJson.put("staffUsername",
-                            order.getInchargeEmployee() != null ? order.getInchargeEmployee().getUsername() : "N/A");
-                    return orderJson;
-                }).collect(Collectors.toList());
-
         Map<String, Object> response = new HashMap<>();
-        response.put("orders", ordersList);
+        response.put("orders", ordersPage.getContent());
         response.put("currentPage", ordersPage.getNumber());
         response.put("totalItems", ordersPage.getTotalElements());
         response.put("totalPages", ordersPage.getTotalPages());
@@ -359,6 +311,10 @@ public class OrderService {
         return response;
     }
 
+    public List<OrderStatus> getAllOrderStatuses() {
+        return orderStatusRepository.findAll(Sort.by(Sort.Direction.ASC, "id"));
+    }
+
 
     @Transactional
     public Map<String, Object> getOrdersByUserId(String userId, Pageable pageable) {
@@ -466,9 +422,72 @@ public class OrderService {
 //        return orderDetailService.getOrderDetailsByOrderId(orderId);
 //    }
 
-    @Transactional
+    /**
+     * Checkout runs in three phases so that no JDBC connection or row lock is held while a payment
+     * gateway is called:
+     * <ol>
+     *     <li>a short transaction persists the order, its lines, the discount usage and the stock reservation;</li>
+     *     <li>the PayOS / VNPay link is created outside any transaction, behind {@link PaymentLinkService}'s bulkhead and timeouts;</li>
+     *     <li>a small transaction records the gateway's transaction reference.</li>
+     * </ol>
+     * If the gateway fails the order is cancelled as a failed payment, which releases the reserved stock.
+     * If it times out the link may exist anyway, so the order stays PENDING until a webhook settles it
+     * or {@link PaymentCallbackService#expireUnpaidOrders()} gives up on it.
+     */
     public Map<String, Object> createOrder(OrderDTO orderDTO, HttpServletRequest request) {
+        return createOrder(orderDTO, VNPayConfig.getIpAddress(request));
+    }
+
+    /**
+     * Request-free variant used by the queued checkout workers.
+     */
+    public Map<String, Object> createOrder(OrderDTO orderDTO, String clientIp) {
+        String paymentMethod = resolvePaymentMethod(orderDTO);
+
+        CheckoutDraft draft = transactionTemplate.execute(status -> persistOrder(orderDTO, paymentMethod, clientIp));
+        if (draft.paymentLinkRequest() == null) {
+            return draft.response();
+        }
 
+        PaymentLinkService.PaymentLink paymentLink;
+        try {
+            paymentLink = paymentLinkService.createLink(draft.paymentLinkRequest());
+        } catch (PaymentLinkService.GatewayTimeoutException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            orderStateMachine.apply(List.of(draft.orderId()), OrderStateMachine.Action.PAYMENT_FAILED, null);
+            throw e;
+        }
+
+        transactionTemplate.executeWithoutResult(status ->
+                orderRepository.updateTransactionReference(draft.orderId(), paymentLink.transactionReference()));
+
+        Map<String, Object> jsonResponse = draft.response();
+        jsonResponse.put("transactionReference", paymentLink.transactionReference());
+        jsonResponse.put("redirectUrl", paymentLink.redirectUrl());
+        return jsonResponse;
+    }
+
+    /**
+     * Result of the first checkout phase: the response body, and what the gateway call needs
+     * (null for COD and bank transfer, which need no payment link).
+     */
+    private record CheckoutDraft(String orderId, Map<String, Object> response,
+                                 PaymentLinkService.PaymentLinkRequest paymentLinkRequest) {
+    }
+
+    private String resolvePaymentMethod(OrderDTO orderDTO) {
+        if (orderDTO.getPaymentMethod() == null || orderDTO.getPaymentMethod().getPaymentMethodName() == null) {
+            throw new IllegalArgumentException("Invalid payment method: " + orderDTO.getPaymentMethod());
+        }
+        String paymentMethod = orderDTO.getPaymentMethod().getPaymentMethodName().toUpperCase(Locale.ROOT);
+        if (!List.of("PAYOS", "VNPAY", "COD", "TRANSFER").contains(paymentMethod)) {
+            throw new IllegalArgumentException("Invalid payment method: " + orderDTO.getPaymentMethod());
+        }
+        return paymentMethod;
+    }
+
+    private CheckoutDraft persistOrder(OrderDTO orderDTO, String paymentMethod, String clientIp) {
         Order order = Order.builder()
                 .user(userRepository.findById(UUID.fromString(orderDTO.getUserId())).orElse(null))
                 .orderDate(OffsetDateTime.now())
@@ -491,15 +510,11 @@ public class OrderService {
                 .build();
         order = orderRepository.saveAndFlush(order);
 
-        if (orderDTO.getUserId() != null && orderDTO.getUserAddress() != null) {
-            userService.updateUserAddress(orderDTO.getUserId(), orderDTO.getUserAddress());
-        }
-
-        if (orderDTO.getUserId() != null && orderDTO.getPaymentMethod() != null) {
-            userService.updateUserPaymentMethod(orderDTO.getUserId(), orderDTO.getPaymentMethod().getPaymentMethodName());
+        List<OrderVariationSingle> orderVariationSingles = saveOrderDetails(order, orderDTO);
+        if (orderVariationSingles.isEmpty()) {
+            throw new IllegalArgumentException("Order details cannot be null or empty for payment processing");
         }
 
-        // 2. Check Discount
         if (orderDTO.getDiscountCode() != null) {
             try {
                 discountService.updateUsageLimit(orderDTO.getDiscountCode(), orderDTO.getUserId());
@@ -508,17 +523,38 @@ public class OrderService {
             }
         }
 
-        List<OrderVariationSingle> orderVariationSingles = saveOrderDetails(order, orderDTO);
-
-        JSONObject paymentResponse = handlePayment(order, orderDTO, orderVariationSingles, request);
+        // Cart cleanup, profile updates and the confirmation email are consumers of this event.
+        Map<String, Object> createdPayload = new HashMap<>();
+        createdPayload.put("userAddress", orderDTO.getUserAddress());
+        createdPayload.put("paymentMethod", orderDTO.getPaymentMethod().getPaymentMethodName());
+        orderEventService.publish(order, OrderEvent.Type.ORDER_CREATED, createdPayload);
 
         Map<String, Object> jsonResponse = buildOrderResponseJson(order, orderVariationSingles);
-
-        if (paymentResponse != null && paymentResponse.has("redirectUrl")) {
-            jsonResponse.put("redirectUrl", paymentResponse.get("redirectUrl"));
+        if (paymentMethod.equals("COD") || paymentMethod.equals("TRANSFER")) {
+            return new CheckoutDraft(order.getOrderId(), jsonResponse, null);
         }
 
-        return jsonResponse;
+        List<ItemDataDTO> items = new ArrayList<>();
+        orderVariationSingles.stream()
+                .collect(Collectors.groupingBy(ovs -> ovs.getVariationSingle().getVariation(),
+                        LinkedHashMap::new, Collectors.toList()))
+                .forEach((variation, lines) -> {
+                    ItemDataDTO item = new ItemDataDTO();
+                    item.setName(variation.getProduct().getProductName());
+                    item.setPrice(lines.get(0).getVariationPriceAtPurchase().intValue());
+                    item.setQuantity(lines.size());
+                    items.add(item);
+                });
+
+        PaymentLinkService.PaymentLinkRequest paymentLinkRequest = new PaymentLinkService.PaymentLinkRequest(
+                order.getOrderId(),
+                paymentMethod,
+                orderDTO.getTotalAmount().longValue(),
+                Long.parseLong(order.getOrderTransactionReference()),
+                "Thanh Toán Đơn Hàng",
+                items,
+                clientIp);
+        return new CheckoutDraft(order.getOrderId(), jsonResponse, paymentLinkRequest);
     }
 
 
@@ -624,8 +660,11 @@ public class OrderService {
         List<OrderVariationSingle> savedOrderVariationSingles = new ArrayList<>();
         try {
             orderDTO.getOrderDetails().forEach(detail -> {
-                Variation variation = variationRepository.findById(detail.getVariationId()).orElse(null);
+                Variation variation = entityLookupService.findVariationById(detail.getVariationId()).orElse(null);
                 if (variation != null) {
+                    // The price is the one the pricing engine shows now, not what the client sent.
+                    BigDecimal unitPrice = pricingService.priceOf(variation.getProduct().getProductId(),
+                            variation.getVariationPrice()).finalPrice();
                     for (int i = 0; i < detail.getOrderQuantity(); i++) {
                         VariationSingle variationSingle = VariationSingle.builder()
                                 .variation(variation)
@@ -640,7 +679,7 @@ public class OrderService {
                                         .build())
                                 .order(order)
                                 .variationSingle(variationSingle)
-                                .variationPriceAtPurchase(detail.getUnitPrice())
+                                .variationPriceAtPurchase(unitPrice)
                                 .build();
 
                         OrderVariationSingle savedOvs = orderVariationSingleRepository.save(orderVariationSingle);
@@ -655,8 +694,6 @@ public class OrderService {
             });
 
             stockTransactionService.createReservationTransactionsForOrder(order);
-
-            cartService.removeAllFromCart(order.getUser().getUserId().toString());
         } catch (Exception e) {
             System.err.println("Failed to save order details: " + e.getMessage());
             throw new RuntimeException("Failed to save order details", e);
@@ -665,166 +702,12 @@ public class OrderService {
         return savedOrderVariationSingles;
     }
 
-    private JSONObject handlePayment(Order order, OrderDTO orderDTO, List<OrderVariationSingle> orderDetails, HttpServletRequest request) {
-        if (orderDetails == null || orderDetails.isEmpty()) {
-            throw new IllegalArgumentException("Order details cannot be null or empty for payment processing");
-        }
-//        System.out.println(order.getPaymentMethod().getPaymentMethodName().toUpperCase(Locale.ROOT));
-        switch (order.getPaymentMethod().getPaymentMethodName().toUpperCase(Locale.ROOT)) {
-            case "PAYOS":
-                return handlePayOsPayment(order, orderDTO, orderDetails, request);
-            case "VNPAY":
-                return handleVNPayPayment(order, orderDTO, orderDetails, request);
-            case "COD":
-                return handleCODPayment(order);
-            case "TRANSFER":
-                return handleTransferPayment(order);
-            default:
-                throw new IllegalArgumentException("Invalid payment method: " + orderDTO.getPaymentMethod());
-        }
-    }
-
-
-//    private List<ItemDataDTO> createItemDataList(OrderDTO orderDTO) {
-//        return orderDTO.getOrderDetails().stream()
-//                .map(orderDetail -> new ItemDataDTO(
-//                        null, // Hoặc lấy tên từ một nguồn khác nếu có
-//                        orderDetail.getVariationId(),
-//                        orderDetail.getUnitPrice().intValue(),
-//                        orderDetail.getOrderQuantity()
-//                ))
-//                .collect(Collectors.toList());
-//    }
-
-    private JSONObject handlePayOsPayment(Order order, OrderDTO orderDTO, List<OrderVariationSingle> orderDetails, HttpServletRequest request) {
-        List<ItemDataDTO> itemDataList = orderDTO.getOrderDetails().stream()
-                .map(detail -> {
-                    ItemDataDTO item = new ItemDataDTO();
-                    String productName = productRepository.getProductNameById(detail.getVariationId());
-                    item.setName(productName);
-                    item.setPrice(detail.getUnitPrice().intValue());
-                    item.setQuantity(detail.getOrderQuantity());
-                    return item;
-                })
-                .collect(Collectors.toList());
-
-        PayOsLinkRequestBodyDTO payOsRequest = new PayOsLinkRequestBodyDTO(
-                "Thanh Toán Đơn Hàng",
-                null,
-                (int) (orderDTO.getTotalAmount() * 1),
-                null,
-                itemDataList
-        );
-
-//        ObjectNode paymentLinkResponse = payOsRestController.createPaymentLink(payOsRequest, request);
-
-        return handlePaymentResponse(order, null, orderDetails);
-    }
-
-
-    private JSONObject handleCODPayment(Order order) {
-//        order.setOrderStatus(Order.OrderStatus.PENDING);
-
-        orderRepository.save(order);
-//        System.out.println("Get here");
-        sendOrderConfirmationEmail(order);
-
-        JSONObject response = new JSONObject();
-        response.put("error", 0);
-        response.put("message", "Order created with COD payment");
-
-        return response;
-    }
-
-    private JSONObject handleTransferPayment(Order order) {
-//        order.setOrderStatus(Order.OrderStatus.PENDING);
-        orderRepository.save(order);
-        sendOrderConfirmationEmail(order);
-
-        JSONObject response = new JSONObject();
-        response.put("error", 0);
-        response.put("message", "Order created with bank transfer payment");
-        return response;
-    }
-
-
-    private JSONObject handleVNPayPayment(Order order, OrderDTO orderDTO, List<OrderVariationSingle> orderDetails, HttpServletRequest request) {
-        int totalAmountInCents = (int) (orderDTO.getTotalAmount() * 1);
-        String paymentLink = vnPayService.createOrder(
-                totalAmountInCents,
-                "Order " + order.getOrderId(),
-                "http://localhost:3000/orders/success",
-                request
-        );
-
-        String transactionReference = extractTransactionCode(paymentLink);
-        order.setOrderTransactionReference(transactionReference);
-        orderRepository.save(order);
-        sendOrderConfirmationEmail(order);
-        return redirectPayment(paymentLink);
-    }
-
-
-    private String extractTransactionCode(String paymentLink) {
-        if (paymentLink == null || paymentLink.isEmpty()) {
-            return "000000"; // Mã mặc định nếu không có paymentLink
-        }
-
-        if (paymentLink.contains("vnp_TxnRef")) {
-            // URL của VNPAY, lấy giá trị của tham số `vnp_TxnRef`
-            String[] params = paymentLink.split("&");
-            for (String param : params) {
-                if (param.startsWith("vnp_TxnRef=")) {
-                    return param.substring("vnp_TxnRef=".length());
-                }
-            }
-        } else if (paymentLink.contains("pay.payos.vn")) {
-            // URL của PAYOS, lấy 32 ký tự cuối (mã giao dịch)
-            return paymentLink.substring(paymentLink.lastIndexOf('/') + 1);
-        }
-
-        return "000000"; // Trả về mã mặc định nếu không khớp định dạng
-    }
-
-
-    private JSONObject handlePaymentResponse(Order order, ObjectNode paymentLinkResponse, List<OrderVariationSingle> orderVariationSingles) {
-        if (paymentLinkResponse.get("error").asInt() == 0) {
-            String paymentLink = paymentLinkResponse.get("data").get("checkoutUrl").asText(); // Sử dụng checkoutUrl
-            String transactionReference = extractTransactionCode(paymentLink);
-            order.setOrderTransactionReference(transactionReference);
-            orderRepository.save(order);
-            sendOrderConfirmationEmail(order);
-            return redirectPayment(paymentLink);
-        }
-        return null;
-    }
-
-
-    private JSONObject redirectPayment(String paymentLink) {
-        JSONObject response = new JSONObject();
-        response.put("error", 0);
-        response.put("message", "success");
-        response.put("redirectUrl", paymentLink);
-        return response;
-    }
-
-    public void handlePaymentCallback(String orderId, boolean isSuccess) {
-        Order order = orderRepository.findById(orderId).orElse(null);
-        if (order != null) {
-            // Only proceed if the order is in the PENDING status
-            if (order.getOrderStatus().getOrderStatusName().equalsIgnoreCase("PENDING")) {
-                // System.out.println("Order is not in PENDING status. Payment callback will not be processed.");
-                return;
-            }
-
-            // Update the order status based on the payment success
-            order.setOrderStatus(isSuccess ? orderStatusRepository.findAll().get(2)
-                    : orderStatusRepository.findAll().get(5));
-            orderRepository.save(order);
-
-            // Send payment callback email
-            sendPaymentCallbackEmail(order, isSuccess);
-        }
+    /**
+     * Status of one of the user's own orders, polled by the payment return page. Payment outcomes
+     * only ever reach the order through the gateways' signed webhooks.
+     */
+    public Optional<String> getPaymentStatus(String orderId, String username) {
+        return orderRepository.findStatusNameOfUserOrder(orderId, username);
     }
 
 
@@ -836,398 +719,23 @@ public class OrderService {
 
     @Transactional
     public void cancelOrder(String orderId) {
-        isCancellingOrder = true;
-
-        try {
-            Order order = orderRepository.findById(orderId)
-                    .orElseThrow(() -> new IllegalArgumentException("Invalid order ID: " + orderId));
-
-            if ((order.getOrderStatus().getOrderStatusName().equalsIgnoreCase("PENDING")
-                    || order.getOrderStatus().getOrderStatusName().equalsIgnoreCase("PROCESSING"))) {
-                order.setOrderStatus(orderStatusRepository.findById(5)
-                        .orElseThrow(() -> new IllegalStateException("OrderStatus with ID 5 (CANCELLED) not found.")));
-
-                orderRepository.save(order);
-
-                if (!order.getOrderStatus().getOrderStatusName().equalsIgnoreCase("CANCELLED")) {
-                    throw new IllegalStateException("Order status was not updated to CANCELLED");
-                }
-
-            } else if (order.getOrderStatus().getOrderStatusName().equalsIgnoreCase("SHIPPING")) {
-                order.setOrderStatus(orderStatusRepository.findById(6)
-                        .orElseThrow(() -> new IllegalStateException("OrderStatus with ID 6 (RETURNED) not found.")));
-
-                orderRepository.save(order);
-
-                if (!(order.getOrderStatus().getOrderStatusName().equalsIgnoreCase("RETURNED"))) {
-                    throw new IllegalStateException("Order status was not updated to RETURNED");
-                }
-
-            } else {
-                throw new IllegalStateException("Cannot cancel an order that is not pending or processing.");
-            }
-            returnStock(order);
-
-        } finally {
-            isCancellingOrder = false;
-        }
+        applySingle(orderId, OrderStateMachine.Action.CANCEL, null);
     }
 
 
-    private void sendOrderConfirmationEmail(Order order) {
-        String subject = "Order Confirmation #" + order.getOrderId();
-//        String body = buildOrderEmailBody(order, order.getOrderVariationSingles(), "Your order has been successfully created! Thank you for shopping at Unleashed!");
-
-//        emailService.sendHtmlMessage(order.getUser().getUserEmail(), subject, body);
-    }
-
-    private void sendPaymentCallbackEmail(Order order, boolean isSuccess) {
-        String subject = isSuccess ? "Payment Successful - Order #" + order.getOrderId() : "Payment Failed - Order #" + order.getOrderId();
-        String message = isSuccess ? "Your order has been successfully paid and is being processed." : "Unfortunately, the payment for your order has failed.";
-        String body = buildPaymentCallbackEmailBody(order, message);
-        emailService.sendHtmlMessage(order.getUser().getUserEmail(), subject, body);
-    }
-
-    private void sendOrderCancellationEmail(Order order) {
-        String subject = "Order Cancellation Notification - Order #" + order.getOrderId();
-        String body = buildOrderCancellationEmailBody(order); // Call the cancellation-specific email body
-        emailService.sendHtmlMessage(order.getUser().getUserEmail(), subject, body);
-    }
-
-
-    private void sendOrderCreatedEmail(Order order) {
-        String subject = "Order Created #" + order.getOrderId();
-        String body = buildOrderEmailBody(order, order.getOrderVariationSingles(), "Your order has been created! Please complete the payment so we can process your order.");
-        emailService.sendHtmlMessage(order.getUser().getUserEmail(), subject, body);
-    }
-
-    private void sendPaymentSuccessEmail(Order order) {
-        String subject = "Payment Successful for Order #" + order.getOrderId();
-        String body = buildOrderEmailBody(order, order.getOrderVariationSingles(), "Your order has been successfully paid! Your order is being processed.");
-        emailService.sendHtmlMessage(order.getUser().getUserEmail(), subject, body);
-    }
-
-
-    // Phương thức chuyển đổi OrderDetails thành danh sách ProductVariations
-    private Set<Variation> convertOrderDetailsToProductVariations(Set<OrderVariationSingle> orderVariationSingles) {
-//        if (orderVariationSingles == null) {
-//            System.out.println("orderDetails is null in convertOrderDetailsToProductVariations");
-//        } else {
-//            System.out.println("orderDetails in convertOrderDetailsToProductVariations: " + orderVariationSingles);
-//        }
-
-        Set<Variation> productVariations = new HashSet<>();
-        for (OrderVariationSingle orderVariationSingle : orderVariationSingles) {
-            variationRepository.findById(orderVariationSingle.getId().getVariationSingleId())
-                    .ifPresent(productVariations::add);
-        }
-        return productVariations;
-    }
-
-    // Phương thức lấy số lượng đơn hàng tương ứng cho một variation
-    private int getOrderQuantityForVariation(Set<OrderVariationSingle> orderVariationSingles, String variationId) {
-//        if (orderVariationSingles == null) {
-//            System.out.println("orderDetails is null in getOrderQuantityForVariation");
-//        } else {
-//            System.out.println("orderDetails in getOrderQuantityForVariation: " + orderVariationSingles);
-//        }
-        for (OrderVariationSingle orderVariationSingle : orderVariationSingles) {
-//            if (detail.getVariationId().equals(variationId)) {
-            return orderVariationSingle.getId().getVariationSingleId();
-//        }
-        }
-        return 0; // Trả về 0 nếu không tìm thấy
-    }
-
     @Transactional
     public void reviewOrderByStaff(String orderId, String staffName, boolean isApproved) {
-        Order order = orderRepository.findById(orderId)
-                .orElseThrow(() -> new IllegalArgumentException("Invalid order ID"));
-
-        User staff = userRepository.findByUserUsername(staffName)
+        User staff = entityLookupService.findUserByUsername(staffName)
                 .orElseThrow(() -> new IllegalArgumentException("Invalid staff name"));
-
-        String currentStatus = order.getOrderStatus().getOrderStatusName();
-
-        if (currentStatus.equalsIgnoreCase("PENDING")) {
-            order.setInchargeEmployee(staff);
-            if (isApproved) {
-                OrderStatus processingStatus = orderStatusRepository.findById(2)
-                        .orElseThrow(() -> new IllegalStateException("OrderStatus with ID 2 (PROCESSING) not found."));
-                order.setOrderStatus(processingStatus);
-            } else {
-                OrderStatus cancelledStatus = orderStatusRepository.findById(7)
-                        .orElseThrow(() -> new IllegalStateException("OrderStatus with ID 7 (CANCELLED) not found."));
-                order.setOrderStatus(cancelledStatus);
-                returnStock(order);
-            }
-            orderRepository.save(order);
-
-        } else if (currentStatus.equalsIgnoreCase("PROCESSING")) {
-            order.setInchargeEmployee(staff);
-            if (isApproved) {
-                OrderStatus shippingStatus = orderStatusRepository.findById(3)
-                        .orElseThrow(() -> new IllegalStateException("OrderStatus with ID 3 (SHIPPING) not found."));
-                order.setOrderStatus(shippingStatus);
-            } else {
-                OrderStatus cancelledStatus = orderStatusRepository.findById(7)
-                        .orElseThrow(() -> new IllegalStateException("OrderStatus with ID 7 (CANCELLED) not found."));
-                order.setOrderStatus(cancelledStatus);
-                returnStock(order);
-            }
-            orderRepository.save(order);
-
-        } else {
-            throw new IllegalStateException("Order must be in PENDING or PROCESSING status to be reviewed by staff.");
-        }
+        applySingle(orderId, isApproved ? OrderStateMachine.Action.APPROVE : OrderStateMachine.Action.REJECT, staff);
     }
 
 
+    @Transactional
     public void confirmOrderReceived(String orderId) {
-        Order order = orderRepository.findById(orderId)
-                .orElseThrow(() -> new IllegalArgumentException("Invalid order ID"));
-        OrderStatus shippingStatus = orderStatusRepository.findByOrderStatusName("SHIPPING")
-                .orElseThrow(() -> new IllegalStateException("Shipping status not found"));
-        OrderStatus completedStatus = orderStatusRepository.findByOrderStatusName("COMPLETED")
-                .orElseThrow(() -> new IllegalStateException("Completed status not found"));
-        if (!order.getOrderStatus().equals(shippingStatus)) {
-            throw new IllegalStateException("Order must be in SHIPPING status to confirm receipt.");
-        }
-        order.setOrderStatus(completedStatus);
-        orderRepository.save(order);
-        if (rankService.hasRegistered(order.getUser())) {
-            User user = rankService.addMoneySpent(order.getUser(), order.getOrderTotalAmount());
-            if (rankService.checkUpRank(user)) rankService.upRank(user);
-        }
-    }
-
-    private String buildOrderEmailBody(Order order, Set<OrderVariationSingle> orderVariationSingles, String headerMessage) {
-        String logoUrl = "https://i.ibb.co/gbpkn23f/tab.png"; // Shop logo URL
-        String primaryColor = "#62C0EE"; // Primary color of the email
-        String accentColor = "#555"; // Secondary text color
-        String facebookIconUrl = "https://upload.wikimedia.org/wikipedia/commons/thumb/b/b9/2023_Facebook_icon.svg/2048px-2023_Facebook_icon.svg.png";
-        String facebookUrl = "https://www.facebook.com/profile.php?id=61573783571056"; // URL to your Facebook page
-        SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy"); // Define date format
-        String formattedOrderDate = dateFormat.format(order.getOrderDate()); // Format order date
-
-        StringBuilder body = new StringBuilder();
-        body.append("<div style='font-family: Arial, sans-serif; max-width: 600px; margin: auto; color: ")
-                .append(accentColor).append("; background-color: #ffffff; border-radius: 8px; border: 1px solid ")
-                .append(primaryColor).append(";'>")
-
-                // Header with Logo and Shop Name
-                .append("<div style='text-align: center; padding: 20px; background-color: ").append(primaryColor)
-                .append("; color: #ffffff;'>")
-                .append("<img src='").append(logoUrl).append("' alt='Unleashed Logo' style='height: 45px; vertical-align: middle; margin-right: 10px;' />")
-                .append("<span style='font-size: 24px; vertical-align: middle; font-weight: bold;'>Unleashed</span>")
-                .append("</div>")
-
-                // Greeting and Order Summary
-                .append("<div style='padding: 20px;'>")
-                .append("<p style='font-size: 16px; color: ").append(accentColor).append(";'><strong>Dear ")
-                .append(order.getUser().getUserFullname()).append(",</strong></p>")
-                .append("<p style='font-size: 16px; color: ").append(accentColor).append(";'>Thank you for shopping with Unleashed!</p>")
-                .append("<p style='font-size: 16px; color: ").append(accentColor).append(";'>We are pleased to confirm your order <strong>#")
-                .append(order.getOrderId()).append("</strong> placed on ").append(formattedOrderDate).append(".</p>")
-
-                // Order Information Section
-                .append("<h3 style='color: ").append(primaryColor).append("; font-size: 18px;'>Order Information:</h3>")
-                .append("<ul style='list-style-type: none; padding: 0; color: ").append(accentColor).append(";'>")
-                .append("<li><strong>Order ID:</strong> ").append(order.getOrderId()).append("</li>")
-                .append("<li><strong>Order Date:</strong> ").append(order.getOrderDate()).append("</li>")
-                .append("<li><strong>Payment Method:</strong> ").append(order.getPaymentMethod()).append("</li>")
-                .append("<li><strong>Shipping Method:</strong> ").append(order.getShippingMethod()).append("</li>")
-                .append("<li><strong>Total Amount:</strong> ").append(order.getOrderTotalAmount()).append(" VND</li>")
-                .append("</ul>")
-
-                // Product Details Section
-                .append("<h3 style='color: ").append(primaryColor).append("; font-size: 18px;'>Product Details:</h3>")
-                .append("<table style='width: 100%; border-collapse: collapse; margin-top: 10px;'>")
-                .append("<thead>")
-                .append("<tr style='background-color: ").append(primaryColor).append("; color: #ffffff;'>")
-                .append("<th style='padding: 8px; border: 1px solid ").append(primaryColor).append(";'>Product Name</th>")
-                .append("<th style='padding: 8px; border: 1px solid ").append(primaryColor).append(";'>Size</th>")
-                .append("<th style='padding: 8px; border: 1px solid ").append(primaryColor).append(";'>Color</th>")
-                .append("<th style='padding: 8px; border: 1px solid ").append(primaryColor).append(";'>Quantity</th>")
-                .append("<th style='padding: 8px; border: 1px solid ").append(primaryColor).append(";'>Unit Price</th>")
-                .append("</tr>")
-                .append("</thead>")
-                .append("<tbody>");
-
-        Set<Variation> productVariations = convertOrderDetailsToProductVariations(orderVariationSingles);
-        if (!productVariations.isEmpty()) {
-            for (Variation productVariation : productVariations) {
-                int orderQuantity = getOrderQuantityForVariation(orderVariationSingles, String.valueOf(productVariation.getId()));
-
-                body.append("<tr>")
-                        .append("<td style='padding: 8px; border: 1px solid #ddd; color: ").append(accentColor).append(";'>").append(productVariation.getProduct().getProductName()).append("</td>")
-                        .append("<td style='padding: 8px; border: 1px solid #ddd; color: ").append(accentColor).append(";'>").append(productVariation.getSize().getSizeName()).append("</td>")
-                        .append("<td style='padding: 8px; border: 1px solid #ddd; color: ").append(accentColor).append(";'>").append(productVariation.getColor().getColorName()).append("</td>")
-                        .append("<td style='padding: 8px; border: 1px solid #ddd; color: ").append(accentColor).append(";'>").append(orderQuantity).append("</td>")
-                        .append("<td style='padding: 8px; border: 1px solid #ddd; color: ").append(accentColor).append(";'>").append(productVariation.getVariationPrice()).append(" VND</td>")
-                        .append("</tr>");
-            }
-        } else {
-            body.append("<tr><td colspan='5' style='padding: 8px; border: 1px solid #ddd; text-align: center; color: ").append(accentColor).append(";'>No products in this order.</td></tr>");
-        }
-
-        body.append("</tbody>")
-                .append("</table>")
-
-// Contact Section
-                .append("<div style='text-align: center; padding: 10px;'>")
-                .append("<p style='font-size: 16px; color: ").append(accentColor).append("; margin: 0 0 10px;'>")
-                .append("If you have any questions about your order or need assistance, feel free to contact us:")
-                .append("</p>")
-                .append("<a href='").append(facebookUrl).append("' style='text-decoration: none;' target='_blank'>")
-                .append("<img src='").append(facebookIconUrl).append("' alt='Facebook' style='width: 24px; height: 24px; margin: 5px 0;' />")
-                .append("</a>")
-                .append("</div>")
-
-// Final Closing Message
-                .append("<div style='text-align: center; padding: 10px;'>")
-                .append("<p style='font-size: 16px; color: ").append(accentColor).append("; margin: 0;'>")
-                .append("We appreciate your trust in us and look forward to delivering your order soon.")
-                .append("</p>")
-                .append("<p style='font-size: 16px; color: ").append(accentColor).append("; margin: 5px 0;'>")
-                .append("Best regards,<br><strong>Unleashed Developer Team</strong>")
-                .append("</p>")
-                .append("</div>")
-
-// Footer
-                .append("<div style='text-align: center; background-color: ").append(primaryColor)
-                .append("; color: #ffffff; padding: 10px; border-bottom-left-radius: 8px; border-bottom-right-radius: 8px;'>")
-                .append("<p style='margin: 0; font-size: 14px;'>© 2024 Unleashed</p>")
-                .append("</div>")
-                .append("</div>");
-
-        return body.toString();
+        applySingle(orderId, OrderStateMachine.Action.CONFIRM_RECEIPT, null);
     }
 
-
-    private String buildOrderCancellationEmailBody(Order order) {
-        String logoUrl = "https://i.ibb.co/gbpkn23f/tab.png"; // Shop logo URL
-        String primaryColor = "#62C0EE"; // Primary color of the email
-        String accentColor = "#555"; // Secondary text color
-        String facebookIconUrl = "https://upload.wikimedia.org/wikipedia/commons/thumb/b/b9/2023_Facebook_icon.svg/2048px-2023_Facebook_icon.svg.png";
-        String facebookUrl = "https://www.facebook.com/profile.php?id=61573783571056"; // URL to your Facebook page
-        SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy"); // Define date format
-        String formattedOrderDate = dateFormat.format(order.getOrderDate()); // Format order date
-
-        String body = "<div style='font-family: Arial, sans-serif; max-width: 600px; margin: auto; color: " +
-                accentColor + "; background-color: #ffffff; border-radius: 8px; border: 1px solid " +
-                primaryColor + ";'>" +
-
-                // Header with Logo and Shop Name
-                "<div style='text-align: center; padding: 20px; background-color: " + primaryColor +
-                "; color: #ffffff;'>" +
-                "<img src='" + logoUrl + "' alt='Unleashed Logo' style='height: 45px; vertical-align: middle; margin-right: 10px;' />" +
-                "<span style='font-size: 24px; vertical-align: middle; font-weight: bold;'>Unleashed</span>" +
-                "</div>" +
-
-                // Greeting and Cancellation Notice
-                "<div style='padding: 20px;'>" +
-                "<p style='font-size: 16px; color: " + accentColor + ";'>" +
-                "<strong>Dear " + order.getUser().getUserFullname() + ",</strong></p>" +
-                "<p style='font-size: 16px; color: " + accentColor + ";'>Thank you for shopping with Unleashed!</p>" +
-                "<p style='font-size: 16px; color: " + accentColor + ";'>We regret to inform you that your order <strong>#" +
-                order.getOrderId() + "</strong> placed on " + formattedOrderDate +
-                ", has been canceled.</p>" +
-
-                // Apology Message
-                "<p style='font-size: 16px; color: " + accentColor + ";'>" +
-                "We sincerely apologize for any inconvenience caused and appreciate your understanding." +
-                "</p>" +
-
-                // Contact Section
-                "<div style='text-align: center; padding: 10px;'>" +
-                "<p style='font-size: 16px; color: " + accentColor + "; margin: 0 0 10px;'>" +
-                "Please don’t hesitate to contact us:" +
-                "</p>" +
-                "<a href='" + facebookUrl + "' style='text-decoration: none;' target='_blank'>" +
-                "<img src='" + facebookIconUrl + "' alt='Facebook' style='width: 24px; height: 24px; margin: 5px 0;' />" +
-                "</a>" +
-                "</div>" +
-
-                // Closing Message
-                "<div style='text-align: center; padding: 10px;'>" +
-                "<p style='font-size: 16px; color: " + accentColor + "; margin: 0;'>" +
-                "Thank you for choosing Unleashed. We look forward to serving you again in the future." +
-                "</p>" +
-                "<p style='font-size: 16px; color: " + accentColor + "; margin: 5px 0;'>" +
-                "Best regards,<br><strong>Unleashed Developer Team</strong>" +
-                "</p>" +
-                "</div>" +
-
-                // Footer
-                "<div style='text-align: center; background-color: " + primaryColor +
-                "; color: #ffffff; padding: 10px; border-bottom-left-radius: 8px; border-bottom-right-radius: 8px;'>" +
-                "<p style='margin: 0; font-size: 14px;'>© 2024 Unleashed</p>" +
-                "</div>" +
-                "</div>";
-
-        return body;
-    }
-
-    private String buildPaymentCallbackEmailBody(Order order, String message) {
-        String logoUrl = "https://i.ibb.co/gbpkn23f/tab.png"; // Shop logo URL
-        String primaryColor = "#62C0EE"; // Primary color of the email
-        String accentColor = "#555"; // Secondary text color
-        String facebookIconUrl = "https://upload.wikimedia.org/wikipedia/commons/thumb/b/b9/2023_Facebook_icon.svg/2048px-2023_Facebook_icon.svg.png";
-        String facebookUrl = "https://www.facebook.com/profile.php?id=61573783571056"; // URL to your Facebook page
-        SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy"); // Define date format
-        String formattedOrderDate = dateFormat.format(order.getOrderDate()); // Format order date
-
-        String body = "<div style='font-family: Arial, sans-serif; max-width: 600px; margin: auto; color: " +
-                accentColor + "; background-color: #ffffff; border-radius: 8px; border: 1px solid " +
-                primaryColor + ";'>" +
-
-                // Header with Logo and Shop Name
-                "<div style='text-align: center; padding: 20px; background-color: " + primaryColor +
-                "; color: #ffffff;'>" +
-                "<img src='" + logoUrl + "' alt='Unleashed Logo' style='height: 45px; vertical-align: middle; margin-right: 10px;' />" +
-                "<span style='font-size: 24px; vertical-align: middle; font-weight: bold;'>Unleashed</span>" +
-                "</div>" +
-
-                // Greeting and Message
-                "<div style='padding: 20px;'>" +
-                "<p style='font-size: 16px; color: " + accentColor + ";'><strong>Dear " +
-                order.getUser().getUserFullname() + ",</strong></p>" +
-                "<p style='font-size: 16px; color: " + accentColor + ";'>Thank you for shopping with Unleashed!</p>" +
-                "<p style='font-size: 16px; color: " + accentColor + ";'>" + message + "</p>" +
-
-                // Order Information
-                "<h3 style='color: " + primaryColor + "; font-size: 18px;'>Order Information:</h3>" +
-                "<ul style='list-style-type: none; padding: 0; color: " + accentColor + ";'>" +
-                "<li><strong>Order ID:</strong> " + order.getOrderId() + "</li>" +
-                "<li><strong>Order Date:</strong> " + formattedOrderDate + ".</p>" +
-                "<li><strong>Total Amount:</strong> " + order.getOrderTotalAmount() + " VND</li>" +
-                "</ul>" +
-
-                // Contact and Footer
-                "<div style='text-align: center; padding: 10px;'>" +
-                "<p style='font-size: 16px; color: " + accentColor + ";'>" +
-                "If you have any questions, please don't hesitate to contact us:" +
-                "</p>" +
-                "<a href='" + facebookUrl + "' style='text-decoration: none;' target='_blank'>" +
-                "<img src='" + facebookIconUrl + "' alt='Facebook' style='width: 24px; height: 24px;' />" +
-                "</a>" +
-                "</div>" +
-                "<div style='text-align: center; padding: 10px;'>" +
-                "<p style='font-size: 16px; color: " + accentColor + ";'>" +
-                "Best regards,<br><strong>Unleashed Developer Team</strong>" +
-                "</p>" +
-                "</div>" +
-                "<div style='text-align: center; background-color: " + primaryColor +
-                "; color: #ffffff; padding: 10px;'>" +
-                "<p style='margin: 0; font-size: 14px;'>© 2024 Unleashed</p>" +
-                "</div>" +
-                "</div>";
-
-        return body;
-    }
-
-
     private Map<String, Object> buildOrderResponseJson(Order order) {
         Map<String, Object> orderJson = new HashMap<>();
         orderJson.put("orderId", order.getOrderId());
@@ -1245,7 +753,7 @@ public class OrderService {
 
     private Map<String, Object> buildOrderDetailJson(OrderVariationSingle detail) {
         Map<String, Object> detailJson = new HashMap<>();
-        Variation variation = variationRepository.findById(detail.getId().getVariationSingleId()).orElse(null);
+        Variation variation = entityLookupService.findVariationById(detail.getId().getVariationSingleId()).orElse(null);
 
         if (variation != null && variation.getProduct() != null) {
             detailJson.put("productId", variation.getProduct().getProductId()); // Đảm bảo productId được thêm vào đây
@@ -1302,195 +810,55 @@ public class OrderService {
 
     @Transactional
     public void returnOrder(String orderId) {
-        Order order = orderRepository.findById(orderId)
-                .orElseThrow(() -> new IllegalArgumentException("Invalid order ID: " + orderId));
-
-        OrderStatus returningStatus = orderStatusRepository.findById(9)
-                .orElseThrow(() -> new IllegalStateException("OrderStatus with ID 9 (RETURNING) not found."));
-        OrderStatus shippingStatus = orderStatusRepository.findByOrderStatusName("SHIPPING")
-                .orElseThrow(() -> new IllegalStateException("Shipping status not found"));
-        OrderStatus completedStatus = orderStatusRepository.findByOrderStatusName("COMPLETED")
-                .orElseThrow(() -> new IllegalStateException("Completed status not found"));
-
-        OffsetDateTime orderDate = order.getOrderDate();
-        OffsetDateTime thirtyDaysAgo = OffsetDateTime.now().minusDays(30);
-
-        if (orderDate.isBefore(thirtyDaysAgo)) {
-            throw new IllegalStateException("Cannot return an order that is more than 30 days old.");
-        }
-
-        if (!order.getOrderStatus().getOrderStatusName().equals("SHIPPING") &&
-                !order.getOrderStatus().getOrderStatusName().equals("COMPLETED")) {
-            throw new IllegalStateException("Cannot return an order that is not in COMPLETED or SHIPPING status.");
-        }
-
-        order.setOrderStatus(returningStatus);
-        orderRepository.save(order);
-        sendOrderReturnEmail(order);
+        applySingle(orderId, OrderStateMachine.Action.REQUEST_RETURN, null);
     }
 
 
-    private void sendOrderReturnEmail(Order order) {
-        String subject = "Order Return Requested - Order #" + order.getOrderId();
-        String body = buildOrderReturnEmailBody(order, order.getOrderVariationSingles(), "Your return order has been requested successfully!");  //Pass orderDetails
-        emailService.sendHtmlMessage(order.getUser().getUserEmail(), subject, body);
-    }
-
-
-    private String buildOrderReturnEmailBody(Order order, Set<OrderVariationSingle> orderVariationSingles, String headerMessage) {
-        String logoUrl = "https://i.ibb.co/gbpkn23f/tab.png";
-        String primaryColor = "#62C0EE";
-        String accentColor = "#555";
-        String facebookIconUrl = "https://upload.wikimedia.org/wikipedia/commons/thumb/b/b9/2023_Facebook_icon.svg/2048px-2023_Facebook_icon.svg.png";
-        String facebookUrl = "https://www.facebook.com/profile.php?id=61573783571056";
-
-        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd/MM/yyyy").withZone(ZoneId.of("Asia/Ho_Chi_Minh"));
-        String formattedOrderDate = dateFormatter.format(order.getOrderDate());
-        DateTimeFormatter expectedDeliveryDateFormatter = DateTimeFormatter.ofPattern("dd/MM/yyyy").withZone(ZoneId.systemDefault());
-        String formattedExpectedDeliveryDate = (order.getOrderExpectedDeliveryDate() != null)
-                ? expectedDeliveryDateFormatter.format(order.getOrderExpectedDeliveryDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate())
-                : "N/A";
-
-        StringBuilder body = new StringBuilder();
-        body.append("<div style='font-family: Arial, sans-serif; max-width: 600px; margin: auto; color: ")
-                .append(accentColor).append("; background-color: #ffffff; border-radius: 8px; border: 1px solid ")
-                .append(primaryColor).append(";'>")
-                .append("<div style='text-align: center; padding: 20px; background-color: ").append(primaryColor)
-                .append("; color: #ffffff;'>")
-                .append("<img src='").append(logoUrl).append("' alt='Unleashed Logo' style='height: 45px; vertical-align: middle; margin-right: 10px;' />")
-                .append("<span style='font-size: 24px; vertical-align: middle; font-weight: bold;'>Unleashed</span>")
-                .append("</div>")
-                .append("<div style='padding: 20px;'>")
-                .append("<p style='font-size: 16px; color: ").append(accentColor).append(";'><strong>Dear ")
-                .append(order.getUser().getUserFullname()).append(",</strong></p>")
-                .append("<p style='font-size: 16px; color: ").append(accentColor).append(";'>Thank you for shopping with Unleashed!</p>")
-                .append("<p style='font-size: 16px; color: ").append(accentColor).append(";'>We have received your return request for order <strong>#")
-                .append(order.getOrderId()).append("</strong> placed on ").append(formattedOrderDate).append(".</p>")
-                .append("<h3 style='color: ").append(primaryColor).append("; font-size: 18px;'>Order Information:</h3>")
-                .append("<ul style='list-style-type: none; padding: 0; color: ").append(accentColor).append(";'>")
-                .append("<li><strong>Order ID:</strong> ").append(order.getOrderId()).append("</li>")
-                .append("<li><strong>Order Date:</strong> ").append(formattedOrderDate).append("</li>")
-                .append("<li><strong>Payment Method:</strong> ").append(order.getPaymentMethod().getPaymentMethodName()).append("</li>")
-                .append("<li><strong>Shipping Method:</strong> ").append(order.getShippingMethod().getShippingMethodName()).append("</li>")
-                .append("<li><strong>Total Amount:</strong> ").append(order.getOrderTotalAmount()).append(" VND</li>")
-                .append("<li><strong>Expected Delivery Date:</strong> ").append(formattedExpectedDeliveryDate).append("</li>")
-                .append("</ul>")
-                .append("<h3 style='color: ").append(primaryColor).append("; font-size: 18px;'>Product Details:</h3>")
-                .append("<table style='width: 100%; border-collapse: collapse; margin-top: 10px;'>")
-                .append("<thead>")
-                .append("<tr style='background-color: ").append(primaryColor).append("; color: #ffffff;'>")
-                .append("<th style='padding: 8px; border: 1px solid ").append(primaryColor).append(";'>Product Name</th>")
-                .append("<th style='padding: 8px; border: 1px solid ").append(primaryColor).append(";'>Size</th>")
-                .append("<th style='padding: 8px; border: 1px solid ").append(primaryColor).append(";'>Color</th>")
-                .append("<th style='padding: 8px; border: 1px solid ").append(primaryColor).append(";'>Quantity</th>")
-                .append("<th style='padding: 8px; border: 1px solid ").append(primaryColor).append(";'>Unit Price</th>")
-                .append("</tr>")
-                .append("</thead>")
-                .append("<tbody>");
-
-        if (!orderVariationSingles.isEmpty()) {
-            Map<Variation, Long> variationQuantityMap = orderVariationSingles.stream()
-                    .collect(Collectors.groupingBy(
-                            ovs -> ovs.getVariationSingle().getVariation(),
-                            Collectors.counting()
-                    ));
-
-            Map<Integer, BigDecimal> priceMap = orderVariationSingles.stream()
-                    .collect(Collectors.toMap(
-                            ovs -> ovs.getVariationSingle().getVariation().getId(),
-                            OrderVariationSingle::getVariationPriceAtPurchase,
-                            (price1, price2) -> price1
-                    ));
-
-            for (Map.Entry<Variation, Long> entry : variationQuantityMap.entrySet()) {
-                Variation variation = entry.getKey();
-                Long quantity = entry.getValue();
-                BigDecimal unitPrice = priceMap.getOrDefault(variation.getId(), BigDecimal.ZERO);
-
-                body.append("<tr>")
-                        .append("<td style='padding: 8px; border: 1px solid #ddd; color: ").append(accentColor).append(";'>").append(variation.getProduct().getProductName()).append("</td>")
-                        .append("<td style='padding: 8px; border: 1px solid #ddd; color: ").append(accentColor).append(";'>").append(variation.getSize().getSizeName()).append("</td>")
-                        .append("<td style='padding: 8px; border: 1px solid #ddd; color: ").append(accentColor).append(";'>").append(variation.getColor().getColorName()).append("</td>")
-                        .append("<td style='padding: 8px; border: 1px solid #ddd; color: ").append(accentColor).append(";'>").append(quantity).append("</td>")
-                        .append("<td style='padding: 8px; border: 1px solid #ddd; color: ").append(accentColor).append(";'>").append(unitPrice).append(" VND</td>")
-                        .append("</tr>");
-            }
-        } else {
-            body.append("<tr><td colspan='5' style='padding: 8px; border: 1px solid #ddd; text-align: center; color: ").append(accentColor).append(";'>No products in this order.</td></tr>");
-        }
-
-        body.append("</tbody>")
-                .append("</table>")
-                .append("<div style='text-align: center; padding: 10px;'>")
-                .append("<p style='font-size: 16px; color: ").append(accentColor).append("; margin: 0 0 10px;'>")
-                .append("If you have any questions about your return or need assistance, feel free to contact us:")
-                .append("</p>")
-                .append("<a href='").append(facebookUrl).append("' style='text-decoration: none;' target='_blank'>")
-                .append("<img src='").append(facebookIconUrl).append("' alt='Facebook' style='width: 24px; height: 24px; margin: 5px 0;' />")
-                .append("</a>")
-                .append("</div>")
-                .append("<div style='text-align: center; padding: 10px;'>")
-                .append("<p style='font-size: 16px; color: ").append(accentColor).append("; margin: 0;'>")
-                .append("We appreciate your understanding and look forward to serving you again.")
-                .append("</p>")
-                .append("<p style='font-size: 16px; color: ").append(accentColor).append("; margin: 5px 0;'>")
-                .append("Best regards,<br><strong>Unleashed Developer Team</strong>")
-                .append("</p>")
-                .append("</div>")
-                .append("<div style='text-align: center; background-color: ").append(primaryColor)
-                .append("; color: #ffffff; padding: 10px; border-bottom-left-radius: 8px; border-bottom-right-radius: 8px;'>")
-                .append("<p style='margin: 0; font-size: 14px;'>© 2024 Unleashed</p>")
-                .append("</div>")
-                .append("</div>");
-
-        return body.toString();
-    }
-
     @Transactional
     public void inspectOrder(String orderId) {
-        Order order = orderRepository.findById(orderId)
-                .orElseThrow(() -> new IllegalArgumentException("Invalid order ID: " + orderId));
-
-        OrderStatus returningStatus = orderStatusRepository.findByOrderStatusName("RETURNING")
-                .orElseThrow(() -> new IllegalStateException("Returning status not found"));
-
-        if (!order.getOrderStatus().getOrderStatusName().equals("RETURNING")) {
-            throw new IllegalStateException("Cannot return an order that is not in RETURNING status.");
-        }
-
-        OrderStatus inspectionStatus = orderStatusRepository.findById(8)
-                .orElseThrow(() -> new IllegalStateException("OrderStatus with ID 8 (INSPECTION) not found."));
-
-        order.setOrderStatus(inspectionStatus);
-        orderRepository.save(order);
+        applySingle(orderId, OrderStateMachine.Action.INSPECT, null);
     }
 
     @Transactional
     public void orderReturned(String orderId) {
-        Order order = orderRepository.findById(orderId)
-                .orElseThrow(() -> new IllegalArgumentException("Invalid order ID: " + orderId));
-
-        OrderStatus status = orderStatusRepository.findByOrderStatusName("INSPECTION")
-                .orElseThrow(() -> new IllegalStateException("Inspection status not found"));
+        applySingle(orderId, OrderStateMachine.Action.MARK_RETURNED, null);
+    }
 
-        if (!order.getOrderStatus().getOrderStatusName().equals("INSPECTION")) {
-            throw new IllegalStateException("Cannot return an order that is not in RETURNING status.");
+    /**
+     * Moves many orders at once, e.g. a staff member approving or shipping a whole backlog.
+     * Orders that cannot make the move are reported individually and do not stop the others.
+     */
+    public Map<String, Object> bulkTransition(OrderBulkTransitionDTO request) {
+        if (request.getOrderIds() == null || request.getOrderIds().isEmpty()) {
+            throw new IllegalArgumentException("At least one order ID is required.");
+        }
+        OrderStateMachine.Action action = OrderStateMachine.parseAction(request.getAction());
+        User staff = null;
+        if (StringUtils.hasText(request.getStaffName())) {
+            staff = entityLookupService.findUserByUsername(request.getStaffName())
+                    .orElseThrow(() -> new IllegalArgumentException("Invalid staff name"));
         }
 
-        OrderStatus returnStatus = orderStatusRepository.findById(6)
-                .orElseThrow(() -> new IllegalStateException("OrderStatus with ID 6 (RETURNED) not found."));
-
-        order.setOrderStatus(returnStatus);
-        orderRepository.save(order);
-        returnStock(order);
-
-        if (userService.getUserById(order.getUser().getUserId().toString()).getUserRank() != null)
-            rankService.removeMoneySpent(order.getUser(), order.getOrderTotalAmount());
+        List<OrderTransitionResultDTO> results = orderStateMachine.apply(request.getOrderIds(), action, staff);
+        long applied = results.stream().filter(OrderTransitionResultDTO::isApplied).count();
 
+        Map<String, Object> response = new HashMap<>();
+        response.put("action", action.name());
+        response.put("requested", results.size());
+        response.put("applied", applied);
+        response.put("failed", results.size() - applied);
+        response.put("results", results);
+        return response;
     }
 
-    private void returnStock(Order order) {
-        stockTransactionService.createReturnTransactionsForOrder(order);
+    private void applySingle(String orderId, OrderStateMachine.Action action, User staff) {
+        OrderTransitionResultDTO result = orderStateMachine.apply(List.of(orderId), action, staff).get(0);
+        if (result.getOutcome() == OrderTransitionResultDTO.Outcome.NOT_FOUND) {
+            throw new IllegalArgumentException(result.getMessage());
+        }
+        if (!result.isApplied()) {
+            throw new IllegalStateException(result.getMessage());
+        }
     }
 
 
@@ -1499,7 +867,7 @@ public class OrderService {
         for (com.unleashed.dto.OrderDetailDTO detail : orderDTO.getOrderDetails()) {
             Integer availableStock = stockVariationRepository.findStockProductByProductVariationId(detail.getVariationId());
             if (availableStock == null || availableStock < detail.getOrderQuantity()) {
-                Variation variation = variationRepository.findById(detail.getVariationId()).orElse(null);
+                Variation variation = entityLookupService.findVariationById(detail.getVariationId()).orElse(null);
 
                 String productName = "a product";
                 String color = "";
@@ -0,0 +1,251 @@
+package com.unleashed.service;
+
+import com.unleashed.dto.OrderTransitionResultDTO;
+import com.unleashed.dto.OrderTransitionResultDTO.Outcome;
+import com.unleashed.entity.OrderEvent;
+import com.unleashed.entity.OrderStatus;
+import com.unleashed.entity.User;
+import com.unleashed.repo.OrderRepository;
+import com.unleashed.repo.OrderStatusRepository;
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Declarative order lifecycle. Every allowed move is one row of {@link #TRANSITIONS}: the action,
+ * the status it starts from, the status it ends in, an optional guard and the event published
+ * for the side effects (stock, rank, email, ...), which run in the order event consumers.
+ * <p>
+ * {@link #apply} works on any number of orders. Ids are processed in chunks; within a chunk
+ * the orders are grouped by their current status and every group is moved with a single
+ * {@code UPDATE ... OUTPUT inserted.order_id ... WHERE status = :from}, so staff can push thousands
+ * of orders in one call. Events are published only for the ids the statement itself reports as
+ * moved, so an order that a concurrent request moved first is never announced twice.
+ * The caller gets one {@link OrderTransitionResultDTO} per requested id.
+ */
+@Service
+public class OrderStateMachine {
+
+    public static final int PENDING = 1;
+    public static final int PROCESSING = 2;
+    public static final int SHIPPING = 3;
+    public static final int COMPLETED = 4;
+    public static final int CANCELLED = 5;
+    public static final int RETURNED = 6;
+    public static final int REJECTED = 7;
+    public static final int INSPECTION = 8;
+    public static final int RETURNING = 9;
+
+    public enum Action {
+        APPROVE,
+        SHIP,
+        REJECT,
+        CANCEL,
+        CONFIRM_RECEIPT,
+        REQUEST_RETURN,
+        INSPECT,
+        MARK_RETURNED,
+        PAYMENT_SUCCEEDED,
+        PAYMENT_FAILED
+    }
+
+    /**
+     * Snapshot of the order fields guards may look at.
+     */
+    public record OrderState(String orderId, int statusId, OffsetDateTime orderDate) {
+    }
+
+    private record Transition(Action action, int from, int to, boolean assignsStaff,
+                              OrderEvent.Type event, String reason,
+                              Predicate<OrderState> guard, String guardMessage) {
+    }
+
+    // SQL Server accepts at most 2100 parameters per statement.
+    private static final int CHUNK_SIZE = 1000;
+    private static final int RETURN_WINDOW_DAYS = 30;
+
+    private static final String TRANSITION = """
+            UPDATE dbo.[order]
+            SET order_status_id = :to, order_updated_at = :now
+            OUTPUT inserted.order_id
+            WHERE order_id IN (:ids) AND order_status_id = :from
+            """;
+
+    private static final String TRANSITION_ASSIGNING_STAFF = """
+            UPDATE dbo.[order]
+            SET order_status_id = :to, order_updated_at = :now, incharge_employee_id = :staffId
+            OUTPUT inserted.order_id
+            WHERE order_id IN (:ids) AND order_status_id = :from
+            """;
+
+    private static final Predicate<OrderState> ALWAYS = state -> true;
+    private static final Predicate<OrderState> WITHIN_RETURN_WINDOW = state ->
+            state.orderDate() != null && !state.orderDate().isBefore(OffsetDateTime.now().minusDays(RETURN_WINDOW_DAYS));
+
+    private static final List<Transition> TRANSITIONS = List.of(
+            // Staff review moves an order one step forward: pending -> processing -> shipping.
+            new Transition(Action.APPROVE, PENDING, PROCESSING, true, null, null, ALWAYS, null),
+            new Transition(Action.APPROVE, PROCESSING, SHIPPING, true, OrderEvent.Type.ORDER_SHIPPED, null, ALWAYS, null),
+            new Transition(Action.SHIP, PROCESSING, SHIPPING, true, OrderEvent.Type.ORDER_SHIPPED, null, ALWAYS, null),
+            new Transition(Action.REJECT, PENDING, REJECTED, true, OrderEvent.Type.ORDER_CANCELLED, "STAFF_REJECTED", ALWAYS, null),
+            new Transition(Action.REJECT, PROCESSING, REJECTED, true, OrderEvent.Type.ORDER_CANCELLED, "STAFF_REJECTED", ALWAYS, null),
+            new Transition(Action.CANCEL, PENDING, CANCELLED, false, OrderEvent.Type.ORDER_CANCELLED, "CUSTOMER_CANCELLED", ALWAYS, null),
+            new Transition(Action.CANCEL, PROCESSING, CANCELLED, false, OrderEvent.Type.ORDER_CANCELLED, "CUSTOMER_CANCELLED", ALWAYS, null),
+            // Cancelling a parcel already on its way sends it back.
+            new Transition(Action.CANCEL, SHIPPING, RETURNED, false, OrderEvent.Type.ORDER_CANCELLED, "CANCELLED_IN_TRANSIT", ALWAYS, null),
+            new Transition(Action.CONFIRM_RECEIPT, SHIPPING, COMPLETED, false, OrderEvent.Type.ORDER_COMPLETED, null, ALWAYS, null),
+            new Transition(Action.REQUEST_RETURN, SHIPPING, RETURNING, false, OrderEvent.Type.ORDER_RETURN_REQUESTED, null,
+                    WITHIN_RETURN_WINDOW, "Cannot return an order that is more than " + RETURN_WINDOW_DAYS + " days old."),
+            new Transition(Action.REQUEST_RETURN, COMPLETED, RETURNING, false, OrderEvent.Type.ORDER_RETURN_REQUESTED, null,
+                    WITHIN_RETURN_WINDOW, "Cannot return an order that is more than " + RETURN_WINDOW_DAYS + " days old."),
+            new Transition(Action.INSPECT, RETURNING, INSPECTION, true, null, null, ALWAYS, null),
+            new Transition(Action.MARK_RETURNED, INSPECTION, RETURNED, true, OrderEvent.Type.ORDER_RETURNED, null, ALWAYS, null),
+            new Transition(Action.PAYMENT_SUCCEEDED, PENDING, PROCESSING, false, OrderEvent.Type.ORDER_PAID, null, ALWAYS, null),
+            new Transition(Action.PAYMENT_FAILED, PENDING, CANCELLED, false, OrderEvent.Type.ORDER_CANCELLED, "PAYMENT_FAILED", ALWAYS, null)
+    );
+
+    private static final Map<Action, Map<Integer, Transition>> TABLE = TRANSITIONS.stream()
+            .collect(Collectors.groupingBy(Transition::action, () -> new EnumMap<>(Action.class),
+                    Collectors.toMap(Transition::from, t -> t)));
+
+    private final OrderRepository orderRepository;
+    private final OrderStatusRepository orderStatusRepository;
+    private final OrderEventService orderEventService;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public OrderStateMachine(OrderRepository orderRepository,
+                             OrderStatusRepository orderStatusRepository,
+                             OrderEventService orderEventService,
+                             NamedParameterJdbcTemplate jdbcTemplate,
+                             EntityManager entityManager,
+                             PlatformTransactionManager transactionManager) {
+        this.orderRepository = orderRepository;
+        this.orderStatusRepository = orderStatusRepository;
+        this.orderEventService = orderEventService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public static Action parseAction(String action) {
+        if (action == null) {
+            throw new IllegalArgumentException("Action is required.");
+        }
+        try {
+            return Action.valueOf(action.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown order action: " + action);
+        }
+    }
+
+    public boolean isAllowed(Action action, int fromStatusId) {
+        return TABLE.getOrDefault(action, Map.of()).containsKey(fromStatusId);
+    }
+
+    /**
+     * Applies the action to every order. Each chunk commits on its own (or joins the caller's
+     * transaction if there is one); results come back in request order.
+     *
+     * @param staff recorded as the employee in charge by transitions that assign staff, may be null
+     */
+    public List<OrderTransitionResultDTO> apply(Collection<String> orderIds, Action action, User staff) {
+        Map<Integer, String> statusNames = orderStatusRepository.findAll().stream()
+                .collect(Collectors.toMap(OrderStatus::getId, OrderStatus::getOrderStatusName));
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(orderIds));
+
+        List<OrderTransitionResultDTO> results = new ArrayList<>(ids.size());
+        for (int start = 0; start < ids.size(); start += CHUNK_SIZE) {
+            List<String> chunk = ids.subList(start, Math.min(start + CHUNK_SIZE, ids.size()));
+            results.addAll(transactionTemplate.execute(status -> applyChunk(chunk, action, staff, statusNames)));
+        }
+        return results;
+    }
+
+    private List<OrderTransitionResultDTO> applyChunk(List<String> ids, Action action, User staff,
+                                                      Map<Integer, String> statusNames) {
+        Map<String, OrderState> states = new HashMap<>();
+        for (Object[] row : orderRepository.findTransitionStates(ids)) {
+            OrderState state = new OrderState((String) row[0], (Integer) row[1], (OffsetDateTime) row[2]);
+            states.put(state.orderId(), state);
+        }
+
+        Map<String, OrderTransitionResultDTO> results = new HashMap<>();
+        Map<Transition, List<String>> candidates = new LinkedHashMap<>();
+        Map<Integer, Transition> allowed = TABLE.getOrDefault(action, Map.of());
+
+        for (String id : ids) {
+            OrderState state = states.get(id);
+            if (state == null) {
+                results.put(id, new OrderTransitionResultDTO(id, Outcome.NOT_FOUND, null, null, "Invalid order ID: " + id));
+                continue;
+            }
+            String current = statusNames.get(state.statusId());
+            Transition transition = allowed.get(state.statusId());
+            if (transition == null) {
+                results.put(id, new OrderTransitionResultDTO(id, Outcome.INVALID_STATE, current, null,
+                        "Cannot " + action.name().toLowerCase(Locale.ROOT).replace('_', ' ') + " an order in " + current + " status."));
+            } else if (!transition.guard().test(state)) {
+                results.put(id, new OrderTransitionResultDTO(id, Outcome.GUARD_FAILED, current, null, transition.guardMessage()));
+            } else {
+                candidates.computeIfAbsent(transition, t -> new ArrayList<>()).add(id);
+            }
+        }
+
+        if (candidates.isEmpty()) {
+            return ids.stream().map(results::get).collect(Collectors.toList());
+        }
+
+        // The updates run next to the persistence context: flush pending changes before them and
+        // drop the stale order copies after them.
+        entityManager.flush();
+        OffsetDateTime now = OffsetDateTime.now();
+        for (Map.Entry<Transition, List<String>> entry : candidates.entrySet()) {
+            Transition transition = entry.getKey();
+            List<String> group = entry.getValue();
+            boolean assignStaff = transition.assignsStaff() && staff != null;
+            MapSqlParameterSource params = new MapSqlParameterSource()
+                    .addValue("ids", group)
+                    .addValue("from", transition.from())
+                    .addValue("to", transition.to())
+                    .addValue("now", now)
+                    .addValue("staffId", assignStaff ? staff.getUserId() : null);
+
+            // Rows changed by someone else between our read and the update are missing from the
+            // OUTPUT and are reported as conflicts.
+            Set<String> moved = new HashSet<>(jdbcTemplate.queryForList(
+                    assignStaff ? TRANSITION_ASSIGNING_STAFF : TRANSITION, params, String.class));
+
+            List<String> applied = new ArrayList<>(moved.size());
+            for (String id : group) {
+                if (moved.contains(id)) {
+                    applied.add(id);
+                    results.put(id, new OrderTransitionResultDTO(id, Outcome.APPLIED,
+                            statusNames.get(transition.from()), statusNames.get(transition.to()), null));
+                } else {
+                    results.put(id, new OrderTransitionResultDTO(id, Outcome.CONFLICT,
+                            statusNames.get(transition.from()), null, "Order status was changed by another request."));
+                }
+            }
+
+            if (transition.event() != null) {
+                Map<String, Object> payload = transition.reason() != null ? Map.of("reason", transition.reason()) : Map.of();
+                orderEventService.publishAll(applied, transition.event(), payload);
+            }
+        }
+        entityManager.clear();
+
+        return ids.stream().map(results::get).collect(Collectors.toList());
+    }
+}
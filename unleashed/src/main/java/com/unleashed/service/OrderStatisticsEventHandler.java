@@ -0,0 +1,49 @@
+package com.unleashed.service;
+
+import com.unleashed.entity.Order;
+import com.unleashed.entity.OrderEvent;
+import com.unleashed.repo.OrderDailyStatRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Map;
+
+/**
+ * Keeps the {@code order_daily_stat} rollup current, one atomic increment per event, so dashboards
+ * can read a row per day instead of aggregating the order table.
+ */
+@Service
+public class OrderStatisticsEventHandler implements OrderEventHandler {
+
+    private final OrderDailyStatRepository orderDailyStatRepository;
+
+    @Autowired
+    public OrderStatisticsEventHandler(OrderDailyStatRepository orderDailyStatRepository) {
+        this.orderDailyStatRepository = orderDailyStatRepository;
+    }
+
+    @Override
+    public boolean supports(OrderEvent.Type type) {
+        return type != OrderEvent.Type.ORDER_SHIPPED && type != OrderEvent.Type.ORDER_RETURN_REQUESTED;
+    }
+
+    @Override
+    public void handle(OrderEvent event, Order order, Map<String, Object> payload) {
+        LocalDate day = event.getCreatedAt().atZoneSameInstant(ZoneId.systemDefault()).toLocalDate();
+        BigDecimal amount = order.getOrderTotalAmount() != null ? order.getOrderTotalAmount() : BigDecimal.ZERO;
+        OrderEvent.Type type = event.getType();
+
+        orderDailyStatRepository.increment(day,
+                type == OrderEvent.Type.ORDER_CREATED ? 1 : 0,
+                type == OrderEvent.Type.ORDER_PAID ? 1 : 0,
+                type == OrderEvent.Type.ORDER_COMPLETED ? 1 : 0,
+                type == OrderEvent.Type.ORDER_CANCELLED ? 1 : 0,
+                type == OrderEvent.Type.ORDER_RETURNED ? 1 : 0,
+                type == OrderEvent.Type.ORDER_CREATED ? amount : BigDecimal.ZERO,
+                type == OrderEvent.Type.ORDER_COMPLETED ? amount : BigDecimal.ZERO,
+                type == OrderEvent.Type.ORDER_RETURNED ? amount : BigDecimal.ZERO);
+    }
+}
@@ -0,0 +1,33 @@
+package com.unleashed.service;
+
+import com.unleashed.entity.Order;
+import com.unleashed.entity.OrderEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+
+/**
+ * Puts reserved units back on the shelf when an order is cancelled or comes back. The reservation
+ * itself stays in the checkout transaction, since it is what prevents overselling.
+ */
+@Service
+public class OrderStockEventHandler implements OrderEventHandler {
+
+    private final StockTransactionService stockTransactionService;
+
+    @Autowired
+    public OrderStockEventHandler(StockTransactionService stockTransactionService) {
+        this.stockTransactionService = stockTransactionService;
+    }
+
+    @Override
+    public boolean supports(OrderEvent.Type type) {
+        return type == OrderEvent.Type.ORDER_CANCELLED || type == OrderEvent.Type.ORDER_RETURNED;
+    }
+
+    @Override
+    public void handle(OrderEvent event, Order order, Map<String, Object> payload) {
+        stockTransactionService.createReturnTransactionsForOrder(order);
+    }
+}
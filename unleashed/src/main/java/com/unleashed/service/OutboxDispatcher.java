@@ -0,0 +1,127 @@
+package com.unleashed.service;
+
+import com.unleashed.config.OutboxProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Claim/dispatch loop shared by the outbox tables (emails, order events, payment callbacks).
+ * <p>
+ * Each {@link #dispatch()} first puts rows back whose claim has outlived {@code staleClaimTimeout}
+ * (their worker died), then, while a worker permit is free, claims up to {@code batchSize} due rows
+ * under a fresh claim token and hands the token to the executor. Permits match the pool size, so a
+ * batch never waits in the executor queue. The {@link Handler} knows the table; this class only
+ * knows the loop and the retry schedule.
+ */
+public class OutboxDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxDispatcher.class);
+
+    /**
+     * Table-specific half of an outbox.
+     */
+    public interface Handler {
+
+        /**
+         * Returns rows claimed before {@code claimedBefore} to the due state.
+         */
+        int releaseStaleClaims(OffsetDateTime claimedBefore);
+
+        List<Long> findDueIds(OffsetDateTime now, int batchSize);
+
+        /**
+         * Marks the still-due rows among {@code ids} as taken by {@code claimToken}.
+         */
+        int claim(List<Long> ids, String claimToken, OffsetDateTime now);
+
+        /**
+         * Works through the rows of one claim and releases or finishes each of them.
+         */
+        void processBatch(String claimToken);
+    }
+
+    private final String name;
+    private final Handler handler;
+    private final TaskExecutor executor;
+    private final OutboxProperties properties;
+    private final Semaphore workerPermits;
+
+    /**
+     * @param name plural noun used in log lines, e.g. {@code "emails"}
+     */
+    public OutboxDispatcher(String name, Handler handler, TaskExecutor executor, OutboxProperties properties) {
+        this.name = name;
+        this.handler = handler;
+        this.executor = executor;
+        this.properties = properties;
+        this.workerPermits = new Semaphore(properties.workers());
+    }
+
+    public void dispatch() {
+        OffsetDateTime now = OffsetDateTime.now();
+        int released = handler.releaseStaleClaims(now.minus(properties.staleClaimTimeout()));
+        if (released > 0) {
+            logger.warn("Re-queued {} {} abandoned by a previous worker.", released, name);
+        }
+
+        for (int run = 0; run < properties.maxBatchesPerRun() && workerPermits.tryAcquire(); run++) {
+            String claimToken = claimBatch(now);
+            if (claimToken == null) {
+                workerPermits.release();
+                return;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        handler.processBatch(claimToken);
+                    } finally {
+                        workerPermits.release();
+                    }
+                });
+            } catch (TaskRejectedException e) {
+                // Cannot normally happen since permits match the pool size; the stale-claim sweep recovers the rows.
+                workerPermits.release();
+                logger.error("Worker pool for {} rejected batch {}.", name, claimToken, e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Delay before retrying a row that has now failed {@code attempts} times, or {@code null} once
+     * it has used up {@code maxAttempts} and should be given up on.
+     */
+    public Duration retryDelay(int attempts) {
+        if (attempts >= properties.maxAttempts()) {
+            return null;
+        }
+        Duration backoff = properties.initialBackoff().multipliedBy(1L << Math.min(attempts - 1, 20));
+        return backoff.compareTo(properties.maxBackoff()) > 0 ? properties.maxBackoff() : backoff;
+    }
+
+    /**
+     * The failure message, cut to fit the outbox tables' {@code last_error} column.
+     */
+    public static String errorMessage(Exception failure) {
+        String error = String.valueOf(failure.getMessage());
+        return error.length() > 1000 ? error.substring(0, 1000) : error;
+    }
+
+    private String claimBatch(OffsetDateTime now) {
+        List<Long> dueIds = handler.findDueIds(now, properties.batchSize());
+        if (dueIds.isEmpty()) {
+            return null;
+        }
+        String claimToken = UUID.randomUUID().toString();
+        int claimed = handler.claim(dueIds, claimToken, now);
+        return claimed > 0 ? claimToken : null;
+    }
+}
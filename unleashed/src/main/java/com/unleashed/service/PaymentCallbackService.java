@@ -0,0 +1,217 @@
+package com.unleashed.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.unleashed.config.PaymentCallbackProperties;
+import com.unleashed.dto.OrderTransitionResultDTO;
+import com.unleashed.entity.PaymentCallback;
+import com.unleashed.repo.OrderRepository;
+import com.unleashed.repo.PaymentCallbackRepository;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import vn.payos.PayOS;
+import vn.payos.type.Webhook;
+import vn.payos.type.WebhookData;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.*;
+
+/**
+ * Webhook ingestion for PayOS and VNPay.
+ * <p>
+ * The webhook thread only checks the signature and stores the callback with one MERGE keyed by
+ * (gateway, transaction reference), then answers the gateway; a retried or replayed notification
+ * just increments the row's replay counter and is never applied twice. The scheduler calls
+ * {@link #applyPendingCallbacks()}, which claims received callbacks in batches through an
+ * {@link OutboxDispatcher}, resolves all their orders with one query and moves them with one
+ * {@link OrderStateMachine#apply} per outcome. The state machine only moves PENDING orders, so late or contradictory callbacks end up as IGNORED.
+ */
+@Service
+public class PaymentCallbackService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentCallbackService.class);
+
+    public static final String PAYOS = "PAYOS";
+    public static final String VNPAY = "VNPAY";
+
+    private final PaymentCallbackRepository paymentCallbackRepository;
+    private final OrderRepository orderRepository;
+    private final OrderStateMachine orderStateMachine;
+    private final VNPayService vnPayService;
+    private final PayOS payOS;
+    private final ObjectMapper objectMapper;
+    private final PaymentCallbackProperties properties;
+    private final OutboxDispatcher dispatcher;
+
+    @Autowired
+    public PaymentCallbackService(PaymentCallbackRepository paymentCallbackRepository,
+                                  OrderRepository orderRepository,
+                                  OrderStateMachine orderStateMachine,
+                                  VNPayService vnPayService,
+                                  PayOS payOS,
+                                  ObjectMapper objectMapper,
+                                  PaymentCallbackProperties properties) {
+        this.paymentCallbackRepository = paymentCallbackRepository;
+        this.orderRepository = orderRepository;
+        this.orderStateMachine = orderStateMachine;
+        this.vnPayService = vnPayService;
+        this.payOS = payOS;
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+        // Batches run one after another on the scheduler thread, at most maxBatchesPerRun per run.
+        this.dispatcher = new OutboxDispatcher("payment callbacks", new OutboxDispatcher.Handler() {
+            @Override
+            public int releaseStaleClaims(OffsetDateTime claimedBefore) {
+                return paymentCallbackRepository.releaseStaleClaims(
+                        PaymentCallback.Status.PROCESSING, PaymentCallback.Status.RECEIVED, claimedBefore);
+            }
+
+            @Override
+            public List<Long> findDueIds(OffsetDateTime now, int batchSize) {
+                return paymentCallbackRepository.findDueIds(PaymentCallback.Status.RECEIVED, now, PageRequest.of(0, batchSize));
+            }
+
+            @Override
+            public int claim(List<Long> ids, String claimToken, OffsetDateTime now) {
+                return paymentCallbackRepository.claim(
+                        ids, PaymentCallback.Status.RECEIVED, PaymentCallback.Status.PROCESSING, claimToken, now);
+            }
+
+            @Override
+            public void processBatch(String claimToken) {
+                applyBatch(paymentCallbackRepository.findByClaimTokenOrderByIdAsc(claimToken));
+            }
+        }, new SyncTaskExecutor(), properties);
+    }
+
+    /**
+     * Records a PayOS payment webhook.
+     *
+     * @throws IllegalArgumentException when the signature does not match
+     */
+    public void recordPayOsWebhook(Webhook webhook) {
+        WebhookData data;
+        try {
+            data = payOS.verifyPaymentWebhookData(webhook);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid PayOS webhook: " + e.getMessage());
+        }
+        record(PAYOS, data.getPaymentLinkId(), "00".equals(data.getCode()), webhook);
+    }
+
+    /**
+     * Records a VNPay IPN call.
+     *
+     * @return false when the secure hash does not match
+     */
+    public boolean recordVnPayIpn(HttpServletRequest request) {
+        int paymentStatus = vnPayService.orderReturn(request);
+        if (paymentStatus < 0) {
+            return false;
+        }
+        Map<String, String> params = new TreeMap<>();
+        request.getParameterMap().forEach((name, values) -> params.put(name, values.length > 0 ? values[0] : null));
+        record(VNPAY, request.getParameter("vnp_TxnRef"), paymentStatus == 1, params);
+        return true;
+    }
+
+    private void record(String gateway, String reference, boolean success, Object payload) {
+        if (reference == null || reference.isBlank()) {
+            throw new IllegalArgumentException("Callback from " + gateway + " has no transaction reference.");
+        }
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            json = null;
+        }
+        paymentCallbackRepository.record(gateway, reference, success, json, OffsetDateTime.now());
+    }
+
+    public void applyPendingCallbacks() {
+        dispatcher.dispatch();
+    }
+
+    /**
+     * Cancels PayOS / VNPay orders that never got a payment outcome, e.g. because the customer left
+     * the gateway page or link creation timed out, which also releases their reserved stock.
+     */
+    public void expireUnpaidOrders() {
+        List<String> orderIds = orderRepository.findUnpaidOrderIds(OrderStateMachine.PENDING, List.of(PAYOS, VNPAY),
+                OffsetDateTime.now().minus(properties.unpaidOrderTimeout()));
+        if (!orderIds.isEmpty()) {
+            logger.info("Cancelling {} orders left unpaid for more than {}.", orderIds.size(), properties.unpaidOrderTimeout());
+            orderStateMachine.apply(orderIds, OrderStateMachine.Action.PAYMENT_FAILED, null);
+        }
+    }
+
+    private void applyBatch(List<PaymentCallback> batch) {
+        Map<String, String> orderIdsByReference = new HashMap<>();
+        List<String> references = batch.stream().map(PaymentCallback::getTransactionReference).distinct().toList();
+        for (Object[] row : orderRepository.findOrderIdsByTransactionReferences(references)) {
+            orderIdsByReference.put((String) row[0], (String) row[1]);
+        }
+
+        Set<String> paid = new LinkedHashSet<>();
+        Set<String> failed = new LinkedHashSet<>();
+        for (PaymentCallback callback : batch) {
+            String orderId = orderIdsByReference.get(callback.getTransactionReference());
+            callback.setOrderId(orderId);
+            if (orderId != null) {
+                (callback.getSuccess() ? paid : failed).add(orderId);
+            }
+        }
+        // An order reported both ways in the same batch keeps the successful payment.
+        failed.removeAll(paid);
+
+        Map<String, OrderTransitionResultDTO> results = new HashMap<>();
+        if (!paid.isEmpty()) {
+            orderStateMachine.apply(paid, OrderStateMachine.Action.PAYMENT_SUCCEEDED, null)
+                    .forEach(result -> results.put(result.getOrderId(), result));
+        }
+        if (!failed.isEmpty()) {
+            orderStateMachine.apply(failed, OrderStateMachine.Action.PAYMENT_FAILED, null)
+                    .forEach(result -> results.put(result.getOrderId(), result));
+        }
+
+        OffsetDateTime now = OffsetDateTime.now();
+        Set<String> settled = new HashSet<>();
+        for (PaymentCallback callback : batch) {
+            callback.setClaimToken(null);
+            callback.setAttempts(callback.getAttempts() + 1);
+            OrderTransitionResultDTO result = callback.getOrderId() != null ? results.get(callback.getOrderId()) : null;
+
+            if (callback.getOrderId() == null) {
+                Duration retryDelay = dispatcher.retryDelay(callback.getAttempts());
+                if (retryDelay == null) {
+                    callback.setStatus(PaymentCallback.Status.FAILED);
+                    callback.setOutcome("No order with this transaction reference.");
+                    callback.setProcessedAt(now);
+                    logger.error("Giving up on {} callback {}: no matching order.", callback.getGateway(), callback.getTransactionReference());
+                } else {
+                    // Checkout may not have stored the reference yet.
+                    callback.setStatus(PaymentCallback.Status.RECEIVED);
+                    callback.setNextAttemptAt(now.plus(retryDelay));
+                }
+            } else if (result != null && result.isApplied()
+                    && (callback.getSuccess() ? paid : failed).contains(callback.getOrderId())
+                    && settled.add(callback.getOrderId())) {
+                callback.setStatus(PaymentCallback.Status.APPLIED);
+                callback.setOutcome(result.getPreviousStatus() + " -> " + result.getNewStatus());
+                callback.setProcessedAt(now);
+            } else {
+                callback.setStatus(PaymentCallback.Status.IGNORED);
+                callback.setOutcome(result != null && result.getMessage() != null
+                        ? result.getMessage() : "Superseded by another callback for the same order.");
+                callback.setProcessedAt(now);
+            }
+        }
+        paymentCallbackRepository.saveAll(batch);
+    }
+}
@@ -0,0 +1,192 @@
+package com.unleashed.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.unleashed.config.PaymentGatewayProperties;
+import com.unleashed.config.VNPayConfig;
+import com.unleashed.dto.ItemDataDTO;
+import com.unleashed.exception.CustomException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.RestClient;
+import vn.payos.PayOS;
+import vn.payos.type.CheckoutResponseData;
+import vn.payos.type.ItemData;
+import vn.payos.type.PaymentData;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Creates PayOS / VNPay payment links for checkout.
+ * <p>
+ * Gateway calls are network round-trips, so this service refuses to run inside a transaction:
+ * the order is already committed when we get here and no JDBC connection is held while waiting.
+ * Calls go through a bulkhead ({@code maxConcurrentCalls} permits, short acquire timeout) and each
+ * one is abandoned after {@code callTimeout}. A permit is only returned when the call really ends,
+ * so a hanging gateway cannot pile up more than the bulkhead's worth of threads.
+ */
+@Service
+public class PaymentLinkService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentLinkService.class);
+
+    public record PaymentLinkRequest(String orderId, String paymentMethod, long amount, long orderCode,
+                                     String description, List<ItemDataDTO> items, String clientIp) {
+    }
+
+    public record PaymentLink(String redirectUrl, String transactionReference) {
+    }
+
+    /**
+     * The gateway did not answer in time. It may still have created the link, so the order must
+     * not be treated as a failed payment.
+     */
+    public static class GatewayTimeoutException extends CustomException {
+        public GatewayTimeoutException(String message) {
+            super(message, HttpStatus.GATEWAY_TIMEOUT);
+        }
+    }
+
+    private final PayOS payOS;
+    private final VNPayService vnPayService;
+    private final RestClient restClient;
+    private final ThreadPoolTaskExecutor paymentGatewayExecutor;
+    private final PaymentGatewayProperties properties;
+    private final Semaphore bulkhead;
+
+    @Autowired
+    public PaymentLinkService(PayOS payOS,
+                              VNPayService vnPayService,
+                              @Qualifier("paymentGatewayRestClient") RestClient restClient,
+                              @Qualifier("paymentGatewayExecutor") ThreadPoolTaskExecutor paymentGatewayExecutor,
+                              PaymentGatewayProperties properties) {
+        this.payOS = payOS;
+        this.vnPayService = vnPayService;
+        this.restClient = restClient;
+        this.paymentGatewayExecutor = paymentGatewayExecutor;
+        this.properties = properties;
+        this.bulkhead = new Semaphore(properties.maxConcurrentCalls());
+    }
+
+    public PaymentLink createLink(PaymentLinkRequest request) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Payment links must be created outside of a database transaction.");
+        }
+
+        try {
+            if (!bulkhead.tryAcquire(properties.acquireTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new CustomException("Payment gateway is busy, please try again in a moment.", HttpStatus.SERVICE_UNAVAILABLE);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CustomException("Interrupted while waiting for the payment gateway.", HttpStatus.SERVICE_UNAVAILABLE);
+        }
+
+        Future<PaymentLink> call;
+        try {
+            call = paymentGatewayExecutor.submit(() -> {
+                try {
+                    return callGateway(request);
+                } finally {
+                    bulkhead.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            bulkhead.release();
+            throw new CustomException("Payment gateway is busy, please try again in a moment.", HttpStatus.SERVICE_UNAVAILABLE);
+        }
+
+        try {
+            return call.get(properties.callTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            call.cancel(true);
+            logger.warn("{} did not answer within {} for order {}.", request.paymentMethod(), properties.callTimeout(), request.orderId());
+            throw new GatewayTimeoutException("Payment gateway timed out.");
+        } catch (ExecutionException e) {
+            logger.error("Could not create {} payment link for order {}.", request.paymentMethod(), request.orderId(), e.getCause());
+            throw new CustomException("Could not create payment link: " + e.getCause().getMessage(), HttpStatus.BAD_GATEWAY);
+        } catch (InterruptedException e) {
+            call.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CustomException("Interrupted while waiting for the payment gateway.", HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    private PaymentLink callGateway(PaymentLinkRequest request) throws Exception {
+        return switch (request.paymentMethod()) {
+            case "PAYOS" -> createPayOsLink(request);
+            case "VNPAY" -> createVnPayLink(request);
+            default -> throw new IllegalArgumentException("Invalid payment method: " + request.paymentMethod());
+        };
+    }
+
+    private PaymentLink createPayOsLink(PaymentLinkRequest request) throws Exception {
+        if (StringUtils.hasText(properties.fakeBaseUrl())) {
+            Map<String, Object> body = new HashMap<>();
+            body.put("orderCode", request.orderCode());
+            body.put("amount", request.amount());
+            body.put("description", request.description());
+            body.put("items", request.items());
+            body.put("returnUrl", properties.returnUrl());
+            body.put("cancelUrl", properties.cancelUrl());
+            JsonNode response = restClient.post()
+                    .uri(properties.fakeBaseUrl() + "/fake-gateway/payos/v2/payment-requests")
+                    .body(body)
+                    .retrieve()
+                    .body(JsonNode.class);
+            if (response == null || !"00".equals(response.path("code").asText())) {
+                throw new IllegalStateException("PayOS rejected the payment request.");
+            }
+            JsonNode data = response.path("data");
+            return new PaymentLink(data.path("checkoutUrl").asText(), data.path("paymentLinkId").asText());
+        }
+
+        List<ItemData> items = request.items().stream()
+                .map(item -> ItemData.builder()
+                        .name(item.getName())
+                        .price(item.getPrice())
+                        .quantity(item.getQuantity())
+                        .build())
+                .toList();
+        PaymentData paymentData = PaymentData.builder()
+                .orderCode(request.orderCode())
+                .description(request.description())
+                .amount((int) request.amount())
+                .items(items)
+                .returnUrl(properties.returnUrl())
+                .cancelUrl(properties.cancelUrl())
+                .build();
+
+        CheckoutResponseData data = payOS.createPaymentLink(paymentData);
+        if (data == null) {
+            throw new IllegalStateException("PayOS returned no payment link.");
+        }
+        // The webhook reports the same payment link id, which is what we keep as the reference.
+        return new PaymentLink(data.getCheckoutUrl(), data.getPaymentLinkId());
+    }
+
+    private PaymentLink createVnPayLink(PaymentLinkRequest request) {
+        String payUrl = StringUtils.hasText(properties.fakeBaseUrl())
+                ? properties.fakeBaseUrl() + "/fake-gateway/vnpay/pay"
+                : VNPayConfig.vnp_PayUrl;
+        String paymentLink = vnPayService.createOrder(request.amount(), "Order " + request.orderId(),
+                properties.returnUrl(), request.clientIp(), payUrl);
+
+        String transactionReference = "000000";
+        for (String param : paymentLink.substring(paymentLink.indexOf('?') + 1).split("&")) {
+            if (param.startsWith("vnp_TxnRef=")) {
+                transactionReference = param.substring("vnp_TxnRef=".length());
+            }
+        }
+        return new PaymentLink(paymentLink, transactionReference);
+    }
+}
@@ -0,0 +1,174 @@
+package com.unleashed.service;
+
+import com.unleashed.entity.Discount;
+import com.unleashed.entity.Sale;
+import com.unleashed.repo.DiscountRepository;
+import com.unleashed.repo.DiscountStatusRespository;
+import com.unleashed.util.SnapshotHolder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Effective prices for listing, cart and checkout.
+ * <p>
+ * The sales of a product come from {@link SaleMembershipService}. The rules of every active
+ * discount are held in memory as one immutable snapshot; discount writes call {@link #invalidate()},
+ * which drops it when the writing transaction completes, and the next read rebuilds it with one
+ * query. A product in several sales gets the lowest resulting price.
+ * <p>
+ * All amounts are computed in {@link BigDecimal} and rounded once, half up to two decimals, per
+ * unit price, per line and per discount, so every screen shows the same numbers checkout charges.
+ */
+@Service
+public class PricingService {
+
+    public static final String SALE_TYPE_PERCENTAGE = "PERCENTAGE";
+    public static final String SALE_TYPE_FIXED_AMOUNT = "FIXED AMOUNT";
+    public static final int DISCOUNT_TYPE_PERCENTAGE = 1;
+    public static final int DISCOUNT_TYPE_FLAT = 2;
+
+    private static final int DISCOUNT_STATUS_ACTIVE = 2;
+    private static final int SCALE = 2;
+    private static final BigDecimal HUNDRED = BigDecimal.valueOf(100);
+
+    /**
+     * Unit price of a product, {@code sale} is null when no sale applies.
+     */
+    public record Price(BigDecimal basePrice, BigDecimal finalPrice, Sale sale) {
+    }
+
+    public record CartLine(UUID productId, BigDecimal unitPrice, int quantity) {
+    }
+
+    public record LinePrice(Price unitPrice, int quantity, BigDecimal lineTotal) {
+    }
+
+    public record CartPrice(List<LinePrice> lines, BigDecimal subtotal) {
+    }
+
+    private record DiscountRule(int discountId, int typeId, BigDecimal value,
+                                BigDecimal minimumOrderValue, BigDecimal maximumValue) {
+    }
+
+    private record Snapshot(Map<Integer, DiscountRule> discounts) {
+    }
+
+    private final SaleMembershipService saleMembershipService;
+    private final DiscountRepository discountRepository;
+    private final DiscountStatusRespository discountStatusRespository;
+
+    private final SnapshotHolder<Snapshot> snapshot;
+
+    @Autowired
+    public PricingService(SaleMembershipService saleMembershipService,
+                          DiscountRepository discountRepository,
+                          DiscountStatusRespository discountStatusRespository) {
+        this.saleMembershipService = saleMembershipService;
+        this.discountRepository = discountRepository;
+        this.discountStatusRespository = discountStatusRespository;
+        this.snapshot = new SnapshotHolder<>(this::load);
+    }
+
+    /**
+     * Marks the snapshot stale once the current transaction completes.
+     */
+    public void invalidate() {
+        snapshot.invalidate();
+    }
+
+    public Price priceOf(UUID productId, BigDecimal basePrice) {
+        BigDecimal base = basePrice != null ? basePrice.setScale(SCALE, RoundingMode.HALF_UP) : BigDecimal.ZERO.setScale(SCALE);
+        Sale best = null;
+        BigDecimal bestPrice = base;
+        for (Sale sale : saleMembershipService.activeSales(productId)) {
+            BigDecimal price = applySale(base, sale);
+            if (best == null || price.compareTo(bestPrice) < 0) {
+                best = sale;
+                bestPrice = price;
+            }
+        }
+        return new Price(base, bestPrice, best);
+    }
+
+    public CartPrice priceCart(List<CartLine> lines) {
+        List<LinePrice> prices = new ArrayList<>(lines.size());
+        BigDecimal subtotal = BigDecimal.ZERO.setScale(SCALE);
+        for (CartLine line : lines) {
+            Price unitPrice = priceOf(line.productId(), line.unitPrice());
+            BigDecimal lineTotal = unitPrice.finalPrice().multiply(BigDecimal.valueOf(line.quantity()));
+            prices.add(new LinePrice(unitPrice, line.quantity(), lineTotal));
+            subtotal = subtotal.add(lineTotal);
+        }
+        return new CartPrice(prices, subtotal);
+    }
+
+    /**
+     * What an active discount takes off {@code subtotal}, empty when the discount is not active or
+     * the subtotal is under its minimum order value.
+     */
+    public Optional<BigDecimal> discountSavings(int discountId, BigDecimal subtotal) {
+        DiscountRule rule = snapshot.get().discounts().get(discountId);
+        if (rule == null || rule.minimumOrderValue() != null && subtotal.compareTo(rule.minimumOrderValue()) < 0) {
+            return Optional.empty();
+        }
+        return Optional.of(savings(rule, subtotal));
+    }
+
+    /**
+     * The applicable discounts among {@code discountIds}, largest saving first.
+     */
+    public List<Integer> bestDiscounts(Collection<Integer> discountIds, BigDecimal subtotal, int limit) {
+        Map<Integer, BigDecimal> savings = new HashMap<>();
+        for (Integer discountId : discountIds) {
+            discountSavings(discountId, subtotal).ifPresent(saving -> savings.put(discountId, saving));
+        }
+        return savings.entrySet().stream()
+                .sorted(Map.Entry.<Integer, BigDecimal>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    private BigDecimal applySale(BigDecimal base, Sale sale) {
+        if (sale.getSaleType() == null || sale.getSaleValue() == null || sale.getSaleValue().signum() <= 0) {
+            return base;
+        }
+        BigDecimal price = switch (sale.getSaleType().getSaleTypeName()) {
+            case SALE_TYPE_PERCENTAGE -> base.subtract(base.multiply(sale.getSaleValue()).divide(HUNDRED, SCALE, RoundingMode.HALF_UP));
+            case SALE_TYPE_FIXED_AMOUNT -> base.subtract(sale.getSaleValue());
+            default -> base;
+        };
+        return price.signum() < 0 ? BigDecimal.ZERO.setScale(SCALE) : price.setScale(SCALE, RoundingMode.HALF_UP);
+    }
+
+    private BigDecimal savings(DiscountRule rule, BigDecimal subtotal) {
+        BigDecimal saving = switch (rule.typeId()) {
+            case DISCOUNT_TYPE_PERCENTAGE -> subtotal.multiply(rule.value()).divide(HUNDRED, SCALE, RoundingMode.HALF_UP);
+            case DISCOUNT_TYPE_FLAT -> rule.value();
+            default -> BigDecimal.ZERO;
+        };
+        if (rule.maximumValue() != null && saving.compareTo(rule.maximumValue()) > 0) {
+            saving = rule.maximumValue();
+        }
+        // A discount never takes the order below zero.
+        return saving.min(subtotal).setScale(SCALE, RoundingMode.HALF_UP);
+    }
+
+    private Snapshot load() {
+        Map<Integer, DiscountRule> discounts = new HashMap<>();
+        for (Discount discount : discountRepository.findByDiscountStatus(discountStatusRespository.getReferenceById(DISCOUNT_STATUS_ACTIVE))) {
+            if (discount.getDiscountType() == null || discount.getDiscountValue() == null) {
+                continue;
+            }
+            discounts.put(discount.getDiscountId(), new DiscountRule(discount.getDiscountId(),
+                    discount.getDiscountType().getId(), discount.getDiscountValue(),
+                    discount.getDiscountMinimumOrderValue(), discount.getDiscountMaximumValue()));
+        }
+        return new Snapshot(Map.copyOf(discounts));
+    }
+}
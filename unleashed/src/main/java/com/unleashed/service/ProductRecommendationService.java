@@ -30,14 +30,14 @@ public class ProductRecommendationService {
     private final ProductRepository productRepository;
     private final OrderRepository orderRepository;
     private final OrderVariationSingleRepository orderVariationSingleRepository;
-    private final SaleProductRepository saleProductRepository;
+    private final SaleMembershipService saleMembershipService;
     private final DiscountRepository discountRepository;
     private final StockVariationRepository stockVariationRepository;
     private final UserDiscountRepository userDiscountRepository;
     private final UserRepository userRepository;
     private final VariationRepository variationRepository;
     private final CartRepository cartRepository;
-    private final SaleRepository saleRepository;
+    private final PricingService pricingService;
 
     private static final Logger logger = LoggerFactory.getLogger(ProductRecommendationService.class);
 
@@ -47,25 +47,25 @@ public class ProductRecommendationService {
             ProductRepository productRepository,
             OrderRepository orderRepository,
             OrderVariationSingleRepository orderVariationSingleRepository,
-            SaleProductRepository saleProductRepository,
+            SaleMembershipService saleMembershipService,
             DiscountRepository discountRepository,
             StockVariationRepository stockVariationRepository,
             UserDiscountRepository userDiscountRepository,
             UserRepository userRepository,
             VariationRepository variationRepository,
             CartRepository cartRepository,
-            SaleRepository saleRepository) {
+            PricingService pricingService) {
         this.productRepository = productRepository;
         this.orderRepository = orderRepository;
         this.orderVariationSingleRepository = orderVariationSingleRepository;
-        this.saleProductRepository = saleProductRepository;
+        this.saleMembershipService = saleMembershipService;
         this.discountRepository = discountRepository;
         this.stockVariationRepository = stockVariationRepository;
         this.userDiscountRepository = userDiscountRepository;
         this.userRepository = userRepository;
         this.variationRepository = variationRepository;
         this.cartRepository = cartRepository;
-        this.saleRepository = saleRepository;
+        this.pricingService = pricingService;
     }
 
 
@@ -103,10 +103,7 @@ public class ProductRecommendationService {
         PurchaseAnalysisDTO purchaseAnalysis = analyzePurchases(recentPurchaseProductIds, productMap);
         CartAnalysisDTO cartAnalysis = analyzeCarts(userId, productMap);
 
-        List<SaleProduct> saleProducts = saleProductRepository.findAll();
-        Set<UUID> saleProductIds = saleProducts.stream()
-                .map(saleProduct -> saleProduct.getId().getProductId())
-                .collect(Collectors.toSet());
+        Set<UUID> saleProductIds = saleMembershipService.productsOnSale();
 
         Map<UUID, Long> productStockMap = allProducts.stream()
                 .collect(Collectors.toMap(
@@ -445,8 +442,6 @@ public class ProductRecommendationService {
 
     private ProductDTO convertToDto(UUID productId,
                                     Map<UUID, List<Variation>> variationsByProductId,
-                                    Map<UUID, SaleProduct> saleProductMap,
-                                    Map<Integer, Sale> saleMap,
                                     Map<UUID, Product> productMap) {
         Product product = productMap.get(productId);
 
@@ -466,14 +461,6 @@ public class ProductRecommendationService {
         dto.setCreatedAt(product.getProductCreatedAt());
         dto.setUpdatedAt(product.getProductUpdatedAt());
 
-        SaleProduct saleProduct = saleProductMap.get(productId);
-        if (saleProduct != null) {
-            Sale sale = saleMap.get(saleProduct.getId().getSaleId());
-            if (sale != null && sale.getSaleType() != null) {
-                dto.setSaleType(sale.getSaleType());
-                dto.setSaleValue(sale.getSaleValue());
-            }
-        }
 
         if (product.getBrand() != null) {
             dto.setBrandId(product.getBrand().getId());
@@ -486,6 +473,12 @@ public class ProductRecommendationService {
         }
 
         dto.setProductPrice(getRepresentativePrice(product));
+        PricingService.Price price = pricingService.priceOf(productId, dto.getProductPrice());
+        dto.setFinalPrice(price.finalPrice());
+        if (price.sale() != null && price.sale().getSaleType() != null) {
+            dto.setSaleType(price.sale().getSaleType());
+            dto.setSaleValue(price.sale().getSaleValue());
+        }
 
         List<ProductDTO.ProductVariationDTO> variationDTOs = variations.stream()
                 .map(variation -> {
@@ -495,6 +488,7 @@ public class ProductRecommendationService {
                     if (variation.getColor() != null)
                         variationDTO.setColorId(variation.getColor().getId());
                     variationDTO.setProductPrice(variation.getVariationPrice());
+                    variationDTO.setFinalPrice(pricingService.priceOf(productId, variation.getVariationPrice()).finalPrice());
                     variationDTO.setProductVariationImage(variation.getVariationImage());
                     return variationDTO;
                 })
@@ -548,10 +542,7 @@ public class ProductRecommendationService {
                         product -> (long) Optional.ofNullable(stockVariationRepository.getTotalStockQuantityForProduct(product.getProductId())).orElse(0)
                 ));
 
-        List<SaleProduct> saleProducts = saleProductRepository.findAll();
-        Set<UUID> saleProductIds = saleProducts.stream()
-                .map(saleProduct -> saleProduct.getId().getProductId())
-                .collect(Collectors.toSet());
+        Set<UUID> saleProductIds = saleMembershipService.productsOnSale();
 
         List<UUID> topSoldProductIds = orderRepository.findTopSoldProductIds(RecommendationConfig.TRENDING_DAYS_WINDOW, RecommendationConfig.MAX_TRENDING_PRODUCTS);
 
@@ -582,19 +573,9 @@ public class ProductRecommendationService {
         Map<UUID, List<Variation>> variationsByProductId = allVariations.stream()
                 .collect(Collectors.groupingBy(v -> v.getProduct().getProductId()));
 
-        List<SaleProduct> allSaleProducts = saleProductRepository.findSaleProductsByProductIds(productIds);
-        Map<UUID, SaleProduct> saleProductMap = allSaleProducts.stream()
-                .collect(Collectors.toMap(sp -> sp.getId().getProductId(), Function.identity()));
-
-        Set<Integer> saleIds = allSaleProducts.stream()
-                .map(sp -> sp.getId().getSaleId())
-                .collect(Collectors.toSet());
-        List<Sale> sales = saleRepository.findAllById(saleIds);
-        Map<Integer, Sale> saleMap = sales.stream().collect(Collectors.toMap(Sale::getId, Function.identity()));
-
 
         List<ProductDTO> productDTOs = products.stream()
-                .map(product -> convertToDto(product.getProductId(), variationsByProductId, saleProductMap, saleMap, productMap))
+                .map(product -> convertToDto(product.getProductId(), variationsByProductId, productMap))
                 .collect(Collectors.toList());
 
         int needed = RecommendationConfig.MAX_RECOMMENDATIONS - productDTOs.size();
@@ -607,7 +588,7 @@ public class ProductRecommendationService {
                     .limit(needed)
                     .map(product -> {
                         addedProductIds.add(product.getProductId());
-                        return convertToDto(product.getProductId(), variationsByProductId, saleProductMap, saleMap, productMap);
+                        return convertToDto(product.getProductId(), variationsByProductId, productMap);
                     })
                     .toList();
             productDTOs.addAll(additionalProducts);
@@ -30,30 +30,30 @@ public class ProductService {
     private final VariationRepository variationRepository;
     private final SizeRepository sizeRepository;
     private final ColorRepository colorRepository;
-    private final SaleProductRepository saleProductRepository;
+    private final SaleMembershipService saleMembershipService;
     private final ReviewRepository reviewRepository;
     private final StockVariationRepository stockVariationRepository; // Inject StockVariationRepository
     private final ProductStatusRepository productStatusRepository;
-    private final SaleRepository saleRepository;
     private final ProductMapper productMapper;
     private final ReviewService reviewService;
+    private final PricingService pricingService;
 
 
     @Autowired
-    public ProductService(ProductRepository productRepository, BrandRepository brandRepository, CategoryRepository categoryRepository, VariationRepository variationRepository, VariationRepository variationRepository1, SizeRepository sizeRepository, ColorRepository colorRepository, SaleProductRepository saleProductRepository, ReviewRepository reviewRepository, StockRepository stockRepository, StockVariationRepository stockVariationRepository, ProductStatusRepository productStatusRepository, SaleRepository saleRepository, ProductMapper productMapper, ReviewService reviewService) {
+    public ProductService(ProductRepository productRepository, BrandRepository brandRepository, CategoryRepository categoryRepository, VariationRepository variationRepository, VariationRepository variationRepository1, SizeRepository sizeRepository, ColorRepository colorRepository, SaleMembershipService saleMembershipService, ReviewRepository reviewRepository, StockRepository stockRepository, StockVariationRepository stockVariationRepository, ProductStatusRepository productStatusRepository, ProductMapper productMapper, ReviewService reviewService, PricingService pricingService) {
         this.productRepository = productRepository;
         this.brandRepository = brandRepository;
         this.categoryRepository = categoryRepository;
         this.variationRepository = variationRepository;
         this.sizeRepository = sizeRepository;
         this.colorRepository = colorRepository;
-        this.saleProductRepository = saleProductRepository;
+        this.saleMembershipService = saleMembershipService;
         this.reviewRepository = reviewRepository;
         this.stockVariationRepository = stockVariationRepository; // Initialize StockVariationRepository
         this.productStatusRepository = productStatusRepository;
-        this.saleRepository = saleRepository;
         this.productMapper = productMapper;
         this.reviewService = reviewService;
+        this.pricingService = pricingService;
     }
 
     public List<Product> findAll() {
@@ -185,6 +185,7 @@ public class ProductService {
         Set<Size> availableSizes = new HashSet<>();
         Set<Color> availableColors = new HashSet<>();
         Map<String, Map<String, ProductVariationDTO>> variationsMap = new HashMap<>();
+        Sale appliedSale = null;
 
         for (Variation variation : inStockVariations) {
             availableColors.add(variation.getColor());
@@ -193,6 +194,11 @@ public class ProductService {
             ProductVariationDTO variationDTO = new ProductVariationDTO();
             variationDTO.setId(variation.getId());
             variationDTO.setPrice(variation.getVariationPrice());
+            PricingService.Price price = pricingService.priceOf(id, variation.getVariationPrice());
+            variationDTO.setFinalPrice(price.finalPrice());
+            if (appliedSale == null) {
+                appliedSale = price.sale();
+            }
             variationDTO.setImages(variation.getVariationImage());
             variationDTO.setQuantity(stockVariationRepository.findStockProductByProductVariationId(variation.getId()));
 
@@ -205,14 +211,9 @@ public class ProductService {
         productItemDTO.setColors(new ArrayList<>(availableColors));
         productItemDTO.setVariations(variationsMap);
 
-        SaleProduct saleProduct = saleProductRepository.findSaleProductByProductId(id);
-        if (saleProduct != null) {
-            saleRepository.findById(saleProduct.getId().getSaleId()).ifPresent(sale -> {
-                if (sale.getSaleType() != null) {
-                    productItemDTO.setSaleType(sale.getSaleType());
-                    productItemDTO.setSaleValue(sale.getSaleValue());
-                }
-            });
+        if (appliedSale != null) {
+            productItemDTO.setSaleType(appliedSale.getSaleType());
+            productItemDTO.setSaleValue(appliedSale.getSaleValue());
         }
 
         List<Object[]> totalRatingResult = reviewRepository.countAndAvgRatingByProductId(id);
@@ -345,18 +346,7 @@ public class ProductService {
                     productListDTO.setProductVariationImage(firstVariation.getVariationImage());
                 }
 
-                // Get Sale information
-                List<SaleProduct> saleProduct = saleProductRepository.findById_ProductId(UUID.fromString(productId));
-                if (saleProduct != null && !saleProduct.isEmpty()) {
-                    saleProduct.forEach(sp -> {
-                        Sale sale = saleRepository.findById(sp.getId().getSaleId()).orElse(null);
-                        if (sale != null && Objects.equals(sale.getSaleStatus().getSaleStatusName(), "ACTIVE")) {
-                            productListDTO.setSale(sale); // Set the entire Sale object if needed
-                            productListDTO.setSaleValue(sale.getSaleValue()); // Or just the saleValue
-                        }
-                    });
-
-                }
+                applyPrice(productListDTO, product.getProductId());
 
                 // Get average rating and total ratings
                 List<Object[]> ratingData = reviewRepository.countAndAvgRatingByProductId(UUID.fromString(productId));
@@ -440,6 +430,7 @@ public class ProductService {
                 productListDTO.setProductPrice(BigDecimal.ZERO);
                 productListDTO.setProductVariationImage(null);
             }
+            applyPrice(productListDTO, product.getProductId());
             productListDTO.setAverageRating(averageRating != null ? averageRating : 0.0); // Set averageRating từ query result
             productListDTO.setTotalRatings(totalRatings != null ? totalRatings : 0L);   // Set totalRatings từ query result
             return productListDTO;
@@ -448,9 +439,8 @@ public class ProductService {
 
     public List<ProductDetailDTO> getProductsInStock() {
         List<Product> products = productRepository.findProductsInStock();
-        List<UUID> productIdsInSale = saleProductRepository.findAllProductIdsInSale();
         return products.stream()
-                .filter(product -> !productIdsInSale.contains(UUID.fromString(product.getProductId().toString())))
+                .filter(product -> !saleMembershipService.isInAnySale(product.getProductId()))
                 .map(product -> ProductDetailDTO.builder()
                         .productId(product.getProductId().toString())
                         .productName(product.getProductName())
@@ -478,26 +468,11 @@ public class ProductService {
 
         Page<Object[]> productPageResult = productRepository.findProductsWithFilters(query, category, brand, rating, inStockOnly, sortedPageable);
 
-        List<Integer> saleIds = productPageResult.getContent().stream()
-                .map(result -> (Integer) result[4])
-                .filter(Objects::nonNull)
-                .distinct()
-                .collect(Collectors.toList());
-
-        Map<Integer, Sale> saleMap;
-        if (!saleIds.isEmpty()) {
-            List<Sale> sales = saleRepository.findAllById(saleIds);
-            saleMap = sales.stream().collect(Collectors.toMap(Sale::getId, sale -> sale));
-        } else {
-            saleMap = Collections.emptyMap();
-        }
-
         return productPageResult.map(result -> {
             Product product = (Product) result[0];
             Variation firstVariation = (Variation) result[1];
             Double averageRating = (Double) result[2];
             Long totalRatings = (Long) result[3];
-            Integer saleId = (Integer) result[4];
 
             ProductListDTO dto = new ProductListDTO();
             dto.setProductId(product.getProductId().toString());
@@ -513,13 +488,7 @@ public class ProductService {
             dto.setAverageRating(averageRating != null ? averageRating : 0.0);
             dto.setTotalRatings(totalRatings != null ? totalRatings : 0L);
 
-            if (saleId != null) {
-                Sale sale = saleMap.get(saleId);
-                dto.setSale(sale);
-                if (sale != null) {
-                    dto.setSaleValue(sale.getSaleValue());
-                }
-            }
+            applyPrice(dto, product.getProductId());
 
             Integer totalQuantity = stockVariationRepository.getTotalStockQuantityForProduct(product.getProductId());
             dto.setQuantity(totalQuantity != null ? totalQuantity : 0);
@@ -528,6 +497,13 @@ public class ProductService {
         });
     }
 
+    private void applyPrice(ProductListDTO dto, UUID productId) {
+        PricingService.Price price = pricingService.priceOf(productId, dto.getProductPrice());
+        dto.setFinalPrice(price.finalPrice());
+        dto.setSale(price.sale());
+        dto.setSaleValue(price.sale() != null ? price.sale().getSaleValue() : null);
+    }
+
     @Transactional(readOnly = true)
     public ProductDetailDTO getProductDetailById(String productId) {
         Product product = this.findById(productId);
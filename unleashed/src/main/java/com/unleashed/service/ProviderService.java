@@ -3,7 +3,6 @@ package com.unleashed.service;
 import com.unleashed.entity.Provider;
 import com.unleashed.repo.ProviderRepository;
 import com.unleashed.repo.TransactionRepository;
-import com.unleashed.repo.UserRepository;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -15,12 +14,12 @@ import java.util.List;
 public class ProviderService {
     private final ProviderRepository providerRepository;
     private final TransactionRepository transactionRepository;
-    private final UserRepository userRepository;
+    private final UserDirectoryService userDirectoryService;
 
-    public ProviderService(ProviderRepository providerRepository, TransactionRepository transactionRepository, UserRepository userRepository) {
+    public ProviderService(ProviderRepository providerRepository, TransactionRepository transactionRepository, UserDirectoryService userDirectoryService) {
         this.providerRepository = providerRepository;
         this.transactionRepository = transactionRepository;
-        this.userRepository = userRepository;
+        this.userDirectoryService = userDirectoryService;
     }
 
     public List<Provider> getAllProviders() {
@@ -49,11 +48,11 @@ public class ProviderService {
             throw new RuntimeException("Provider address cannot be empty");
         }
         if (providerRepository.existsByProviderEmail(provider.getProviderEmail()) ||
-                userRepository.existsByUserEmail(provider.getProviderEmail())) {
+                userDirectoryService.emailExists(provider.getProviderEmail())) {
             throw new RuntimeException("Email already exists!");
         }
         if (providerRepository.existsByProviderPhone(provider.getProviderPhone()) ||
-                userRepository.existsByUserPhone(provider.getProviderPhone())) {
+                userDirectoryService.phoneExists(provider.getProviderPhone())) {
             throw new RuntimeException("Phone number already exists!");
         }
 
@@ -85,12 +84,12 @@ public class ProviderService {
                     }
                     if (!existingProvider.getProviderEmail().equals(updatedProvider.getProviderEmail()) &&
                             (providerRepository.existsByProviderEmail(updatedProvider.getProviderEmail()) ||
-                                    userRepository.existsByUserEmail(updatedProvider.getProviderEmail()))) {
+                                    userDirectoryService.emailExists(updatedProvider.getProviderEmail()))) {
                         throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Email already exists!");
                     }
                     if (!existingProvider.getProviderPhone().equals(updatedProvider.getProviderPhone()) &&
                             (providerRepository.existsByProviderPhone(updatedProvider.getProviderPhone()) ||
-                                    userRepository.existsByUserPhone(updatedProvider.getProviderPhone()))) {
+                                    userDirectoryService.phoneExists(updatedProvider.getProviderPhone()))) {
                         throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Phone number already exists!");
                     }
                     existingProvider.setProviderName(updatedProvider.getProviderName());
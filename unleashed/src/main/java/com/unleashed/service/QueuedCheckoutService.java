@@ -0,0 +1,282 @@
+package com.unleashed.service;
+
+import com.unleashed.config.QueuedCheckoutProperties;
+import com.unleashed.dto.OrderDTO;
+import com.unleashed.dto.OrderDetailDTO;
+import com.unleashed.exception.CustomException;
+import com.unleashed.repo.SaleProductRepository;
+import com.unleashed.repo.StockVariationRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Virtual waiting room for flash sales.
+ * <p>
+ * When a sale goes live every shopper checks out at once against the same few stock rows. With
+ * {@code app.queued-checkout.enabled}, checkouts that contain a product of an active sale are not
+ * run on the request thread: they are put on one of {@code lanes} bounded in-memory queues and the
+ * caller gets a ticket right away (202 + status URL) that it polls until the order is created or
+ * refused. An order always goes to the lane of its lowest variation id, so buyers of the same item
+ * queue behind each other instead of fighting over the same rows, and at most {@code lanes}
+ * checkouts touch the database at any time no matter how many people click "buy".
+ * <p>
+ * Each lane worker drains up to {@code batchSize} orders at a time, reads the stock of every
+ * variation in the batch once and rejects orders that can no longer be served before they open
+ * a transaction. The orders that fit go through the normal {@link OrderService#createOrder} path,
+ * which still reserves stock authoritatively.
+ * <p>
+ * Queue and tickets live in memory: a restart drops what is still waiting, and with several
+ * instances every instance runs its own waiting room.
+ */
+@Service
+public class QueuedCheckoutService {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueuedCheckoutService.class);
+
+    public enum TicketStatus {
+        QUEUED,
+        PROCESSING,
+        COMPLETED,
+        FAILED
+    }
+
+    private static final class Ticket {
+        private final String ticketId = UUID.randomUUID().toString();
+        private final String username;
+        private final OrderDTO order;
+        private final String clientIp;
+        private final Lane lane;
+        private final long sequence;
+        private final OffsetDateTime createdAt = OffsetDateTime.now();
+        private volatile TicketStatus status = TicketStatus.QUEUED;
+        private volatile Map<String, Object> result;
+        private volatile String error;
+        private volatile OffsetDateTime finishedAt;
+
+        private Ticket(OrderDTO order, String username, String clientIp, Lane lane, long sequence) {
+            this.username = username;
+            this.order = order;
+            this.clientIp = clientIp;
+            this.lane = lane;
+            this.sequence = sequence;
+        }
+    }
+
+    private static final class Lane {
+        private final int index;
+        private final BlockingQueue<Ticket> queue;
+        private final AtomicLong enqueued = new AtomicLong();
+        private volatile long taken;
+
+        private Lane(int index, int capacity) {
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+    }
+
+    private final OrderService orderService;
+    private final StockVariationRepository stockVariationRepository;
+    private final SaleProductRepository saleProductRepository;
+    private final ThreadPoolTaskExecutor queuedCheckoutExecutor;
+    private final QueuedCheckoutProperties properties;
+    private final List<Lane> lanes = new ArrayList<>();
+    private final Map<String, Ticket> tickets = new ConcurrentHashMap<>();
+    private volatile boolean running;
+
+    @Autowired
+    public QueuedCheckoutService(OrderService orderService,
+                                 StockVariationRepository stockVariationRepository,
+                                 SaleProductRepository saleProductRepository,
+                                 @Qualifier("queuedCheckoutExecutor") ThreadPoolTaskExecutor queuedCheckoutExecutor,
+                                 QueuedCheckoutProperties properties) {
+        this.orderService = orderService;
+        this.stockVariationRepository = stockVariationRepository;
+        this.saleProductRepository = saleProductRepository;
+        this.queuedCheckoutExecutor = queuedCheckoutExecutor;
+        this.properties = properties;
+        for (int i = 0; i < properties.lanes(); i++) {
+            lanes.add(new Lane(i, properties.laneCapacity()));
+        }
+    }
+
+    @PostConstruct
+    public void startLanes() {
+        if (!properties.enabled()) {
+            return;
+        }
+        running = true;
+        for (Lane lane : lanes) {
+            queuedCheckoutExecutor.execute(() -> drain(lane));
+        }
+        logger.info("Queued checkout enabled with {} lanes of {} orders.", lanes.size(), properties.laneCapacity());
+    }
+
+    @PreDestroy
+    public void stopLanes() {
+        running = false;
+    }
+
+    /**
+     * True when this checkout has to wait in the queue, i.e. queued mode is on and one of the
+     * ordered variations belongs to a product of an active sale.
+     */
+    public boolean requiresQueue(OrderDTO orderDTO) {
+        if (!properties.enabled() || orderDTO.getOrderDetails() == null || orderDTO.getOrderDetails().isEmpty()) {
+            return false;
+        }
+        Set<Integer> variationIds = orderDTO.getOrderDetails().stream()
+                .map(OrderDetailDTO::getVariationId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        return !variationIds.isEmpty() && saleProductRepository.existsActiveSaleForVariations(variationIds);
+    }
+
+    /**
+     * Puts the checkout in its lane and returns the ticket status. A full lane is refused with
+     * 429 rather than queued without bound.
+     */
+    public Map<String, Object> enqueue(OrderDTO orderDTO, String username, String clientIp) {
+        int laneKey = orderDTO.getOrderDetails().stream()
+                .map(OrderDetailDTO::getVariationId)
+                .filter(Objects::nonNull)
+                .min(Integer::compare)
+                .orElse(0);
+        Lane lane = lanes.get(Math.floorMod(laneKey, lanes.size()));
+
+        Ticket ticket;
+        synchronized (lane) {
+            ticket = new Ticket(orderDTO, username, clientIp, lane, lane.enqueued.get());
+            if (!lane.queue.offer(ticket)) {
+                throw new CustomException("Too many shoppers are checking out right now, please try again in a moment.",
+                        HttpStatus.TOO_MANY_REQUESTS);
+            }
+            lane.enqueued.incrementAndGet();
+        }
+        tickets.put(ticket.ticketId, ticket);
+        return toResponse(ticket);
+    }
+
+    /**
+     * Current state of a ticket; empty when it is unknown, expired or belongs to somebody else.
+     */
+    public Optional<Map<String, Object>> getTicket(String ticketId, String username) {
+        Ticket ticket = tickets.get(ticketId);
+        if (ticket == null || !Objects.equals(ticket.username, username)) {
+            return Optional.empty();
+        }
+        return Optional.of(toResponse(ticket));
+    }
+
+    public long getPollHintSeconds() {
+        return Math.max(1, properties.pollHint().toSeconds());
+    }
+
+    /**
+     * Forgets tickets that finished longer than {@code ticketTtl} ago.
+     */
+    public void purgeExpiredTickets() {
+        OffsetDateTime cutoff = OffsetDateTime.now().minus(properties.ticketTtl());
+        tickets.values().removeIf(ticket -> ticket.finishedAt != null && ticket.finishedAt.isBefore(cutoff));
+    }
+
+    private Map<String, Object> toResponse(Ticket ticket) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("ticketId", ticket.ticketId);
+        response.put("status", ticket.status.name());
+        response.put("createdAt", ticket.createdAt);
+        if (ticket.status == TicketStatus.QUEUED) {
+            response.put("position", Math.max(0, ticket.sequence - ticket.lane.taken) + 1);
+        }
+        if (ticket.status == TicketStatus.COMPLETED) {
+            response.put("order", ticket.result);
+        }
+        if (ticket.status == TicketStatus.FAILED) {
+            response.put("message", ticket.error);
+        }
+        if (ticket.finishedAt != null) {
+            response.put("finishedAt", ticket.finishedAt);
+        }
+        return response;
+    }
+
+    private void drain(Lane lane) {
+        List<Ticket> batch = new ArrayList<>(properties.batchSize());
+        while (running) {
+            try {
+                Ticket first = lane.queue.poll(500, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                lane.queue.drainTo(batch, properties.batchSize() - 1);
+                lane.taken += batch.size();
+                processBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("Checkout lane {} failed on a batch of {} orders.", lane.index, batch.size(), e);
+                batch.stream().filter(ticket -> ticket.finishedAt == null)
+                        .forEach(ticket -> finish(ticket, null, "Checkout failed, please try again."));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void processBatch(List<Ticket> batch) {
+        // One stock read per variation for the whole batch; later orders see what earlier ones took.
+        Map<Integer, Integer> remaining = new HashMap<>();
+        for (Ticket ticket : batch) {
+            for (OrderDetailDTO detail : ticket.order.getOrderDetails()) {
+                remaining.computeIfAbsent(detail.getVariationId(), variationId -> {
+                    Integer stock = stockVariationRepository.findStockProductByProductVariationId(variationId);
+                    return stock != null ? stock : 0;
+                });
+            }
+        }
+
+        for (Ticket ticket : batch) {
+            Map<Integer, Integer> wanted = ticket.order.getOrderDetails().stream()
+                    .collect(Collectors.toMap(OrderDetailDTO::getVariationId, OrderDetailDTO::getOrderQuantity, Integer::sum));
+            boolean fits = wanted.entrySet().stream().allMatch(line -> remaining.get(line.getKey()) >= line.getValue());
+            if (!fits) {
+                finish(ticket, null, "Sorry, an item in your order sold out while you were waiting.");
+                continue;
+            }
+
+            ticket.status = TicketStatus.PROCESSING;
+            try {
+                Map<String, Object> result = orderService.createOrder(ticket.order, ticket.clientIp);
+                wanted.forEach((variationId, quantity) -> remaining.merge(variationId, -quantity, Integer::sum));
+                finish(ticket, result, null);
+            } catch (Exception e) {
+                logger.warn("Queued checkout {} was refused: {}", ticket.ticketId, e.getMessage());
+                finish(ticket, null, e.getMessage());
+            }
+        }
+    }
+
+    private void finish(Ticket ticket, Map<String, Object> result, String error) {
+        ticket.result = result;
+        ticket.error = error;
+        ticket.finishedAt = OffsetDateTime.now();
+        ticket.status = result != null ? TicketStatus.COMPLETED : TicketStatus.FAILED;
+    }
+}
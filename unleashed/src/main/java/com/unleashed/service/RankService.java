@@ -6,27 +6,111 @@ import com.unleashed.entity.UserRank;
 import com.unleashed.repo.RankRepository;
 import com.unleashed.repo.UserRankRepository;
 import com.unleashed.repo.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.*;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
 
 @Service
 public class RankService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RankService.class);
+
+    private static final int CHUNK_SIZE = 5000;
+
+    private static final String LADDER_COLUMNS =
+            "(rank_id, rank_position, requirement, prev_rank_id, prev_requirement, demotion_threshold)";
+
+    /**
+     * Moves members whose spending reaches a higher rank up to the highest such rank and starts a
+     * new year for them, as {@link #upRank} does one step at a time.
+     */
+    private static final String PROMOTE = """
+            UPDATE TOP (:chunkSize) ur
+            SET ur.rank_id = target.rank_id,
+                ur.rank_expire_date = :renewedExpiry,
+                ur.rank_updated_date = SYSDATETIMEOFFSET()
+            FROM dbo.user_rank ur
+            JOIN %1$s ON cur.rank_id = ur.rank_id
+            CROSS APPLY (SELECT TOP (1) l.rank_id, l.rank_position
+                         FROM %2$s
+                         WHERE l.requirement <= COALESCE(ur.money_spent, 0)
+                         ORDER BY l.rank_position DESC) target
+            WHERE target.rank_position > cur.rank_position
+            """;
+
+    /**
+     * Expired members below half of the next rank's requirement drop one rank with their spending
+     * reset to its requirement; at the lowest rank only the spending is reset. Same rules as
+     * {@link #checkDownRank} and {@link #downRank}.
+     */
+    private static final String DEMOTE = """
+            UPDATE TOP (:chunkSize) ur
+            SET ur.rank_id = COALESCE(l.prev_rank_id, ur.rank_id),
+                ur.money_spent = COALESCE(l.prev_requirement, l.requirement),
+                ur.rank_expire_date = CASE WHEN l.prev_rank_id IS NULL THEN ur.rank_expire_date ELSE :renewedExpiry END,
+                ur.rank_updated_date = SYSDATETIMEOFFSET()
+            FROM dbo.user_rank ur
+            JOIN %2$s ON l.rank_id = ur.rank_id
+            WHERE ur.rank_expire_date <= :today
+              AND COALESCE(ur.money_spent, 0) < l.demotion_threshold
+              AND (l.prev_rank_id IS NOT NULL OR COALESCE(ur.money_spent, -1) <> l.requirement)
+            """;
+
+    /**
+     * The ranks in order, lowest first. Ranks are reference data that only change with a
+     * deployment, so they are read once and kept.
+     */
+    private record Ladder(List<Rank> ranks, Map<Integer, Integer> positionById) {
+
+        private static Ladder of(List<Rank> ranks) {
+            List<Rank> ordered = new ArrayList<>(ranks);
+            ordered.sort(Comparator.comparing(Rank::getId));
+            Map<Integer, Integer> positionById = new HashMap<>();
+            for (int i = 0; i < ordered.size(); i++) {
+                positionById.put(ordered.get(i).getId(), i);
+            }
+            return new Ladder(List.copyOf(ordered), Map.copyOf(positionById));
+        }
+
+        private Rank lowest() {
+            return ranks.isEmpty() ? null : ranks.get(0);
+        }
+
+        private Rank next(Rank rank) {
+            Integer position = positionById.get(rank.getId());
+            return position == null || position + 1 >= ranks.size() ? null : ranks.get(position + 1);
+        }
+
+        private Rank previous(Rank rank) {
+            Integer position = positionById.get(rank.getId());
+            return position == null || position == 0 ? null : ranks.get(position - 1);
+        }
+    }
+
     private final RankRepository rankRepository;
     private final UserRepository userRepository;
     private final UserRankRepository userRankRepository;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    private volatile Ladder ladder;
 
     @Autowired
-    public RankService(RankRepository rankRepository, UserRepository userRepository, UserRankRepository userRankRepository) {
+    public RankService(RankRepository rankRepository, UserRepository userRepository, UserRankRepository userRankRepository,
+                       NamedParameterJdbcTemplate jdbcTemplate) {
         this.rankRepository = rankRepository;
         this.userRepository = userRepository;
         this.userRankRepository = userRankRepository;
+        this.jdbcTemplate = jdbcTemplate;
     }
 
     public List<Rank> getRanks() {
@@ -37,7 +121,7 @@ public class RankService {
         try {
             if (user.getUserRank() == null) user.setUserRank(UserRank
                     .builder()
-                    .rank(rankRepository.findById(1).orElse(null))
+                    .rank(ladder().lowest())
                     .user(user)
                     .rankStatus((short) 1)
                     .moneySpent(BigDecimal.valueOf(0))
@@ -45,7 +129,7 @@ public class RankService {
             if (user.getUserRank().getRankStatus() < 1) {
                 user.getUserRank().setRankStatus((short) 1);
                 user.getUserRank().setMoneySpent(BigDecimal.valueOf(0));
-                user.getUserRank().setRank(rankRepository.findById(1).orElse(null));
+                user.getUserRank().setRank(ladder().lowest());
                 user.getUserRank().setRankExpireDate(LocalDate.now().plusYears(1));
             }
             userRankRepository.save(user.getUserRank());
@@ -72,16 +156,22 @@ public class RankService {
     }
 
 
+    /**
+     * Adds to the member's spending with one UPDATE, so concurrent completions for the same member
+     * cannot lose each other's amounts. The row stays locked until the caller's transaction ends,
+     * which makes the total read back here safe to keep on the entity.
+     */
+    @Transactional
     public User addMoneySpent(User user, BigDecimal moneySpent) {
-        user.getUserRank().setMoneySpent(user.getUserRank().getMoneySpent().add(moneySpent));
-        userRankRepository.save(user.getUserRank());
+        UserRank userRank = user.getUserRank();
+        userRankRepository.addMoneySpent(userRank.getUserId(), moneySpent);
+        userRank.setMoneySpent(userRankRepository.findMoneySpent(userRank.getUserId()));
         return user;
     }
 
+    @Transactional
     public User removeMoneySpent(User user, BigDecimal moneySpent) {
-        user.getUserRank().setMoneySpent(user.getUserRank().getMoneySpent().subtract(moneySpent));
-        userRankRepository.save(user.getUserRank());
-        return user;
+        return addMoneySpent(user, moneySpent.negate());
     }
 
     public boolean isRankExpired(User user) {
@@ -92,7 +182,7 @@ public class RankService {
     }
 
     public boolean checkUpRank(User user) {
-        Rank nextRank = rankRepository.findById(user.getUserRank().getRank().getId() + 1).orElse(null);
+        Rank nextRank = ladder().next(user.getUserRank().getRank());
         if (nextRank != null) {
 //            System.out.println("User has spent: " + user.getUserRank().getMoneySpent());
 //            System.out.println("Next Rank: " + nextRank.toString());
@@ -106,7 +196,7 @@ public class RankService {
 
     public boolean checkDownRank(User user) {
         Rank currentRank = user.getUserRank().getRank();
-        Rank nextRank = rankRepository.findById(currentRank.getId() + 1).orElse(null);
+        Rank nextRank = ladder().next(currentRank);
 
         BigDecimal halfRequirement = Objects.requireNonNullElse(nextRank, currentRank)
                 .getRankPaymentRequirement().divide(BigDecimal.valueOf(2), RoundingMode.HALF_UP);
@@ -116,14 +206,14 @@ public class RankService {
 
 
     public void upRank(User user) {
-        user.getUserRank().setRank(rankRepository.findById(user.getUserRank().getRank().getId() + 1).orElse(null));
+        user.getUserRank().setRank(ladder().next(user.getUserRank().getRank()));
         user.getUserRank().setRankExpireDate(LocalDate.now().plusYears(1));
         userRankRepository.saveAndFlush(user.getUserRank());
     }
 
     public void downRank(User user) {
         Rank currentRank = user.getUserRank().getRank();
-        Rank previousRank = rankRepository.findById(currentRank.getId() - 1).orElse(null);
+        Rank previousRank = ladder().previous(currentRank);
 
         if (previousRank != null) {
             user.getUserRank().setRank(previousRank);
@@ -136,6 +226,79 @@ public class RankService {
         userRankRepository.saveAndFlush(user.getUserRank());
     }
 
+    /**
+     * Applies promotions, then expiry demotions, to every member in set-based chunks against the
+     * in-memory ladder. Each chunk commits on its own; a chunk's rows stop matching once updated,
+     * so the loop ends when a statement changes nothing, and a rerun after a failure picks up
+     * where it stopped.
+     */
+    public void recalculateRanks() {
+        Ladder current = ladder();
+        if (current.ranks().isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("chunkSize", CHUNK_SIZE)
+                .addValue("today", LocalDate.now())
+                .addValue("renewedExpiry", LocalDate.now().plusYears(1));
+        String values = ladderValues(current, params);
+        String cur = values + " AS cur" + LADDER_COLUMNS;
+        String l = values + " AS l" + LADDER_COLUMNS;
+
+        long promoted = runInChunks(PROMOTE.formatted(cur, l), params);
+        long demoted = runInChunks(DEMOTE.formatted(cur, l), params);
+        logger.info("Rank recalculation finished: {} members promoted, {} expired members adjusted.", promoted, demoted);
+    }
+
+    private long runInChunks(String sql, MapSqlParameterSource params) {
+        long total = 0;
+        int updated;
+        do {
+            updated = jdbcTemplate.update(sql, params);
+            total += updated;
+        } while (updated > 0);
+        return total;
+    }
+
+    /**
+     * The ladder as a VALUES table: position, requirement, the rank below and the spending under
+     * which an expired member is demoted.
+     */
+    private static String ladderValues(Ladder ladder, MapSqlParameterSource params) {
+        StringJoiner rows = new StringJoiner(", ", "(VALUES ", ")");
+        List<Rank> ranks = ladder.ranks();
+        for (int i = 0; i < ranks.size(); i++) {
+            Rank rank = ranks.get(i);
+            Rank previous = i > 0 ? ranks.get(i - 1) : null;
+            Rank next = i + 1 < ranks.size() ? ranks.get(i + 1) : null;
+            BigDecimal demotionThreshold = requirement(Objects.requireNonNullElse(next, rank))
+                    .divide(BigDecimal.valueOf(2), RoundingMode.HALF_UP);
+            params.addValue("rankId" + i, rank.getId())
+                    .addValue("position" + i, i)
+                    .addValue("requirement" + i, requirement(rank))
+                    .addValue("prevRankId" + i, previous != null ? previous.getId() : null)
+                    .addValue("prevRequirement" + i, previous != null ? requirement(previous) : null)
+                    .addValue("demotionThreshold" + i, demotionThreshold);
+            rows.add(("(CAST(:rankId%1$d AS INT), CAST(:position%1$d AS INT), CAST(:requirement%1$d AS DECIMAL(22, 2)), "
+                    + "CAST(:prevRankId%1$d AS INT), CAST(:prevRequirement%1$d AS DECIMAL(22, 2)), "
+                    + "CAST(:demotionThreshold%1$d AS DECIMAL(22, 2)))").formatted(i));
+        }
+        return rows.toString();
+    }
+
+    private static BigDecimal requirement(Rank rank) {
+        return Objects.requireNonNullElse(rank.getRankPaymentRequirement(), BigDecimal.ZERO);
+    }
+
+    private Ladder ladder() {
+        Ladder current = ladder;
+        if (current == null) {
+            current = Ladder.of(rankRepository.findAll());
+            ladder = current;
+        }
+        return current;
+    }
+
     public boolean hasRegistered(User user) {
         return user.getUserRank() != null;
     }
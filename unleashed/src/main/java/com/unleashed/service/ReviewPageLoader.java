@@ -0,0 +1,149 @@
+package com.unleashed.service;
+
+import com.unleashed.dto.ProductReviewDTO;
+import com.unleashed.dto.UserReviewHistoryDTO;
+import com.unleashed.entity.Comment;
+import com.unleashed.entity.Review;
+import com.unleashed.repo.CommentClosureRepository;
+import com.unleashed.repo.CommentRepository;
+import com.unleashed.repo.ReviewRepository;
+import com.unleashed.repo.VariationRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+
+/**
+ * Builds review pages with a fixed number of queries, however many reviews the page holds: the
+ * page of reviews with their authors (or products), then the root comment of every review on it,
+ * then what the page shows about those comments or products.
+ */
+@Service
+public class ReviewPageLoader {
+
+    private final ReviewRepository reviewRepository;
+    private final CommentRepository commentRepository;
+    private final CommentClosureRepository commentClosureRepository;
+    private final VariationRepository variationRepository;
+
+    @Autowired
+    public ReviewPageLoader(ReviewRepository reviewRepository,
+                            CommentRepository commentRepository,
+                            CommentClosureRepository commentClosureRepository,
+                            VariationRepository variationRepository) {
+        this.reviewRepository = reviewRepository;
+        this.commentRepository = commentRepository;
+        this.commentClosureRepository = commentClosureRepository;
+        this.variationRepository = variationRepository;
+    }
+
+    /**
+     * A page of a product's rated reviews, newest first, with author, root comment and the number of
+     * replies under it. Three queries plus the page count.
+     */
+    @Transactional(readOnly = true)
+    public Page<ProductReviewDTO> loadProductReviews(UUID productId, Pageable pageable) {
+        Page<Review> reviewPage = reviewRepository.findTopLevelReviewsByProductId(productId, pageable);
+        Map<Integer, Comment> rootComments = rootCommentsByReview(reviewPage.getContent());
+        Map<Integer, Long> replyCounts = replyCounts(rootComments.values());
+
+        List<ProductReviewDTO> dtos = new ArrayList<>(reviewPage.getNumberOfElements());
+        for (Review review : reviewPage.getContent()) {
+            ProductReviewDTO dto = new ProductReviewDTO();
+            dto.setReviewId(review.getId());
+            dto.setFullName(review.getUser().getUsername());
+            dto.setReviewRating(review.getReviewRating());
+            dto.setUserImage(review.getUser().getUserImage());
+
+            Comment rootComment = rootComments.get(review.getId());
+            if (rootComment != null) {
+                dto.setReviewComment(rootComment.getCommentContent());
+                dto.setCreatedAt(rootComment.getCommentCreatedAt());
+                dto.setUpdatedAt(rootComment.getCommentUpdatedAt());
+                dto.setCommentId(rootComment.getId());
+                dto.setReplyCount(replyCounts.getOrDefault(rootComment.getId(), 0L));
+            }
+            dtos.add(dto);
+        }
+        return new PageImpl<>(dtos, pageable, reviewPage.getTotalElements());
+    }
+
+    /**
+     * A page of one user's rated reviews with the product, its first image and the review's root
+     * comment. Three queries plus the page count.
+     */
+    @Transactional(readOnly = true)
+    public Page<UserReviewHistoryDTO> loadUserReviews(String username, Pageable pageable) {
+        Page<Review> reviewPage = reviewRepository.findAllByUser_Username(username, pageable);
+        Map<Integer, Comment> rootComments = rootCommentsByReview(reviewPage.getContent());
+        Map<UUID, String> productImages = productImages(reviewPage.getContent());
+
+        List<UserReviewHistoryDTO> dtos = new ArrayList<>(reviewPage.getNumberOfElements());
+        for (Review review : reviewPage.getContent()) {
+            UserReviewHistoryDTO dto = new UserReviewHistoryDTO();
+            dto.setId(review.getId());
+            dto.setReviewRating(review.getReviewRating());
+            if (review.getProduct() != null) {
+                UUID productId = review.getProduct().getProductId();
+                dto.setProductId(productId.toString());
+                dto.setProductName(review.getProduct().getProductName());
+                dto.setProductImageUrl(productImages.get(productId));
+            }
+            Comment rootComment = rootComments.get(review.getId());
+            if (rootComment != null) {
+                dto.setCommentContent(rootComment.getCommentContent());
+                dto.setCommentCreatedAt(rootComment.getCommentCreatedAt());
+            }
+            dtos.add(dto);
+        }
+        return new PageImpl<>(dtos, pageable, reviewPage.getTotalElements());
+    }
+
+    /**
+     * The first root comment of each review; a review normally has exactly one.
+     */
+    private Map<Integer, Comment> rootCommentsByReview(List<Review> reviews) {
+        if (reviews.isEmpty()) {
+            return Map.of();
+        }
+        List<Integer> reviewIds = reviews.stream().map(Review::getId).toList();
+        Map<Integer, Comment> rootComments = new HashMap<>();
+        for (Comment comment : commentRepository.findRootCommentsByReviewIds(reviewIds)) {
+            rootComments.putIfAbsent(comment.getReview().getId(), comment);
+        }
+        return rootComments;
+    }
+
+    private Map<Integer, Long> replyCounts(Collection<Comment> rootComments) {
+        if (rootComments.isEmpty()) {
+            return Map.of();
+        }
+        List<Integer> commentIds = rootComments.stream().map(Comment::getId).toList();
+        Map<Integer, Long> counts = new HashMap<>();
+        for (Object[] row : commentClosureRepository.countReplies(commentIds)) {
+            counts.put((Integer) row[0], (Long) row[1]);
+        }
+        return counts;
+    }
+
+    private Map<UUID, String> productImages(List<Review> reviews) {
+        Set<UUID> productIds = new HashSet<>();
+        for (Review review : reviews) {
+            if (review.getProduct() != null) {
+                productIds.add(review.getProduct().getProductId());
+            }
+        }
+        if (productIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<UUID, String> images = new HashMap<>();
+        for (Object[] row : variationRepository.findImagesByProductIds(productIds)) {
+            images.putIfAbsent((UUID) row[0], (String) row[1]);
+        }
+        return images;
+    }
+}
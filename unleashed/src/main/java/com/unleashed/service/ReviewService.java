@@ -10,9 +10,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
 import java.util.stream.Collectors;
 
 @Service
@@ -25,9 +23,12 @@ public class ReviewService {
     private final CommentRepository commentRepository;
     private final UserRepository userRepository;
     private final OrderRepository orderRepository;
+    private final UserDirectoryService userDirectoryService;
+    private final CommentClosureRepository commentClosureRepository;
+    private final ReviewPageLoader reviewPageLoader;
 
     @Autowired
-    public ReviewService(ReviewRepository reviewRepository, ProductRepository productRepository, OrderVariationSingleRepository orderVariationSingleRepository, VariationSingleRepository variationSingleRepository, CommentRepository commentRepository, UserRepository userRepository, OrderRepository orderRepository) {
+    public ReviewService(ReviewRepository reviewRepository, ProductRepository productRepository, OrderVariationSingleRepository orderVariationSingleRepository, VariationSingleRepository variationSingleRepository, CommentRepository commentRepository, UserRepository userRepository, OrderRepository orderRepository, UserDirectoryService userDirectoryService, CommentClosureRepository commentClosureRepository, ReviewPageLoader reviewPageLoader) {
         this.reviewRepository = reviewRepository;
         this.productRepository = productRepository;
         this.orderVariationSingleRepository = orderVariationSingleRepository;
@@ -35,6 +36,9 @@ public class ReviewService {
         this.commentRepository = commentRepository;
         this.userRepository = userRepository;
         this.orderRepository = orderRepository;
+        this.userDirectoryService = userDirectoryService;
+        this.commentClosureRepository = commentClosureRepository;
+        this.reviewPageLoader = reviewPageLoader;
     }
 
     public List<Review> getAllReviews() {
@@ -45,25 +49,6 @@ public class ReviewService {
         return reviewRepository.findReviewByProductId(UUID.fromString(productId));
     }
 
-    // Helper method to convert a Review/Comment to a DTO
-    private ProductReviewDTO convertToProductReviewDTO(Review review) {
-        ProductReviewDTO dto = new ProductReviewDTO();
-        dto.setReviewId(review.getId());
-        dto.setFullName(review.getUser().getUsername());
-        dto.setReviewRating(review.getReviewRating());
-        dto.setUserImage(review.getUser().getUserImage());
-
-        // Find the root comment for this review
-        Comment rootComment = commentRepository.findRootCommentByReviewId(review.getId()).orElse(null);
-        if (rootComment != null) {
-            dto.setReviewComment(rootComment.getCommentContent());
-            dto.setCreatedAt(rootComment.getCommentCreatedAt());
-            dto.setUpdatedAt(rootComment.getCommentUpdatedAt());
-            dto.setCommentId(rootComment.getId());
-        }
-        return dto;
-    }
-
     // Helper method to convert a Comment to a DTO
     private ProductReviewDTO convertToProductReviewDTO(Comment comment) {
         ProductReviewDTO dto = new ProductReviewDTO();
@@ -81,10 +66,8 @@ public class ReviewService {
      * Fetches paginated top-level reviews and implements "My Review First" logic.
      */
     public Page<ProductReviewDTO> getAllReviewsByProductId(String productId, Pageable pageable, User currentUser) {
-        Page<Review> reviewPage = reviewRepository.findTopLevelReviewsByProductId(UUID.fromString(productId), pageable);
-        List<ProductReviewDTO> dtos = reviewPage.getContent().stream()
-                .map(this::convertToProductReviewDTO)
-                .collect(Collectors.toList());
+        Page<ProductReviewDTO> reviewPage = reviewPageLoader.loadProductReviews(UUID.fromString(productId), pageable);
+        List<ProductReviewDTO> dtos = new ArrayList<>(reviewPage.getContent());
 
         // "My Review First" logic
         if (currentUser != null && pageable.getPageNumber() == 0 && !dtos.isEmpty()) {
@@ -121,29 +104,21 @@ public class ReviewService {
         return new PageImpl<>(dtos, pageable, commentPage.getTotalElements());
     }
 
+    /**
+     * The reply tree under a comment, {@code level} levels deep, from one closure query: every
+     * reply is attached to its parent's DTO in creation order.
+     */
     private List<ProductReviewDTO> getChildComments(Integer parentId, int level) {
         if (level == 0) return new ArrayList<>(); // Dừng đệ quy nếu quá 5 cấp
 
-        List<ProductReviewDTO> childCommentDTOs = new ArrayList<>();
-        List<Comment> childComments = reviewRepository.findChildComments(parentId);
-
-        for (Comment childComment : childComments) {
-            ProductReviewDTO childDto = new ProductReviewDTO();
-            childDto.setCommentId(childComment.getId());
-            childDto.setReviewComment(childComment.getCommentContent());
-            childDto.setCreatedAt(childComment.getCommentCreatedAt());
-            childDto.setUpdatedAt(childComment.getCommentUpdatedAt());
-
-            // Lấy userImage và userUsername từ review của comment
-            childDto.setUserImage(childComment.getReview().getUser().getUserImage());
-            childDto.setFullName(childComment.getReview().getUser().getUsername());
-
-            // Gọi đệ quy để lấy các comment con tiếp theo
-            childDto.setChildComments(getChildComments(childComment.getId(), level - 1));
-
-            childCommentDTOs.add(childDto);
+        Map<Integer, List<ProductReviewDTO>> childrenByParent = new HashMap<>();
+        for (Object[] row : commentClosureRepository.findDescendantsWithParent(parentId, level)) {
+            Comment childComment = (Comment) row[0];
+            ProductReviewDTO childDto = convertToProductReviewDTO(childComment);
+            childDto.setChildComments(childrenByParent.computeIfAbsent(childComment.getId(), id -> new ArrayList<>()));
+            childrenByParent.computeIfAbsent((Integer) row[1], id -> new ArrayList<>()).add(childDto);
         }
-        return childCommentDTOs;
+        return childrenByParent.getOrDefault(parentId, new ArrayList<>());
     }
 
     public List<Review> getReviewsByOrderDetailId(Integer variationSingleId) {
@@ -193,7 +168,8 @@ public class ReviewService {
                 Comment newComment = new Comment();
                 newComment.setReview(savedReview);
                 newComment.setCommentContent(review.getReviewComment());
-                commentRepository.save(newComment);
+                Comment savedComment = commentRepository.save(newComment);
+                commentClosureRepository.insertRoot(savedComment.getId());
             }
             return savedReview;
         } catch (Exception e) {
@@ -209,7 +185,7 @@ public class ReviewService {
         Comment comment = commentRepository.findById(commentId)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Comment not found..."));
 
-        if (!userRepository.existsByUserUsername(username)) {
+        if (!userDirectoryService.usernameExists(username)) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found");
         }
 
@@ -228,38 +204,7 @@ public class ReviewService {
 
 
     public Page<UserReviewHistoryDTO> getReviewsByUserName(String userName, Pageable pageable) {
-        Page<Review> reviewsPage = reviewRepository.findAllByUser_Username(userName, pageable);
-
-        List<UserReviewHistoryDTO> dtoList = reviewsPage.getContent().stream()
-                .map(this::mapReviewToUserReviewHistoryDTO)
-                .collect(Collectors.toList());
-
-        return new PageImpl<>(dtoList, pageable, reviewsPage.getTotalElements());
-    }
-
-    private UserReviewHistoryDTO mapReviewToUserReviewHistoryDTO(Review review) {
-        UserReviewHistoryDTO dto = new UserReviewHistoryDTO();
-        dto.setId(review.getId());
-        dto.setReviewRating(review.getReviewRating());
-
-        if (review.getProduct() != null) {
-            dto.setProductId(review.getProduct().getProductId().toString());
-            dto.setProductName(review.getProduct().getProductName());
-            String imageUrl = review.getProduct().getProductVariations().stream()
-                    .map(Variation::getVariationImage)
-                    .filter(img -> img != null && !img.isEmpty())
-                    .findFirst()
-                    .orElse(null);
-            dto.setProductImageUrl(imageUrl);
-        }
-
-        // Correctly find the root comment associated with the review
-        commentRepository.findRootCommentByReviewId(review.getId()).ifPresent(comment -> {
-            dto.setCommentContent(comment.getCommentContent());
-            dto.setCommentCreatedAt(comment.getCommentCreatedAt());
-        });
-
-        return dto;
+        return reviewPageLoader.loadUserReviews(userName, pageable);
     }
 
     public boolean checkReviewExists(String productId, String orderId, String userId) {
@@ -277,14 +222,19 @@ public class ReviewService {
         Pageable sortedPageable = PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), sorting);
 
         Page<DashboardReviewDTO> pageResult = reviewRepository.findAllDashboardReviews(sortedPageable, search);
+        Map<Integer, Integer> depths = commentDepths(pageResult.getContent().stream()
+                .map(DashboardReviewDTO::getCommentId)
+                .filter(Objects::nonNull)
+                .toList());
 
         List<DashboardReviewDTO> processedContent = pageResult.getContent().stream()
                 .map(reviewDTO -> {
                     if (reviewDTO.getVariationImage() != null && !reviewDTO.getVariationImage().isEmpty()) {
                         reviewDTO.setVariationImage(reviewDTO.getVariationImage());
                     }
-                    boolean isMaxReply = findCommentLevel(reviewDTO.getCommentId(), 1);
-                    reviewDTO.setMaxReply(isMaxReply);
+                    // Replies stop at six levels: the root comment is level 1.
+                    int depth = depths.getOrDefault(reviewDTO.getCommentId(), 0);
+                    reviewDTO.setMaxReply(depth + 1 >= 6);
                     return reviewDTO;
                 })
                 .collect(Collectors.toList());
@@ -293,15 +243,19 @@ public class ReviewService {
     }
 
     public boolean findCommentLevel(Integer commentId, int level) {
-        if (level >= 6) {
-            return true; // Đạt level tối đa
+        // Đạt level tối đa khi số comment cha cộng level hiện tại đủ 6
+        return level + commentDepths(List.of(commentId)).getOrDefault(commentId, 0) >= 6;
+    }
+
+    private Map<Integer, Integer> commentDepths(List<Integer> commentIds) {
+        if (commentIds.isEmpty()) {
+            return Map.of();
         }
-        Integer parentCommentId = reviewRepository.findParentComments(commentId);
-        if (parentCommentId != null) {
-            return findCommentLevel(parentCommentId, level + 1); // Đệ quy lên level tiếp theo
-        } else {
-            return false; // Không có comment cha, hoặc đã đến gốc và chưa đạt level 5
+        Map<Integer, Integer> depths = new HashMap<>();
+        for (Object[] row : commentClosureRepository.findDepths(commentIds)) {
+            depths.put((Integer) row[0], (Integer) row[1]);
         }
+        return depths;
     }
 
     /**
@@ -316,12 +270,11 @@ public class ReviewService {
         List<Order> eligibleOrders = orderRepository.findCompletedOrdersByUserAndProduct(user.getUserId(), UUID.fromString(productId));
 
         // 2. Filter out orders that already have a review from this user for this product
+        Set<String> reviewedOrderIds = eligibleOrders.isEmpty()
+                ? Set.of()
+                : new HashSet<>(reviewRepository.findReviewedOrderIds(UUID.fromString(productId), user.getUserId()));
         return eligibleOrders.stream()
-                .filter(order -> !reviewRepository.existsByProduct_ProductIdAndOrder_OrderIdAndUser_UserId(
-                        UUID.fromString(productId),
-                        order.getOrderId(),
-                        user.getUserId()
-                ))
+                .filter(order -> !reviewedOrderIds.contains(order.getOrderId()))
                 .map(order -> new ReviewEligibilityDTO(order.getOrderId(), order.getOrderDate())) // Map to DTO
                 .collect(Collectors.toList());
     }
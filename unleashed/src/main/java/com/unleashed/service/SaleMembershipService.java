@@ -0,0 +1,113 @@
+package com.unleashed.service;
+
+import com.unleashed.entity.Sale;
+import com.unleashed.repo.SaleProductRepository;
+import com.unleashed.repo.SaleRepository;
+import com.unleashed.util.SnapshotHolder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * The one answer to "which sale is this product in".
+ * <p>
+ * Every sale link and the ACTIVE sales (with their type) are held in memory as one immutable
+ * snapshot, so pricing, listings, cart and the recommender look a product up in a map instead of
+ * querying {@code sale_product}. Sale writes (create, update, delete, products added or removed)
+ * and the scheduled status sync, when a sale started or ended, call {@link #invalidate()}; the
+ * snapshot is dropped when that transaction completes and the next read rebuilds it with two
+ * queries. Lookups still check the sale dates, so a sale that ended since the last rebuild is never
+ * applied.
+ */
+@Service
+public class SaleMembershipService {
+
+    private static final List<Sale> NO_SALES = List.of();
+
+    private record Snapshot(Map<UUID, List<Sale>> activeSalesByProduct, Set<UUID> productsInAnySale) {
+    }
+
+    private final SaleRepository saleRepository;
+    private final SaleProductRepository saleProductRepository;
+
+    private final SnapshotHolder<Snapshot> snapshot;
+
+    @Autowired
+    public SaleMembershipService(SaleRepository saleRepository, SaleProductRepository saleProductRepository) {
+        this.saleRepository = saleRepository;
+        this.saleProductRepository = saleProductRepository;
+        this.snapshot = new SnapshotHolder<>(this::load);
+    }
+
+    /**
+     * Marks the snapshot stale once the current transaction completes.
+     */
+    public void invalidate() {
+        snapshot.invalidate();
+    }
+
+    /**
+     * The running sales the product is in, usually none or one.
+     */
+    public List<Sale> activeSales(UUID productId) {
+        List<Sale> sales = snapshot.get().activeSalesByProduct().get(productId);
+        if (sales == null) {
+            return NO_SALES;
+        }
+        OffsetDateTime now = OffsetDateTime.now();
+        for (Sale sale : sales) {
+            if (!isRunning(sale, now)) {
+                return sales.stream().filter(s -> isRunning(s, now)).collect(Collectors.toList());
+            }
+        }
+        return sales;
+    }
+
+    public boolean isOnSale(UUID productId) {
+        return !activeSales(productId).isEmpty();
+    }
+
+    /**
+     * Products of the ACTIVE sales as of the last rebuild.
+     */
+    public Set<UUID> productsOnSale() {
+        return snapshot.get().activeSalesByProduct().keySet();
+    }
+
+    /**
+     * Whether the product is linked to any sale, whatever its status. A product belongs to at most
+     * one sale at a time.
+     */
+    public boolean isInAnySale(UUID productId) {
+        return snapshot.get().productsInAnySale().contains(productId);
+    }
+
+    public Set<UUID> productsInAnySale() {
+        return snapshot.get().productsInAnySale();
+    }
+
+    private static boolean isRunning(Sale sale, OffsetDateTime now) {
+        return !(sale.getSaleStartDate() != null && sale.getSaleStartDate().isAfter(now)
+                || sale.getSaleEndDate() != null && sale.getSaleEndDate().isBefore(now));
+    }
+
+    private Snapshot load() {
+        Map<Integer, Sale> activeSales = saleRepository.findActiveSalesWithType().stream()
+                .collect(Collectors.toMap(Sale::getId, sale -> sale));
+        Map<UUID, List<Sale>> activeSalesByProduct = new HashMap<>();
+        Set<UUID> productsInAnySale = new HashSet<>();
+        for (Object[] row : saleProductRepository.findAllMemberships()) {
+            UUID productId = (UUID) row[1];
+            productsInAnySale.add(productId);
+            Sale sale = activeSales.get((Integer) row[0]);
+            if (sale != null) {
+                activeSalesByProduct.computeIfAbsent(productId, id -> new ArrayList<>()).add(sale);
+            }
+        }
+        activeSalesByProduct.replaceAll((productId, sales) -> List.copyOf(sales));
+        return new Snapshot(Map.copyOf(activeSalesByProduct), Set.copyOf(productsInAnySale));
+    }
+}
@@ -8,6 +8,8 @@ import com.unleashed.repo.*;
 import com.unleashed.repo.specification.ProductSpecification;
 import com.unleashed.repo.specification.SaleSpecification;
 import jakarta.persistence.EntityNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
@@ -27,90 +29,65 @@ import java.util.stream.Collectors;
 @Service
 public class SaleService {
 
+    private static final Logger logger = LoggerFactory.getLogger(SaleService.class);
+
     private final SaleRepository saleRepository;
     private final ProductRepository productRepository;
     private final SaleProductRepository saleProductRepository;
     private final SaleStatusRepository saleStatusRepository;
     private final SaleTypeRepository saleTypeRepository;
+    private final SaleMembershipService saleMembershipService;
 
-    public SaleService(SaleRepository saleRepository, ProductRepository productRepository, SaleProductRepository saleProductRepository, SaleStatusRepository saleStatusRepository, SaleTypeRepository saleTypeRepository) {
+    public SaleService(SaleRepository saleRepository, ProductRepository productRepository, SaleProductRepository saleProductRepository, SaleStatusRepository saleStatusRepository, SaleTypeRepository saleTypeRepository, SaleMembershipService saleMembershipService) {
         this.saleRepository = saleRepository;
         this.productRepository = productRepository;
         this.saleProductRepository = saleProductRepository;
         this.saleStatusRepository = saleStatusRepository;
         this.saleTypeRepository = saleTypeRepository;
+        this.saleMembershipService = saleMembershipService;
     }
 
     /**
-     * This is the main "self-healing" method that the scheduler will run.
-     * It finds and updates the status of sales that need to be activated or expired.
-     * It is transactional, so if any part fails, all changes are rolled back.
+     * Copies the date-derived status of every sale into the stored column with one UPDATE. Reads
+     * never depend on it ({@link Sale#getSaleStatus()} is computed), so this only keeps the table
+     * honest for reports and refreshes the sale membership index when a sale started or ended.
      */
     @Transactional
     public void performScheduledStatusUpdates() {
-        updateSalesToActive();
-        updateSalesToExpired();
+        if (saleRepository.syncStoredStatuses() > 0) {
+            saleMembershipService.invalidate();
+        }
     }
 
-
-
-
+    /**
+     * Removes out-of-stock products from their sales with one DELETE. Runs in the background so
+     * the sale pages stay pure reads; until it runs they simply hide those products.
+     */
     @Transactional
+    public void removeOutOfStockProducts() {
+        int removed = saleProductRepository.deleteOutOfStockProducts();
+        if (removed > 0) {
+            logger.info("Removed {} out-of-stock products from their sales.", removed);
+            saleMembershipService.invalidate();
+        }
+    }
+
+    @Transactional(readOnly = true)
     public List<Sale> findAll() {
-        List<Sale> saleList = saleRepository.findAllByOrderByIdDesc();
-        SaleStatus expiredeStaus = saleStatusRepository.getReferenceById(3);
-        SaleStatus inactiveStatus = saleStatusRepository.getReferenceById(1);
-        OffsetDateTime nowDate = OffsetDateTime.now();
-        saleList.forEach(sale -> {
-            if (sale.getSaleEndDate().isBefore(nowDate)) {
-                sale.setSaleStatus(expiredeStaus);
-            } else if (sale.getSaleStatus().getId().equals(expiredeStaus.getId())) {
-                sale.setSaleStatus(inactiveStatus);
-                saleRepository.save(sale);
-            }
-        });
-        saleRepository.saveAll(saleList);
-        return saleList;
+        return saleRepository.findAllByOrderByIdDesc();
     }
 
     @Transactional(readOnly = true)
     public Page<Sale> getSales(String search, String statusFilter, Pageable pageable) {
-        // First, update all sale statuses based on their end dates
-        updateExpiredSaleStatuses();
-
         Specification<Sale> spec = new SaleSpecification(search, statusFilter);
         return saleRepository.findAll(spec, pageable);
     }
 
-    @Transactional // Make this transactional as it can now perform deletions
+    @Transactional(readOnly = true)
     public Page<ProductSaleDTO> getProductsInSale(int saleId, String search, Pageable pageable) {
-        // --- SELF-HEALING LOGIC ---
-        // 1. Get all products currently associated with the sale
-        List<SaleProduct> currentSaleProducts = saleProductRepository.findByIdSaleId(saleId);
-        List<SaleProduct> productsToRemove = new ArrayList<>();
-        List<String> validProductIds = new ArrayList<>();
-
-        // 2. Check stock for each product
-        for (SaleProduct sp : currentSaleProducts) {
-            Integer totalStock = productRepository.findTotalStockForProduct(sp.getId().getProductId());
-            if (totalStock == null || totalStock <= 0) {
-                // If stock is zero or null, mark it for removal
-                productsToRemove.add(sp);
-            } else {
-                // Otherwise, it's valid to be shown
-                validProductIds.add(sp.getId().getProductId().toString());
-            }
-        }
-
-        // 3. Perform the removal from the sale
-        if (!productsToRemove.isEmpty()) {
-            saleProductRepository.deleteAll(productsToRemove);
-        }
-        // --- END OF SELF-HEALING LOGIC ---
-
-        // 4. Build the final query based only on the valid, in-stock products
         Specification<Product> spec = Specification
-                .where(ProductSpecification.inProductIds(validProductIds))
+                .where(ProductSpecification.isInSale(saleId))
+                .and(ProductSpecification.hasStock())
                 .and(ProductSpecification.hasNameLike(search));
 
         Page<Product> productPage = productRepository.findAll(spec, pageable);
@@ -128,37 +105,6 @@ public class SaleService {
         return productPage.map(ProductSaleDTO::fromEntity);
     }
 
-    // A helper method to keep status logic reusable
-    private void updateExpiredSaleStatuses() {
-        List<Sale> allSales = saleRepository.findAll();
-        SaleStatus expiredStatus = saleStatusRepository.findById(3).orElse(null); // Assuming 3 is EXPIRED
-        SaleStatus activeStatus = saleStatusRepository.findById(2).orElse(null); // Assuming 2 is ACTIVE
-        OffsetDateTime now = OffsetDateTime.now();
-
-        List<Sale> salesToUpdate = new ArrayList<>();
-        for (Sale sale : allSales) {
-            boolean needsUpdate = false;
-            // If the sale is expired but its status is not 'EXPIRED'
-            if (sale.getSaleEndDate().isBefore(now) && !sale.getSaleStatus().getId().equals(expiredStatus.getId())) {
-                sale.setSaleStatus(expiredStatus);
-                needsUpdate = true;
-            }
-            // If the sale is NOT expired but its status is 'EXPIRED' (e.g., date was edited)
-            if (sale.getSaleEndDate().isAfter(now) && sale.getSaleStartDate().isBefore(now) && sale.getSaleStatus().getId().equals(expiredStatus.getId())) {
-                sale.setSaleStatus(activeStatus);
-                needsUpdate = true;
-            }
-
-            if (needsUpdate) {
-                salesToUpdate.add(sale);
-            }
-        }
-        if (!salesToUpdate.isEmpty()) {
-            saleRepository.saveAll(salesToUpdate);
-        }
-    }
-
-
     /**
      * Creates a new Sale, automatically setting its initial status based on its start and end dates.
      * A sale is 'ACTIVE' if its start date is in the past or present, and its end date is in the future or present.
@@ -184,15 +130,16 @@ public class SaleService {
         // Encapsulate the status logic in a private helper method for clarity
         setInitialSaleStatus(sale, now);
 
+        saleMembershipService.invalidate();
         return saleRepository.save(sale);
     }
 
     /**
-     * A private helper method to determine and set the correct initial status of a sale.
-     * This centralizes the business logic for new sales.
+     * A private helper method to determine and set the correct status of a sale from its dates,
+     * matching {@link Sale#STATUS_FORMULA}. Used when a sale is created or its dates change.
      *
      * @param sale The sale entity to be updated.
-     * @param now The consistent timestamp for the creation event.
+     * @param now The consistent timestamp for the creation or update event.
      */
     private void setInitialSaleStatus(Sale sale, OffsetDateTime now) {
         SaleStatus activeStatus = saleStatusRepository.findById(2)
@@ -201,14 +148,21 @@ public class SaleService {
         SaleStatus inactiveStatus = saleStatusRepository.findById(1)
                 .orElseThrow(() -> new EntityNotFoundException("Critical error: INACTIVE status (ID 1) not found in database."));
 
+        SaleStatus expiredStatus = saleStatusRepository.findById(3)
+                .orElseThrow(() -> new EntityNotFoundException("Critical error: EXPIRED status (ID 3) not found in database."));
+
         boolean isAlreadyStarted = !sale.getSaleStartDate().isAfter(now);
         boolean isNotYetEnded = !sale.getSaleEndDate().isBefore(now);
 
-        if (isAlreadyStarted && isNotYetEnded) {
+        if (!isNotYetEnded) {
+            sale.setSaleStatus(expiredStatus);
+        } else if (isAlreadyStarted) {
             sale.setSaleStatus(activeStatus);
         } else {
             sale.setSaleStatus(inactiveStatus);
         }
+        // saleStatus itself is derived on read; this is the copy stored in the row.
+        sale.setStoredSaleStatusId(sale.getSaleStatus().getId());
     }
 
     @Transactional
@@ -229,8 +183,10 @@ public class SaleService {
         existingSale.setSaleStartDate(saleDataFromRequest.getSaleStartDate());
         existingSale.setSaleEndDate(saleDataFromRequest.getSaleEndDate());
         existingSale.setSaleUpdatedAt(OffsetDateTime.now());
+        setInitialSaleStatus(existingSale, existingSale.getSaleUpdatedAt());
 
         Sale updatedSale = saleRepository.save(existingSale);
+        saleMembershipService.invalidate();
 
         // Using a ResponseDTO is good, but for simplicity, let's return the updated entity
         return ResponseEntity.ok(updatedSale);
@@ -249,13 +205,14 @@ public class SaleService {
         }
 
         saleRepository.delete(sale);
+        saleMembershipService.invalidate();
 
         responseDTO.setMessage("Sale " + saleId + " deleted successfully.");
         responseDTO.setStatusCode(HttpStatus.OK.value());
         return ResponseEntity.ok(responseDTO);
     }
 
-    @Transactional
+    @Transactional(readOnly = true)
     public ResponseEntity<?> findSaleById(Integer saleId) {
         ResponseDTO responseDTO = new ResponseDTO();
         Sale sale = saleRepository.findById(saleId).orElse(null);
@@ -289,6 +246,7 @@ public class SaleService {
 
         if (!saleProductsToSave.isEmpty()) {
             saleProductRepository.saveAll(saleProductsToSave);
+            saleMembershipService.invalidate();
         }
 
         return ResponseEntity.ok().body("Products added successfully");
@@ -310,6 +268,7 @@ public class SaleService {
 
             if (existingSaleProductOpt.isPresent()) {
                 saleProductRepository.delete(existingSaleProductOpt.get());
+                saleMembershipService.invalidate();
                 responseDTO.setMessage("Product removed successfully from sale.");
                 responseDTO.setStatusCode(200);
             } else {
@@ -342,61 +301,8 @@ public class SaleService {
         }
     }
 
-    @Transactional
+    @Transactional(readOnly = true)
     public ResponseEntity<?> getListProductsInSales() {
-        return ResponseEntity.status(HttpStatus.OK).body(saleProductRepository.getAllProductsInSales());
-    }
-
-
-    /**
-     * Finds INACTIVE sales that should now be ACTIVE and updates them.
-     */
-    private void updateSalesToActive() {
-        // Assuming your status IDs are: 1=INACTIVE, 2=ACTIVE
-        SaleStatus inactiveStatus = saleStatusRepository.findById(1).orElse(null);
-        SaleStatus activeStatus = saleStatusRepository.findById(2).orElse(null);
-
-        if (inactiveStatus == null || activeStatus == null) {
-            return;
-        }
-
-        OffsetDateTime now = OffsetDateTime.now();
-        List<Sale> salesToActivate = saleRepository.findBySaleStatusAndSaleStartDateBeforeAndSaleEndDateAfter(inactiveStatus, now, now);
-
-        if (!salesToActivate.isEmpty()) {
-
-            for (Sale sale : salesToActivate) {
-                sale.setSaleStatus(activeStatus);
-            }
-            saleRepository.saveAll(salesToActivate);
-        }
+        return ResponseEntity.status(HttpStatus.OK).body(saleMembershipService.productsInAnySale());
     }
-
-    /**
-     * Finds sales that have passed their end date and marks them as EXPIRED.
-     */
-    private void updateSalesToExpired() {
-        // Assuming your status ID for EXPIRED is 3
-        SaleStatus expiredStatus = saleStatusRepository.findById(3).orElse(null);
-        if (expiredStatus == null) {
-            return;
-        }
-
-        OffsetDateTime now = OffsetDateTime.now();
-        List<Sale> salesToExpire = saleRepository.findAllBySaleEndDateBeforeAndSaleStatusIdNot(now, expiredStatus.getId());
-
-        if (!salesToExpire.isEmpty()) {
-
-            for (Sale sale : salesToExpire) {
-                sale.setSaleStatus(expiredStatus);
-            }
-            saleRepository.saveAll(salesToExpire);
-        }
-    }
-
-
-
-
-
-
-}
\ No newline at end of file
+}
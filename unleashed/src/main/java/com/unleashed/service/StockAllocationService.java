@@ -0,0 +1,101 @@
+package com.unleashed.service;
+
+import com.unleashed.config.StockAllocationProperties;
+import com.unleashed.repo.StockVariationRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides which stock locations serve an order line.
+ * <p>
+ * Locations are taken tier by tier in {@link StockAllocationProperties} priority order. Within a
+ * tier, a line that fits in a single location goes to one of the locations that can hold it,
+ * picked at random weighted by what they hold, so concurrent orders for the same variation land
+ * on different rows instead of all queueing on the first one. A line that fits nowhere whole is
+ * split, largest holdings first, and only moves to the next tier once the current one is empty.
+ * <p>
+ * The plan is computed from a plain read; {@link StockLedgerService#take} confirms each line
+ * against the row itself, and the caller re-plans the remainder when a location ran dry meanwhile.
+ */
+@Service
+public class StockAllocationService {
+
+    public record AllocationLine(int stockId, int variationId, int quantity) {
+    }
+
+    private record Location(int stockId, int available, int priority) {
+    }
+
+    private final StockVariationRepository stockVariationRepository;
+    private final StockAllocationProperties properties;
+
+    @Autowired
+    public StockAllocationService(StockVariationRepository stockVariationRepository,
+                                  StockAllocationProperties properties) {
+        this.stockVariationRepository = stockVariationRepository;
+        this.properties = properties;
+    }
+
+    public int getMaxAttempts() {
+        return properties.maxAttempts();
+    }
+
+    /**
+     * Plans {@code quantity} units of a variation, ignoring {@code excludedStocks}. The plan holds
+     * less than {@code quantity} when the locations do not have enough between them.
+     */
+    public List<AllocationLine> plan(int variationId, int quantity, Set<Integer> excludedStocks) {
+        TreeMap<Integer, List<Location>> tiers = new TreeMap<>();
+        for (Object[] row : stockVariationRepository.findAvailableLocations(variationId)) {
+            int stockId = (Integer) row[0];
+            if (!excludedStocks.contains(stockId)) {
+                int priority = properties.priorityOf(stockId);
+                tiers.computeIfAbsent(priority, p -> new ArrayList<>()).add(new Location(stockId, (Integer) row[1], priority));
+            }
+        }
+
+        List<AllocationLine> plan = new ArrayList<>();
+        int remaining = quantity;
+        for (List<Location> tier : tiers.values()) {
+            if (remaining == 0) {
+                break;
+            }
+            Location whole = pickWhole(tier, remaining);
+            if (whole != null) {
+                plan.add(new AllocationLine(whole.stockId(), variationId, remaining));
+                remaining = 0;
+                break;
+            }
+            tier.sort(Comparator.comparingInt(Location::available).reversed());
+            for (Location location : tier) {
+                int taken = Math.min(location.available(), remaining);
+                plan.add(new AllocationLine(location.stockId(), variationId, taken));
+                remaining -= taken;
+                if (remaining == 0) {
+                    break;
+                }
+            }
+        }
+        return plan;
+    }
+
+    // Random pick among the locations that can serve the whole line, weighted by their holdings.
+    private Location pickWhole(List<Location> tier, int quantity) {
+        List<Location> fitting = tier.stream().filter(location -> location.available() >= quantity).toList();
+        if (fitting.size() <= 1) {
+            return fitting.isEmpty() ? null : fitting.get(0);
+        }
+        long total = fitting.stream().mapToLong(Location::available).sum();
+        long ticket = ThreadLocalRandom.current().nextLong(total);
+        for (Location location : fitting) {
+            ticket -= location.available();
+            if (ticket < 0) {
+                return location;
+            }
+        }
+        return fitting.get(fitting.size() - 1);
+    }
+}
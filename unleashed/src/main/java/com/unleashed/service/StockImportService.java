@@ -0,0 +1,323 @@
+package com.unleashed.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.unleashed.entity.User;
+import com.unleashed.repo.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Bulk stock receipt from a CSV or JSON-lines stream.
+ * <p>
+ * The file is read line by line and handled in chunks of {@link #CHUNK_SIZE} rows. Each chunk
+ * resolves its variations, stocks and providers with one {@code IN} query each and is written
+ * through {@link StockLedgerService#appendBatch} (JDBC batch inserts into the ledger plus a batch
+ * of MERGEs on {@code stock_variation}) in its own transaction, so a large receipt never holds one
+ * huge transaction and a bad chunk does not undo the ones before it. Product statuses are
+ * recomputed once per touched product at the end. Invalid rows are skipped and reported with
+ * their line number.
+ * <p>
+ * CSV needs a header with {@code variationId} and {@code quantity}, and optionally
+ * {@code stockId} and {@code providerId} (snake_case also accepted). JSON lines use the same
+ * field names. Missing stock / provider fall back to the ids given with the upload.
+ */
+@Service
+public class StockImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StockImportService.class);
+
+    // SQL Server accepts at most 2100 parameters per statement.
+    private static final int CHUNK_SIZE = 1000;
+    private static final int MAX_REPORTED_ERRORS = 500;
+
+    public enum Format {
+        CSV,
+        JSONL
+    }
+
+    private record ImportRow(long line, Integer variationId, Integer quantity, Integer stockId, Integer providerId) {
+    }
+
+    private record VariationInfo(UUID productId, BigDecimal price) {
+    }
+
+    private static final class Report {
+        private long rowsRead;
+        private long rowsImported;
+        private long rowsFailed;
+        private final List<Map<String, Object>> errors = new ArrayList<>();
+
+        private void fail(long line, String message) {
+            rowsFailed++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                Map<String, Object> error = new HashMap<>();
+                error.put("line", line);
+                error.put("message", message);
+                errors.add(error);
+            }
+        }
+    }
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final StockLedgerService stockLedgerService;
+    private final UserRepository userRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public StockImportService(NamedParameterJdbcTemplate jdbcTemplate,
+                              StockLedgerService stockLedgerService,
+                              UserRepository userRepository,
+                              ObjectMapper objectMapper,
+                              PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.stockLedgerService = stockLedgerService;
+        this.userRepository = userRepository;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public static Format parseFormat(String contentType, String format) {
+        String value = format != null ? format : contentType;
+        if (value == null) {
+            return Format.CSV;
+        }
+        value = value.toLowerCase(Locale.ROOT);
+        if (value.contains("jsonl") || value.contains("ndjson") || value.contains("json")) {
+            return Format.JSONL;
+        }
+        if (value.contains("csv") || value.contains("text/plain")) {
+            return Format.CSV;
+        }
+        throw new IllegalArgumentException("Unsupported import format: " + value);
+    }
+
+    public Map<String, Object> importStock(InputStream input, Format format, Integer defaultStockId,
+                                           Integer defaultProviderId, String username) throws IOException {
+        User employee = userRepository.findByUserUsername(username)
+                .orElseThrow(() -> new IllegalArgumentException("User not found: " + username));
+
+        long start = System.nanoTime();
+        Report report = new Report();
+        Set<UUID> touchedProducts = new HashSet<>();
+        Map<Integer, Boolean> knownStocks = new HashMap<>();
+        Map<Integer, Boolean> knownProviders = new HashMap<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            Map<String, Integer> header = null;
+            List<ImportRow> chunk = new ArrayList<>(CHUNK_SIZE);
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (format == Format.CSV && header == null) {
+                    header = parseHeader(line);
+                    continue;
+                }
+                report.rowsRead++;
+                try {
+                    ImportRow row = format == Format.CSV
+                            ? parseCsv(lineNumber, line, header, defaultStockId, defaultProviderId)
+                            : parseJson(lineNumber, line, defaultStockId, defaultProviderId);
+                    chunk.add(row);
+                } catch (IllegalArgumentException e) {
+                    report.fail(lineNumber, e.getMessage());
+                }
+                if (chunk.size() == CHUNK_SIZE) {
+                    writeChunk(chunk, employee.getUserId(), knownStocks, knownProviders, touchedProducts, report);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                writeChunk(chunk, employee.getUserId(), knownStocks, knownProviders, touchedProducts, report);
+            }
+        }
+
+        int productsUpdated = transactionTemplate.execute(status -> refreshProductStatuses(touchedProducts));
+
+        long elapsedMs = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        logger.info("Stock import by {}: {} rows read, {} imported, {} failed in {} ms.",
+                username, report.rowsRead, report.rowsImported, report.rowsFailed, elapsedMs);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("rowsRead", report.rowsRead);
+        response.put("rowsImported", report.rowsImported);
+        response.put("rowsFailed", report.rowsFailed);
+        response.put("productsUpdated", productsUpdated);
+        response.put("elapsedMs", elapsedMs);
+        response.put("rowsPerSecond", report.rowsRead * 1000 / elapsedMs);
+        response.put("errors", report.errors);
+        response.put("errorsTruncated", report.rowsFailed > report.errors.size());
+        return response;
+    }
+
+    private Map<String, Integer> parseHeader(String line) {
+        Map<String, Integer> header = new HashMap<>();
+        String[] columns = line.split(",", -1);
+        for (int i = 0; i < columns.length; i++) {
+            header.put(columns[i].trim().replace("\"", "").replace("_", "").toLowerCase(Locale.ROOT), i);
+        }
+        if (!header.containsKey("variationid") || !header.containsKey("quantity")) {
+            throw new IllegalArgumentException("CSV header must contain variationId and quantity columns.");
+        }
+        return header;
+    }
+
+    private ImportRow parseCsv(long line, String text, Map<String, Integer> header,
+                               Integer defaultStockId, Integer defaultProviderId) {
+        String[] values = text.split(",", -1);
+        return toRow(line,
+                csvInt(values, header.get("variationid")),
+                csvInt(values, header.get("quantity")),
+                Optional.ofNullable(csvInt(values, header.get("stockid"))).orElse(defaultStockId),
+                Optional.ofNullable(csvInt(values, header.get("providerid"))).orElse(defaultProviderId));
+    }
+
+    private Integer csvInt(String[] values, Integer index) {
+        if (index == null || index >= values.length) {
+            return null;
+        }
+        String value = values[index].trim().replace("\"", "");
+        if (value.isEmpty()) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + value);
+        }
+    }
+
+    private ImportRow parseJson(long line, String text, Integer defaultStockId, Integer defaultProviderId) {
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(text);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed JSON: " + e.getOriginalMessage());
+        }
+        return toRow(line,
+                jsonInt(node, "variationId", "variation_id"),
+                jsonInt(node, "quantity", "quantity"),
+                Optional.ofNullable(jsonInt(node, "stockId", "stock_id")).orElse(defaultStockId),
+                Optional.ofNullable(jsonInt(node, "providerId", "provider_id")).orElse(defaultProviderId));
+    }
+
+    private Integer jsonInt(JsonNode node, String name, String alternative) {
+        JsonNode value = node.has(name) ? node.get(name) : node.get(alternative);
+        if (value == null || value.isNull()) {
+            return null;
+        }
+        if (!value.canConvertToInt()) {
+            throw new IllegalArgumentException("Not a number: " + value);
+        }
+        return value.asInt();
+    }
+
+    private ImportRow toRow(long line, Integer variationId, Integer quantity, Integer stockId, Integer providerId) {
+        if (variationId == null) {
+            throw new IllegalArgumentException("variationId is required.");
+        }
+        if (quantity == null || quantity <= 0) {
+            throw new IllegalArgumentException("quantity must be a positive number.");
+        }
+        if (stockId == null) {
+            throw new IllegalArgumentException("stockId is required.");
+        }
+        return new ImportRow(line, variationId, quantity, stockId, providerId);
+    }
+
+    private void writeChunk(List<ImportRow> chunk, UUID employeeId, Map<Integer, Boolean> knownStocks,
+                            Map<Integer, Boolean> knownProviders, Set<UUID> touchedProducts, Report report) {
+        Map<Integer, VariationInfo> variations = findVariations(chunk.stream().map(ImportRow::variationId).distinct().toList());
+        resolveIds("SELECT stock_id FROM dbo.stock WHERE stock_id IN (:ids)",
+                chunk.stream().map(ImportRow::stockId).toList(), knownStocks);
+        resolveIds("SELECT provider_id FROM dbo.provider WHERE provider_id IN (:ids)",
+                chunk.stream().map(ImportRow::providerId).filter(Objects::nonNull).toList(), knownProviders);
+
+        List<StockLedgerService.LedgerRow> rows = new ArrayList<>(chunk.size());
+        List<ImportRow> accepted = new ArrayList<>(chunk.size());
+        Set<UUID> products = new HashSet<>();
+        for (ImportRow row : chunk) {
+            VariationInfo variation = variations.get(row.variationId());
+            if (variation == null) {
+                report.fail(row.line(), "Product variation not found with ID: " + row.variationId());
+            } else if (!knownStocks.get(row.stockId())) {
+                report.fail(row.line(), "Stock not found with ID: " + row.stockId());
+            } else if (row.providerId() != null && !knownProviders.get(row.providerId())) {
+                report.fail(row.line(), "Provider not found with ID: " + row.providerId());
+            } else {
+                accepted.add(row);
+                products.add(variation.productId());
+                rows.add(new StockLedgerService.LedgerRow(row.stockId(), row.variationId(), row.providerId(), employeeId,
+                        StockLedgerService.TRANSACTION_TYPE_IN, row.quantity(), variation.price()));
+            }
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> stockLedgerService.appendBatch(rows));
+            report.rowsImported += rows.size();
+            touchedProducts.addAll(products);
+        } catch (RuntimeException e) {
+            logger.error("Stock import chunk starting at line {} failed.", chunk.get(0).line(), e);
+            accepted.forEach(row -> report.fail(row.line(), "Chunk failed: " + e.getMessage()));
+        }
+    }
+
+    private Map<Integer, VariationInfo> findVariations(List<Integer> ids) {
+        Map<Integer, VariationInfo> variations = new HashMap<>();
+        jdbcTemplate.query("SELECT variation_id, product_id, variation_price FROM dbo.variation WHERE variation_id IN (:ids)",
+                new MapSqlParameterSource("ids", ids),
+                rs -> {
+                    variations.put(rs.getInt(1), new VariationInfo(rs.getObject(2, UUID.class), rs.getBigDecimal(3)));
+                });
+        return variations;
+    }
+
+    // Looks up the ids not seen before and remembers whether they exist, for the rest of the import.
+    private void resolveIds(String sql, List<Integer> ids, Map<Integer, Boolean> known) {
+        List<Integer> unknown = ids.stream().distinct().filter(id -> !known.containsKey(id)).toList();
+        if (unknown.isEmpty()) {
+            return;
+        }
+        unknown.forEach(id -> known.put(id, false));
+        jdbcTemplate.queryForList(sql, new MapSqlParameterSource("ids", unknown), Integer.class)
+                .forEach(id -> known.put(id, true));
+    }
+
+    /**
+     * Same rule as a single receipt: IMPORTING (2) becomes NEW (5), OUT_OF_STOCK (1) becomes AVAILABLE (3).
+     */
+    private int refreshProductStatuses(Set<UUID> productIds) {
+        List<UUID> ids = new ArrayList<>(productIds);
+        int updated = 0;
+        for (int start = 0; start < ids.size(); start += CHUNK_SIZE) {
+            updated += jdbcTemplate.update("""
+                            UPDATE dbo.product
+                            SET product_status_id = CASE product_status_id WHEN 2 THEN 5 ELSE 3 END,
+                                product_updated_at = SYSDATETIMEOFFSET()
+                            WHERE product_id IN (:ids) AND product_status_id IN (1, 2)
+                            """,
+                    new MapSqlParameterSource("ids", ids.subList(start, Math.min(start + CHUNK_SIZE, ids.size()))));
+        }
+        return updated;
+    }
+}
@@ -0,0 +1,255 @@
+package com.unleashed.service;
+
+import com.unleashed.config.StockLedgerProperties;
+import com.unleashed.entity.*;
+import com.unleashed.repo.StockSnapshotRepository;
+import com.unleashed.repo.StockVariationRepository;
+import com.unleashed.repo.TransactionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.*;
+
+/**
+ * The {@code transaction} table is the stock ledger and the source of truth; {@code stock_variation}
+ * is its projection. Every stock movement goes through {@link #append}, which writes the ledger
+ * rows and adds their net effect to the projection in the same transaction, with an atomic
+ * {@code quantity + delta} per (stock, variation) taken in a fixed order. Nothing else writes
+ * quantities (deleting a variation only flags it), so the two cannot drift apart through the
+ * application.
+ * <p>
+ * A daily job folds the ledger into {@code stock_snapshot} rows, which lets {@link #getVariationStockAsOf}
+ * and {@link #getStockAsOf} answer from the last snapshot plus a short ledger tail. {@link #reconcile}
+ * compares the projection with the ledger in one query and, if asked, repairs every drifted row
+ * with one statement; it is meant for the nightly run, when little else writes stock.
+ */
+@Service
+public class StockLedgerService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StockLedgerService.class);
+
+    public static final int TRANSACTION_TYPE_IN = 1;
+    public static final int TRANSACTION_TYPE_OUT = 2;
+
+    /**
+     * One line to append to the ledger. {@code type} decides the sign of {@code quantity}.
+     */
+    public record StockMovement(Stock stock, Variation variation, TransactionType type, int quantity,
+                                User inchargeEmployee, Provider provider) {
+    }
+
+    /**
+     * A ledger line by ids only, for bulk writers that never load the entities.
+     */
+    public record LedgerRow(int stockId, int variationId, Integer providerId, UUID inchargeEmployeeId,
+                            int transactionTypeId, int quantity, BigDecimal productPrice) {
+    }
+
+    private static final String INSERT_TRANSACTION_SQL = """
+            INSERT INTO dbo.[transaction] (stock_id, variation_id, provider_id, incharge_employee_id, transaction_type_id,
+                                           transaction_quantity, transaction_date, transaction_product_price)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private static final String APPLY_DELTA_SQL = """
+            MERGE dbo.stock_variation WITH (HOLDLOCK) AS t
+            USING (SELECT ? AS stock_id, ? AS variation_id, ? AS delta) AS s
+                ON t.stock_id = s.stock_id AND t.variation_id = s.variation_id
+            WHEN MATCHED THEN UPDATE SET stock_quantity = t.stock_quantity + s.delta
+            WHEN NOT MATCHED THEN INSERT (stock_id, variation_id, stock_quantity) VALUES (s.stock_id, s.variation_id, s.delta);
+            """;
+
+    private record Key(int stockId, int variationId) implements Comparable<Key> {
+        @Override
+        public int compareTo(Key other) {
+            int byStock = Integer.compare(stockId, other.stockId);
+            return byStock != 0 ? byStock : Integer.compare(variationId, other.variationId);
+        }
+    }
+
+    private final TransactionRepository transactionRepository;
+    private final StockVariationRepository stockVariationRepository;
+    private final StockSnapshotRepository stockSnapshotRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final StockLedgerProperties properties;
+
+    @Autowired
+    public StockLedgerService(TransactionRepository transactionRepository,
+                              StockVariationRepository stockVariationRepository,
+                              StockSnapshotRepository stockSnapshotRepository,
+                              JdbcTemplate jdbcTemplate,
+                              StockLedgerProperties properties) {
+        this.transactionRepository = transactionRepository;
+        this.stockVariationRepository = stockVariationRepository;
+        this.stockSnapshotRepository = stockSnapshotRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.properties = properties;
+    }
+
+    @Transactional
+    public List<Transaction> append(List<StockMovement> movements) {
+        List<Transaction> transactions = new ArrayList<>(movements.size());
+        Map<Key, Integer> deltas = new TreeMap<>();
+        for (StockMovement movement : movements) {
+            Transaction transaction = new Transaction();
+            transaction.setStock(movement.stock());
+            transaction.setVariation(movement.variation());
+            transaction.setProvider(movement.provider());
+            transaction.setInchargeEmployee(movement.inchargeEmployee());
+            transaction.setTransactionType(movement.type());
+            transaction.setTransactionQuantity(movement.quantity());
+            transactions.add(transaction);
+
+            int signed = movement.type().getId() == TRANSACTION_TYPE_IN ? movement.quantity() : -movement.quantity();
+            deltas.merge(new Key(movement.stock().getId(), movement.variation().getId()), signed, Integer::sum);
+        }
+        transactionRepository.saveAll(transactions);
+
+        // Sorted keys: concurrent writers lock stock rows in the same order and cannot deadlock on each other.
+        deltas.forEach((key, delta) -> {
+            if (delta != 0) {
+                stockVariationRepository.applyDelta(key.stockId(), key.variationId(), delta);
+            }
+        });
+        return transactions;
+    }
+
+    /**
+     * Takes an OUT movement from its location only if the location still holds the quantity, and
+     * records it in the ledger when it does. Returns false, changing nothing, otherwise.
+     */
+    @Transactional
+    public boolean take(StockMovement movement) {
+        if (movement.type().getId() != TRANSACTION_TYPE_OUT) {
+            throw new IllegalArgumentException("Only OUT movements can be taken.");
+        }
+        int updated = stockVariationRepository.takeIfAvailable(
+                movement.stock().getId(), movement.variation().getId(), movement.quantity());
+        if (updated == 0) {
+            return false;
+        }
+        Transaction transaction = new Transaction();
+        transaction.setStock(movement.stock());
+        transaction.setVariation(movement.variation());
+        transaction.setProvider(movement.provider());
+        transaction.setInchargeEmployee(movement.inchargeEmployee());
+        transaction.setTransactionType(movement.type());
+        transaction.setTransactionQuantity(movement.quantity());
+        transactionRepository.save(transaction);
+        return true;
+    }
+
+    /**
+     * Same contract as {@link #append}, written with two JDBC batches (ledger inserts, then one
+     * MERGE per touched (stock, variation)) instead of an entity per line. Used by the bulk import.
+     */
+    @Transactional
+    public void appendBatch(List<LedgerRow> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        OffsetDateTime now = OffsetDateTime.now();
+        jdbcTemplate.batchUpdate(INSERT_TRANSACTION_SQL, rows, rows.size(), (ps, row) -> {
+            ps.setInt(1, row.stockId());
+            ps.setInt(2, row.variationId());
+            ps.setObject(3, row.providerId());
+            ps.setObject(4, row.inchargeEmployeeId());
+            ps.setInt(5, row.transactionTypeId());
+            ps.setInt(6, row.quantity());
+            ps.setObject(7, now);
+            ps.setBigDecimal(8, row.productPrice());
+        });
+
+        Map<Key, Integer> deltas = new TreeMap<>();
+        for (LedgerRow row : rows) {
+            int signed = row.transactionTypeId() == TRANSACTION_TYPE_IN ? row.quantity() : -row.quantity();
+            deltas.merge(new Key(row.stockId(), row.variationId()), signed, Integer::sum);
+        }
+        List<Map.Entry<Key, Integer>> changes = deltas.entrySet().stream().filter(e -> e.getValue() != 0).toList();
+        jdbcTemplate.batchUpdate(APPLY_DELTA_SQL, changes, changes.size(), (ps, change) -> {
+            ps.setInt(1, change.getKey().stockId());
+            ps.setInt(2, change.getKey().variationId());
+            ps.setInt(3, change.getValue());
+        });
+    }
+
+    /**
+     * Stock of a variation as of {@code at}, in one stock or (with {@code stockId} null) all of them.
+     */
+    @Transactional(readOnly = true)
+    public int getVariationStockAsOf(int variationId, Integer stockId, OffsetDateTime at) {
+        Integer balance = stockSnapshotRepository.findVariationBalanceAsOf(baseSnapshotFor(at), at, variationId, stockId);
+        return balance != null ? balance : 0;
+    }
+
+    /**
+     * Stock of every variation held in one stock as of {@code at}, keyed by variation id.
+     */
+    @Transactional(readOnly = true)
+    public Map<Integer, Integer> getStockAsOf(int stockId, OffsetDateTime at) {
+        Map<Integer, Integer> balances = new LinkedHashMap<>();
+        for (Object[] row : stockSnapshotRepository.findStockBalancesAsOf(baseSnapshotFor(at), at, stockId)) {
+            balances.put(((Number) row[0]).intValue(), ((Number) row[1]).intValue());
+        }
+        return balances;
+    }
+
+    /**
+     * Folds the ledger up to {@code now - snapshotLag} into a new snapshot and thins out old ones.
+     */
+    @Transactional
+    public void takeSnapshot() {
+        OffsetDateTime at = OffsetDateTime.now().minus(properties.snapshotLag());
+        OffsetDateTime base = baseSnapshotFor(at);
+        if (!base.isBefore(at)) {
+            return;
+        }
+        int rows = stockSnapshotRepository.insertSnapshot(base, at);
+        int compacted = stockSnapshotRepository.compactBefore(OffsetDateTime.now().minus(properties.snapshotRetention()));
+        logger.info("Stock snapshot at {}: {} rows, {} old rows compacted.", at, rows, compacted);
+    }
+
+    /**
+     * Compares {@code stock_variation} with the ledger. With {@code repair} the drifted rows are
+     * overwritten with the ledger balance in the same transaction.
+     */
+    @Transactional
+    public Map<String, Object> reconcile(boolean repair) {
+        OffsetDateTime base = baseSnapshotFor(OffsetDateTime.now());
+        List<Map<String, Object>> drift = new ArrayList<>();
+        for (Object[] row : stockSnapshotRepository.findDrift(base)) {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("stockId", ((Number) row[0]).intValue());
+            entry.put("variationId", ((Number) row[1]).intValue());
+            entry.put("projectedQuantity", row[2] != null ? ((Number) row[2]).intValue() : null);
+            entry.put("ledgerQuantity", ((Number) row[3]).intValue());
+            drift.add(entry);
+        }
+
+        int repaired = repair && !drift.isEmpty() ? stockSnapshotRepository.repairDrift(base) : 0;
+        if (!drift.isEmpty()) {
+            logger.warn("Stock reconciliation found {} drifted rows, repaired {}.", drift.size(), repaired);
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("drifted", drift.size());
+        response.put("repaired", repaired);
+        response.put("rows", drift);
+        return response;
+    }
+
+    public void performScheduledReconciliation() {
+        reconcile(properties.autoRepair());
+    }
+
+    private OffsetDateTime baseSnapshotFor(OffsetDateTime at) {
+        OffsetDateTime latest = stockSnapshotRepository.findLatestSnapshotAt(at);
+        return latest != null ? latest : StockSnapshotRepository.NO_SNAPSHOT;
+    }
+}
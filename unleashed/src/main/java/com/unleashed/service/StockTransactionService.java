@@ -3,7 +3,6 @@ package com.unleashed.service;
 import com.unleashed.dto.StockTransactionDTO;
 import com.unleashed.dto.TransactionCardDTO;
 import com.unleashed.entity.*;
-import com.unleashed.entity.composite.StockVariationId;
 import com.unleashed.repo.*;
 import com.unleashed.repo.specification.TransactionSpecification;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -30,6 +29,9 @@ public class StockTransactionService {
     private final StockVariationRepository stockVariationRepository;
     private final ProductStatusRepository productStatusRepository;
     private final ProviderRepository providerRepository;
+    private final StockLedgerService stockLedgerService;
+    private final StockAllocationService stockAllocationService;
+    private final OrderStockAllocationRepository orderStockAllocationRepository;
 
 
     @Autowired
@@ -41,7 +43,10 @@ public class StockTransactionService {
                                    TransactionTypeRepository transactionTypeRepository,
                                    StockVariationRepository stockVariationRepository,
                                    ProductStatusRepository productStatusRepository,
-                                   ProviderRepository providerRepository) {
+                                   ProviderRepository providerRepository,
+                                   StockLedgerService stockLedgerService,
+                                   StockAllocationService stockAllocationService,
+                                   OrderStockAllocationRepository orderStockAllocationRepository) {
         this.transactionRepository = transactionRepository;
         this.stockRepository = stockRepository;
         this.productRepository = productRepository;
@@ -51,6 +56,9 @@ public class StockTransactionService {
         this.stockVariationRepository = stockVariationRepository;
         this.productStatusRepository = productStatusRepository;
         this.providerRepository = providerRepository;
+        this.stockLedgerService = stockLedgerService;
+        this.stockAllocationService = stockAllocationService;
+        this.orderStockAllocationRepository = orderStockAllocationRepository;
     }
 
     @Transactional
@@ -73,34 +81,13 @@ public class StockTransactionService {
             ProductStatus availableStatus = productStatusRepository.findById(3) // 3 = AVAILABLE
                     .orElseThrow(() -> new IllegalStateException("Product Status 'AVAILABLE' (ID 3) not found."));
 
+            List<StockLedgerService.StockMovement> movements = new ArrayList<>();
             for (StockTransactionDTO.ProductVariationQuantity variationQuantity : stockTransactionDTO.getVariations()) {
                 Variation variation = variationRepository.findById(variationQuantity.getProductVariationId())
                         .orElseThrow(() -> new IllegalArgumentException("Product variation not found with ID: " + variationQuantity.getProductVariationId()));
 
-                Transaction transaction = new Transaction();
-                transaction.setStock(stock);
-                transaction.setVariation(variation);
-                transaction.setProvider(provider);
-                transaction.setInchargeEmployee(inchargeEmployee);
-                transaction.setTransactionType(transactionType);
-                transaction.setTransactionQuantity(variationQuantity.getQuantity());
-                transactionRepository.save(transaction);
-
-                StockVariationId stockVariationId = new StockVariationId(stock.getId(), variation.getId());
-                Optional<StockVariation> existingStockVariation = stockVariationRepository.findById(stockVariationId);
-
-                if (existingStockVariation.isPresent()) {
-                    StockVariation stockVariationToUpdate = existingStockVariation.get();
-                    stockVariationToUpdate.setStockQuantity(stockVariationToUpdate.getStockQuantity() + variationQuantity.getQuantity());
-                    stockVariationRepository.save(stockVariationToUpdate);
-                } else {
-                    StockVariation newStockVariation = new StockVariation();
-                    newStockVariation.setId(new StockVariationId());
-                    newStockVariation.setStock(stock);
-                    newStockVariation.setVariation(variation);
-                    newStockVariation.setStockQuantity(variationQuantity.getQuantity());
-                    stockVariationRepository.save(newStockVariation);
-                }
+                movements.add(new StockLedgerService.StockMovement(stock, variation, transactionType,
+                        variationQuantity.getQuantity(), inchargeEmployee, provider));
 
                 Product product = variation.getProduct();
                 Integer currentStatusId = product.getProductStatus().getId();
@@ -113,6 +100,7 @@ public class StockTransactionService {
                 }
                 productRepository.save(product);
             }
+            stockLedgerService.append(movements);
         } catch (IllegalArgumentException | IllegalStateException e) {
             System.err.println("Stock import failed: " + e.getMessage());
             return false;
@@ -179,94 +167,99 @@ public class StockTransactionService {
         );
     }
 
-    @Transactional
-    public void createShippingTransactionsForOrder(Order order) {
-        TransactionType outTransactionType = transactionTypeRepository.findById(2)
-                .orElseThrow(() -> new IllegalStateException("Transaction Type with ID 2 (OUT) not found."));
-
-        Map<Variation, Long> variationQuantities = order.getOrderVariationSingles().stream()
-                .collect(Collectors.groupingBy(
-                        ovs -> ovs.getVariationSingle().getVariation(),
-                        Collectors.counting()
-                ));
-
-        for (Map.Entry<Variation, Long> entry : variationQuantities.entrySet()) {
-            Variation variation = entry.getKey();
-            Integer quantity = entry.getValue().intValue();
-
-            List<StockVariation> stockLocations = stockVariationRepository.findByVariationId(variation.getId());
-            if (stockLocations.isEmpty()) {
-                System.err.println("Warning: No stock location found for Variation ID: " + variation.getId() + ". Cannot create OUT transaction.");
-                continue;
-            }
-            Stock stock = stockLocations.get(0).getStock();
-
-            Transaction transaction = new Transaction();
-            transaction.setVariation(variation);
-            transaction.setTransactionQuantity(quantity);
-            transaction.setTransactionType(outTransactionType);
-            transaction.setStock(stock);
-            transaction.setInchargeEmployee(order.getInchargeEmployee());
-            transaction.setProvider(null);
-
-            transactionRepository.save(transaction);
-        }
-    }
-
-
+    /**
+     * Takes the order's units out of stock, spread over the locations chosen by
+     * {@link StockAllocationService}, and stores the allocation on the order. Fails, rolling the
+     * checkout back, when the locations do not hold enough between them.
+     */
     @Transactional
     public void createReservationTransactionsForOrder(Order order) {
         TransactionType outTransactionType = transactionTypeRepository.findById(2)
                 .orElseThrow(() -> new IllegalStateException("Transaction Type with ID 2 (OUT) not found."));
 
+        // Variations in id order, so two orders never lock the same rows in opposite order.
         Map<Variation, Long> variationQuantities = order.getOrderVariationSingles().stream()
                 .collect(Collectors.groupingBy(
                         ovs -> ovs.getVariationSingle().getVariation(),
+                        () -> new TreeMap<>(Comparator.comparing(Variation::getId)),
                         Collectors.counting()
                 ));
 
+        List<OrderStockAllocation> allocations = new ArrayList<>();
         for (Map.Entry<Variation, Long> entry : variationQuantities.entrySet()) {
             Variation variation = entry.getKey();
-            Integer quantity = entry.getValue().intValue();
+            int remaining = entry.getValue().intValue();
+            Set<Integer> exhausted = new HashSet<>();
+
+            for (int attempt = 0; attempt < stockAllocationService.getMaxAttempts() && remaining > 0; attempt++) {
+                List<StockAllocationService.AllocationLine> plan =
+                        stockAllocationService.plan(variation.getId(), remaining, exhausted);
+                if (plan.stream().mapToInt(StockAllocationService.AllocationLine::quantity).sum() < remaining) {
+                    break;
+                }
+                for (StockAllocationService.AllocationLine line : plan) {
+                    // At creation, no staff is assigned yet.
+                    StockLedgerService.StockMovement movement = new StockLedgerService.StockMovement(
+                            stockRepository.getReferenceById(line.stockId()), variation, outTransactionType,
+                            line.quantity(), null, null);
+                    if (stockLedgerService.take(movement)) {
+                        remaining -= line.quantity();
+                        allocations.add(OrderStockAllocation.builder()
+                                .orderId(order.getOrderId())
+                                .stockId(line.stockId())
+                                .variationId(variation.getId())
+                                .quantity(line.quantity())
+                                .build());
+                    } else {
+                        exhausted.add(line.stockId());
+                    }
+                }
+            }
 
-            // Find a stock location to pull from
-            List<StockVariation> stockLocations = stockVariationRepository.findByVariationId(variation.getId());
-            if (stockLocations.isEmpty()) {
-                System.err.println("Warning: No stock location found for Variation ID: " + variation.getId() + ". Cannot create OUT transaction or reduce stock.");
-                continue;
+            if (remaining > 0) {
+                throw new IllegalStateException(outOfStockMessage(variation));
             }
-            Stock stock = stockLocations.get(0).getStock();
-            StockVariation stockToUpdate = stockLocations.get(0);
-
-            // 1. Create the audit transaction
-            Transaction transaction = new Transaction();
-            transaction.setVariation(variation);
-            transaction.setTransactionQuantity(quantity);
-            transaction.setTransactionType(outTransactionType);
-            transaction.setStock(stock);
-            // At creation, no staff is assigned yet. You could assign the user or leave null.
-            transaction.setInchargeEmployee(null);
-            transaction.setProvider(null);
-            transactionRepository.save(transaction);
-
-            // 2. Update the actual stock quantity
-            stockToUpdate.setStockQuantity(stockToUpdate.getStockQuantity() - quantity);
-            stockVariationRepository.save(stockToUpdate);
         }
+        orderStockAllocationRepository.saveAll(allocations);
     }
 
+    private String outOfStockMessage(Variation variation) {
+        String productName = variation.getProduct() != null ? "'" + variation.getProduct().getProductName() + "'" : "a product";
+        String color = variation.getColor() != null ? variation.getColor().getColorName() : "";
+        String size = variation.getSize() != null ? variation.getSize().getSizeName() : "";
+        return "Sorry, " + productName + " (" + color + ", " + size + ") does not have enough stock left.";
+    }
 
+    /**
+     * Returns the order's units to the stock locations they were allocated from. Orders placed
+     * before allocations were recorded go back to the variation's first location.
+     */
     @Transactional
     public void createReturnTransactionsForOrder(Order order) {
         TransactionType inTransactionType = transactionTypeRepository.findById(1)
                 .orElseThrow(() -> new IllegalStateException("Transaction Type with ID 1 (IN) not found."));
 
+        List<OrderStockAllocation> allocations =
+                orderStockAllocationRepository.findByOrderIdOrderByVariationIdAscStockIdAsc(order.getOrderId());
+        if (!allocations.isEmpty()) {
+            List<StockLedgerService.StockMovement> movements = new ArrayList<>();
+            for (OrderStockAllocation allocation : allocations) {
+                movements.add(new StockLedgerService.StockMovement(
+                        stockRepository.getReferenceById(allocation.getStockId()),
+                        variationRepository.getReferenceById(allocation.getVariationId()),
+                        inTransactionType, allocation.getQuantity(), order.getInchargeEmployee(), null));
+            }
+            stockLedgerService.append(movements);
+            return;
+        }
+
         Map<Variation, Long> variationQuantities = order.getOrderVariationSingles().stream()
                 .collect(Collectors.groupingBy(
                         ovs -> ovs.getVariationSingle().getVariation(),
                         Collectors.counting()
                 ));
 
+        List<StockLedgerService.StockMovement> movements = new ArrayList<>();
         for (Map.Entry<Variation, Long> entry : variationQuantities.entrySet()) {
             Variation variation = entry.getKey();
             Integer quantity = entry.getValue().intValue();
@@ -276,37 +269,41 @@ public class StockTransactionService {
                 System.err.println("Warning: No stock location found for Variation ID: " + variation.getId() + ". Cannot create IN transaction or return stock.");
                 continue;
             }
-            Stock stock = stockLocations.get(0).getStock();
-            StockVariation stockToUpdate = stockLocations.get(0);
-
-            // 1. Create the audit transaction
-            Transaction transaction = new Transaction();
-            transaction.setVariation(variation);
-            transaction.setTransactionQuantity(quantity);
-            transaction.setTransactionType(inTransactionType);
-            transaction.setStock(stock);
-            // Assign the staff member who processed the order, if available
-            transaction.setInchargeEmployee(order.getInchargeEmployee());
-            transaction.setProvider(null); // Not a provider return
-            transactionRepository.save(transaction);
-
-            // 2. Update the actual stock quantity
-            stockToUpdate.setStockQuantity(stockToUpdate.getStockQuantity() + quantity);
-            stockVariationRepository.save(stockToUpdate);
+            // Assign the staff member who processed the order, if available. Not a provider return.
+            movements.add(new StockLedgerService.StockMovement(stockLocations.get(0).getStock(), variation,
+                    inTransactionType, quantity, order.getInchargeEmployee(), null));
         }
+        stockLedgerService.append(movements);
     }
 
+    /**
+     * The order's allocation grouped by stock location, for staff picking the parcel.
+     */
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> getPickList(String orderId) {
+        List<OrderStockAllocation> allocations =
+                orderStockAllocationRepository.findByOrderIdOrderByVariationIdAscStockIdAsc(orderId);
+        Map<Integer, String> stockNames = stockRepository.findAllById(
+                        allocations.stream().map(OrderStockAllocation::getStockId).collect(Collectors.toSet()))
+                .stream()
+                .collect(Collectors.toMap(Stock::getId, Stock::getStockName));
+
+        Map<Integer, List<Map<String, Object>>> linesByStock = new TreeMap<>();
+        for (OrderStockAllocation allocation : allocations) {
+            Map<String, Object> line = new HashMap<>();
+            line.put("variationId", allocation.getVariationId());
+            line.put("quantity", allocation.getQuantity());
+            linesByStock.computeIfAbsent(allocation.getStockId(), id -> new ArrayList<>()).add(line);
+        }
 
-
-
-
-
-
-
-
-
-
-
-
-
-}
\ No newline at end of file
+        List<Map<String, Object>> pickList = new ArrayList<>();
+        linesByStock.forEach((stockId, lines) -> {
+            Map<String, Object> location = new HashMap<>();
+            location.put("stockId", stockId);
+            location.put("stockName", stockNames.get(stockId));
+            location.put("lines", lines);
+            pickList.add(location);
+        });
+        return pickList;
+    }
+}
@@ -1,83 +1,64 @@
 package com.unleashed.service;
 
 import com.unleashed.dto.ResponseDTO;
-import com.unleashed.entity.Stock;
-import com.unleashed.entity.StockVariation;
 import com.unleashed.entity.Variation;
-import com.unleashed.entity.composite.StockVariationId; // Import the Id class
-import com.unleashed.repo.StockRepository;
 import com.unleashed.repo.StockVariationRepository;
 import com.unleashed.repo.VariationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.List;
 import java.util.Optional;
 
 @Service
 public class StockVariationService {
 
+    private static final Logger logger = LoggerFactory.getLogger(StockVariationService.class);
+
     private final StockVariationRepository stockVariationRepository;
-    private final StockRepository stockRepository;
     private final VariationRepository variationRepository;
 
     @Autowired
-    public StockVariationService(StockVariationRepository stockVariationRepository, StockRepository stockRepository, VariationRepository variationRepository) {
+    public StockVariationService(StockVariationRepository stockVariationRepository, VariationRepository variationRepository) {
         this.stockVariationRepository = stockVariationRepository;
-        this.stockRepository = stockRepository;
         this.variationRepository = variationRepository;
     }
 
+    /**
+     * Deleting a variation only flags it. Its stock is left alone: quantities are written through
+     * {@link StockLedgerService} alone, and units still on the shelf stay on the books.
+     */
+    @Transactional
     public ResponseDTO manageStockForVariationDeletion(int variationId) {
         ResponseDTO responseDTO = new ResponseDTO();
 
-        Integer stockQuantity = stockVariationRepository.findStockProductByProductVariationId(variationId);
-
-        if (stockQuantity == null || stockQuantity == 0) {
-            Optional<Stock> stockOptional = stockRepository.findById(1);
-            if (stockOptional.isEmpty()) {
-                responseDTO.setStatusCode(404);
-                responseDTO.setMessage("Stock with ID 1 not found");
-                return responseDTO;
-            }
-            Stock stock = stockOptional.get();
-
-            Optional<Variation> variationOptional = variationRepository.findById(variationId);
-            if (variationOptional.isEmpty()) {
-                responseDTO.setStatusCode(404);
-                responseDTO.setMessage("Variation not found");
-                return responseDTO;
-            }
-            Variation variation = variationOptional.get();
-
-            StockVariation newStockVariation = new StockVariation();
-
-            newStockVariation.setId(new StockVariationId());
-
-            newStockVariation.setStock(stock);
-            newStockVariation.setVariation(variation);
-            newStockVariation.setStockQuantity(-1);
-
-            stockVariationRepository.save(newStockVariation);
-
-            responseDTO.setStatusCode(200);
-            responseDTO.setMessage("No stock found, so new stock created with quantity -1");
-        } else {
-            List<StockVariation> stockVariations = stockVariationRepository.findByVariationId(variationId);
-            if (stockVariations.isEmpty()) {
-                responseDTO.setStatusCode(404);
-                responseDTO.setMessage("Variation not found");
-                return responseDTO;
-            }
+        Optional<Variation> variationOptional = variationRepository.findById(variationId);
+        if (variationOptional.isEmpty()) {
+            responseDTO.setStatusCode(404);
+            responseDTO.setMessage("Variation not found");
+            return responseDTO;
+        }
+        Variation variation = variationOptional.get();
+        variation.setIsVariationDeleted(true);
+        variationRepository.save(variation);
 
-            for (StockVariation sv : stockVariations) {
-                sv.setStockQuantity(-1);
-            }
-            stockVariationRepository.saveAll(stockVariations);
+        responseDTO.setStatusCode(200);
+        responseDTO.setMessage("Variation deleted successfully");
+        return responseDTO;
+    }
 
-            responseDTO.setMessage("Stock quantity updated to -1 successfully");
-            responseDTO.setStatusCode(200);
+    /**
+     * Moves variations deleted the old way, with {@code stock_quantity = -1}, onto the flag.
+     * Runs on startup; does nothing once no marker is left.
+     */
+    @Transactional
+    public void migrateLegacyDeletionMarkers() {
+        int flagged = variationRepository.flagLegacyDeletedVariations();
+        if (flagged > 0) {
+            int cleared = stockVariationRepository.clearLegacyDeletionMarkers();
+            logger.info("Flagged {} variations deleted with a -1 stock marker and cleared {} markers.", flagged, cleared);
         }
-        return responseDTO;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,204 @@
+package com.unleashed.service;
+
+import com.unleashed.config.UserDirectoryProperties;
+import com.unleashed.entity.User;
+import com.unleashed.repo.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Remembers which usernames, emails and phone numbers belong to an account, and which do not.
+ * <p>
+ * Registration, login, Google sign-in and provider validation ask these questions for every call,
+ * mostly about names that either certainly exist or certainly do not. Answers are kept in a bounded
+ * LRU map for {@code ttl} (present) or {@code negativeTtl} (absent), so uniqueness checks and logins
+ * with an unknown username skip the database. Looking a user up still loads it from the repository,
+ * the directory only short-circuits names known to be free.
+ * <p>
+ * Keys are compared case-insensitively, as the database collation does. Every write that adds,
+ * renames or removes an account calls {@link #forget(User)} with the account as it was and as it is,
+ * once before the change and once after the transaction completes.
+ */
+@Service
+public class UserDirectoryService {
+
+    private enum Kind {
+        USERNAME, EMAIL, PHONE
+    }
+
+    private record Key(Kind kind, String value) {
+    }
+
+    private record Entry(boolean exists, long expiresAt) {
+    }
+
+    private final UserRepository userRepository;
+    private final UserDirectoryProperties properties;
+    private final Map<Key, Entry> entries;
+    private final Counter hits;
+    private final Counter misses;
+
+    @Autowired
+    public UserDirectoryService(UserRepository userRepository,
+                                UserDirectoryProperties properties,
+                                MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.properties = properties;
+        this.entries = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > properties.maxEntries();
+            }
+        };
+        this.hits = counter(meterRegistry, "hit");
+        this.misses = counter(meterRegistry, "miss");
+    }
+
+    public boolean usernameExists(String username) {
+        return exists(Kind.USERNAME, username, () -> userRepository.existsByUserUsername(username));
+    }
+
+    public boolean emailExists(String email) {
+        return exists(Kind.EMAIL, email, () -> userRepository.existsByUserEmail(email));
+    }
+
+    public boolean phoneExists(String phone) {
+        return exists(Kind.PHONE, phone, () -> userRepository.existsByUserPhone(phone));
+    }
+
+    public Optional<User> findByUsername(String username) {
+        return find(Kind.USERNAME, username, userRepository::findByUserUsername);
+    }
+
+    public Optional<User> findByEmail(String email) {
+        return find(Kind.EMAIL, email, userRepository::findByUserEmail);
+    }
+
+    /**
+     * Drops what the directory holds for the user's username, email and phone. Inside a
+     * transaction the entries are dropped again when it completes, so a lookup racing with the
+     * write cannot leave the old answer behind.
+     */
+    public void forget(User user) {
+        if (user == null) {
+            return;
+        }
+        List<Key> keys = new ArrayList<>(3);
+        addKey(keys, Kind.USERNAME, user.getUserUsername());
+        addKey(keys, Kind.EMAIL, user.getUserEmail());
+        addKey(keys, Kind.PHONE, user.getUserPhone());
+        if (keys.isEmpty()) {
+            return;
+        }
+        evict(keys);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(keys);
+                }
+            });
+        }
+    }
+
+    private boolean exists(Kind kind, String value, Supplier<Boolean> loader) {
+        Key key = key(kind, value);
+        if (key == null) {
+            return false;
+        }
+        Boolean cached = cached(key);
+        if (cached != null) {
+            return cached;
+        }
+        boolean exists = loader.get();
+        put(key, exists);
+        return exists;
+    }
+
+    private Optional<User> find(Kind kind, String value, Function<String, Optional<User>> loader) {
+        Key key = key(kind, value);
+        if (key == null) {
+            return Optional.empty();
+        }
+        if (Boolean.FALSE.equals(cached(key))) {
+            return Optional.empty();
+        }
+        Optional<User> user = loader.apply(value);
+        if (user.isPresent()) {
+            remember(user.get());
+        } else {
+            put(key, false);
+        }
+        return user;
+    }
+
+    private void remember(User user) {
+        List<Key> keys = new ArrayList<>(3);
+        addKey(keys, Kind.USERNAME, user.getUserUsername());
+        addKey(keys, Kind.EMAIL, user.getUserEmail());
+        addKey(keys, Kind.PHONE, user.getUserPhone());
+        for (Key key : keys) {
+            put(key, true);
+        }
+    }
+
+    private Boolean cached(Key key) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && entry.expiresAt() <= System.currentTimeMillis()) {
+                entries.remove(key);
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.exists();
+    }
+
+    private void put(Key key, boolean exists) {
+        long ttl = (exists ? properties.ttl() : properties.negativeTtl()).toMillis();
+        Entry entry = new Entry(exists, System.currentTimeMillis() + ttl);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    private void evict(List<Key> keys) {
+        synchronized (entries) {
+            keys.forEach(entries::remove);
+        }
+    }
+
+    private static void addKey(List<Key> keys, Kind kind, String value) {
+        Key key = key(kind, value);
+        if (key != null) {
+            keys.add(key);
+        }
+    }
+
+    private static Key key(Kind kind, String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        return new Key(kind, value.trim().toLowerCase(Locale.ROOT));
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("user.directory")
+                .description("Username/email/phone directory lookups; hits are queries saved")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -17,7 +17,6 @@ import org.springframework.http.HttpStatus;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -46,6 +45,8 @@ public class UserService {
     private final EmailService emailService;
     private final ViewUserMapper viewUserMapper;
     private final SystemUserProperties systemUserProperties;
+    private final UserDirectoryService userDirectoryService;
+    private final PasswordEncoder passwordEncoder;
 
 
     @Autowired
@@ -60,7 +61,9 @@ public class UserService {
                        UserRoleService userRoleService,
                        EmailService emailService,
                        ViewUserMapper viewUserMapper,
-                       SystemUserProperties systemUserProperties) {
+                       SystemUserProperties systemUserProperties,
+                       UserDirectoryService userDirectoryService,
+                       PasswordEncoder passwordEncoder) {
         this.userRepository = userRepository;
         this.userRoleRepository = userRoleRepository;
         this.jwtUtil = jwtUtil;
@@ -70,6 +73,8 @@ public class UserService {
         this.emailService = emailService;
         this.viewUserMapper = viewUserMapper;
         this.systemUserProperties = systemUserProperties;
+        this.userDirectoryService = userDirectoryService;
+        this.passwordEncoder = passwordEncoder;
     }
 
     @Transactional
@@ -85,7 +90,6 @@ public class UserService {
 
             User user = userRepository.findByUserEmail(changePasswordDTO.getUserEmail())
                     .orElseThrow(() -> new CustomException(" User not found", HttpStatus.NOT_FOUND));
-            PasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
             if (!passwordEncoder.matches(changePasswordDTO.getOldPassword(), user.getUserPassword())) {
                 throw new CustomException(" Password is incorrect", HttpStatus.BAD_REQUEST);
             } else {
@@ -121,7 +125,7 @@ public class UserService {
     public ResponseDTO login(UserDTO userDTO) {
         ResponseDTO responseDTO = new ResponseDTO();
         try {
-            User user = userRepository.findByUserUsername(userDTO.getUsername()).orElseThrow(() -> new CustomException("Username or password is wrong! Please try again", HttpStatus.NOT_FOUND));
+            User user = userDirectoryService.findByUsername(userDTO.getUsername()).orElseThrow(() -> new CustomException("Username or password is wrong! Please try again", HttpStatus.NOT_FOUND));
             if (!user.getIsUserEnabled()) {
                 throw new CustomException("User account is disabled. Please contact us for support.", HttpStatus.FORBIDDEN);
             }
@@ -159,9 +163,10 @@ public class UserService {
 
     public User create(User user) {
 //        System.out.println("user pass:"+user.getUserPassword());
-        PasswordEncoder encode = new BCryptPasswordEncoder(BCryptPasswordEncoder.BCryptVersion.$2A, 10);
-        user.setUserPassword(encode.encode(user.getUserPassword()));
-        return userRepository.save(user);
+        user.setUserPassword(passwordEncoder.encode(user.getUserPassword()));
+        User savedUser = userRepository.save(user);
+        userDirectoryService.forget(savedUser);
+        return savedUser;
     }
 
     public ResponseDTO handleGoogleLogin(String googleId, String email, String fullName, String userImage) {
@@ -246,56 +251,27 @@ public class UserService {
 
         SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
         SimpleDateFormat yearFormat = new SimpleDateFormat("yyyy");
-        String currentDateTime = dateFormat.format(new Date());
-        String currentYear = yearFormat.format(new Date());
-
-        String htmlContent = "<!DOCTYPE html>"
-                + "<html lang=\"en\">"
-                + "<head>"
-                + "<meta charset=\"UTF-8\">"
-                + "<meta name=\"viewport\" content=\"width=device-width, initial-scale=1.0\">"
-                + "<title>Registration Confirmation</title>"
-                + "</head>"
-                + "<body style=\"margin: 0; padding: 0; font-family: Arial, sans-serif; background-color: #f4f4f4;\">"
-                + "<table width=\"100%\" border=\"0\" cellspacing=\"0\" cellpadding=\"0\">"
-                + "<tr>"
-                + "<td align=\"center\" style=\"padding: 20px;\">"
-                + "<table width=\"600\" border=\"0\" cellspacing=\"0\" cellpadding=\"0\" style=\"background-color: #ffffff; border-radius: 8px; box-shadow: 0 2px 4px rgba(0,0,0,0.1);\">"
-                + "<tr>"
-                + "<td align=\"center\" style=\"padding: 30px;\">"
-                + "<h2 style=\"color: #4CAF50; margin-bottom: 20px;\">Registration Confirmation</h2>"
-                + "<p style=\"color: #555; font-size: 16px; line-height: 1.5;\">Hello " + user.getUserFullname() + ",</p>"
-                + "<p style=\"color: #555; font-size: 16px; line-height: 1.5; margin-bottom: 30px;\">Thank you for registering! Please click the button below to confirm your registration:</p>"
-                + "<a href=\"" + confirmationLink + "\" style=\"display: inline-block; padding: 12px 24px; font-size: 16px; color: white; background-color: #4CAF50; text-decoration: none; border-radius: 5px; font-weight: bold;\">Confirm Registration</a>"
-                + "<p style=\"color: #555; font-size: 14px; margin-top: 30px; line-height: 1.5;\">If you didn't register, please ignore this email.</p>"
-                + "<p style=\"color: #555; font-size: 14px; line-height: 1.5;\">Confirmation sent on: " + currentDateTime + "</p>"
-                + "</td>"
-                + "</tr>"
-                + "<tr>"
-                + "<td align=\"center\" style=\"padding: 20px; background-color: #f8f8f8;\">"
-                + "<p style=\"color: #999; font-size: 12px; margin: 0;\">© " + currentYear + " Unleashed Workshop. All rights reserved.</p>"
-                + "</td>"
-                + "</tr>"
-                + "</table>"
-                + "</td>"
-                + "</tr>"
-                + "</table>"
-                + "</body>"
-                + "</html>";
-
-        emailService.sendHtmlMessage(user.getUserEmail(), "Confirm Your Registration", htmlContent);
+
+        Map<String, Object> emailVariables = new HashMap<>();
+        emailVariables.put("fullName", user.getUserFullname());
+        emailVariables.put("confirmationLink", confirmationLink);
+        emailVariables.put("sentAt", dateFormat.format(new Date()));
+        emailVariables.put("year", yearFormat.format(new Date()));
+
+        emailService.sendTemplatedMessage(user.getUserEmail(), "Confirm Your Registration",
+                "email/registration-confirmation", emailVariables);
     }
 
     public User findByEmail(String userEmail) {
-        return userRepository.findByUserEmail(userEmail).orElse(null);
+        return userDirectoryService.findByEmail(userEmail).orElse(null);
     }
 
     public boolean existsByUsername(String username) {
-        return userRepository.existsByUserUsername(username);
+        return userDirectoryService.usernameExists(username);
     }
 
     public boolean existsByEmail(String userEmail) {
-        return userRepository.existsByUserEmail(userEmail);
+        return userDirectoryService.emailExists(userEmail);
     }
 
     public User findById(String userId) {
@@ -305,8 +281,7 @@ public class UserService {
 
     @Transactional
     public User updatePassword(User user, String newPassword) {
-        PasswordEncoder encoder = new BCryptPasswordEncoder();
-        String encodedPassword = encoder.encode(newPassword);
+        String encodedPassword = passwordEncoder.encode(newPassword);
 
 //        System.out.println("ENCODING PASSWORD: " + encodedPassword);
 
@@ -332,11 +307,13 @@ public class UserService {
 //            System.out.println(" Received from frontend: " + updatedUserInfo);
 
             if (!existingUser.getUserUsername().equals(updatedUserInfo.getUsername())) {
-                if (userRepository.existsByUserUsername(updatedUserInfo.getUsername())) {
+                if (userDirectoryService.usernameExists(updatedUserInfo.getUsername())) {
                     throw new CustomException("Username is already taken. Please choose another.", HttpStatus.CONFLICT);
                 }
             }
 
+            userDirectoryService.forget(existingUser);
+
             // Cập nhật thông tin
             existingUser.setUserUsername(updatedUserInfo.getUsername()); //hereeeeeeeee
             existingUser.setUserFullname(updatedUserInfo.getFullName());
@@ -357,6 +334,7 @@ public class UserService {
 
             // Lưu vào database
             User updatedUser = userRepository.save(existingUser);
+            userDirectoryService.forget(updatedUser);
 
             // Kiểm tra dữ liệu sau khi lưu
 //            System.out.println("Saved userPhone in DB: " + updatedUser.getUserPhone());
@@ -374,7 +352,7 @@ public class UserService {
     }
 
     public User findByUsername(String username) {
-        return userRepository.findByUserUsername(username)
+        return userDirectoryService.findByUsername(username)
                 .orElse(null);
     }
 
@@ -412,6 +390,7 @@ public class UserService {
         }
         existingUser.setIsUserEnabled(adminUpdateDTO.getEnable());
         userRepository.save(existingUser);
+        userDirectoryService.forget(existingUser);
     }
 
     public PageImpl<User> getAllUser(int page, int size, String search) {
@@ -430,15 +409,17 @@ public class UserService {
 
     @Transactional
     public boolean deleteUserById(String userId) throws CustomException {
-        if (!userRepository.existsById(UUID.fromString(userId))) {
-            throw new CustomException("User not found", HttpStatus.NOT_FOUND);
-        }
-        userRepository.deleteById(UUID.fromString(userId));
+        User user = userRepository.findById(UUID.fromString(userId))
+                .orElseThrow(() -> new CustomException("User not found", HttpStatus.NOT_FOUND));
+        userRepository.delete(user);
+        userDirectoryService.forget(user);
         return true;
     }
 
     public User createUser(User user) {
-        return userRepository.save(user);
+        User savedUser = userRepository.save(user);
+        userDirectoryService.forget(savedUser);
+        return savedUser;
     }
 
     @Transactional
@@ -448,8 +429,7 @@ public class UserService {
         }
 
 
-        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(BCryptPasswordEncoder.BCryptVersion.$2A, 10);
-        user.setUserPassword(encoder.encode(user.getPassword()));
+        user.setUserPassword(passwordEncoder.encode(user.getPassword()));
 
         user.setUserImage(user.getUserImage());
         user.setIsUserEnabled(true);
@@ -459,7 +439,9 @@ public class UserService {
 //        user.setCurrentPaymentMethod(userDTO.getCurrentPaymentMethod());
         user.setUserAddress(user.getUserAddress());
 
-        return userRepository.save(user);
+        User savedUser = userRepository.save(user);
+        userDirectoryService.forget(savedUser);
+        return savedUser;
     }
 
     public User getUserById(String userId) throws CustomException {
@@ -538,6 +520,7 @@ public class UserService {
 
         User user = userRepository.findById(UUID.fromString(userId))
                 .orElseThrow(() -> new CustomException("User not found", HttpStatus.NOT_FOUND));
+        userDirectoryService.forget(user);
 
         user.setUserEmail((String) updatedUserInfo.get("email"));
         user.setUserFullname((String) updatedUserInfo.get("fullName"));
@@ -545,6 +528,7 @@ public class UserService {
         user.setUserImage((String) updatedUserInfo.get("userImage"));
 
         userRepository.save(user);
+        userDirectoryService.forget(user);
 
         return new UserDTO(
                 user.getUserId().toString(),
@@ -641,7 +625,9 @@ public class UserService {
                     customerRole.setId(2);
                     systemUser.setRole(customerRole);
 
-                    return userRepository.save(systemUser);
+                    User savedUser = userRepository.save(systemUser);
+                    userDirectoryService.forget(savedUser);
+                    return savedUser;
                 });
     }
 
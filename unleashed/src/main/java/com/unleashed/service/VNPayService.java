@@ -12,11 +12,19 @@ import java.util.*;
 @Service
 public class VNPayService {
     public String createOrder(long total, String orderInfor, String urlReturn, HttpServletRequest request) {
+        return createOrder(total, orderInfor, urlReturn, VNPayConfig.getIpAddress(request), VNPayConfig.vnp_PayUrl);
+    }
+
+    /**
+     * Request-free variant, safe to call off the servlet thread. {@code payUrl} is the VNPay
+     * checkout page, normally {@link VNPayConfig#vnp_PayUrl}.
+     */
+    public String createOrder(long total, String orderInfor, String urlReturn, String ipAddress, String payUrl) {
         String vnp_Version = "2.1.0";
         String vnp_Command = "pay";
         String vnp_TxnRef = VNPayConfig.getRandomNumber(8);
 //        String vnp_IpAddr = "127.0.0.1";
-        String vnp_IpAddr = VNPayConfig.getIpAddress(request);
+        String vnp_IpAddr = ipAddress;
         String vnp_TmnCode = VNPayConfig.vnp_TmnCode;
         String orderType = "order-type";
 
@@ -73,7 +81,7 @@ public class VNPayService {
         String queryUrl = query.toString();
         String vnp_SecureHash = VNPayConfig.hmacSHA512(VNPayConfig.vnp_HashSecret, hashData.toString());
         queryUrl += "&vnp_SecureHash=" + vnp_SecureHash;
-        return VNPayConfig.vnp_PayUrl + "?" + queryUrl;
+        return payUrl.trim() + "?" + queryUrl;
     }
 
     public int orderReturn(HttpServletRequest request) {
@@ -4,8 +4,6 @@ import com.unleashed.dto.WishlistDTO;
 import com.unleashed.entity.composite.WishlistId;
 import com.unleashed.entity.User;
 import com.unleashed.entity.Wishlist;
-import com.unleashed.repo.ProductRepository;
-import com.unleashed.repo.UserRepository;
 import com.unleashed.repo.WishlistRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -22,14 +20,11 @@ public class WishlistService {
     private WishlistRepository wishlistRepository;
 
     @Autowired
-    private ProductRepository productRepository;
-
-    @Autowired
-    private UserRepository userRepository;
+    private EntityLookupService entityLookupService;
 
     public List<WishlistDTO> getWishlistByUser(String username) {
         // 1. Tìm User entity dựa trên username
-        User user = userRepository.findByUserUsername(username)
+        User user = entityLookupService.findUserByUsername(username)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
 
         if (!user.getRole().getId().equals(2)) {
@@ -41,13 +36,13 @@ public class WishlistService {
 
     public Wishlist addToWishlist(String username, String productId) {
         // 1. Tìm User entity dựa trên username
-        User user = userRepository.findByUserUsername(username)
+        User user = entityLookupService.findUserByUsername(username)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
 
         if (!user.getRole().getId().equals(2)) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found");
         }
-        if (!productRepository.existsById(UUID.fromString(productId))) {
+        if (entityLookupService.findProductById(UUID.fromString(productId)).isEmpty()) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Product not found");
         }
         if (isProductInWishlist(username, productId)) {
@@ -69,13 +64,13 @@ public class WishlistService {
 
     public void removeFromWishlist(String username, String productId) {
         // 1. Tìm User entity dựa trên username
-        User user = userRepository.findByUserUsername(username)
+        User user = entityLookupService.findUserByUsername(username)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
 
         if (!user.getRole().getId().equals(2)) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found");
         }
-        if (!productRepository.existsById(UUID.fromString(productId))) {
+        if (entityLookupService.findProductById(UUID.fromString(productId)).isEmpty()) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Product not found");
         }
         if (!isProductInWishlist(username, productId)) {
@@ -92,7 +87,7 @@ public class WishlistService {
     }
 
     public boolean isProductInWishlist(String username, String productId) {
-        User user = userRepository.findByUserUsername(username)
+        User user = entityLookupService.findUserByUsername(username)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
         WishlistId wishlistId = new WishlistId();
         wishlistId.setUserId(user.getUserId());
@@ -1,6 +1,18 @@
 package com.unleashed;
 
+import com.unleashed.config.BackgroundJobProperties;
+import com.unleashed.config.EmailOutboxProperties;
+import com.unleashed.config.ExportProperties;
+import com.unleashed.config.NotificationProperties;
+import com.unleashed.config.OrderEventProperties;
+import com.unleashed.config.PaymentCallbackProperties;
+import com.unleashed.config.PasswordHashingProperties;
+import com.unleashed.config.PaymentGatewayProperties;
+import com.unleashed.config.QueuedCheckoutProperties;
+import com.unleashed.config.StockAllocationProperties;
+import com.unleashed.config.StockLedgerProperties;
 import com.unleashed.config.SystemUserProperties;
+import com.unleashed.config.UserDirectoryProperties;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
@@ -10,7 +22,11 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 @SpringBootApplication
 @EnableAsync
 @EnableScheduling
-@EnableConfigurationProperties(SystemUserProperties.class)
+@EnableConfigurationProperties({SystemUserProperties.class, EmailOutboxProperties.class, OrderEventProperties.class,
+        PaymentGatewayProperties.class, QueuedCheckoutProperties.class, PaymentCallbackProperties.class,
+        StockLedgerProperties.class, ExportProperties.class, StockAllocationProperties.class,
+        BackgroundJobProperties.class, UserDirectoryProperties.class, PasswordHashingProperties.class,
+        NotificationProperties.class})
 public class unleashedApplication {
 
     public static void main(String[] args) {
@@ -1,5 +1,6 @@
 package com.unleashed.util;
 
+import com.unleashed.security.LoginRateLimiter;
 import com.unleashed.service.*;
 import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
@@ -25,6 +26,17 @@ public class AppTaskScheduler {
     private final DiscountService discountService;
     private final ProductService productService;
     private final UserService userService;
+    private final EmailService emailService;
+    private final OrderEventService orderEventService;
+    private final QueuedCheckoutService queuedCheckoutService;
+    private final PaymentCallbackService paymentCallbackService;
+    private final StockLedgerService stockLedgerService;
+    private final BackgroundJobService backgroundJobService;
+    private final LoginRateLimiter loginRateLimiter;
+    private final RankService rankService;
+    private final CommentService commentService;
+    private final NotificationStreamService notificationStreamService;
+    private final StockVariationService stockVariationService;
 
     /**
      * Constructor-based dependency injection. Spring will automatically provide
@@ -36,11 +48,33 @@ public class AppTaskScheduler {
     public AppTaskScheduler(SaleService saleService,
                             DiscountService discountService,
                             ProductService productService,
-                            UserService userService) {
+                            UserService userService,
+                            EmailService emailService,
+                            OrderEventService orderEventService,
+                            QueuedCheckoutService queuedCheckoutService,
+                            PaymentCallbackService paymentCallbackService,
+                            StockLedgerService stockLedgerService,
+                            BackgroundJobService backgroundJobService,
+                            LoginRateLimiter loginRateLimiter,
+                            RankService rankService,
+                            CommentService commentService,
+                            NotificationStreamService notificationStreamService,
+                            StockVariationService stockVariationService) {
         this.saleService = saleService;
         this.discountService = discountService;
         this.productService = productService;
         this.userService = userService;
+        this.emailService = emailService;
+        this.orderEventService = orderEventService;
+        this.queuedCheckoutService = queuedCheckoutService;
+        this.paymentCallbackService = paymentCallbackService;
+        this.stockLedgerService = stockLedgerService;
+        this.backgroundJobService = backgroundJobService;
+        this.loginRateLimiter = loginRateLimiter;
+        this.rankService = rankService;
+        this.commentService = commentService;
+        this.notificationStreamService = notificationStreamService;
+        this.stockVariationService = stockVariationService;
     }
 
     @PostConstruct
@@ -52,6 +86,8 @@ public class AppTaskScheduler {
             saleService.performScheduledStatusUpdates();
             discountService.performScheduledStatusUpdates();
             productService.performScheduledStockUpdates();
+            commentService.backfillCommentClosure();
+            stockVariationService.migrateLegacyDeletionMarkers();
             logger.info("'System' user initialized successfully.");
         } catch (Exception e) {
             logger.error("Failed to initialize 'System' user.", e);
@@ -80,6 +116,11 @@ public class AppTaskScheduler {
             saleService.performScheduledStatusUpdates();
             discountService.performScheduledStatusUpdates();
             productService.performScheduledStockUpdates();
+            queuedCheckoutService.purgeExpiredTickets();
+            paymentCallbackService.expireUnpaidOrders();
+            backgroundJobService.purgeExpiredJobs();
+            loginRateLimiter.purgeExpiredWindows();
+            notificationStreamService.sendHeartbeats();
 
         } catch (Exception e) {
             // Catching a broad exception is acceptable here to prevent the scheduler from dying
@@ -91,6 +132,55 @@ public class AppTaskScheduler {
         }
     }
 
+    /**
+     * Hands due rows of the email outbox to the mail workers. Runs every couple of seconds and
+     * only claims work, so it stays out of the minute-task logs.
+     */
+    @Scheduled(fixedDelayString = "${app.email-outbox.poll-interval-ms:2000}")
+    public void dispatchPendingEmails() {
+        try {
+            emailService.dispatchPendingEmails();
+        } catch (Exception e) {
+            logger.error("An unexpected error occurred while dispatching queued emails.", e);
+        }
+    }
+
+    /**
+     * Feeds the order lifecycle events to their consumers (stock, rank, notifications, statistics, email).
+     */
+    @Scheduled(fixedDelayString = "${app.order-events.poll-interval-ms:1000}")
+    public void dispatchOrderEvents() {
+        try {
+            orderEventService.dispatchPendingEvents();
+        } catch (Exception e) {
+            logger.error("An unexpected error occurred while dispatching order events.", e);
+        }
+    }
+
+    /**
+     * Applies received PayOS / VNPay callbacks to their orders in batches.
+     */
+    @Scheduled(fixedDelayString = "${app.payment-callbacks.poll-interval-ms:500}")
+    public void applyPaymentCallbacks() {
+        try {
+            paymentCallbackService.applyPendingCallbacks();
+        } catch (Exception e) {
+            logger.error("An unexpected error occurred while applying payment callbacks.", e);
+        }
+    }
+
+    /**
+     * Takes products that ran out of stock out of their sales, off the request path.
+     */
+    @Scheduled(fixedDelayString = "${app.sales.membership-cleanup-interval-ms:300000}")
+    public void removeOutOfStockSaleProducts() {
+        try {
+            saleService.removeOutOfStockProducts();
+        } catch (Exception e) {
+            logger.error("An unexpected error occurred while cleaning up sale products.", e);
+        }
+    }
+
     @Scheduled(cron = "0 0 1 * * *")
     public void performDailyTasks() {
         logger.info("Daily scheduler started: Starting background tasks...");
@@ -103,6 +193,33 @@ public class AppTaskScheduler {
 
     }
 
+    /**
+     * Nightly membership pass: promotions and expiry demotions for every member in one set-based
+     * run, so expired ranks no longer wait for the member's next login.
+     */
+    @Scheduled(cron = "${app.ranks.recalculation-cron:0 0 3 * * *}")
+    public void recalculateRanks() {
+        try {
+            rankService.recalculateRanks();
+        } catch (Exception e) {
+            logger.error("An unexpected error occurred during rank recalculation.", e);
+        }
+    }
+
+    /**
+     * Nightly stock ledger housekeeping: fold the day's transactions into a snapshot, then compare
+     * the projected stock quantities with the ledger.
+     */
+    @Scheduled(cron = "0 30 2 * * *")
+    public void performStockLedgerTasks() {
+        try {
+            stockLedgerService.takeSnapshot();
+            stockLedgerService.performScheduledReconciliation();
+        } catch (Exception e) {
+            logger.error("An unexpected error occurred during stock ledger maintenance.", e);
+        }
+    }
+
 
 
 }
\ No newline at end of file
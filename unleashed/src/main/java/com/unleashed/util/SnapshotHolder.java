@@ -0,0 +1,69 @@
+package com.unleashed.util;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Lazily built, immutable in-memory copy of some rows, for read-mostly lookups.
+ * <p>
+ * {@link #get()} returns the current snapshot or builds one with the loader, one rebuild at a
+ * time. Writers call {@link #invalidate()}; the snapshot is dropped when their transaction
+ * completes. A rebuild that overlapped an invalidation is returned to its caller but not kept,
+ * since it may have read the rows before the change.
+ */
+public class SnapshotHolder<T> {
+
+    private final Supplier<T> loader;
+    private final Object rebuildLock = new Object();
+    private final AtomicLong generation = new AtomicLong();
+    private volatile T snapshot;
+
+    public SnapshotHolder(Supplier<T> loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Marks the snapshot stale. Inside a transaction this takes effect when it completes, so a
+     * rebuild never reads the rows before the change is visible.
+     */
+    public void invalidate() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    drop();
+                }
+            });
+        } else {
+            drop();
+        }
+    }
+
+    public T get() {
+        T current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (rebuildLock) {
+            current = snapshot;
+            if (current != null) {
+                return current;
+            }
+            long startedAt = generation.get();
+            current = loader.get();
+            // An invalidation while we were loading means what we read may already be stale.
+            if (generation.get() == startedAt) {
+                snapshot = current;
+            }
+            return current;
+        }
+    }
+
+    private void drop() {
+        generation.incrementAndGet();
+        snapshot = null;
+    }
+}
@@ -0,0 +1,150 @@
+package com.unleashed.Service;
+
+import com.unleashed.entity.Discount;
+import com.unleashed.entity.User;
+import com.unleashed.entity.UserDiscount;
+import com.unleashed.entity.composite.UserDiscountId;
+import com.unleashed.repo.DiscountRepository;
+import com.unleashed.repo.DiscountStatusRespository;
+import com.unleashed.repo.DiscountTypeRepository;
+import com.unleashed.repo.UserDiscountRepository;
+import com.unleashed.repo.UserRepository;
+import com.unleashed.repo.UserRoleRepository;
+import com.unleashed.service.DiscountRedemptionService;
+import com.unleashed.service.PricingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Many checkouts redeeming one discount at the same moment, against a real database. Needs the
+ * database the application runs on, so it only runs when {@code SPRING_DATASOURCE_URL} is set.
+ */
+@SpringBootTest
+@EnabledIfEnvironmentVariable(named = "SPRING_DATASOURCE_URL", matches = ".+")
+public class DiscountRedemptionConcurrencyTest {
+
+    private static final int USAGE_LIMIT = 5;
+    private static final int CHECKOUTS = 40;
+    private static final int DISCOUNT_STATUS_ACTIVE = 2;
+    private static final int ROLE_CUSTOMER = 2;
+
+    @Autowired
+    private DiscountRedemptionService redemptionService;
+
+    @Autowired
+    private DiscountRepository discountRepository;
+
+    @Autowired
+    private DiscountStatusRespository discountStatusRespository;
+
+    @Autowired
+    private DiscountTypeRepository discountTypeRepository;
+
+    @Autowired
+    private UserDiscountRepository userDiscountRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserRoleRepository userRoleRepository;
+
+    private Discount discount;
+    private final List<User> users = new ArrayList<>();
+    private final List<UserDiscountId> assignments = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        String run = Long.toString(System.nanoTime(), 36);
+        discount = new Discount();
+        discount.setDiscountCode("RACE" + run.substring(Math.max(0, run.length() - 12)));
+        discount.setDiscountStatus(discountStatusRespository.getReferenceById(DISCOUNT_STATUS_ACTIVE));
+        discount.setDiscountType(discountTypeRepository.getReferenceById(PricingService.DISCOUNT_TYPE_PERCENTAGE));
+        discount.setDiscountValue(BigDecimal.TEN);
+        discount.setDiscountUsageLimit(USAGE_LIMIT);
+        discount.setDiscountUsageCount(0);
+        discount.setDiscountStartDate(OffsetDateTime.now().minusDays(1));
+        discount.setDiscountEndDate(OffsetDateTime.now().plusDays(1));
+        discount.setDiscountCreatedAt(OffsetDateTime.now());
+        discount = discountRepository.save(discount);
+
+        for (int i = 0; i < CHECKOUTS; i++) {
+            User user = new User();
+            user.setRole(userRoleRepository.getReferenceById(ROLE_CUSTOMER));
+            user.setIsUserEnabled(true);
+            user.setUserUsername("race-" + run + "-" + i);
+            user.setUserEmail("race-" + run + "-" + i + "@example.com");
+            user.setUserCreatedAt(OffsetDateTime.now());
+            user = userRepository.save(user);
+            users.add(user);
+
+            UserDiscountId id = new UserDiscountId(discount.getDiscountId(), user.getUserId());
+            UserDiscount assignment = new UserDiscount();
+            assignment.setId(id);
+            assignment.setDiscount(discount);
+            assignment.setUser(user);
+            assignment.setIsDiscountUsed(false);
+            userDiscountRepository.save(assignment);
+            assignments.add(id);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        userDiscountRepository.deleteAllById(assignments);
+        userRepository.deleteAll(users);
+        discountRepository.deleteById(discount.getDiscountId());
+    }
+
+    @Test
+    void concurrentCheckoutsRedeemExactlyTheUsageLimit() throws Exception {
+        ExecutorService checkouts = Executors.newFixedThreadPool(CHECKOUTS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger redeemed = new AtomicInteger();
+        AtomicInteger refused = new AtomicInteger();
+        List<Future<?>> results = new ArrayList<>();
+        try {
+            for (User user : users) {
+                results.add(checkouts.submit(() -> {
+                    start.await();
+                    try {
+                        redemptionService.redeem(discount.getDiscountId(), user.getUserId());
+                        redeemed.incrementAndGet();
+                    } catch (IllegalStateException e) {
+                        refused.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            // Anything other than a refusal (a deadlock, a constraint violation) fails the test here.
+            for (Future<?> result : results) {
+                result.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            checkouts.shutdownNow();
+        }
+
+        assertEquals(USAGE_LIMIT, redeemed.get());
+        assertEquals(CHECKOUTS - USAGE_LIMIT, refused.get());
+        Discount stored = discountRepository.findById(discount.getDiscountId()).orElseThrow();
+        assertEquals(USAGE_LIMIT, stored.getDiscountUsageCount());
+        long usedCopies = userDiscountRepository.findAllById(assignments).stream()
+                .filter(UserDiscount::getIsDiscountUsed)
+                .count();
+        assertEquals(USAGE_LIMIT, usedCopies);
+    }
+}
@@ -0,0 +1,75 @@
+package com.unleashed.Service;
+
+import com.unleashed.repo.DiscountRepository;
+import com.unleashed.repo.DiscountStatusRespository;
+import com.unleashed.repo.UserDiscountRepository;
+import com.unleashed.service.DiscountEligibilityService;
+import com.unleashed.service.DiscountRedemptionService;
+import com.unleashed.service.PricingService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class DiscountRedemptionServiceTest {
+
+    private static final int DISCOUNT_ID = 7;
+
+    @Mock
+    private DiscountRepository discountRepository;
+
+    @Mock
+    private UserDiscountRepository userDiscountRepository;
+
+    @Mock
+    private DiscountStatusRespository discountStatusRespository;
+
+    @Mock
+    private PricingService pricingService;
+
+    @Mock
+    private DiscountEligibilityService discountEligibilityService;
+
+    @InjectMocks
+    private DiscountRedemptionService redemptionService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void exhaustedDiscountIsRefusedWithoutTouchingTheUserCopy() {
+        UUID userId = UUID.randomUUID();
+        when(discountRepository.claimUsageSlot(DISCOUNT_ID)).thenReturn(0);
+
+        IllegalStateException refused = assertThrows(IllegalStateException.class,
+                () -> redemptionService.redeem(DISCOUNT_ID, userId));
+
+        assertEquals("This discount has been fully used or is no longer active.", refused.getMessage());
+        verify(userDiscountRepository, never()).markUsed(any(), anyInt(), any());
+        verifyNoInteractions(discountEligibilityService, pricingService);
+    }
+
+    @Test
+    void usedUserCopyIsRefused() {
+        UUID userId = UUID.randomUUID();
+        when(discountRepository.claimUsageSlot(DISCOUNT_ID)).thenReturn(1);
+        when(userDiscountRepository.markUsed(eq(userId), eq(DISCOUNT_ID), any())).thenReturn(0);
+        when(userDiscountRepository.existsById_UserIdAndId_DiscountId(userId, DISCOUNT_ID)).thenReturn(true);
+
+        IllegalStateException refused = assertThrows(IllegalStateException.class,
+                () -> redemptionService.redeem(DISCOUNT_ID, userId));
+
+        assertEquals("User has already used this discount.", refused.getMessage());
+        verify(discountRepository, never()).deactivateIfExhausted(anyInt(), any());
+        verifyNoInteractions(discountEligibilityService, pricingService);
+    }
+}